@@ -0,0 +1,67 @@
+package rs117.hd.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes buffers from the pool while a window of earlier buffers is still held, returning the oldest each time, so
+ * blocks are split and merged continuously. Sizes vary around the size of a model with the given face count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class BufferPoolBenchmark {
+    private static final int HELD_BUFFERS = 64;
+    private static final int SIZE_COUNT = 1 << 10;
+
+    @Param({ "50", "500", "4096" })
+    int faceCount;
+
+    private BufferPool bufferPool;
+    private final IntBuffer[] held = new IntBuffer[HELD_BUFFERS];
+    private int[] sizes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        bufferPool = new BufferPool(256 * ModelCache.MiB);
+        Random random = new Random(1337);
+        sizes = new int[SIZE_COUNT];
+        for (int i = 0; i < SIZE_COUNT; i++) {
+            sizes[i] = (faceCount / 2 + random.nextInt(faceCount + 1)) * ModelPusher.DATUM_PER_FACE;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        bufferPool.freeAllocations();
+    }
+
+    @Benchmark
+    public IntBuffer takeAndPut() {
+        int i = next++;
+        int slot = i & (HELD_BUFFERS - 1);
+        if (held[slot] != null) {
+            bufferPool.putIntBuffer(held[slot]);
+        }
+        held[slot] = bufferPool.takeIntBuffer(sizes[i & (SIZE_COUNT - 1)]);
+        return held[slot];
+    }
+}
@@ -0,0 +1,85 @@
+package rs117.hd.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up and caches vertex data under a skewed key distribution, with several times more distinct keys than fit in
+ * the cache, so a steady share of lookups miss and have to make room for new data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ModelCacheBenchmark {
+    private static final int CACHE_SIZE_MIB = 64;
+    private static final int KEY_COUNT = 1 << 16;
+    // Roughly how many lookups a busy frame makes
+    private static final int LOOKUPS_PER_FRAME = 1000;
+
+    @Param({ "50", "500", "4096" })
+    int faceCount;
+
+    private ModelCache modelCache;
+    private long[] keys;
+    private int bufferSize;
+    private int nextKey;
+
+    @Setup
+    public void setUp() {
+        modelCache = new ModelCache(CACHE_SIZE_MIB);
+        bufferSize = faceCount * ModelPusher.DATUM_PER_FACE;
+
+        long bytesPerEntry = (long) bufferSize * ModelPusher.BYTES_PER_DATUM;
+        long distinctKeys = 4 * CACHE_SIZE_MIB * ModelCache.MiB / bytesPerEntry;
+        Random random = new Random(1337);
+        keys = new long[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            // Cubing a uniform value favours low keys, like a few models being drawn far more often than the rest
+            double skewed = Math.pow(random.nextDouble(), 3);
+            keys[i] = ModelHasher.avalanche((long) (skewed * distinctKeys));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        modelCache.destroy();
+    }
+
+    @Benchmark
+    public IntBuffer getOrPut() {
+        int i = nextKey++ & (KEY_COUNT - 1);
+        if (i % LOOKUPS_PER_FRAME == 0) {
+            modelCache.endFrame();
+        }
+
+        long key = keys[i];
+        IntBuffer data = modelCache.getVertexData(key);
+        if (data == null && modelCache.shouldAdmit(key, (long) bufferSize * ModelPusher.BYTES_PER_DATUM)) {
+            // Evicts other entries through makeRoom until the data fits
+            data = modelCache.takeIntBuffer(bufferSize);
+            if (data != null) {
+                data.position(bufferSize);
+                data.flip();
+                modelCache.putVertexData(key, data);
+            }
+        }
+        return data;
+    }
+}
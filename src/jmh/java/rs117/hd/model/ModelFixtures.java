@@ -0,0 +1,55 @@
+package rs117.hd.model;
+
+import net.runelite.api.Client;
+import net.runelite.api.Scene;
+import net.runelite.api.Tile;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.scene.ProceduralGenerator;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A stand-alone {@link ModelPusher} for the benchmarks, which get their models from {@link ModelStubs}. Models are
+ * generated from fixed seeds, so every run and every branch benchmarks exactly the same data.
+ */
+final class ModelFixtures {
+    private ModelFixtures() {
+    }
+
+    /**
+     * Create a model pusher with everything it needs injected, without starting up the rest of the plugin.
+     *
+     * @param modelHasher  the hasher the pusher reads cache keys from, which the caller must set the model on
+     * @param modelCaching whether to give the pusher a model cache
+     */
+    static ModelPusher createModelPusher(ModelHasher modelHasher, boolean modelCaching) throws ReflectiveOperationException {
+        Map<String, Object> configValues = new HashMap<>();
+        configValues.put("enableModelCaching", modelCaching);
+        configValues.put("modelCacheSizeMiB", 512);
+        configValues.put("modelCacheBalanceSmoothing", 90);
+
+        // Models are pushed with a tile position of zero, where there's no tile
+        Map<String, Object> sceneValues = new HashMap<>();
+        sceneValues.put("getTiles", new Tile[1][1][1]);
+        Map<String, Object> clientValues = new HashMap<>();
+        clientValues.put("getScene", ModelStubs.stub(Scene.class, sceneValues));
+
+        ModelPusher modelPusher = new ModelPusher();
+        inject(modelPusher, "plugin", new HdPlugin());
+        inject(modelPusher, "config", ModelStubs.stub(HdPluginConfig.class, configValues));
+        inject(modelPusher, "client", ModelStubs.stub(Client.class, clientValues));
+        inject(modelPusher, "proceduralGenerator", new ProceduralGenerator());
+        inject(modelPusher, "modelHasher", modelHasher);
+        modelPusher.startUp();
+        return modelPusher;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -0,0 +1,66 @@
+package rs117.hd.model;
+
+import net.runelite.api.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.scene.model_overrides.ModelOverride;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ModelHasherBenchmark {
+    @Param({ "50", "500", "4096" })
+    int faceCount;
+
+    private Model model;
+    private int[] faceColors;
+    private ModelHasher modelHasher;
+    private ModelHasher memoizingModelHasher;
+
+    @Setup
+    public void setUp() {
+        model = ModelStubs.createModel(faceCount, 1);
+        faceColors = model.getFaceColors1();
+        modelHasher = new ModelHasher();
+        memoizingModelHasher = new ModelHasher();
+        memoizingModelHasher.setMemoizing(true);
+    }
+
+    @Benchmark
+    public long fastIntHash64() {
+        return ModelHasher.fastIntHash64(faceColors, -1);
+    }
+
+    /**
+     * Everything the client thread hashes for a temporary model which isn't resident on the GPU.
+     */
+    @Benchmark
+    public long setModelAndHash() {
+        modelHasher.setModel(model);
+        return modelHasher.calculateGpuCacheHash(0, ModelOverride.NONE) + modelHasher.calculateBatchHash();
+    }
+
+    /**
+     * The same, for a model whose arrays are remembered from a recent frame. Frames never advance here, so this is
+     * the best case, where every array is still remembered.
+     */
+    @Benchmark
+    public long setModelAndHashMemoized() {
+        memoizingModelHasher.setModel(model, true);
+        return memoizingModelHasher.calculateGpuCacheHash(0, ModelOverride.NONE) + memoizingModelHasher.calculateBatchHash();
+    }
+}
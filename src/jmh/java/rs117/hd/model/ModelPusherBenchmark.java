@@ -0,0 +1,85 @@
+package rs117.hd.model;
+
+import net.runelite.api.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.scene.model_overrides.ModelOverride;
+import rs117.hd.scene.model_overrides.ObjectType;
+import rs117.hd.utils.buffer.GpuFloatBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ModelPusherBenchmark {
+    @Param({ "50", "500", "4096" })
+    int faceCount;
+
+    private Model model;
+    private ModelHasher modelHasher;
+    private ModelPusher uncachedModelPusher;
+    private ModelPusher cachedModelPusher;
+    private GpuIntBuffer vertexBuffer;
+    private GpuFloatBuffer uvBuffer;
+    private GpuFloatBuffer normalBuffer;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        model = ModelStubs.createModel(faceCount, 1);
+        modelHasher = new ModelHasher();
+        uncachedModelPusher = ModelFixtures.createModelPusher(modelHasher, false);
+        cachedModelPusher = ModelFixtures.createModelPusher(modelHasher, true);
+        vertexBuffer = new GpuIntBuffer();
+        uvBuffer = new GpuFloatBuffer();
+        normalBuffer = new GpuFloatBuffer();
+
+        // Fill the cache, so every cached push is a hit
+        pushCached();
+    }
+
+    @TearDown
+    public void tearDown() {
+        uncachedModelPusher.shutDown();
+        cachedModelPusher.shutDown();
+        vertexBuffer.destroy();
+        uvBuffer.destroy();
+        normalBuffer.destroy();
+    }
+
+    @Benchmark
+    public int[] pushUncached() {
+        clearBuffers();
+        modelHasher.setModel(model);
+        return uncachedModelPusher.pushModel(0, model, vertexBuffer, uvBuffer, normalBuffer,
+            0, 0, 0, 0, ModelOverride.NONE, ObjectType.NONE, false);
+    }
+
+    @Benchmark
+    public int[] pushCached() {
+        clearBuffers();
+        modelHasher.setModel(model);
+        return cachedModelPusher.pushModel(0, model, vertexBuffer, uvBuffer, normalBuffer,
+            0, 0, 0, 0, ModelOverride.NONE, ObjectType.NONE, true);
+    }
+
+    private void clearBuffers() {
+        vertexBuffer.clear();
+        uvBuffer.clear();
+        normalBuffer.clear();
+    }
+}
@@ -34,6 +34,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.events.*;
 import net.runelite.api.hooks.DrawCallbacks;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
@@ -47,7 +48,6 @@ import net.runelite.client.ui.DrawManager;
 import net.runelite.client.util.OSType;
 import net.runelite.rlawt.AWTContext;
 import org.jocl.CL;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GLCapabilities;
 import org.lwjgl.opengl.GLUtil;
@@ -56,23 +56,29 @@ import org.lwjgl.system.Configuration;
 import rs117.hd.config.*;
 import rs117.hd.data.WaterType;
 import rs117.hd.data.materials.Material;
+import rs117.hd.model.GpuModelCache;
 import rs117.hd.model.ModelHasher;
 import rs117.hd.model.ModelPusher;
 import rs117.hd.model.TempModelInfo;
 import rs117.hd.opengl.compute.ComputeMode;
 import rs117.hd.opengl.compute.OpenCLManager;
+import rs117.hd.opengl.shader.ProgramBinaryCache;
 import rs117.hd.opengl.shader.Shader;
 import rs117.hd.opengl.shader.ShaderException;
 import rs117.hd.opengl.shader.Template;
 import rs117.hd.scene.*;
 import rs117.hd.scene.lights.SceneLight;
 import rs117.hd.scene.ModelOverrideManager;
+import rs117.hd.scene.model_overrides.LevelOfDetail;
 import rs117.hd.scene.model_overrides.ModelOverride;
 import rs117.hd.scene.model_overrides.ObjectType;
 import rs117.hd.utils.*;
 import rs117.hd.utils.buffer.GLBuffer;
 import rs117.hd.utils.buffer.GpuFloatBuffer;
 import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.buffer.OffHeapMemory;
+import rs117.hd.utils.buffer.RenderBufferSet;
+import rs117.hd.utils.buffer.StreamingBuffer;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
@@ -86,7 +92,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -107,10 +115,25 @@ import static rs117.hd.utils.ResourcePath.path;
 public class HdPlugin extends Plugin implements DrawCallbacks
 {
 	private static final String ENV_SHADER_PATH = "RLHD_SHADER_PATH";
+	private static final Path PROGRAM_BINARY_CACHE_PATH = RuneLite.RUNELITE_DIR.toPath().resolve("117hd").resolve("program-cache");
 
 	public static final int TEXTURE_UNIT_UI = GL_TEXTURE0; // default state
 	public static final int TEXTURE_UNIT_GAME = GL_TEXTURE1;
 	public static final int TEXTURE_UNIT_SHADOW_MAP = GL_TEXTURE2;
+	public static final int TEXTURE_UNIT_OCCLUSION_DEPTH = GL_TEXTURE3;
+	public static final int TEXTURE_UNIT_HI_Z = GL_TEXTURE4;
+	public static final int TEXTURE_UNIT_DYNAMIC_SHADOW_MAP = GL_TEXTURE5;
+
+	// Set in the flags of temporary models, which are drawn into the dynamic shadow map
+	private static final int MODEL_FLAG_DYNAMIC = 1 << 11;
+	// Set in the flags of small and medium objects which are too far away to cast shadows, by level of detail
+	private static final int MODEL_FLAG_DISTANT_DETAIL = 1 << 12;
+	// Model radii are packed into the flags above the orientation and flag bits
+	private static final int MODEL_FLAG_RADIUS_SHIFT = 13;
+
+	// Which shadow casters the shadow program draws, combined as bits
+	private static final int SHADOW_CASTERS_STATIC = 1;
+	private static final int SHADOW_CASTERS_DYNAMIC = 2;
 
 	// This is the maximum number of triangles the compute shaders support
 	public static final int MAX_TRIANGLE = 6144;
@@ -121,6 +144,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	public static final int VERTEX_SIZE = 4; // 4 ints per vertex
 	public static final int UV_SIZE = 4; // 4 floats per vertex
 	public static final int NORMAL_SIZE = 4; // 4 floats per vertex
+	public static final int PACKED_VERTEX_SIZE = 8; // 8 ints per vertex, when render buffers are packed and interleaved
+	// Number of vertices reserved in each staging buffer for temporary models kept resident on the GPU
+	private static final int GPU_MODEL_CACHE_VERTICES = 1 << 20;
 
 	private static final int[] eightIntWrite = new int[8];
 
@@ -178,7 +204,17 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	@Inject
 	private DeveloperTools developerTools;
+
+	@Inject
+	private FrameTimer frameTimer;
+
+	@Inject
+	private DynamicResolution dynamicResolution;
 	private ComputeMode computeMode = ComputeMode.OPENGL;
+	// Whether per-frame data is written straight into persistently mapped buffers
+	private boolean useBufferStreaming;
+	// Whether scene models are culled by the compute shaders, instead of on the client thread
+	private boolean useGpuCulling;
 
 	@Inject
 	private Gson rlGson;
@@ -214,10 +250,24 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private static final Shader UNORDERED_COMPUTE_PROGRAM = new Shader()
 		.add(GL_COMPUTE_SHADER, "comp_unordered.glsl");
 
+	private static final Shader CULL_COMPUTE_PROGRAM = new Shader()
+		.add(GL_COMPUTE_SHADER, "comp_cull.glsl");
+
+	private static final Shader OCCLUSION_DEPTH_PROGRAM = new Shader()
+		.add(GL_VERTEX_SHADER, "depth_vert.glsl")
+		.add(GL_FRAGMENT_SHADER, "shadow_frag.glsl");
+
+	private static final Shader HI_Z_COMPUTE_PROGRAM = new Shader()
+		.add(GL_COMPUTE_SHADER, "comp_hiz.glsl");
+
 	private static final Shader UI_PROGRAM = new Shader()
 		.add(GL_VERTEX_SHADER, "vertui.glsl")
 		.add(GL_FRAGMENT_SHADER, "fragui.glsl");
 
+	private static final Shader UPSCALE_PROGRAM = new Shader()
+		.add(GL_VERTEX_SHADER, "vertui.glsl")
+		.add(GL_FRAGMENT_SHADER, "frag_upscale.glsl");
+
 	private static final ResourcePath shaderPath = Env
 		.getPathOrDefault(ENV_SHADER_PATH, () -> path(HdPlugin.class))
 		.chroot();
@@ -226,8 +276,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private int glComputeProgram;
 	private int glSmallComputeProgram;
 	private int glUnorderedComputeProgram;
+	private int glCullComputeProgram;
+	private int glHiZComputeProgram;
 	private int glUiProgram;
+	private int glUpscaleProgram;
 	private int glShadowProgram;
+	private int glOcclusionDepthProgram;
+	// Null if the driver can't hand out program binaries
+	private ProgramBinaryCache programBinaryCache;
 
 	private int vaoHandle;
 
@@ -239,9 +295,51 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	private int fboSceneHandle;
 	private int rboSceneHandle;
+	private int aaFboWidth;
+	private int aaFboHeight;
 
+	// The scene is drawn into this texture first whenever dynamic resolution has it drawn below full scale
+	private int fboScaledScene;
+	private int texScaledScene;
+	private int scaledSceneWidth;
+	private int scaledSceneHeight;
+
+	// Static shadow casters are drawn into the shadow map only when they or the light's frustum change,
+	// while temporary models are drawn into the dynamic shadow map every frame
 	private int fboShadowMap;
 	private int texShadowMap;
+	private int fboDynamicShadowMap;
+	private int texDynamicShadowMap;
+
+	// What the static shadow map was last drawn with
+	private float[] staticShadowLightProjectionMatrix;
+	private int staticShadowCasterHash;
+	// Whether temporary models were last drawn into the static shadow map along with the static casters
+	private boolean staticShadowMapHasDynamicCasters;
+	// Hash of the static shadow casters drawn so far this frame
+	private int frameStaticCasterHash;
+
+	// Temporary models added to the render buffer so far this frame, so they can be drawn into the dynamic shadow map
+	// on their own. With GPU culling, the culling pass writes a draw command for each of them, and otherwise their
+	// vertices are kept as runs of consecutive ranges in the render buffer
+	private int numDynamicModels;
+	private GpuIntBuffer dynamicCasterFirsts;
+	private GpuIntBuffer dynamicCasterCounts;
+	private int dynamicCasterRunEnd;
+
+	// Hierarchical depth buffer for occlusion culling, built from a reduced resolution depth pass at the end of each frame
+	private int fboOcclusionDepth;
+	private int texOcclusionDepth;
+	private int texHiZ;
+	private int hiZWidth;
+	private int hiZHeight;
+	private int hiZLevels;
+	// The projection the Hi-Z buffer was last rendered with, or null if it's not there to test against
+	private float[] hiZProjectionMatrix;
+	// With shadows enabled, occluded models are still needed for the shadow pass, so rather than culling them from the
+	// render buffer, the culling pass writes a draw command for each model for the scene pass to draw, or not, instead.
+	// Zero while occluded models are culled from the render buffer entirely, or occlusion culling is off
+	private int numSceneDrawCommands;
 
 	private final GLBuffer hStagingBufferVertices = new GLBuffer(); // temporary scene vertex buffer
 	private final GLBuffer hStagingBufferUvs = new GLBuffer(); // temporary scene uv buffer
@@ -249,14 +347,18 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private final GLBuffer hModelBufferUnordered = new GLBuffer(); // scene model buffer, unordered
 	private final GLBuffer hModelBufferSmall = new GLBuffer(); // scene model buffer, small
 	private final GLBuffer hModelBufferLarge = new GLBuffer(); // scene model buffer, large
-	private final GLBuffer hRenderBufferVertices = new GLBuffer(); // target vertex buffer for compute shaders
-	private final GLBuffer hRenderBufferUvs = new GLBuffer(); // target uv buffer for compute shaders
-	private final GLBuffer hRenderBufferNormals = new GLBuffer(); // target normal buffer for compute shaders
+	private final GLBuffer hCullBuffer = new GLBuffer(); // bounds of every model, in drawing order
+	private final GLBuffer hModelOffsetBuffer = new GLBuffer(); // render buffer offsets of models after culling
+	// Target buffers for compute shaders, which each frame takes the next set of
+	private final RenderBufferSet[] renderBufferSets = new RenderBufferSet[RenderBufferSet.SET_COUNT];
+	private int renderBufferSetIndex;
+	private RenderBufferSet renderBuffers;
 
 	private final GLBuffer hUniformBufferCamera = new GLBuffer();
 	private final GLBuffer hUniformBufferMaterials = new GLBuffer();
 	private final GLBuffer hUniformBufferWaterTypes = new GLBuffer();
 	private final GLBuffer hUniformBufferLights = new GLBuffer();
+	private IntBuffer uniformBufferCamera;
 	private ByteBuffer uniformBufferLights;
 
 	public GpuIntBuffer stagingBufferVertices;
@@ -266,6 +368,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private GpuIntBuffer modelBufferUnordered;
 	private GpuIntBuffer modelBufferSmall;
 	private GpuIntBuffer modelBufferLarge;
+	private GpuIntBuffer cullBuffer;
 
 	private int numModelsUnordered;
 	private int numModelsSmall;
@@ -275,10 +378,10 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private int dynamicOffsetUvs;
 	private int renderBufferOffset;
 
+	private final GpuModelCache gpuModelCache = new GpuModelCache();
+
 	private int lastCanvasWidth;
 	private int lastCanvasHeight;
-	private int lastStretchedCanvasWidth;
-	private int lastStretchedCanvasHeight;
 	private AntiAliasingMode lastAntiAliasingMode;
 
 	private int yaw;
@@ -320,6 +423,16 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private int uniShadowLightProjectionMatrix;
 	private int uniShadowTextureArray;
 	private int uniShadowElapsedTime;
+	private int uniShadowCasters;
+
+	// Occlusion culling uniforms
+	private int uniOcclusionProjectionMatrix;
+	private int uniOcclusionTextureArray;
+	private int uniOcclusionElapsedTime;
+	private int uniOcclusionBlockMaterials;
+	private int uniHiZDepthTexture;
+	private int uniHiZBuffer;
+	private int uniHiZLevel;
 
 	// Point light uniforms
 	private int uniPointLightsCount;
@@ -327,15 +440,30 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private int uniProjectionMatrix;
 	private int uniLightProjectionMatrix;
 	private int uniShadowMap;
+	private int uniDynamicShadowMap;
 	private int uniUiTexture;
 	private int uniTexSourceDimensions;
 	private int uniTexTargetDimensions;
 	private int uniUiAlphaOverlay;
+	private int uniUpscaleSceneTexture;
 	private int uniTextureArray;
 	private int uniElapsedTime;
 
 	private int uniBlockSmall;
 	private int uniBlockLarge;
+	private int uniBlockCull;
+	private int uniUnorderedModelOffsetsBase;
+	private int uniSmallModelOffsetsBase;
+	private int uniLargeModelOffsetsBase;
+	private int uniCullModelCount;
+	private int uniCullModelBufferBases;
+	private int uniCullZoom;
+	private int uniCullClipBounds;
+	private int uniCullCameraPosition;
+	private int uniCullHiZBuffer;
+	private int uniCullHiZProjectionMatrix;
+	private int uniCullHiZLevels;
+	private int uniCullOccludeSceneOnly;
 	private int uniBlockMain;
 	private int uniBlockMaterials;
 	private int uniBlockWaterTypes;
@@ -370,6 +498,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	public boolean configReduceOverExposure = false;
 	public boolean configEnableModelBatching = false;
 	public boolean configEnableModelCaching = false;
+	public boolean configParallelModelPushing = false;
+	public boolean configOcclusionCulling = false;
+	public boolean configDynamicResolution = false;
+	public boolean configPackedVertices = false;
+	public boolean configLevelOfDetail = false;
+	// Squared distances from the camera past which small and medium objects are hidden by level of detail
+	private int lodSmallDistanceSquared;
+	private int lodMediumDistanceSquared;
 	public int configMaxDynamicLights;
 
 	public int[] camTarget = new int[3];
@@ -380,7 +516,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Setter
 	private boolean isInGauntlet = false;
 
-	private final Map<Integer, TempModelInfo> frameModelInfoMap = new HashMap<>();
+	private final Map<Long, TempModelInfo> frameModelInfoMap = new HashMap<>();
 
 	@Subscribe
 	public void onChatMessage(final ChatMessage event) {
@@ -413,7 +549,13 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		configReduceOverExposure = config.enableLegacyGreyColors();
 		configEnableModelBatching = config.enableModelBatching();
 		configEnableModelCaching = config.enableModelCaching();
+		configParallelModelPushing = config.parallelModelPushing();
+		configOcclusionCulling = config.occlusionCulling();
+		configDynamicResolution = config.dynamicResolution();
+		configPackedVertices = config.packedVertices();
+		updateLevelOfDetail();
 		configMaxDynamicLights = config.maxDynamicLights().getValue();
+		OffHeapMemory.setBudget(config.offHeapMemoryBudgetMiB() * OffHeapMemory.MiB);
 
 		clientThread.invoke(() ->
 		{
@@ -421,7 +563,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			{
 				renderBufferOffset = 0;
 				fboSceneHandle = rboSceneHandle = 0; // AA FBO
-				fboShadowMap = 0;
+				fboScaledScene = 0;
+				fboShadowMap = fboDynamicShadowMap = 0;
 				numModelsUnordered = numModelsSmall = numModelsLarge = 0;
 				elapsedTime = 0;
 
@@ -471,6 +614,17 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 					}
 				}
 
+				// Skip compiling the shaders on later startups, when the driver supports saving linked programs
+				int[] numBinaryFormats = { 0 };
+				if (caps.OpenGL41)
+					glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, numBinaryFormats);
+				programBinaryCache = null;
+				if (numBinaryFormats[0] > 0)
+				{
+					String driver = String.join("\n", glGetString(GL_VENDOR), glGetString(GL_RENDERER), glGetString(GL_VERSION));
+					programBinaryCache = new ProgramBinaryCache(PROGRAM_BINARY_CACHE_PATH, driver);
+				}
+
 				lwjglInitted = true;
 
 				checkGLErrors();
@@ -504,6 +658,26 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				modelBufferUnordered = new GpuIntBuffer();
 				modelBufferSmall = new GpuIntBuffer();
 				modelBufferLarge = new GpuIntBuffer();
+				cullBuffer = new GpuIntBuffer();
+				dynamicCasterFirsts = new GpuIntBuffer();
+				dynamicCasterCounts = new GpuIntBuffer();
+
+				// The OpenCL kernels are left to rely on the client thread culling models
+				useGpuCulling = computeMode == ComputeMode.OPENGL;
+
+				// OpenCL is only used on macOS, which doesn't support persistently mapped buffers anyway
+				useBufferStreaming = computeMode == ComputeMode.OPENGL && StreamingBuffer.isSupported(caps);
+				if (useBufferStreaming)
+				{
+					stagingBufferVertices.startStreaming();
+					stagingBufferUvs.startStreaming();
+					stagingBufferNormals.startStreaming();
+					modelBufferUnordered.startStreaming();
+					modelBufferSmall.startStreaming();
+					modelBufferLarge.startStreaming();
+					cullBuffer.startStreaming();
+				}
+				log.debug("Streaming buffers: {}", useBufferStreaming);
 
 				initShaderHotswapping();
 				if (developerMode)
@@ -534,12 +708,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				client.resizeCanvas();
 
 				lastCanvasWidth = lastCanvasHeight = 0;
-				lastStretchedCanvasWidth = lastStretchedCanvasHeight = 0;
+				aaFboWidth = aaFboHeight = 0;
 				lastAntiAliasingMode = null;
 
 				lightManager.startUp();
 				modelOverrideManager.startUp();
 				modelPusher.startUp();
+				// Nothing can be cached on the GPU until the scene has been uploaded and the region has been reserved
+				gpuModelCache.reset(0, 0, 0);
 
 				if (client.getGameState() == GameState.LOGGED_IN)
 				{
@@ -582,17 +758,15 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				shutdownPrograms();
 				shutdownVao();
 				shutdownAAFbo();
+				shutdownScaledSceneFbo();
 				shutdownShadowMapFbo();
+				shutdownOcclusionCulling();
 			}
 
-			if (awtContext != null)
-				awtContext.destroy();
-			awtContext = null;
-
-			if (debugCallback != null)
-				debugCallback.free();
-			debugCallback = null;
+			frameTimer.destroy();
+			dynamicResolution.destroy();
 
+			// Streaming buffers have to be destroyed before the GL context they belong to
 			if (stagingBufferVertices != null)
 				stagingBufferVertices.destroy();
 			stagingBufferVertices = null;
@@ -617,6 +791,29 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				modelBufferUnordered.destroy();
 			modelBufferUnordered = null;
 
+			if (cullBuffer != null)
+				cullBuffer.destroy();
+			cullBuffer = null;
+
+			if (dynamicCasterFirsts != null)
+				dynamicCasterFirsts.destroy();
+			dynamicCasterFirsts = null;
+
+			if (dynamicCasterCounts != null)
+				dynamicCasterCounts.destroy();
+			dynamicCasterCounts = null;
+
+			if (awtContext != null)
+				awtContext.destroy();
+			awtContext = null;
+
+			if (debugCallback != null)
+				debugCallback.free();
+			debugCallback = null;
+
+			// Anything still in use at this point has leaked, and the high-water marks show what the session needed
+			OffHeapMemory.logStats();
+
 			// force main buffer provider rebuild to turn off alpha channel
 			client.resizeCanvas();
 		});
@@ -728,6 +925,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 					return String.format("#define %s %d", key, Math.max(1, configMaxDynamicLights));
 				case "LIGHT_GETTER":
 					return generateGetter("PointLight", configMaxDynamicLights);
+				case "PACKED_VERTICES":
+					return String.format("#define %s %d", key, configPackedVertices ? 1 : 0);
 				case "PARALLAX_MAPPING":
 					return String.format("#define %s %d", key, ParallaxMappingMode.OFF.ordinal()); // config.parallaxMappingMode().ordinal());
 			}
@@ -742,19 +941,23 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			}
 		});
 
-		glProgram = PROGRAM.compile(template);
-		glUiProgram = UI_PROGRAM.compile(template);
-		glShadowProgram = SHADOW_PROGRAM.compile(template);
+		glProgram = PROGRAM.compile(template, programBinaryCache);
+		glUiProgram = UI_PROGRAM.compile(template, programBinaryCache);
+		glUpscaleProgram = UPSCALE_PROGRAM.compile(template, programBinaryCache);
+		glShadowProgram = SHADOW_PROGRAM.compile(template, programBinaryCache);
 
 		if (computeMode == ComputeMode.OPENCL)
 		{
-			openCLManager.init(awtContext);
+			openCLManager.init(awtContext, configPackedVertices);
 		}
 		else
 		{
-			glComputeProgram = COMPUTE_PROGRAM.compile(template);
-			glSmallComputeProgram = SMALL_COMPUTE_PROGRAM.compile(template);
-			glUnorderedComputeProgram = UNORDERED_COMPUTE_PROGRAM.compile(template);
+			glComputeProgram = COMPUTE_PROGRAM.compile(template, programBinaryCache);
+			glSmallComputeProgram = SMALL_COMPUTE_PROGRAM.compile(template, programBinaryCache);
+			glUnorderedComputeProgram = UNORDERED_COMPUTE_PROGRAM.compile(template, programBinaryCache);
+			glCullComputeProgram = CULL_COMPUTE_PROGRAM.compile(template, programBinaryCache);
+			glHiZComputeProgram = HI_Z_COMPUTE_PROGRAM.compile(template, programBinaryCache);
+			glOcclusionDepthProgram = OCCLUSION_DEPTH_PROGRAM.compile(template, programBinaryCache);
 		}
 
 		initUniforms();
@@ -763,6 +966,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		glUseProgram(glProgram);
 		glUniform1i(uniTextureArray, 1);
 		glUniform1i(uniShadowMap, 2);
+		glUniform1i(uniDynamicShadowMap, 5);
 
 		// Validate program
 		glValidateProgram(glProgram);
@@ -775,9 +979,25 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		glUseProgram(glUiProgram);
 		glUniform1i(uniUiTexture, 0);
 
+		glUseProgram(glUpscaleProgram);
+		glUniform1i(uniUpscaleSceneTexture, 0);
+
 		glUseProgram(glShadowProgram);
 		glUniform1i(uniShadowTextureArray, 1);
 
+		if (computeMode == ComputeMode.OPENGL)
+		{
+			glUseProgram(glOcclusionDepthProgram);
+			glUniform1i(uniOcclusionTextureArray, 1);
+
+			glUseProgram(glHiZComputeProgram);
+			glUniform1i(uniHiZDepthTexture, 3);
+			glUniform1i(uniHiZBuffer, 4);
+
+			glUseProgram(glCullComputeProgram);
+			glUniform1i(uniCullHiZBuffer, 4);
+		}
+
 		glUseProgram(0);
 	}
 
@@ -786,6 +1006,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		uniProjectionMatrix = glGetUniformLocation(glProgram, "projectionMatrix");
 		uniLightProjectionMatrix = glGetUniformLocation(glProgram, "lightProjectionMatrix");
 		uniShadowMap = glGetUniformLocation(glProgram, "shadowMap");
+		uniDynamicShadowMap = glGetUniformLocation(glProgram, "dynamicShadowMap");
 		uniSaturation = glGetUniformLocation(glProgram, "saturation");
 		uniContrast = glGetUniformLocation(glProgram, "contrast");
 		uniUseFog = glGetUniformLocation(glProgram, "useFog");
@@ -823,10 +1044,32 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		uniUiColorBlindnessIntensity = glGetUniformLocation(glUiProgram, "colorBlindnessIntensity");
 		uniUiAlphaOverlay = glGetUniformLocation(glUiProgram, "alphaOverlay");
 
+		uniUpscaleSceneTexture = glGetUniformLocation(glUpscaleProgram, "sceneTexture");
+
 		if (computeMode == ComputeMode.OPENGL)
 		{
 			uniBlockSmall = glGetUniformBlockIndex(glSmallComputeProgram, "CameraUniforms");
 			uniBlockLarge = glGetUniformBlockIndex(glComputeProgram, "CameraUniforms");
+			uniBlockCull = glGetUniformBlockIndex(glCullComputeProgram, "CameraUniforms");
+			uniUnorderedModelOffsetsBase = glGetUniformLocation(glUnorderedComputeProgram, "modelOffsetsBase");
+			uniSmallModelOffsetsBase = glGetUniformLocation(glSmallComputeProgram, "modelOffsetsBase");
+			uniLargeModelOffsetsBase = glGetUniformLocation(glComputeProgram, "modelOffsetsBase");
+			uniCullModelCount = glGetUniformLocation(glCullComputeProgram, "modelCount");
+			uniCullModelBufferBases = glGetUniformLocation(glCullComputeProgram, "modelBufferBases");
+			uniCullZoom = glGetUniformLocation(glCullComputeProgram, "cullZoom");
+			uniCullClipBounds = glGetUniformLocation(glCullComputeProgram, "clipBounds");
+			uniCullCameraPosition = glGetUniformLocation(glCullComputeProgram, "cameraPosition");
+			uniCullHiZBuffer = glGetUniformLocation(glCullComputeProgram, "hiZBuffer");
+			uniCullHiZProjectionMatrix = glGetUniformLocation(glCullComputeProgram, "hiZProjectionMatrix");
+			uniCullHiZLevels = glGetUniformLocation(glCullComputeProgram, "hiZLevels");
+			uniCullOccludeSceneOnly = glGetUniformLocation(glCullComputeProgram, "occludeSceneOnly");
+			uniHiZDepthTexture = glGetUniformLocation(glHiZComputeProgram, "depthTexture");
+			uniHiZBuffer = glGetUniformLocation(glHiZComputeProgram, "hiZBuffer");
+			uniHiZLevel = glGetUniformLocation(glHiZComputeProgram, "level");
+			uniOcclusionBlockMaterials = glGetUniformBlockIndex(glOcclusionDepthProgram, "MaterialUniforms");
+			uniOcclusionProjectionMatrix = glGetUniformLocation(glOcclusionDepthProgram, "projectionMatrix");
+			uniOcclusionTextureArray = glGetUniformLocation(glOcclusionDepthProgram, "textureArray");
+			uniOcclusionElapsedTime = glGetUniformLocation(glOcclusionDepthProgram, "elapsedTime");
 			uniBlockMain = glGetUniformBlockIndex(glProgram, "CameraUniforms");
 		}
 		uniBlockMaterials = glGetUniformBlockIndex(glProgram, "MaterialUniforms");
@@ -838,6 +1081,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		uniShadowLightProjectionMatrix = glGetUniformLocation(glShadowProgram, "lightProjectionMatrix");
 		uniShadowTextureArray = glGetUniformLocation(glShadowProgram, "textureArray");
 		uniShadowElapsedTime = glGetUniformLocation(glShadowProgram, "elapsedTime");
+		uniShadowCasters = glGetUniformLocation(glShadowProgram, "shadowCasters");
 
 		// Initialize uniform buffers that may depend on compile-time settings
 		initCameraUniformBuffer();
@@ -872,12 +1116,36 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			glUnorderedComputeProgram = 0;
 		}
 
+		if (glCullComputeProgram != 0)
+		{
+			glDeleteProgram(glCullComputeProgram);
+			glCullComputeProgram = 0;
+		}
+
+		if (glHiZComputeProgram != 0)
+		{
+			glDeleteProgram(glHiZComputeProgram);
+			glHiZComputeProgram = 0;
+		}
+
+		if (glOcclusionDepthProgram != 0)
+		{
+			glDeleteProgram(glOcclusionDepthProgram);
+			glOcclusionDepthProgram = 0;
+		}
+
 		if (glUiProgram != 0)
 		{
 			glDeleteProgram(glUiProgram);
 			glUiProgram = 0;
 		}
 
+		if (glUpscaleProgram != 0)
+		{
+			glDeleteProgram(glUpscaleProgram);
+			glUpscaleProgram = 0;
+		}
+
 		if (glShadowProgram != 0)
 		{
 			glDeleteProgram(glShadowProgram);
@@ -912,7 +1180,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		vboUiHandle = glGenBuffers();
 		glBindVertexArray(vaoUiHandle);
 
-		FloatBuffer vboUiBuf = BufferUtils.createFloatBuffer(5 * 4);
+		FloatBuffer vboUiBuf = OffHeapMemory.allocateFloats(OffHeapMemory.Subsystem.MISC, 5 * 4);
 		vboUiBuf.put(new float[]{
 			// positions     // texture coords
 			1f, 1f, 0.0f, 1.0f, 0f, // top right
@@ -923,6 +1191,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		vboUiBuf.rewind();
 		glBindBuffer(GL_ARRAY_BUFFER, vboUiHandle);
 		glBufferData(GL_ARRAY_BUFFER, vboUiBuf, GL_STATIC_DRAW);
+		OffHeapMemory.free(OffHeapMemory.Subsystem.MISC, vboUiBuf);
 
 		// position attribute
 		glVertexAttribPointer(0, 3, GL_FLOAT, false, 5 * Float.BYTES, 0);
@@ -972,9 +1241,39 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		initGlBuffer(hModelBufferSmall);
 		initGlBuffer(hModelBufferUnordered);
 
-		initGlBuffer(hRenderBufferVertices);
-		initGlBuffer(hRenderBufferUvs);
-		initGlBuffer(hRenderBufferNormals);
+		initGlBuffer(hCullBuffer);
+		initGlBuffer(hModelOffsetBuffer);
+
+		for (int i = 0; i < renderBufferSets.length; i++)
+		{
+			RenderBufferSet set = new RenderBufferSet();
+			initGlBuffer(set.vertices);
+			initGlBuffer(set.uvs);
+			initGlBuffer(set.normals);
+
+			initGlBuffer(set.drawIndirect);
+			// The draw command is written by the culling pass, but may be drawn before any scene has been culled
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, set.drawIndirect.glBufferId);
+			glBufferData(GL_DRAW_INDIRECT_BUFFER, new int[4], GL_DYNAMIC_DRAW);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+			set.drawIndirect.size = 16;
+
+			initGlBuffer(set.dynamicDrawIndirect);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, set.dynamicDrawIndirect.glBufferId);
+			glBufferData(GL_DRAW_INDIRECT_BUFFER, 16, GL_STREAM_DRAW);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+			set.dynamicDrawIndirect.size = 16;
+
+			initGlBuffer(set.sceneDrawIndirect);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, set.sceneDrawIndirect.glBufferId);
+			glBufferData(GL_DRAW_INDIRECT_BUFFER, 16, GL_STREAM_DRAW);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+			set.sceneDrawIndirect.size = 16;
+
+			renderBufferSets[i] = set;
+		}
+		renderBufferSetIndex = 0;
+		renderBuffers = renderBufferSets[0];
 	}
 
 	private void initGlBuffer(GLBuffer glBuffer)
@@ -988,6 +1287,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		destroyGlBuffer(hUniformBufferMaterials);
 		destroyGlBuffer(hUniformBufferWaterTypes);
 		destroyGlBuffer(hUniformBufferLights);
+		freeCameraUniformBuffer();
+		freeLightsUniformBuffer();
 
 		destroyGlBuffer(hStagingBufferVertices);
 		destroyGlBuffer(hStagingBufferUvs);
@@ -997,9 +1298,25 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		destroyGlBuffer(hModelBufferSmall);
 		destroyGlBuffer(hModelBufferUnordered);
 
-		destroyGlBuffer(hRenderBufferVertices);
-		destroyGlBuffer(hRenderBufferUvs);
-		destroyGlBuffer(hRenderBufferNormals);
+		destroyGlBuffer(hCullBuffer);
+		destroyGlBuffer(hModelOffsetBuffer);
+
+		for (int i = 0; i < renderBufferSets.length; i++)
+		{
+			RenderBufferSet set = renderBufferSets[i];
+			if (set == null)
+				continue;
+
+			set.deleteFence();
+			destroyGlBuffer(set.vertices);
+			destroyGlBuffer(set.uvs);
+			destroyGlBuffer(set.normals);
+			destroyGlBuffer(set.drawIndirect);
+			destroyGlBuffer(set.dynamicDrawIndirect);
+			destroyGlBuffer(set.sceneDrawIndirect);
+			renderBufferSets[i] = null;
+		}
+		renderBuffers = null;
 	}
 
 	private void destroyGlBuffer(GLBuffer glBuffer)
@@ -1048,7 +1365,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	private void initCameraUniformBuffer()
 	{
-		IntBuffer uniformBuf = BufferUtils.createIntBuffer(8 + 2048 * 4);
+		IntBuffer uniformBuf = OffHeapMemory.allocateInts(OffHeapMemory.Subsystem.UNIFORMS, 8 + 2048 * 4);
 		uniformBuf.put(new int[8]); // uniform block
 		final int[] pad = new int[2];
 		for (int i = 0; i < 2048; i++)
@@ -1061,11 +1378,24 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 		updateBuffer(hUniformBufferCamera, GL_UNIFORM_BUFFER, uniformBuf, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
 		glBindBuffer(GL_UNIFORM_BUFFER, 0);
+		OffHeapMemory.free(OffHeapMemory.Subsystem.UNIFORMS, uniformBuf);
+
+		// Holds the uniform block each frame, which can't be staged in the vertex buffer while it's streaming,
+		// since persistently mapped buffers are write-only
+		if (uniformBufferCamera == null)
+			uniformBufferCamera = OffHeapMemory.allocateInts(OffHeapMemory.Subsystem.UNIFORMS, 8);
+	}
+
+	private void freeCameraUniformBuffer()
+	{
+		if (uniformBufferCamera != null)
+			OffHeapMemory.free(OffHeapMemory.Subsystem.UNIFORMS, uniformBufferCamera);
+		uniformBufferCamera = null;
 	}
 
 	public void updateMaterialUniformBuffer(float[] textureAnimations)
 	{
-		ByteBuffer buffer = BufferUtils.createByteBuffer(Material.values().length * 20 * SCALAR_BYTES);
+		ByteBuffer buffer = OffHeapMemory.allocateBytes(OffHeapMemory.Subsystem.UNIFORMS, Material.values().length * 20 * SCALAR_BYTES);
 		for (Material material : Material.values())
 		{
 			material = textureManager.getEffectiveMaterial(material);
@@ -1104,11 +1434,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 		updateBuffer(hUniformBufferMaterials, GL_UNIFORM_BUFFER, buffer, GL_STATIC_DRAW, CL_MEM_READ_ONLY);
 		glBindBuffer(GL_UNIFORM_BUFFER, 0);
+		OffHeapMemory.free(OffHeapMemory.Subsystem.UNIFORMS, buffer);
 	}
 
 	public void updateWaterTypeUniformBuffer()
 	{
-		ByteBuffer buffer = BufferUtils.createByteBuffer(WaterType.values().length * 28 * SCALAR_BYTES);
+		ByteBuffer buffer = OffHeapMemory.allocateBytes(OffHeapMemory.Subsystem.UNIFORMS, WaterType.values().length * 28 * SCALAR_BYTES);
 		for (WaterType type : WaterType.values())
 		{
 			buffer
@@ -1142,25 +1473,28 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		buffer.flip();
 
 		updateBuffer(hUniformBufferWaterTypes, GL_UNIFORM_BUFFER, buffer, GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		OffHeapMemory.free(OffHeapMemory.Subsystem.UNIFORMS, buffer);
 	}
 
 	private void initLightsUniformBuffer()
 	{
+		freeLightsUniformBuffer();
 		// Allowing a buffer size of zero causes Apple M1/M2 to revert to software rendering
-		uniformBufferLights = BufferUtils.createByteBuffer(Math.max(1, configMaxDynamicLights) * 8 * SCALAR_BYTES);
+		uniformBufferLights = OffHeapMemory.allocateBytes(OffHeapMemory.Subsystem.UNIFORMS, Math.max(1, configMaxDynamicLights) * 8 * SCALAR_BYTES);
 		updateBuffer(hUniformBufferLights, GL_UNIFORM_BUFFER, uniformBufferLights, GL_STREAM_DRAW, CL_MEM_READ_ONLY);
 	}
 
-	private void initAAFbo(int width, int height, int aaSamples)
+	private void freeLightsUniformBuffer()
 	{
-		if (OSType.getOSType() != OSType.MacOS)
-		{
-			final GraphicsConfiguration graphicsConfiguration = clientUI.getGraphicsConfiguration();
-			final AffineTransform transform = graphicsConfiguration.getDefaultTransform();
+		if (uniformBufferLights != null)
+			OffHeapMemory.free(OffHeapMemory.Subsystem.UNIFORMS, uniformBufferLights);
+		uniformBufferLights = null;
+	}
 
-			width = getScaledValue(transform.getScaleX(), width);
-			height = getScaledValue(transform.getScaleY(), height);
-		}
+	private void initAAFbo(int width, int height, int aaSamples)
+	{
+		aaFboWidth = width;
+		aaFboHeight = height;
 
 		// Create and bind the FBO
 		fboSceneHandle = glGenFramebuffers();
@@ -1179,6 +1513,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	private void shutdownAAFbo()
 	{
+		aaFboWidth = aaFboHeight = 0;
+
 		if (fboSceneHandle != 0)
 		{
 			glDeleteFramebuffers(fboSceneHandle);
@@ -1192,51 +1528,108 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		}
 	}
 
-	private void initShadowMapFbo()
+	private void initScaledSceneFbo(int width, int height)
 	{
-		// Bind shadow map, or dummy 1x1 texture
-		glActiveTexture(TEXTURE_UNIT_SHADOW_MAP);
+		scaledSceneWidth = width;
+		scaledSceneHeight = height;
 
-		if (configShadowsEnabled)
-		{
-			// Create and bind the FBO
-			fboShadowMap = glGenFramebuffers();
-			glBindFramebuffer(GL_FRAMEBUFFER, fboShadowMap);
+		// Create and bind the FBO
+		fboScaledScene = glGenFramebuffers();
+		glBindFramebuffer(GL_FRAMEBUFFER, fboScaledScene);
+
+		// Create color texture, sampled with GL_NEAREST, since that makes bicubic sampling simpler
+		texScaledScene = glGenTextures();
+		glBindTexture(GL_TEXTURE_2D, texScaledScene);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+		// Bind texture
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texScaledScene, 0);
+
+		// Reset
+		glBindTexture(GL_TEXTURE_2D, 0);
+		glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
+	}
 
-			// Create texture
-			texShadowMap = glGenTextures();
-			glBindTexture(GL_TEXTURE_2D, texShadowMap);
-			glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT, config.shadowResolution().getValue(), config.shadowResolution().getValue(), 0, GL_DEPTH_COMPONENT, GL_FLOAT, 0);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+	private void shutdownScaledSceneFbo()
+	{
+		scaledSceneWidth = scaledSceneHeight = 0;
+
+		if (texScaledScene != 0)
+		{
+			glDeleteTextures(texScaledScene);
+			texScaledScene = 0;
+		}
 
-			float[] color = { 1.0f, 1.0f, 1.0f, 1.0f };
-			glTexParameterfv(GL_TEXTURE_2D, GL_TEXTURE_BORDER_COLOR, color);
+		if (fboScaledScene != 0)
+		{
+			glDeleteFramebuffers(fboScaledScene);
+			fboScaledScene = 0;
+		}
+	}
 
-			// Bind texture
-			glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, texShadowMap, 0);
-			glDrawBuffer(GL_NONE);
-			glReadBuffer(GL_NONE);
+	private void initShadowMapFbo()
+	{
+		// Bind shadow maps, or dummy 1x1 textures
+		if (configShadowsEnabled)
+		{
+			glActiveTexture(TEXTURE_UNIT_SHADOW_MAP);
+			fboShadowMap = glGenFramebuffers();
+			texShadowMap = initShadowMapTexture(fboShadowMap);
 
-			// Reset FBO
-			glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
+			glActiveTexture(TEXTURE_UNIT_DYNAMIC_SHADOW_MAP);
+			fboDynamicShadowMap = glGenFramebuffers();
+			texDynamicShadowMap = initShadowMapTexture(fboDynamicShadowMap);
 		}
 		else
 		{
-			initDummyShadowMap();
+			glActiveTexture(TEXTURE_UNIT_SHADOW_MAP);
+			texShadowMap = initDummyShadowMap();
+
+			glActiveTexture(TEXTURE_UNIT_DYNAMIC_SHADOW_MAP);
+			texDynamicShadowMap = initDummyShadowMap();
 		}
 
 		// Reset active texture to UI texture
 		glActiveTexture(TEXTURE_UNIT_UI);
 	}
 
-	private void initDummyShadowMap()
+	private int initShadowMapTexture(int fbo)
+	{
+		// Bind the FBO
+		glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+
+		// Create texture
+		int texture = glGenTextures();
+		glBindTexture(GL_TEXTURE_2D, texture);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT, config.shadowResolution().getValue(), config.shadowResolution().getValue(), 0, GL_DEPTH_COMPONENT, GL_FLOAT, 0);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+
+		float[] color = { 1.0f, 1.0f, 1.0f, 1.0f };
+		glTexParameterfv(GL_TEXTURE_2D, GL_TEXTURE_BORDER_COLOR, color);
+
+		// Bind texture
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, texture, 0);
+		glDrawBuffer(GL_NONE);
+		glReadBuffer(GL_NONE);
+
+		// Reset FBO
+		glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
+
+		return texture;
+	}
+
+	private int initDummyShadowMap()
 	{
 		// Create texture
-		texShadowMap = glGenTextures();
-		glBindTexture(GL_TEXTURE_2D, texShadowMap);
+		int texture = glGenTextures();
+		glBindTexture(GL_TEXTURE_2D, texture);
 		glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT, 1, 1, 0, GL_DEPTH_COMPONENT, GL_FLOAT, 0);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
@@ -1245,10 +1638,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 		// Reset
 		glBindTexture(GL_TEXTURE_2D, 0);
+
+		return texture;
 	}
 
 	private void shutdownShadowMapFbo()
 	{
+		invalidateStaticShadowMap();
+
 		if (texShadowMap != 0)
 		{
 			glDeleteTextures(texShadowMap);
@@ -1260,11 +1657,160 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			glDeleteFramebuffers(fboShadowMap);
 			fboShadowMap = 0;
 		}
+
+		if (texDynamicShadowMap != 0)
+		{
+			glDeleteTextures(texDynamicShadowMap);
+			texDynamicShadowMap = 0;
+		}
+
+		if (fboDynamicShadowMap != 0)
+		{
+			glDeleteFramebuffers(fboDynamicShadowMap);
+			fboDynamicShadowMap = 0;
+		}
+	}
+
+	/**
+	 * Make the static shadow map get redrawn on the next frame, for changes to what it contains which the plugin
+	 * can't otherwise tell apart from the previous frame.
+	 */
+	private void invalidateStaticShadowMap()
+	{
+		staticShadowLightProjectionMatrix = null;
+	}
+
+	private void initOcclusionCulling(int width, int height)
+	{
+		hiZWidth = width;
+		hiZHeight = height;
+		hiZLevels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+
+		// Create and bind the FBO
+		fboOcclusionDepth = glGenFramebuffers();
+		glBindFramebuffer(GL_FRAMEBUFFER, fboOcclusionDepth);
+
+		// Create depth texture
+		glActiveTexture(TEXTURE_UNIT_OCCLUSION_DEPTH);
+		texOcclusionDepth = glGenTextures();
+		glBindTexture(GL_TEXTURE_2D, texOcclusionDepth);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT32F, width, height, 0, GL_DEPTH_COMPONENT, GL_FLOAT, 0);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+		// Bind texture
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, texOcclusionDepth, 0);
+		glDrawBuffer(GL_NONE);
+		glReadBuffer(GL_NONE);
+
+		// Reset FBO
+		glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
+
+		// Create the Hi-Z texture, with every mip level down to a single texel
+		glActiveTexture(TEXTURE_UNIT_HI_Z);
+		texHiZ = glGenTextures();
+		glBindTexture(GL_TEXTURE_2D, texHiZ);
+		for (int level = 0; level < hiZLevels; level++)
+		{
+			glTexImage2D(GL_TEXTURE_2D, level, GL_R32F,
+				Math.max(1, width >> level), Math.max(1, height >> level), 0, GL_RED, GL_FLOAT, 0);
+		}
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, hiZLevels - 1);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST_MIPMAP_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+		// Reset active texture to UI texture
+		glActiveTexture(TEXTURE_UNIT_UI);
+	}
+
+	private void shutdownOcclusionCulling()
+	{
+		hiZProjectionMatrix = null;
+		hiZWidth = hiZHeight = hiZLevels = 0;
+
+		if (texHiZ != 0)
+		{
+			glDeleteTextures(texHiZ);
+			texHiZ = 0;
+		}
+
+		if (texOcclusionDepth != 0)
+		{
+			glDeleteTextures(texOcclusionDepth);
+			texOcclusionDepth = 0;
+		}
+
+		if (fboOcclusionDepth != 0)
+		{
+			glDeleteFramebuffers(fboOcclusionDepth);
+			fboOcclusionDepth = 0;
+		}
+	}
+
+	/**
+	 * Render the depth of the opaque geometry which was just drawn at half resolution, and build the hierarchical depth
+	 * buffer from it, for the culling pass of the next frame to test models against.
+	 */
+	private void updateHiZBuffer(float[] projectionMatrix, int viewportWidth, int viewportHeight)
+	{
+		// Walls, buildings and terrain are still large enough to hide things at half resolution
+		int width = Math.max(1, viewportWidth / 2);
+		int height = Math.max(1, viewportHeight / 2);
+		if (width != hiZWidth || height != hiZHeight)
+		{
+			shutdownOcclusionCulling();
+			initOcclusionCulling(width, height);
+		}
+
+		frameTimer.begin(FrameTimer.Timer.HI_Z_BUFFER);
+
+		glViewport(0, 0, width, height);
+		glBindFramebuffer(GL_FRAMEBUFFER, fboOcclusionDepth);
+		glClear(GL_DEPTH_BUFFER_BIT);
+
+		glUseProgram(glOcclusionDepthProgram);
+		glUniformMatrix4fv(uniOcclusionProjectionMatrix, false, projectionMatrix);
+		glUniform1f(uniOcclusionElapsedTime, elapsedTime);
+		glUniformBlockBinding(glOcclusionDepthProgram, uniOcclusionBlockMaterials, 1);
+
+		// Cull the same faces as the scene pass, so nothing can hide what's behind it without being visible itself
+		glEnable(GL_CULL_FACE);
+		glCullFace(GL_BACK);
+		glEnable(GL_DEPTH_TEST);
+
+		// The vertex attributes are still set up from the scene pass
+		glBindVertexArray(vaoHandle);
+		drawRenderBuffer();
+
+		glDisable(GL_CULL_FACE);
+		glDisable(GL_DEPTH_TEST);
+
+		glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
+
+		// Reduce the depth one mip level at a time, each level reading from the one before it
+		glUseProgram(glHiZComputeProgram);
+		for (int level = 0; level < hiZLevels; level++)
+		{
+			glUniform1i(uniHiZLevel, level);
+			glBindImageTexture(0, texHiZ, level, false, 0, GL_WRITE_ONLY, GL_R32F);
+			glDispatchCompute((Math.max(1, width >> level) + 7) / 8, (Math.max(1, height >> level) + 7) / 8, 1);
+			glMemoryBarrier(GL_TEXTURE_FETCH_BARRIER_BIT);
+		}
+
+		glUseProgram(0);
+
+		frameTimer.end(FrameTimer.Timer.HI_Z_BUFFER);
+
+		hiZProjectionMatrix = projectionMatrix;
 	}
 
 	@Override
 	public void drawScene(int cameraX, int cameraY, int cameraZ, int cameraPitch, int cameraYaw, int plane)
 	{
+		frameTimer.begin(FrameTimer.Timer.DRAW_SCENE);
+
 		yaw = client.getCameraYaw();
 		pitch = client.getCameraPitch();
 		viewportOffsetX = client.getViewportXOffset();
@@ -1273,21 +1819,36 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		final Scene scene = client.getScene();
 		scene.setDrawDistance(getDrawDistance());
 
+		frameTimer.begin(FrameTimer.Timer.UPDATE_ENVIRONMENT);
 		environmentManager.update();
+		frameTimer.end(FrameTimer.Timer.UPDATE_ENVIRONMENT);
+
+		frameTimer.begin(FrameTimer.Timer.UPDATE_LIGHTS);
 		lightManager.update();
+		frameTimer.end(FrameTimer.Timer.UPDATE_LIGHTS);
 
 		// Only reset the target buffer offset right before drawing the scene. That way if there are frames
 		// after this that don't involve a scene draw, like during LOADING/HOPPING/CONNECTION_LOST, we can
 		// still redraw the previous frame's scene to emulate the client behavior of not painting over the
 		// viewport buffer.
 		renderBufferOffset = 0;
-
+		frameStaticCasterHash = 0;
+		numDynamicModels = 0;
+		dynamicCasterFirsts.clear();
+		dynamicCasterCounts.clear();
+
+		// Move on to slices of the streaming buffers which the GPU is done reading from
+		stagingBufferVertices.nextSlice();
+		stagingBufferUvs.nextSlice();
+		stagingBufferNormals.nextSlice();
+		modelBufferUnordered.nextSlice();
+		modelBufferSmall.nextSlice();
+		modelBufferLarge.nextSlice();
+		cullBuffer.nextSlice();
 
 		// UBO. Only the first 32 bytes get modified here, the rest is the constant sin/cos table.
-		// We can reuse the vertex buffer since it isn't used yet.
-		stagingBufferVertices.clear();
-		stagingBufferVertices.ensureCapacity(32);
-		IntBuffer uniformBuf = stagingBufferVertices.getBuffer();
+		IntBuffer uniformBuf = uniformBufferCamera;
+		uniformBuf.clear();
 		uniformBuf
 			.put(yaw)
 			.put(pitch)
@@ -1334,11 +1895,19 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			glBindBuffer(GL_UNIFORM_BUFFER, 0);
 		}
 		glBindBufferBase(GL_UNIFORM_BUFFER, 3, hUniformBufferLights.glBufferId);
+
+		frameTimer.end(FrameTimer.Timer.DRAW_SCENE);
+		// The client traverses the scene, calling draw for each renderable, in between drawScene and postDrawScene
+		frameTimer.begin(FrameTimer.Timer.SCENE_TRAVERSAL);
 	}
 
 	@Override
 	public void postDrawScene()
 	{
+		frameTimer.end(FrameTimer.Timer.SCENE_TRAVERSAL);
+
+		modelPusher.pushQueuedModels();
+
 		// Upload buffers
 		stagingBufferVertices.flip();
 		stagingBufferUvs.flip();
@@ -1346,36 +1915,104 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		modelBufferUnordered.flip();
 		modelBufferSmall.flip();
 		modelBufferLarge.flip();
+		cullBuffer.flip();
 
 		// temp buffers
-		updateBuffer(hStagingBufferVertices, GL_ARRAY_BUFFER,
-			dynamicOffsetVertices * VERTEX_SIZE, stagingBufferVertices.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(hStagingBufferUvs, GL_ARRAY_BUFFER,
-			dynamicOffsetUvs * UV_SIZE, stagingBufferUvs.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(hStagingBufferNormals, GL_ARRAY_BUFFER,
-			dynamicOffsetVertices * NORMAL_SIZE, stagingBufferNormals.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
-
-		// model buffers
-		updateBuffer(hModelBufferLarge, GL_ARRAY_BUFFER, modelBufferLarge.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(hModelBufferSmall, GL_ARRAY_BUFFER, modelBufferSmall.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(hModelBufferUnordered, GL_ARRAY_BUFFER, modelBufferUnordered.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
-
-		// Output buffers
-		updateBuffer(hRenderBufferVertices,
-			GL_ARRAY_BUFFER,
-			renderBufferOffset * 16L, // each vertex is an ivec4, which is 16 bytes
-			GL_STREAM_DRAW,
-			CL_MEM_WRITE_ONLY);
-		updateBuffer(hRenderBufferUvs,
-			GL_ARRAY_BUFFER,
-			renderBufferOffset * 16L, // each vertex is an ivec4, which is 16 bytes
-			GL_STREAM_DRAW,
-			CL_MEM_WRITE_ONLY);
-		updateBuffer(hRenderBufferNormals,
-			GL_ARRAY_BUFFER,
-			renderBufferOffset * 16L, // each vertex is an ivec4, which is 16 bytes
-			GL_STREAM_DRAW,
-			CL_MEM_WRITE_ONLY);
+		if (useBufferStreaming)
+		{
+			// The data is already on its way to the GPU, and only has to be copied in behind the static scene data
+			copyFromStreamingBuffer(hStagingBufferVertices, stagingBufferVertices.getStreamingBuffer(),
+				(long) dynamicOffsetVertices * VERTEX_SIZE * SCALAR_BYTES, (long) stagingBufferVertices.getBuffer().remaining() * SCALAR_BYTES);
+			copyFromStreamingBuffer(hStagingBufferUvs, stagingBufferUvs.getStreamingBuffer(),
+				(long) dynamicOffsetUvs * UV_SIZE * SCALAR_BYTES, (long) stagingBufferUvs.getBuffer().remaining() * SCALAR_BYTES);
+			copyFromStreamingBuffer(hStagingBufferNormals, stagingBufferNormals.getStreamingBuffer(),
+				(long) dynamicOffsetVertices * NORMAL_SIZE * SCALAR_BYTES, (long) stagingBufferNormals.getBuffer().remaining() * SCALAR_BYTES);
+		}
+		else
+		{
+			updateBuffer(hStagingBufferVertices, GL_ARRAY_BUFFER,
+				dynamicOffsetVertices * VERTEX_SIZE, stagingBufferVertices.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+			updateBuffer(hStagingBufferUvs, GL_ARRAY_BUFFER,
+				dynamicOffsetUvs * UV_SIZE, stagingBufferUvs.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+			updateBuffer(hStagingBufferNormals, GL_ARRAY_BUFFER,
+				dynamicOffsetVertices * NORMAL_SIZE, stagingBufferNormals.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+		}
+
+		modelPusher.endFrame();
+		// Nothing cached is in use between pushing the last model and the start of the next frame
+		OffHeapMemory.relievePressure();
+
+		// Copy newly cached temporary models from the dynamic part of the staging buffers into the region where
+		// they'll stay resident, before any compute shader gets to read from it
+		copyPendingGpuModelCacheData();
+
+		// model buffers, which are read straight from the streaming buffers when streaming
+		if (!useBufferStreaming)
+		{
+			updateBuffer(hModelBufferLarge, GL_ARRAY_BUFFER, modelBufferLarge.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+			updateBuffer(hModelBufferSmall, GL_ARRAY_BUFFER, modelBufferSmall.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+			updateBuffer(hModelBufferUnordered, GL_ARRAY_BUFFER, modelBufferUnordered.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+			if (useGpuCulling)
+				updateBuffer(hCullBuffer, GL_ARRAY_BUFFER, cullBuffer.getBuffer(), GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+		}
+		if (useGpuCulling)
+		{
+			updateBuffer(hModelOffsetBuffer, GL_ARRAY_BUFFER,
+				(long) (numModelsUnordered + numModelsSmall + numModelsLarge) * SCALAR_BYTES, GL_STREAM_DRAW, CL_MEM_READ_WRITE);
+		}
+
+		// Output buffers. Take the set least recently drawn from, so the GPU can start on this frame's compute work
+		// before it's done drawing the previous frame.
+		renderBufferSetIndex = (renderBufferSetIndex + 1) % renderBufferSets.length;
+		renderBuffers = renderBufferSets[renderBufferSetIndex];
+		if (configPackedVertices)
+		{
+			// Positions, uvs and normals are all interleaved in the vertex buffer
+			updateBuffer(renderBuffers.vertices,
+				GL_ARRAY_BUFFER,
+				(long) renderBufferOffset * PACKED_VERTEX_SIZE * SCALAR_BYTES,
+				GL_STREAM_DRAW,
+				CL_MEM_WRITE_ONLY);
+		}
+		else
+		{
+			updateBuffer(renderBuffers.vertices,
+				GL_ARRAY_BUFFER,
+				renderBufferOffset * 16L, // each vertex is an ivec4, which is 16 bytes
+				GL_STREAM_DRAW,
+				CL_MEM_WRITE_ONLY);
+			updateBuffer(renderBuffers.uvs,
+				GL_ARRAY_BUFFER,
+				renderBufferOffset * 16L, // each vertex is an ivec4, which is 16 bytes
+				GL_STREAM_DRAW,
+				CL_MEM_WRITE_ONLY);
+			updateBuffer(renderBuffers.normals,
+				GL_ARRAY_BUFFER,
+				renderBufferOffset * 16L, // each vertex is an ivec4, which is 16 bytes
+				GL_STREAM_DRAW,
+				CL_MEM_WRITE_ONLY);
+		}
+		numSceneDrawCommands = useGpuCulling && hiZProjectionMatrix != null && configShadowsEnabled ?
+			cullBuffer.getBuffer().remaining() / 9 : 0;
+		if (useGpuCulling)
+		{
+			// One draw command for each temporary model, written by the culling pass
+			updateBuffer(renderBuffers.dynamicDrawIndirect,
+				GL_DRAW_INDIRECT_BUFFER,
+				numDynamicModels * 16L,
+				GL_STREAM_DRAW,
+				CL_MEM_READ_WRITE);
+
+			// And one for every model when occlusion culling only applies to the scene pass
+			if (numSceneDrawCommands > 0)
+			{
+				updateBuffer(renderBuffers.sceneDrawIndirect,
+					GL_DRAW_INDIRECT_BUFFER,
+					numSceneDrawCommands * 16L,
+					GL_STREAM_DRAW,
+					CL_MEM_READ_WRITE);
+			}
+		}
 
 		if (computeMode == ComputeMode.OPENCL)
 		{
@@ -1383,13 +2020,16 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			// clEnqueueAcquireGLObjects, and recommends calling glFinish() as the only portable way to do that.
 			// However, no issues have been observed from not calling it, and so will leave disabled for now.
 			// glFinish();
+			// Instead, only the draws from the set of buffers about to be written to are waited on, which with several
+			// sets in rotation should long be done.
+			renderBuffers.waitForFence();
 
 			openCLManager.compute(
 				hUniformBufferCamera,
 				numModelsUnordered, numModelsSmall, numModelsLarge,
 				hModelBufferUnordered, hModelBufferSmall, hModelBufferLarge,
 				hStagingBufferVertices, hStagingBufferUvs, hStagingBufferNormals,
-				hRenderBufferVertices, hRenderBufferUvs, hRenderBufferNormals);
+				renderBuffers.vertices, renderBuffers.uvs, renderBuffers.normals);
 
 			checkGLErrors();
 			return;
@@ -1404,51 +2044,183 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		glUniformBlockBinding(glSmallComputeProgram, uniBlockSmall, 0);
 		glUniformBlockBinding(glComputeProgram, uniBlockLarge, 0);
 
+		// Model offsets are written by the culling pass, after the unordered, small and large models in turn
+		final int smallModelOffsetsBase = numModelsUnordered;
+		final int largeModelOffsetsBase = numModelsUnordered + numModelsSmall;
+		if (useGpuCulling)
+		{
+			frameTimer.begin(FrameTimer.Timer.CULLING);
+
+			glUseProgram(glCullComputeProgram);
+			glUniformBlockBinding(glCullComputeProgram, uniBlockCull, 0);
+			glUniform1i(uniCullModelCount, cullBuffer.getBuffer().remaining() / 9);
+			glUniform3i(uniCullModelBufferBases, 0, smallModelOffsetsBase, largeModelOffsetsBase);
+			glUniform1i(uniCullZoom, getCullZoom());
+			glUniform4i(uniCullClipBounds,
+				client.getRasterizer3D_clipMidX2(),
+				client.getRasterizer3D_clipNegativeMidX(),
+				client.getRasterizer3D_clipNegativeMidY(),
+				client.getRasterizer3D_clipMidY2());
+			glUniform3i(uniCullCameraPosition, client.getCameraX2(), client.getCameraY2(), client.getCameraZ2());
+			glUniform1i(uniCullHiZLevels, hiZProjectionMatrix == null ? 0 : hiZLevels);
+			if (hiZProjectionMatrix != null)
+				glUniformMatrix4fv(uniCullHiZProjectionMatrix, false, hiZProjectionMatrix);
+			glUniform1i(uniCullOccludeSceneOnly, numSceneDrawCommands > 0 ? 1 : 0);
+			bindStreamedBuffer(0, hCullBuffer, cullBuffer);
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, renderBuffers.drawIndirect.glBufferId);
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, renderBuffers.dynamicDrawIndirect.glBufferId);
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, renderBuffers.sceneDrawIndirect.glBufferId);
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 7, hModelOffsetBuffer.glBufferId);
+			glDispatchCompute(1, 1, 1);
+			glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+
+			frameTimer.end(FrameTimer.Timer.CULLING);
+		}
+
 		// Bind shared buffers
 		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, hStagingBufferVertices.glBufferId);
 		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, hStagingBufferUvs.glBufferId);
 		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 3, hStagingBufferNormals.glBufferId);
-		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, hRenderBufferVertices.glBufferId);
-		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 5, hRenderBufferUvs.glBufferId);
-		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 6, hRenderBufferNormals.glBufferId);
+		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 4, renderBuffers.vertices.glBufferId);
+		if (!configPackedVertices)
+		{
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 5, renderBuffers.uvs.glBufferId);
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 6, renderBuffers.normals.glBufferId);
+		}
+
+		frameTimer.begin(FrameTimer.Timer.COMPUTE);
 
 		// unordered
 		glUseProgram(glUnorderedComputeProgram);
-		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, hModelBufferUnordered.glBufferId);
+		glUniform1i(uniUnorderedModelOffsetsBase, 0);
+		bindStreamedBuffer(0, hModelBufferUnordered, modelBufferUnordered);
 		glDispatchCompute(numModelsUnordered, 1, 1);
 
 		// small
 		glUseProgram(glSmallComputeProgram);
-		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, hModelBufferSmall.glBufferId);
+		glUniform1i(uniSmallModelOffsetsBase, smallModelOffsetsBase);
+		bindStreamedBuffer(0, hModelBufferSmall, modelBufferSmall);
 		glDispatchCompute(numModelsSmall, 1, 1);
 
 		// large
 		glUseProgram(glComputeProgram);
-		glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, hModelBufferLarge.glBufferId);
+		glUniform1i(uniLargeModelOffsetsBase, largeModelOffsetsBase);
+		bindStreamedBuffer(0, hModelBufferLarge, modelBufferLarge);
 		glDispatchCompute(numModelsLarge, 1, 1);
 
+		frameTimer.end(FrameTimer.Timer.COMPUTE);
+
+		if (useBufferStreaming)
+		{
+			// Everything written to this frame's slices has been read by the commands issued up to this point
+			stagingBufferVertices.getStreamingBuffer().fence();
+			stagingBufferUvs.getStreamingBuffer().fence();
+			stagingBufferNormals.getStreamingBuffer().fence();
+			modelBufferUnordered.getStreamingBuffer().fence();
+			modelBufferSmall.getStreamingBuffer().fence();
+			modelBufferLarge.getStreamingBuffer().fence();
+			cullBuffer.getStreamingBuffer().fence();
+		}
+
 		checkGLErrors();
 	}
 
-	@Override
-	public void drawScenePaint(int orientation, int pitchSin, int pitchCos, int yawSin, int yawCos, int x, int y, int z,
-		SceneTilePaint paint, int tileZ, int tileX, int tileY,
-		int zoom, int centerX, int centerY)
+	private void bindStreamedBuffer(int index, GLBuffer glBuffer, GpuIntBuffer buffer)
 	{
-		if (paint.getBufferLen() > 0)
+		StreamingBuffer streamingBuffer = buffer.getStreamingBuffer();
+		if (streamingBuffer == null)
 		{
-			final int localX = tileX * Perspective.LOCAL_TILE_SIZE;
-			final int localY = 0;
-			final int localZ = tileY * Perspective.LOCAL_TILE_SIZE;
+			glBindBufferBase(GL_SHADER_STORAGE_BUFFER, index, glBuffer.glBufferId);
+		}
+		else
+		{
+			glBindBufferRange(GL_SHADER_STORAGE_BUFFER, index, streamingBuffer.getGlBufferId(),
+				streamingBuffer.getSliceOffset(), streamingBuffer.getSliceSize());
+		}
+	}
 
-			GpuIntBuffer b = modelBufferUnordered;
-			b.ensureCapacity(16);
-			IntBuffer buffer = b.getBuffer();
+	private void copyFromStreamingBuffer(GLBuffer glBuffer, StreamingBuffer streamingBuffer, long offset, long bytes)
+	{
+		// Grow the buffer if necessary, keeping the data in front of the offset
+		long size = offset + bytes;
+		if (size > glBuffer.size)
+		{
+			size = HDUtils.ceilPow2(size);
+			log.debug("Buffer resize: {} {} -> {}", glBuffer, glBuffer.size, size);
 
-			int bufferLength = paint.getBufferLen();
+			int oldBuffer = glBuffer.glBufferId;
+			glBuffer.glBufferId = glGenBuffers();
+			glBindBuffer(GL_COPY_WRITE_BUFFER, glBuffer.glBufferId);
+			glBufferData(GL_COPY_WRITE_BUFFER, size, GL_STREAM_DRAW);
 
-			// we packed a boolean into the buffer length of tiles so we can tell
-			// which tiles have procedurally-generated underwater terrain.
+			glBindBuffer(GL_COPY_READ_BUFFER, oldBuffer);
+			glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, offset);
+			glDeleteBuffers(oldBuffer);
+
+			glBuffer.size = size;
+			recreateCLBuffer(glBuffer, CL_MEM_READ_ONLY);
+		}
+
+		if (bytes > 0)
+		{
+			glBindBuffer(GL_COPY_READ_BUFFER, streamingBuffer.getGlBufferId());
+			glBindBuffer(GL_COPY_WRITE_BUFFER, glBuffer.glBufferId);
+			glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, streamingBuffer.getSliceOffset(), offset, bytes);
+		}
+		glBindBuffer(GL_COPY_READ_BUFFER, 0);
+		glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+	}
+
+	private void copyPendingGpuModelCacheData()
+	{
+		int copyCount = gpuModelCache.getPendingCopyCount();
+		if (copyCount > 0)
+		{
+			int[] copies = gpuModelCache.getPendingCopies();
+			copyBufferRanges(hStagingBufferVertices, copies, copyCount, 0, 2, 4, VERTEX_SIZE);
+			copyBufferRanges(hStagingBufferNormals, copies, copyCount, 0, 2, 4, NORMAL_SIZE);
+			copyBufferRanges(hStagingBufferUvs, copies, copyCount, 1, 3, 5, UV_SIZE);
+		}
+		gpuModelCache.finishFrame();
+	}
+
+	private void copyBufferRanges(GLBuffer glBuffer, int[] copies, int copyCount, int srcIndex, int dstIndex, int lengthIndex, int elementSize)
+	{
+		final long bytesPerVertex = (long) elementSize * SCALAR_BYTES;
+		glBindBuffer(GL_COPY_READ_BUFFER, glBuffer.glBufferId);
+		glBindBuffer(GL_COPY_WRITE_BUFFER, glBuffer.glBufferId);
+		for (int i = 0; i < copyCount * GpuModelCache.COPY_STRIDE; i += GpuModelCache.COPY_STRIDE)
+		{
+			int length = copies[i + lengthIndex];
+			if (length > 0)
+			{
+				glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER,
+					copies[i + srcIndex] * bytesPerVertex, copies[i + dstIndex] * bytesPerVertex, length * bytesPerVertex);
+			}
+		}
+		glBindBuffer(GL_COPY_READ_BUFFER, 0);
+		glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+	}
+
+	@Override
+	public void drawScenePaint(int orientation, int pitchSin, int pitchCos, int yawSin, int yawCos, int x, int y, int z,
+		SceneTilePaint paint, int tileZ, int tileX, int tileY,
+		int zoom, int centerX, int centerY)
+	{
+		if (paint.getBufferLen() > 0)
+		{
+			final int localX = tileX * Perspective.LOCAL_TILE_SIZE;
+			final int localY = 0;
+			final int localZ = tileY * Perspective.LOCAL_TILE_SIZE;
+
+			GpuIntBuffer b = modelBufferUnordered;
+			b.ensureCapacity(16);
+			IntBuffer buffer = b.getBuffer();
+
+			int bufferLength = paint.getBufferLen();
+
+			// we packed a boolean into the buffer length of tiles so we can tell
+			// which tiles have procedurally-generated underwater terrain.
 			// unpack the boolean:
 			boolean underwaterTerrain = (bufferLength & 1) == 1;
 			// restore the bufferLength variable:
@@ -1469,11 +2241,13 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				buffer.put(renderBufferOffset);
 				buffer.put(0);
 				buffer.put(localX).put(localY).put(localZ);
+				addCullInfo(b, bufferLength / 3, null, 0, 0, 0, -1);
 
 				renderBufferOffset += bufferLength;
 			}
 
 			++numModelsUnordered;
+			hashStaticCaster(paint.getBufferOffset(), 0, localX, localY, localZ);
 
 			buffer.put(paint.getBufferOffset());
 			buffer.put(paint.getUvBufferOffset());
@@ -1481,6 +2255,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			buffer.put(renderBufferOffset);
 			buffer.put(0);
 			buffer.put(localX).put(localY).put(localZ);
+			addCullInfo(b, bufferLength / 3, null, 0, 0, 0, -1);
 
 			renderBufferOffset += bufferLength;
 		}
@@ -1532,11 +2307,13 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				buffer.put(renderBufferOffset);
 				buffer.put(0);
 				buffer.put(localX).put(localY).put(localZ);
+				addCullInfo(b, bufferLength / 3, null, 0, 0, 0, -1);
 
 				renderBufferOffset += bufferLength;
 			}
 
 			++numModelsUnordered;
+			hashStaticCaster(model.getBufferOffset(), 0, localX, localY, localZ);
 
 			buffer.put(model.getBufferOffset());
 			buffer.put(model.getUvBufferOffset());
@@ -1544,6 +2321,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			buffer.put(renderBufferOffset);
 			buffer.put(0);
 			buffer.put(localX).put(localY).put(localZ);
+			addCullInfo(b, bufferLength / 3, null, 0, 0, 0, -1);
 
 			renderBufferOffset += bufferLength;
 		}
@@ -1677,36 +2455,45 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			}
 			else
 			{
-				glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+				// Only the draws have to wait for the compute shaders, since nothing else touches this set of buffers
+				glMemoryBarrier(GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL_COMMAND_BARRIER_BIT);
 			}
 
-			// Draw using the output buffer of the compute
-			int vertexBuffer = hRenderBufferVertices.glBufferId;
-			int uvBuffer = hRenderBufferUvs.glBufferId;
-			int normalBuffer = hRenderBufferNormals.glBufferId;
-
 			// Update the camera target only when not loading, to keep drawing correct shadows while loading
 			if (client.getGameState() != GameState.LOADING)
 			{
 				camTarget = getCameraFocalPoint();
 			}
 
+			// Calculate projection matrix
+			float[] projectionMatrix = Mat4.scale(client.getScale(), client.getScale(), 1);
+			Mat4.mul(projectionMatrix, Mat4.projection(viewportWidth, viewportHeight, 50));
+			Mat4.mul(projectionMatrix, Mat4.rotateX((float) -(Math.PI - pitch * Perspective.UNIT)));
+			Mat4.mul(projectionMatrix, Mat4.rotateY((float) (yaw * Perspective.UNIT)));
+			Mat4.mul(projectionMatrix, Mat4.translate(-client.getCameraX2(), -client.getCameraY2(), -client.getCameraZ2()));
+
+			if (configDynamicResolution)
+			{
+				dynamicResolution.beginFrame();
+			}
+
 			float[] lightProjectionMatrix = Mat4.identity();
 			float lightPitch = environmentManager.currentLightPitch;
 			float lightYaw = environmentManager.currentLightYaw;
 
 			if (configShadowsEnabled && fboShadowMap != 0 && environmentManager.currentDirectionalStrength > 0.0f)
 			{
+				frameTimer.begin(FrameTimer.Timer.SHADOW_PASS);
+
 				// render shadow depth map
 				glViewport(0, 0, config.shadowResolution().getValue(), config.shadowResolution().getValue());
-				glBindFramebuffer(GL_FRAMEBUFFER, fboShadowMap);
-				glClear(GL_DEPTH_BUFFER_BIT);
 
 				glUseProgram(glShadowProgram);
 
-				final int camX = camTarget[0];
-				final int camY = camTarget[1];
-				final int camZ = camTarget[2];
+				// Keep the shadow map in place while the camera target moves within a tile, so the static map holds up
+				final int camX = camTarget[0] & -Perspective.LOCAL_TILE_SIZE;
+				final int camY = camTarget[1] & -Perspective.LOCAL_TILE_SIZE;
+				final int camZ = camTarget[2] & -Perspective.LOCAL_TILE_SIZE;
 
 				final int drawDistanceSceneUnits = Math.min(config.shadowDistance().getValue(), getDrawDistance()) * Perspective.LOCAL_TILE_SIZE / 2;
 				final int east = Math.min(camX + drawDistanceSceneUnits, Perspective.LOCAL_TILE_SIZE * Perspective.SCENE_SIZE);
@@ -1736,18 +2523,49 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				glEnable(GL_CULL_FACE);
 				glEnable(GL_DEPTH_TEST);
 
-				// Draw buffers
-				glBindVertexArray(vaoHandle);
-
-				glEnableVertexAttribArray(0);
-				glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
-				glVertexAttribIPointer(0, 4, GL_INT, 0, 0);
-
-				glEnableVertexAttribArray(1);
-				glBindBuffer(GL_ARRAY_BUFFER, uvBuffer);
-				glVertexAttribPointer(1, 4, GL_FLOAT, false, 0, 0);
+				// Draw using the output buffers of the compute
+				bindRenderBufferAttributes();
+
+				// Without GPU culling, only static casters which survive culling against the view are hashed. Otherwise,
+				// every static caster is hashed along with the view they're culled against, so the hash still covers
+				// changes to the view which change what ends up in the render buffer
+				if (useGpuCulling)
+					frameStaticCasterHash = hashCullingView(frameStaticCasterHash);
+				boolean staticShadowsChanged = frameStaticCasterHash != staticShadowCasterHash
+					|| !Arrays.equals(lightProjectionMatrix, staticShadowLightProjectionMatrix);
+				if (staticShadowsChanged)
+				{
+					// The whole render buffer has to be drawn anyway, so the temporary models are drawn into the static
+					// shadow map along with everything else, instead of in a pass of their own
+					glBindFramebuffer(GL_FRAMEBUFFER, fboShadowMap);
+					glClear(GL_DEPTH_BUFFER_BIT);
+					glUniform1i(uniShadowCasters, SHADOW_CASTERS_STATIC | SHADOW_CASTERS_DYNAMIC);
+					drawRenderBuffer();
+
+					glBindFramebuffer(GL_FRAMEBUFFER, fboDynamicShadowMap);
+					glClear(GL_DEPTH_BUFFER_BIT);
+
+					staticShadowLightProjectionMatrix = lightProjectionMatrix;
+					staticShadowCasterHash = frameStaticCasterHash;
+					staticShadowMapHasDynamicCasters = numDynamicModels > 0;
+				}
+				else
+				{
+					// Temporary models from the frame the static shadow map was drawn would otherwise linger in it
+					if (staticShadowMapHasDynamicCasters)
+					{
+						glBindFramebuffer(GL_FRAMEBUFFER, fboShadowMap);
+						glClear(GL_DEPTH_BUFFER_BIT);
+						glUniform1i(uniShadowCasters, SHADOW_CASTERS_STATIC);
+						drawRenderBuffer();
+						staticShadowMapHasDynamicCasters = false;
+					}
 
-				glDrawArrays(GL_TRIANGLES, 0, renderBufferOffset);
+					glBindFramebuffer(GL_FRAMEBUFFER, fboDynamicShadowMap);
+					glClear(GL_DEPTH_BUFFER_BIT);
+					glUniform1i(uniShadowCasters, SHADOW_CASTERS_DYNAMIC);
+					drawDynamicCasters();
+				}
 
 				glDisable(GL_CULL_FACE);
 				glDisable(GL_DEPTH_TEST);
@@ -1755,9 +2573,43 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
 
 				glUseProgram(0);
+
+				frameTimer.end(FrameTimer.Timer.SHADOW_PASS);
 			}
 
-			glDpiAwareViewport(renderWidthOff, renderCanvasHeight - renderViewportHeight - renderHeightOff, renderViewportWidth, renderViewportHeight);
+			frameTimer.begin(FrameTimer.Timer.SCENE_PASS);
+
+			// Below full scale, the scene is drawn into a smaller texture, and upscaled to the viewport afterwards
+			final float renderScale = configDynamicResolution ? dynamicResolution.getScale() : DynamicResolution.MAX_SCALE;
+			final boolean scaledRendering = renderScale < DynamicResolution.MAX_SCALE;
+			if (scaledRendering)
+			{
+				int sceneWidth = renderViewportWidth;
+				int sceneHeight = renderViewportHeight;
+				if (OSType.getOSType() != OSType.MacOS)
+				{
+					final GraphicsConfiguration graphicsConfiguration = clientUI.getGraphicsConfiguration();
+					final AffineTransform transform = graphicsConfiguration.getDefaultTransform();
+
+					sceneWidth = getScaledValue(transform.getScaleX(), sceneWidth);
+					sceneHeight = getScaledValue(transform.getScaleY(), sceneHeight);
+				}
+				sceneWidth = Math.max(1, Math.round(sceneWidth * renderScale));
+				sceneHeight = Math.max(1, Math.round(sceneHeight * renderScale));
+
+				if (sceneWidth != scaledSceneWidth || sceneHeight != scaledSceneHeight)
+				{
+					shutdownScaledSceneFbo();
+					initScaledSceneFbo(sceneWidth, sceneHeight);
+				}
+
+				glViewport(0, 0, sceneWidth, sceneHeight);
+			}
+			else
+			{
+				shutdownScaledSceneFbo();
+				glDpiAwareViewport(renderWidthOff, renderCanvasHeight - renderViewportHeight - renderHeightOff, renderViewportWidth, renderViewportHeight);
+			}
 
 			glUseProgram(glProgram);
 
@@ -1768,14 +2620,28 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			{
 				glEnable(GL_MULTISAMPLE);
 
-				final Dimension stretchedDimensions = client.getStretchedDimensions();
+				int width = scaledSceneWidth;
+				int height = scaledSceneHeight;
+				if (!scaledRendering)
+				{
+					final Dimension stretchedDimensions = client.getStretchedDimensions();
+
+					width = client.isStretchedEnabled() ? stretchedDimensions.width : canvasWidth;
+					height = client.isStretchedEnabled() ? stretchedDimensions.height : canvasHeight;
 
-				final int stretchedCanvasWidth = client.isStretchedEnabled() ? stretchedDimensions.width : canvasWidth;
-				final int stretchedCanvasHeight = client.isStretchedEnabled() ? stretchedDimensions.height : canvasHeight;
+					if (OSType.getOSType() != OSType.MacOS)
+					{
+						final GraphicsConfiguration graphicsConfiguration = clientUI.getGraphicsConfiguration();
+						final AffineTransform transform = graphicsConfiguration.getDefaultTransform();
+
+						width = getScaledValue(transform.getScaleX(), width);
+						height = getScaledValue(transform.getScaleY(), height);
+					}
+				}
 
 				// Re-create fbo
-				if (lastStretchedCanvasWidth != stretchedCanvasWidth
-					|| lastStretchedCanvasHeight != stretchedCanvasHeight
+				if (aaFboWidth != width
+					|| aaFboHeight != height
 					|| lastAntiAliasingMode != antiAliasingMode)
 				{
 					shutdownAAFbo();
@@ -1789,10 +2655,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 					log.debug("AA samples: {}, max samples: {}, forced samples: {}", samples, maxSamples, forcedAASamples);
 
-					initAAFbo(stretchedCanvasWidth, stretchedCanvasHeight, samples);
-
-					lastStretchedCanvasWidth = stretchedCanvasWidth;
-					lastStretchedCanvasHeight = stretchedCanvasHeight;
+					initAAFbo(width, height, samples);
 				}
 
 				glBindFramebuffer(GL_DRAW_FRAMEBUFFER, fboSceneHandle);
@@ -1801,6 +2664,11 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			{
 				glDisable(GL_MULTISAMPLE);
 				shutdownAAFbo();
+
+				if (scaledRendering)
+				{
+					glBindFramebuffer(GL_DRAW_FRAMEBUFFER, fboScaledScene);
+				}
 			}
 
 			lastAntiAliasingMode = antiAliasingMode;
@@ -1917,12 +2785,6 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 			glUniform1i(uniShadowsEnabled, configShadowsEnabled ? 1 : 0);
 
-			// Calculate projection matrix
-			float[] projectionMatrix = Mat4.scale(client.getScale(), client.getScale(), 1);
-			Mat4.mul(projectionMatrix, Mat4.projection(viewportWidth, viewportHeight, 50));
-			Mat4.mul(projectionMatrix, Mat4.rotateX((float) -(Math.PI - pitch * Perspective.UNIT)));
-			Mat4.mul(projectionMatrix, Mat4.rotateY((float) (yaw * Perspective.UNIT)));
-			Mat4.mul(projectionMatrix, Mat4.translate(-client.getCameraX2(), -client.getCameraY2(), -client.getCameraZ2()));
 			glUniformMatrix4fv(uniProjectionMatrix, false, projectionMatrix);
 
 			// Bind directional light projection matrix
@@ -1944,51 +2806,59 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			glEnable(GL_BLEND);
 			glBlendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE);
 
-			// Draw buffers
-			glBindVertexArray(vaoHandle);
-
-			glEnableVertexAttribArray(0);
-			glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
-			glVertexAttribIPointer(0, 4, GL_INT, 0, 0);
-
-			glEnableVertexAttribArray(1);
-			glBindBuffer(GL_ARRAY_BUFFER, uvBuffer);
-			glVertexAttribPointer(1, 4, GL_FLOAT, false, 0, 0);
-
-			glEnableVertexAttribArray(2);
-			glBindBuffer(GL_ARRAY_BUFFER, normalBuffer);
-			glVertexAttribPointer(2, 4, GL_FLOAT, false, 0, 0);
-
-			glDrawArrays(GL_TRIANGLES, 0, renderBufferOffset);
+			// Draw using the output buffers of the compute
+			bindRenderBufferAttributes();
+			drawVisibleRenderBuffer();
 
 			glDisable(GL_BLEND);
 			glDisable(GL_CULL_FACE);
 
 			glUseProgram(0);
 
+			frameTimer.end(FrameTimer.Timer.SCENE_PASS);
+
 			if (aaEnabled)
 			{
-				int width = lastStretchedCanvasWidth;
-				int height = lastStretchedCanvasHeight;
-
-				if (OSType.getOSType() != OSType.MacOS)
-				{
-					final GraphicsConfiguration graphicsConfiguration = clientUI.getGraphicsConfiguration();
-					final AffineTransform transform = graphicsConfiguration.getDefaultTransform();
-
-					width = getScaledValue(transform.getScaleX(), width);
-					height = getScaledValue(transform.getScaleY(), height);
-				}
+				frameTimer.begin(FrameTimer.Timer.AA_RESOLVE);
 
 				glBindFramebuffer(GL_READ_FRAMEBUFFER, fboSceneHandle);
-				glBindFramebuffer(GL_DRAW_FRAMEBUFFER, awtContext.getFramebuffer(false));
+				glBindFramebuffer(GL_DRAW_FRAMEBUFFER, scaledRendering ? fboScaledScene : awtContext.getFramebuffer(false));
 				glBlitFramebuffer(
-					0, 0, width, height,
-					0, 0, width, height,
+					0, 0, aaFboWidth, aaFboHeight,
+					0, 0, aaFboWidth, aaFboHeight,
 					GL_COLOR_BUFFER_BIT, GL_NEAREST);
 
 				// Reset
 				glBindFramebuffer(GL_READ_FRAMEBUFFER, awtContext.getFramebuffer(false));
+
+				frameTimer.end(FrameTimer.Timer.AA_RESOLVE);
+			}
+
+			if (scaledRendering)
+			{
+				upscaleScene(renderWidthOff, renderCanvasHeight - renderViewportHeight - renderHeightOff, renderViewportWidth, renderViewportHeight);
+			}
+
+			if (useGpuCulling && configOcclusionCulling)
+			{
+				updateHiZBuffer(projectionMatrix, renderViewportWidth, renderViewportHeight);
+			}
+			else
+			{
+				hiZProjectionMatrix = null;
+			}
+
+			if (configDynamicResolution)
+			{
+				// Without Unlock FPS, the client caps the frame rate at 50
+				int targetFps = config.unlockFps() ? config.fpsTarget() : 50;
+				dynamicResolution.endFrame(targetFps, config.dynamicResolutionMinScale() / 100f);
+			}
+
+			// OpenCL has to know when the GL is done drawing from the buffers before writing to them again
+			if (computeMode == ComputeMode.OPENCL)
+			{
+				renderBuffers.fence();
 			}
 
 			stagingBufferVertices.clear();
@@ -1997,15 +2867,22 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			modelBufferUnordered.clear();
 			modelBufferSmall.clear();
 			modelBufferLarge.clear();
+			cullBuffer.clear();
+			modelPusher.clearQueuedModels();
 			frameModelInfoMap.clear();
+			modelHasher.nextFrame();
 			numModelsUnordered = numModelsSmall = numModelsLarge = 0;
 		}
 
 		// Texture on UI
+		frameTimer.begin(FrameTimer.Timer.UI_PASS);
 		drawUi(overlayColor, canvasHeight, canvasWidth);
+		frameTimer.end(FrameTimer.Timer.UI_PASS);
 
 		awtContext.swapBuffers();
 
+		frameTimer.endFrame();
+
 		drawManager.processDrawComplete(this::screenshot);
 
 		glBindFramebuffer(GL_FRAMEBUFFER, awtContext.getFramebuffer(false));
@@ -2013,6 +2890,124 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		checkGLErrors();
 	}
 
+	/**
+	 * Point the vertex attributes at the render buffers of this frame, in whichever layout the compute shaders wrote
+	 * them. Either way, the vertex shaders read positions, uvws and normals from locations 0, 1 and 2, and the alpha,
+	 * priority, flags and color, the material data and the terrain data from locations 3, 4 and 5.
+	 */
+	private void bindRenderBufferAttributes()
+	{
+		glBindVertexArray(vaoHandle);
+		for (int i = 0; i < 6; i++)
+			glEnableVertexAttribArray(i);
+
+		if (configPackedVertices)
+		{
+			// See comp_common.glsl for the layout of packed vertices
+			final int stride = PACKED_VERTEX_SIZE * SCALAR_BYTES;
+			glBindBuffer(GL_ARRAY_BUFFER, renderBuffers.vertices.glBufferId);
+			glVertexAttribIPointer(0, 3, GL_SHORT, stride, 0);
+			glVertexAttribIPointer(3, 1, GL_INT, stride, 8);
+			glVertexAttribPointer(1, 3, GL_HALF_FLOAT, false, stride, 12);
+			glVertexAttribPointer(4, 1, GL_FLOAT, false, stride, 20);
+			glVertexAttribPointer(2, 4, GL_INT_2_10_10_10_REV, true, stride, 24);
+			glVertexAttribPointer(5, 1, GL_FLOAT, false, stride, 28);
+		}
+		else
+		{
+			// The alpha, priority, flags and color, the material data and the terrain data are in the w components
+			final int stride = 4 * SCALAR_BYTES;
+			glBindBuffer(GL_ARRAY_BUFFER, renderBuffers.vertices.glBufferId);
+			glVertexAttribIPointer(0, 3, GL_INT, stride, 0);
+			glVertexAttribIPointer(3, 1, GL_INT, stride, 12);
+			glBindBuffer(GL_ARRAY_BUFFER, renderBuffers.uvs.glBufferId);
+			glVertexAttribPointer(1, 3, GL_FLOAT, false, stride, 0);
+			glVertexAttribPointer(4, 1, GL_FLOAT, false, stride, 12);
+			glBindBuffer(GL_ARRAY_BUFFER, renderBuffers.normals.glBufferId);
+			glVertexAttribPointer(2, 3, GL_FLOAT, false, stride, 0);
+			glVertexAttribPointer(5, 1, GL_FLOAT, false, stride, 12);
+		}
+	}
+
+	private void drawRenderBuffer()
+	{
+		if (useGpuCulling)
+		{
+			// Only the GPU knows how many vertices are left after culling
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderBuffers.drawIndirect.glBufferId);
+			glDrawArraysIndirect(GL_TRIANGLES, 0L);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+		}
+		else
+		{
+			glDrawArrays(GL_TRIANGLES, 0, renderBufferOffset);
+		}
+	}
+
+	/**
+	 * Draw the models in the render buffer which are visible to the scene pass. With shadows enabled, models hidden by
+	 * occlusion culling are only left in the render buffer for the shadow pass, so they're skipped here.
+	 */
+	private void drawVisibleRenderBuffer()
+	{
+		if (numSceneDrawCommands == 0)
+		{
+			drawRenderBuffer();
+			return;
+		}
+
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderBuffers.sceneDrawIndirect.glBufferId);
+		glMultiDrawArraysIndirect(GL_TRIANGLES, 0L, numSceneDrawCommands, 0);
+		glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+	}
+
+	/**
+	 * Draw only the temporary models in the render buffer.
+	 */
+	private void drawDynamicCasters()
+	{
+		if (numDynamicModels == 0)
+			return;
+
+		if (useGpuCulling)
+		{
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, renderBuffers.dynamicDrawIndirect.glBufferId);
+			glMultiDrawArraysIndirect(GL_TRIANGLES, 0L, numDynamicModels, 0);
+			glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+		}
+		else
+		{
+			IntBuffer firsts = dynamicCasterFirsts.getBuffer().duplicate();
+			IntBuffer counts = dynamicCasterCounts.getBuffer().duplicate();
+			firsts.flip();
+			counts.flip();
+			glMultiDrawArrays(GL_TRIANGLES, firsts, counts);
+		}
+	}
+
+	/**
+	 * Upscale the scene from the texture it was drawn into below full scale, to the viewport of the default framebuffer.
+	 */
+	private void upscaleScene(int x, int y, int width, int height)
+	{
+		frameTimer.begin(FrameTimer.Timer.SCENE_UPSCALE);
+
+		glBindFramebuffer(GL_DRAW_FRAMEBUFFER, awtContext.getFramebuffer(false));
+		glDpiAwareViewport(x, y, width, height);
+
+		glUseProgram(glUpscaleProgram);
+		glBindTexture(GL_TEXTURE_2D, texScaledScene);
+		glBindVertexArray(vaoUiHandle);
+		glDrawArrays(GL_TRIANGLE_FAN, 0, 4);
+
+		// Reset
+		glBindTexture(GL_TEXTURE_2D, 0);
+		glBindVertexArray(0);
+		glUseProgram(0);
+
+		frameTimer.end(FrameTimer.Timer.SCENE_UPSCALE);
+	}
+
 	private void drawUi(final int overlayColor, final int canvasHeight, final int canvasWidth)
 	{
 		glEnable(GL_BLEND);
@@ -2093,28 +3088,34 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			height = getScaledValue(t.getScaleY(), height);
 		}
 
-		ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * 4);
-
-		glReadBuffer(awtContext.getBufferMode());
-		glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
+		ByteBuffer buffer = OffHeapMemory.allocateBytes(OffHeapMemory.Subsystem.MISC, width * height * 4);
+		try
+		{
+			glReadBuffer(awtContext.getBufferMode());
+			glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
 
-		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
-		for (int y = 0; y < height; ++y)
-		{
-			for (int x = 0; x < width; ++x)
+			for (int y = 0; y < height; ++y)
 			{
-				int r = buffer.get() & 0xff;
-				int g = buffer.get() & 0xff;
-				int b = buffer.get() & 0xff;
-				buffer.get(); // alpha
+				for (int x = 0; x < width; ++x)
+				{
+					int r = buffer.get() & 0xff;
+					int g = buffer.get() & 0xff;
+					int b = buffer.get() & 0xff;
+					buffer.get(); // alpha
 
-				pixels[(height - y - 1) * width + x] = (r << 16) | (g << 8) | b;
+					pixels[(height - y - 1) * width + x] = (r << 16) | (g << 8) | b;
+				}
 			}
-		}
 
-		return image;
+			return image;
+		}
+		finally
+		{
+			OffHeapMemory.free(OffHeapMemory.Subsystem.MISC, buffer);
+		}
 	}
 
 	@Override
@@ -2126,7 +3127,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		switch (gameStateChanged.getGameState()) {
 			case LOADING:
 				if (config.loadingClearCache()) {
-					modelPusher.clearModelCache();
+					clearModelCache();
 				}
 				break;
 			case LOGGED_IN:
@@ -2137,37 +3138,73 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				// Avoid drawing the last frame's buffer during LOADING after LOGIN_SCREEN
 				renderBufferOffset = 0;
 				hasLoggedIn = false;
-				modelPusher.clearModelCache();
+				clearModelCache();
 				break;
 		}
 	}
 
+	private void clearModelCache()
+	{
+		modelPusher.clearModelCache();
+		gpuModelCache.clear();
+	}
+
 	public void uploadScene()
 	{
 		lightManager.reset();
+		invalidateStaticShadowMap();
 
 		generateHDSceneData();
 
-		stagingBufferVertices.clear();
-		stagingBufferUvs.clear();
-		stagingBufferNormals.clear();
+		// Streaming buffers only have room for a frame's worth of dynamic data, so the scene gets buffers of its own
+		GpuIntBuffer vertexBuffer = useBufferStreaming ? new GpuIntBuffer() : stagingBufferVertices;
+		GpuFloatBuffer uvBuffer = useBufferStreaming ? new GpuFloatBuffer() : stagingBufferUvs;
+		GpuFloatBuffer normalBuffer = useBufferStreaming ? new GpuFloatBuffer() : stagingBufferNormals;
 
-		sceneUploader.upload(client.getScene(), stagingBufferVertices, stagingBufferUvs, stagingBufferNormals);
+		vertexBuffer.clear();
+		uvBuffer.clear();
+		normalBuffer.clear();
 
-		dynamicOffsetVertices = stagingBufferVertices.position() / VERTEX_SIZE;
-		dynamicOffsetUvs = stagingBufferUvs.position() / UV_SIZE;
+		sceneUploader.upload(client.getScene(), vertexBuffer, uvBuffer, normalBuffer);
 
-		stagingBufferVertices.flip();
-		stagingBufferUvs.flip();
-		stagingBufferNormals.flip();
+		// Temporary models cached on the GPU are kept between the static scene data and the per-frame dynamic data
+		int sceneVertexCount = vertexBuffer.position() / VERTEX_SIZE;
+		int sceneUvCount = uvBuffer.position() / UV_SIZE;
+		// Batching also makes use of the region, to reuse identical models drawn on previous frames
+		gpuModelCache.reset(sceneVertexCount, sceneUvCount,
+			configEnableModelCaching || configEnableModelBatching ? GPU_MODEL_CACHE_VERTICES : 0);
+		dynamicOffsetVertices = sceneVertexCount + gpuModelCache.getVertexCapacity();
+		dynamicOffsetUvs = sceneUvCount + gpuModelCache.getVertexCapacity();
 
-		updateBuffer(hStagingBufferVertices, GL_ARRAY_BUFFER, stagingBufferVertices.getBuffer(), GL_STATIC_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(hStagingBufferUvs, GL_ARRAY_BUFFER, stagingBufferUvs.getBuffer(), GL_STATIC_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(hStagingBufferNormals, GL_ARRAY_BUFFER, stagingBufferNormals.getBuffer(), GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		vertexBuffer.flip();
+		uvBuffer.flip();
+		normalBuffer.flip();
 
-		stagingBufferVertices.clear();
-		stagingBufferUvs.clear();
-		stagingBufferNormals.clear();
+		// Reserve space for the cache region up front, since resizing a staging buffer during a frame only preserves
+		// the data in front of the dynamic offset, which must already fit in the old buffer
+		updateBuffer(hStagingBufferVertices, GL_ARRAY_BUFFER,
+			(long) dynamicOffsetVertices * VERTEX_SIZE * SCALAR_BYTES, GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		updateBuffer(hStagingBufferUvs, GL_ARRAY_BUFFER,
+			(long) dynamicOffsetUvs * UV_SIZE * SCALAR_BYTES, GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		updateBuffer(hStagingBufferNormals, GL_ARRAY_BUFFER,
+			(long) dynamicOffsetVertices * NORMAL_SIZE * SCALAR_BYTES, GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+
+		updateBuffer(hStagingBufferVertices, GL_ARRAY_BUFFER, vertexBuffer.getBuffer(), GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		updateBuffer(hStagingBufferUvs, GL_ARRAY_BUFFER, uvBuffer.getBuffer(), GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		updateBuffer(hStagingBufferNormals, GL_ARRAY_BUFFER, normalBuffer.getBuffer(), GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+
+		if (useBufferStreaming)
+		{
+			vertexBuffer.destroy();
+			uvBuffer.destroy();
+			normalBuffer.destroy();
+		}
+		else
+		{
+			vertexBuffer.clear();
+			uvBuffer.clear();
+			normalBuffer.clear();
+		}
 	}
 
 	public void reloadSceneNextGameTick()
@@ -2247,7 +3284,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				configShadowsEnabled = config.shadowsEnabled();
 				clientThread.invoke(() ->
 				{
-					modelPusher.clearModelCache();
+					clearModelCache();
 					shutdownShadowMapFbo();
 					initShadowMapFbo();
 				});
@@ -2278,7 +3315,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				configWinterTheme = config.winterTheme();
 				configReduceOverExposure = config.enableLegacyGreyColors();
 				clientThread.invoke(() -> {
-					modelPusher.clearModelCache();
+					clearModelCache();
 					uploadScene();
 				});
 				break;
@@ -2289,7 +3326,10 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				configNpcLights = config.npcLights();
 				break;
 			case "expandShadowDraw":
-				configExpandShadowDraw = config.expandShadowDraw();
+				clientThread.invoke(() -> {
+					configExpandShadowDraw = config.expandShadowDraw();
+					invalidateStaticShadowMap();
+				});
 				break;
 			case "maxDynamicLights":
 				clientThread.invoke(() -> {
@@ -2319,9 +3359,64 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 					modelPusher.shutDown();
 					modelPusher.startUp();
 				});
+				// The GPU model cache region is reserved when the scene is uploaded
+				reloadSceneNextGameTick();
 				break;
 			case KEY_MODEL_BATCHING:
 				configEnableModelBatching = config.enableModelBatching();
+				// The GPU model cache region is also used for batching across frames
+				reloadSceneNextGameTick();
+				break;
+			case KEY_MODEL_CACHE_BALANCE_SMOOTHING:
+				clientThread.invoke(modelPusher::updateCacheBalancing);
+				break;
+			case KEY_DISK_MODEL_CACHE:
+			case KEY_DISK_MODEL_CACHE_SIZE:
+				clientThread.invoke(modelPusher::updateDiskCache);
+				break;
+			case KEY_PARALLEL_MODEL_PUSHING:
+				clientThread.invoke(() -> {
+					configParallelModelPushing = config.parallelModelPushing();
+					modelPusher.updateParallelPushing();
+				});
+				break;
+			case KEY_MEMOIZE_MODEL_HASHES:
+				clientThread.invoke(() -> modelHasher.setMemoizing(config.memoizeModelHashes()));
+				break;
+			case KEY_OCCLUSION_CULLING:
+				clientThread.invoke(() -> {
+					configOcclusionCulling = config.occlusionCulling();
+					if (!configOcclusionCulling)
+						shutdownOcclusionCulling();
+				});
+				break;
+			case KEY_LEVEL_OF_DETAIL:
+			case KEY_LOD_SMALL_OBJECT_DISTANCE:
+			case KEY_LOD_MEDIUM_OBJECT_DISTANCE:
+				clientThread.invoke(() -> {
+					updateLevelOfDetail();
+					invalidateStaticShadowMap();
+				});
+				break;
+			case KEY_DYNAMIC_RESOLUTION:
+				clientThread.invoke(() -> {
+					configDynamicResolution = config.dynamicResolution();
+					if (!configDynamicResolution)
+					{
+						dynamicResolution.destroy();
+						shutdownScaledSceneFbo();
+					}
+				});
+				break;
+			case KEY_PACKED_VERTICES:
+				clientThread.invoke(() -> {
+					configPackedVertices = config.packedVertices();
+					recompilePrograms();
+				});
+				break;
+			case KEY_OFF_HEAP_MEMORY_BUDGET:
+				// Usage over the new budget is relieved at the end of the next frame
+				OffHeapMemory.setBudget(config.offHeapMemoryBudgetMiB() * OffHeapMemory.MiB);
 				break;
 		}
 	}
@@ -2365,11 +3460,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	 */
 	private boolean isVisible(Model model, int pitchSin, int pitchCos, int yawSin, int yawCos, int x, int y, int z)
 	{
-		model.calculateBoundsCylinder();
-
 		final int XYZMag = model.getXYZMag();
 		final int bottomY = model.getBottomY();
-		final int zoom = (configShadowsEnabled && configExpandShadowDraw) ? client.get3dZoom() / 2 : client.get3dZoom();
+		final int zoom = getCullZoom();
 		final int modelHeight = model.getModelHeight();
 
 		int Rasterizer3D_clipMidX2 = client.getRasterizer3D_clipMidX2();
@@ -2438,21 +3531,29 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		// Model may be in the scene buffer
 		if (model.getSceneId() == sceneUploader.sceneId)
 		{
-			model.calculateBoundsCylinder();
-
-			if (!isVisible(model, pitchSin, pitchCos, yawSin, yawCos, x, y, z))
+			if ((model.getBufferOffset() & 0b11) == 0b11)
 			{
+				// this object was marked to be skipped
 				return;
 			}
 
-			if ((model.getBufferOffset() & 0b11) == 0b11)
+			model.calculateBoundsCylinder();
+
+			// With GPU culling, the model's visibility is left for the compute shaders to decide
+			if (!useGpuCulling && !isVisible(model, pitchSin, pitchCos, yawSin, yawCos, x, y, z))
 			{
-				// this object was marked to be skipped
 				return;
 			}
 
 			client.checkClickbox(model, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z, hash);
 
+			// Hidden only after the clickbox check, so the model can still be clicked from afar
+			final int lodBits = model.getBufferOffset() & LevelOfDetail.MASK;
+			if (isHiddenByLevelOfDetail(lodBits, x, z))
+			{
+				return;
+			}
+
 			int faceCount = Math.min(MAX_TRIANGLE, model.getFaceCount());
 			int uvOffset = model.getUvBufferOffset();
 
@@ -2460,12 +3561,15 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			eightIntWrite[1] = uvOffset;
 			eightIntWrite[2] = faceCount;
 			eightIntWrite[3] = renderBufferOffset;
-			eightIntWrite[4] = model.getRadius() << 12 | orientation;
+			eightIntWrite[4] = model.getRadius() << MODEL_FLAG_RADIUS_SHIFT | getLevelOfDetailFlags(lodBits, x, z) | orientation;
 			eightIntWrite[5] = x + client.getCameraX2();
 			eightIntWrite[6] = y + client.getCameraY2();
 			eightIntWrite[7] = z + client.getCameraZ2();
 
-			bufferForTriangles(faceCount).ensureCapacity(8).put(eightIntWrite);
+			GpuIntBuffer b = bufferForTriangles(faceCount);
+			b.ensureCapacity(8).put(eightIntWrite);
+			addCullInfo(b, faceCount, model, x, y, z, -1);
+			hashStaticCaster(eightIntWrite[0], eightIntWrite[4], eightIntWrite[5], eightIntWrite[6], eightIntWrite[7]);
 
 			renderBufferOffset += faceCount * 3;
 		}
@@ -2493,21 +3597,54 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 			client.checkClickbox(model, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z, hash);
 
+			// Temporary models aren't classified at upload, so they're judged by their size alone.
+			// Players, NPCs, ground items and objects which can be interacted with matter too much to gameplay
+			// to ever be hidden.
+			int lodBits = LevelOfDetail.ALWAYS.bits;
+			final int hashType = ModelHash.getType(hash);
+			if (configLevelOfDetail && hashType == ModelHash.TYPE_OBJECT)
+			{
+				lodBits = LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.NONE, false, model.getRadius()).bits;
+				// Only objects which would be hidden are looked up
+				if (isHiddenByLevelOfDetail(lodBits, x, z))
+				{
+					if (!modelOverrideManager.isInteractableObject(hash))
+					{
+						return;
+					}
+					lodBits = LevelOfDetail.ALWAYS.bits;
+				}
+			}
+
 			eightIntWrite[3] = renderBufferOffset;
-			eightIntWrite[4] = model.getRadius() << 12 | orientation;
+			eightIntWrite[4] = model.getRadius() << MODEL_FLAG_RADIUS_SHIFT | getLevelOfDetailFlags(lodBits, x, z) | MODEL_FLAG_DYNAMIC | orientation;
 			eightIntWrite[5] = x + client.getCameraX2();
 			eightIntWrite[6] = y + client.getCameraY2();
 			eightIntWrite[7] = z + client.getCameraZ2();
 
 			TempModelInfo tempModelInfo = null;
-			int batchHash = 0;
+			long batchHash = 0;
+			long gpuCacheHash = 0;
+			ModelOverride modelOverride = null;
 
 			if (configEnableModelBatching || configEnableModelCaching) {
-				modelHasher.setModel(model);
+				// Models which are renderables of their own aren't animated, and ground item models are shared by every
+				// copy of the item, so neither are ever changed, unlike the models of animated renderables
+				modelHasher.setModel(model, model == renderable || hashType == ModelHash.TYPE_GROUND_ITEM);
 				if (configEnableModelBatching) {
 					batchHash = modelHasher.calculateBatchHash();
 					tempModelInfo = frameModelInfoMap.get(batchHash);
 				}
+
+				if (tempModelInfo == null || tempModelInfo.getFaceCount() != model.getFaceCount()) {
+					// The model may still be resident on the GPU from a previous frame
+					modelOverride = modelOverrideManager.getOverride(hash);
+					gpuCacheHash = modelHasher.calculateGpuCacheHash(0, modelOverride);
+					tempModelInfo = gpuModelCache.get(gpuCacheHash);
+					// Later copies of the model during this frame can then skip straight to the resident data
+					if (tempModelInfo != null && configEnableModelBatching)
+						frameModelInfoMap.put(batchHash, tempModelInfo);
+				}
 			}
 
 			if (tempModelInfo != null && tempModelInfo.getFaceCount() == model.getFaceCount()) {
@@ -2515,17 +3652,26 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				eightIntWrite[1] = tempModelInfo.getTempUvOffset();
 				eightIntWrite[2] = tempModelInfo.getFaceCount();
 
-				bufferForTriangles(tempModelInfo.getFaceCount()).ensureCapacity(8).put(eightIntWrite);
+				GpuIntBuffer b = bufferForTriangles(tempModelInfo.getFaceCount());
+				b.ensureCapacity(8).put(eightIntWrite);
+				// Temporary models have already been culled, to avoid pushing any which won't be drawn
+				addCullInfo(b, tempModelInfo.getFaceCount(), null, 0, 0, 0, addDynamicCaster(tempModelInfo.getFaceCount() * 3));
 
 				renderBufferOffset += tempModelInfo.getFaceCount() * 3;
 			} else {
 				int vertexOffset = dynamicOffsetVertices + stagingBufferVertices.position() / VERTEX_SIZE;
 				int uvOffset = dynamicOffsetUvs + stagingBufferUvs.position() / UV_SIZE;
 
-				ModelOverride modelOverride = modelOverrideManager.getOverride(hash);
-				final int[] lengths = modelPusher.pushModel(hash, model,
-					stagingBufferVertices, stagingBufferUvs, stagingBufferNormals,
-					0, 0, 0, 0, modelOverride, ObjectType.NONE, true);
+				if (modelOverride == null)
+					modelOverride = modelOverrideManager.getOverride(hash);
+				// When pushing in parallel, the space is only reserved for now, and filled in by postDrawScene
+				final int[] lengths = configParallelModelPushing ?
+					modelPusher.queueModel(hash, model,
+						stagingBufferVertices, stagingBufferUvs, stagingBufferNormals,
+						modelOverride, true) :
+					modelPusher.pushModel(hash, model,
+						stagingBufferVertices, stagingBufferUvs, stagingBufferNormals,
+						0, 0, 0, 0, modelOverride, ObjectType.NONE, true);
 				final int faceCount = lengths[0] / 3;
 				if (lengths[1] <= 0)
 					uvOffset = -1;
@@ -2533,10 +3679,16 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				eightIntWrite[0] = vertexOffset;
 				eightIntWrite[1] = uvOffset;
 				eightIntWrite[2] = faceCount;
-				bufferForTriangles(faceCount).ensureCapacity(8).put(eightIntWrite);
+				GpuIntBuffer b = bufferForTriangles(faceCount);
+				b.ensureCapacity(8).put(eightIntWrite);
+				addCullInfo(b, faceCount, null, 0, 0, 0, addDynamicCaster(lengths[0]));
 
 				renderBufferOffset += lengths[0];
 
+				// Models which had to be cut short won't match on later lookups, so there's no point caching them
+				if ((configEnableModelCaching || configEnableModelBatching) && faceCount == model.getFaceCount())
+					gpuModelCache.cacheModel(gpuCacheHash, vertexOffset, uvOffset, faceCount, lengths[1]);
+
 				// add this temporary model to the map for batching purposes
 				if (configEnableModelBatching) {
 					tempModelInfo = new TempModelInfo();
@@ -2550,12 +3702,149 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		}
 	}
 
+	/**
+	 * Whether level of detail hides a model of the given importance, at the given position relative to the camera.
+	 */
+	private boolean isHiddenByLevelOfDetail(int lodBits, int x, int z)
+	{
+		if (!configLevelOfDetail)
+			return false;
+
+		int distanceSquared = x * x + z * z;
+		if (lodBits == LevelOfDetail.SMALL.bits)
+			return distanceSquared > lodSmallDistanceSquared;
+		if (lodBits == LevelOfDetail.MEDIUM.bits)
+			return distanceSquared > lodMediumDistanceSquared;
+		return false;
+	}
+
+	/**
+	 * Get the model flags level of detail calls for. Medium objects still being drawn past the small object distance
+	 * no longer cast shadows, which leaves only the larger shapes of the scene in distant shadows.
+	 */
+	private int getLevelOfDetailFlags(int lodBits, int x, int z)
+	{
+		if (configLevelOfDetail && lodBits != LevelOfDetail.ALWAYS.bits && x * x + z * z > lodSmallDistanceSquared)
+			return MODEL_FLAG_DISTANT_DETAIL;
+		return 0;
+	}
+
+	private void updateLevelOfDetail()
+	{
+		configLevelOfDetail = config.levelOfDetail();
+		int smallDistance = config.lodSmallObjectDistance() * Perspective.LOCAL_TILE_SIZE;
+		// Small objects can't outlast the medium ones
+		int mediumDistance = Math.max(smallDistance, config.lodMediumObjectDistance() * Perspective.LOCAL_TILE_SIZE);
+		lodSmallDistanceSquared = smallDistance * smallDistance;
+		lodMediumDistanceSquared = mediumDistance * mediumDistance;
+	}
+
 	@Override
 	public boolean drawFace(Model model, int face)
 	{
 		return false;
 	}
 
+	/**
+	 * Record a model which was just added to a model buffer for the culling pass, which works out where each model's
+	 * faces go in the render buffer. Every model has to be recorded, in the order they're drawn.
+	 *
+	 * @param model        the model to cull, which must have its bounds calculated, or null if it should always be drawn
+	 * @param dynamicIndex the index of the model's draw command for the dynamic shadow pass, or -1 if it's static
+	 */
+	private void addCullInfo(GpuIntBuffer modelBuffer, int faceCount, Model model, int x, int y, int z, int dynamicIndex)
+	{
+		if (!useGpuCulling)
+			return;
+
+		// The model buffer goes in the top two bits, and the index into it in the rest
+		int modelRef;
+		if (modelBuffer == modelBufferUnordered)
+			modelRef = numModelsUnordered - 1;
+		else if (modelBuffer == modelBufferSmall)
+			modelRef = 1 << 30 | numModelsSmall - 1;
+		else
+			modelRef = 2 << 30 | numModelsLarge - 1;
+
+		cullBuffer.ensureCapacity(9).getBuffer()
+			.put(modelRef)
+			.put(faceCount)
+			.put(x)
+			.put(y)
+			.put(z)
+			.put(model == null ? -1 : model.getXYZMag())
+			.put(model == null ? 0 : model.getBottomY())
+			.put(model == null ? 0 : model.getModelHeight())
+			.put(dynamicIndex);
+	}
+
+	/**
+	 * Record a temporary model which is about to be added to the render buffer, so the dynamic shadow pass can draw
+	 * it without redrawing every static shadow caster along with it.
+	 *
+	 * @return the index of the model's draw command, which the culling pass writes when culling on the GPU
+	 */
+	private int addDynamicCaster(int vertexCount)
+	{
+		if (!useGpuCulling)
+		{
+			// Temporary models tend to be drawn one after another, so they're mostly merged into a few long runs
+			IntBuffer counts = dynamicCasterCounts.getBuffer();
+			if (counts.position() > 0 && dynamicCasterRunEnd == renderBufferOffset)
+			{
+				int last = counts.position() - 1;
+				counts.put(last, counts.get(last) + vertexCount);
+			}
+			else
+			{
+				dynamicCasterFirsts.ensureCapacity(1).put(renderBufferOffset);
+				dynamicCasterCounts.ensureCapacity(1).put(vertexCount);
+			}
+			dynamicCasterRunEnd = renderBufferOffset + vertexCount;
+		}
+		return numDynamicModels++;
+	}
+
+	/**
+	 * Fold a static shadow caster into this frame's hash of the static shadow map's contents.
+	 *
+	 * @param flags the model's flags, which hold its orientation along with anything else changing how it's drawn
+	 *              into the shadow map, like level of detail depending on its distance from the camera
+	 */
+	private void hashStaticCaster(int bufferOffset, int flags, int x, int y, int z)
+	{
+		int hash = frameStaticCasterHash;
+		hash = hash * 31 + bufferOffset;
+		hash = hash * 31 + flags;
+		hash = hash * 31 + x;
+		hash = hash * 31 + y;
+		frameStaticCasterHash = hash * 31 + z;
+	}
+
+	/**
+	 * Fold everything the culling pass culls models against into a hash of static shadow casters, since it decides
+	 * which of them end up in the render buffer when culling on the GPU.
+	 */
+	private int hashCullingView(int hash)
+	{
+		hash = hash * 31 + pitch;
+		hash = hash * 31 + yaw;
+		hash = hash * 31 + getCullZoom();
+		hash = hash * 31 + client.getRasterizer3D_clipMidX2();
+		hash = hash * 31 + client.getRasterizer3D_clipNegativeMidX();
+		hash = hash * 31 + client.getRasterizer3D_clipNegativeMidY();
+		hash = hash * 31 + client.getRasterizer3D_clipMidY2();
+		hash = hash * 31 + client.getCameraX2();
+		hash = hash * 31 + client.getCameraY2();
+		return hash * 31 + client.getCameraZ2();
+	}
+
+	private int getCullZoom()
+	{
+		// Shadows may be cast by models just outside the view, so the view is optionally widened to catch them
+		return configShadowsEnabled && configExpandShadowDraw ? client.get3dZoom() / 2 : client.get3dZoom();
+	}
+
 	/**
 	 * returns the correct buffer based on triangle count and updates model count
 	 *
@@ -547,7 +547,8 @@ public interface HdPluginConfig extends Config
 		keyName = KEY_MODEL_BATCHING,
 		name = "Enable model batching",
 		description =
-			"Model batching improves performance by reusing identical models within the same frame.<br>" +
+			"Model batching improves performance by reusing identical models, both within the same frame<br>" +
+			"and across frames for as long as they stay on screen.<br>" +
 			"May cause instability and graphical bugs, particularly if Jagex makes engine changes.",
 		position = 1,
 		section = modelCachingSettings
@@ -575,7 +576,8 @@ public interface HdPluginConfig extends Config
 		keyName = KEY_MODEL_CACHE_SIZE,
 		name = "Model cache size (MiB)",
 		description =
-			"Size of the model cache in mebibytes (slightly more than megabytes).<br>" +
+			"Maximum size of the model cache in mebibytes (slightly more than megabytes).<br>" +
+			"Memory is only allocated as the cache fills up, and given back once it's no longer needed.<br>" +
 			"Generally, 2048 MiB is plenty, with diminishing returns the higher you go.<br>" +
 			"Minimum=256 MiB, maximum=16384 MiB",
 		position = 3,
@@ -599,6 +601,103 @@ public interface HdPluginConfig extends Config
 		return false;
 	}
 
+	String KEY_MODEL_CACHE_BALANCE_SMOOTHING = "modelCacheBalanceSmoothing";
+	@Range(
+		max = 99
+	)
+	@ConfigItem(
+		keyName = KEY_MODEL_CACHE_BALANCE_SMOOTHING,
+		name = "Cache balance smoothing (%)",
+		description =
+			"How slowly the model cache shifts memory between vertex, color, normal and UV data<br>" +
+			"as the kinds of models being drawn change. Lower values adapt faster to a new area,<br>" +
+			"while higher values are less likely to throw out data that will be needed again shortly.",
+		position = 5,
+		section = modelCachingSettings
+	)
+	default int modelCacheBalanceSmoothing() {
+		return 90;
+	}
+
+	String KEY_DISK_MODEL_CACHE = "diskModelCache";
+	@ConfigItem(
+		keyName = KEY_DISK_MODEL_CACHE,
+		name = "Disk model cache",
+		description =
+			"Keep a copy of cached model data in a file in the RuneLite directory,<br>" +
+			"so it doesn't need to be computed again after restarting the client.",
+		position = 6,
+		section = modelCachingSettings
+	)
+	default boolean diskModelCache() {
+		return false;
+	}
+
+	String KEY_DISK_MODEL_CACHE_SIZE = "diskModelCacheSizeMiB";
+	@Range(
+		min = 64,
+		max = 2047
+	)
+	@ConfigItem(
+		keyName = KEY_DISK_MODEL_CACHE_SIZE,
+		name = "Disk model cache size (MiB)",
+		description =
+			"Maximum size of the disk model cache file in mebibytes.<br>" +
+			"Once full, the oldest model data is overwritten first.<br>" +
+			"Minimum=64 MiB, maximum=2047 MiB",
+		position = 7,
+		section = modelCachingSettings
+	)
+	default int diskModelCacheSizeMiB() {
+		return 512;
+	}
+
+	String KEY_PARALLEL_MODEL_PUSHING = "parallelModelPushing";
+	@ConfigItem(
+		keyName = KEY_PARALLEL_MODEL_PUSHING,
+		name = "Parallel model pushing",
+		description =
+			"Prepare the data of animated and other temporary models on multiple CPU cores at once,<br>" +
+			"instead of only on the client thread. Mostly helps in busy areas on CPUs with many cores.",
+		position = 8,
+		section = modelCachingSettings
+	)
+	default boolean parallelModelPushing() {
+		return false;
+	}
+
+	String KEY_MEMOIZE_MODEL_HASHES = "memoizeModelHashes";
+	@ConfigItem(
+		keyName = KEY_MEMOIZE_MODEL_HASHES,
+		name = "Reuse model hashes",
+		description =
+			"Skip rehashing the data of models which never change, like ground items, if it was hashed on a recent frame.<br>" +
+			"Saves some CPU time in areas with lots of such models.",
+		position = 9,
+		section = modelCachingSettings
+	)
+	default boolean memoizeModelHashes() {
+		return false;
+	}
+
+	String KEY_OFF_HEAP_MEMORY_BUDGET = "offHeapMemoryBudgetMiB";
+	@Range(
+		max = 65536
+	)
+	@ConfigItem(
+		keyName = KEY_OFF_HEAP_MEMORY_BUDGET,
+		name = "Memory budget (MiB)",
+		description =
+			"Limit how much memory the plugin allocates outside of the Java heap, mainly for the model cache.<br>" +
+			"When exceeded, the model cache is shrunk to make room. Zero means no limit.<br>" +
+			"Useful on systems with 8 GB of memory or less.",
+		position = 10,
+		section = modelCachingSettings
+	)
+	default int offHeapMemoryBudgetMiB() {
+		return 0;
+	}
+
 
 	/*====== Miscellaneous settings ======*/
 
@@ -666,6 +765,115 @@ public interface HdPluginConfig extends Config
 		return false;
 	}
 
+	String KEY_OCCLUSION_CULLING = "occlusionCulling";
+	@ConfigItem(
+		keyName = KEY_OCCLUSION_CULLING,
+		name = "Occlusion culling",
+		description =
+			"Skip drawing objects which were hidden behind walls, buildings or terrain in the previous frame.<br>" +
+			"Can help in dense areas, but objects may take a frame to show up when they come into view.<br>" +
+			"Saves less while shadows are enabled, since hidden objects may still cast shadows into view.<br>" +
+			"Has no effect on macOS.",
+		position = 5,
+		section = miscellaneousSettings
+	)
+	default boolean occlusionCulling() {
+		return false;
+	}
+
+	String KEY_DYNAMIC_RESOLUTION = "dynamicResolution";
+	@ConfigItem(
+		keyName = KEY_DYNAMIC_RESOLUTION,
+		name = "Dynamic resolution",
+		description =
+			"Draw the 3D scene at a lower resolution whenever your GPU can't keep up with the FPS Target,<br>" +
+			"and upscale it to fit the game view. The interface is always drawn at full resolution.<br>" +
+			"Without Unlock FPS, the target is 50 FPS. Has no effect if the FPS Target is set to 0.",
+		position = 6,
+		section = miscellaneousSettings
+	)
+	default boolean dynamicResolution() {
+		return false;
+	}
+
+	String KEY_DYNAMIC_RESOLUTION_MIN_SCALE = "dynamicResolutionMinScale";
+	@Range(
+		min = 25,
+		max = 100
+	)
+	@Units(Units.PERCENT)
+	@ConfigItem(
+		keyName = KEY_DYNAMIC_RESOLUTION_MIN_SCALE,
+		name = "Minimum resolution",
+		description = "The lowest resolution dynamic resolution may go down to, as a percentage of the game view's size.",
+		position = 7,
+		section = miscellaneousSettings
+	)
+	default int dynamicResolutionMinScale() {
+		return 50;
+	}
+
+	String KEY_LEVEL_OF_DETAIL = "levelOfDetail";
+	@ConfigItem(
+		keyName = KEY_LEVEL_OF_DETAIL,
+		name = "Level of detail",
+		description =
+			"Hide small and medium-sized objects past the distances below, so a higher draw distance costs less.<br>" +
+			"Medium-sized objects also stop casting shadows past the small object distance.<br>" +
+			"Walls, buildings, players and NPCs are always drawn.",
+		position = 8,
+		section = miscellaneousSettings
+	)
+	default boolean levelOfDetail() {
+		return false;
+	}
+
+	String KEY_LOD_SMALL_OBJECT_DISTANCE = "lodSmallObjectDistance";
+	@Range(
+		min = 5,
+		max = MAX_DISTANCE
+	)
+	@ConfigItem(
+		keyName = KEY_LOD_SMALL_OBJECT_DISTANCE,
+		name = "Small object distance",
+		description = "How many tiles away from the camera small objects, like flowers and ground clutter, are still drawn.",
+		position = 9,
+		section = miscellaneousSettings
+	)
+	default int lodSmallObjectDistance() {
+		return 25;
+	}
+
+	String KEY_LOD_MEDIUM_OBJECT_DISTANCE = "lodMediumObjectDistance";
+	@Range(
+		min = 5,
+		max = MAX_DISTANCE
+	)
+	@ConfigItem(
+		keyName = KEY_LOD_MEDIUM_OBJECT_DISTANCE,
+		name = "Medium object distance",
+		description = "How many tiles away from the camera medium-sized objects, like bushes and crates, are still drawn.",
+		position = 10,
+		section = miscellaneousSettings
+	)
+	default int lodMediumObjectDistance() {
+		return 50;
+	}
+
+	String KEY_PACKED_VERTICES = "packedVertices";
+	@ConfigItem(
+		keyName = KEY_PACKED_VERTICES,
+		name = "Packed vertices",
+		description =
+			"Store the geometry of each frame in a compact format, which uses a third less GPU memory bandwidth,<br>" +
+			"at the cost of slightly less precise textures on very large objects.",
+		position = 11,
+		section = miscellaneousSettings
+	)
+	default boolean packedVertices() {
+		return false;
+	}
+
 
 	/*====== Experimental settings ======*/
 
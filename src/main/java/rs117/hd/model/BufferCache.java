@@ -0,0 +1,307 @@
+package rs117.hd.model;
+
+import rs117.hd.utils.HDUtils;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A long-keyed cache of buffers or buffer regions, backed by an open-addressing hash table and parallel primitive arrays.
+ * Lookups and evictions don't box keys or allocate entry objects, and eviction follows the CLOCK algorithm,
+ * which approximates LRU without having to relink anything on each access.
+ */
+abstract class BufferCache<T> {
+    private static final int EMPTY = 0;
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+
+    // Maps hash table slots to entry indices + 1, with zero marking an empty slot
+    private int[] slots;
+    private int slotMask;
+
+    // Entry storage, indexed by entry index. Entries never move, so the CLOCK hand can sweep over them directly
+    private long[] entryKeys;
+    private Object[] entryBuffers;
+    private boolean[] entryReferenced;
+    private int[] freeEntries;
+    private int freeEntryCount;
+    private int entryHighWaterMark;
+
+    private int size;
+    private int clockHand;
+    private long bytesCached;
+
+    private final CacheStats stats = new CacheStats();
+
+    BufferCache(int initialCapacity) {
+        allocate((int) HDUtils.ceilPow2(Math.max(16, initialCapacity)));
+    }
+
+    /**
+     * Return an evicted buffer to wherever it was taken from.
+     */
+    protected abstract void recycle(T buffer);
+
+    /**
+     * The number of bytes a cached buffer occupies, for balancing memory between caches.
+     */
+    protected abstract long sizeOf(T buffer);
+
+    public int size() {
+        return size;
+    }
+
+    public long getBytesCached() {
+        return bytesCached;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long key) {
+        int entry = findEntry(key);
+        if (entry == -1) {
+            stats.recordMiss();
+            return null;
+        }
+
+        stats.recordHit();
+        entryReferenced[entry] = true;
+        return (T) entryBuffers[entry];
+    }
+
+    @SuppressWarnings("unchecked")
+    public void put(long key, T buffer) {
+        int entry = findEntry(key);
+        if (entry != -1) {
+            // Replacing an entry, usually due to a hash collision, so make sure the old buffer isn't leaked
+            T previous = (T) entryBuffers[entry];
+            if (previous != buffer) {
+                recycle(previous);
+            }
+            bytesCached += sizeOf(buffer) - sizeOf(previous);
+            entryBuffers[entry] = buffer;
+            entryReferenced[entry] = true;
+            return;
+        }
+
+        if (size + 1 > slots.length * MAX_LOAD_FACTOR) {
+            grow();
+        }
+
+        entry = freeEntryCount > 0 ? freeEntries[--freeEntryCount] : entryHighWaterMark++;
+        entryKeys[entry] = key;
+        entryBuffers[entry] = buffer;
+        // New entries start unreferenced, so one-off models are the first to go unless they're hit again
+        entryReferenced[entry] = false;
+        bytesCached += sizeOf(buffer);
+
+        int slot = mix(key) & slotMask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & slotMask;
+        }
+        slots[slot] = entry + 1;
+        size++;
+    }
+
+    /**
+     * Evict a single entry chosen by the CLOCK algorithm, returning its buffer to the pool.
+     *
+     * @return false if the cache was empty
+     */
+    @SuppressWarnings("unchecked")
+    public boolean makeRoom() {
+        if (size == 0) {
+            return false;
+        }
+
+        // Two full sweeps are enough to find an unreferenced entry, since the first sweep clears every reference bit
+        for (int i = 0; i < entryHighWaterMark * 2; i++) {
+            int entry = clockHand;
+            clockHand = clockHand + 1 < entryHighWaterMark ? clockHand + 1 : 0;
+
+            if (entryBuffers[entry] == null) {
+                continue;
+            }
+
+            if (entryReferenced[entry]) {
+                entryReferenced[entry] = false;
+                continue;
+            }
+
+            T buffer = (T) entryBuffers[entry];
+            removeEntry(entry);
+            bytesCached -= sizeOf(buffer);
+            recycle(buffer);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether an entry is too old to be worth keeping, regardless of how full the cache is.
+     * Only consulted by {@link #evictExpired()}.
+     */
+    protected boolean isExpired(T buffer) {
+        return false;
+    }
+
+    /**
+     * Evict every entry which has expired, returning their buffers to the pool.
+     *
+     * @return the number of entries evicted
+     */
+    public int evictExpired() {
+        return evictIf(this::isExpired);
+    }
+
+    /**
+     * Evict every entry whose buffer matches the predicate, returning their buffers to the pool.
+     *
+     * @return the number of entries evicted
+     */
+    @SuppressWarnings("unchecked")
+    public int evictIf(Predicate<? super T> predicate) {
+        int evicted = 0;
+        for (int entry = 0; entry < entryHighWaterMark; entry++) {
+            T buffer = (T) entryBuffers[entry];
+            if (buffer != null && predicate.test(buffer)) {
+                removeEntry(entry);
+                bytesCached -= sizeOf(buffer);
+                recycle(buffer);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Find the key of the entry {@link #makeRoom()} would evict next, without evicting it or advancing the CLOCK hand.
+     * The cache must not be empty.
+     */
+    long peekVictimKey() {
+        int firstEntry = -1;
+        for (int i = 0, entry = clockHand; i < entryHighWaterMark; i++) {
+            if (entryBuffers[entry] != null) {
+                if (!entryReferenced[entry]) {
+                    return entryKeys[entry];
+                }
+                if (firstEntry == -1) {
+                    firstEntry = entry;
+                }
+            }
+            entry = entry + 1 < entryHighWaterMark ? entry + 1 : 0;
+        }
+
+        // Every entry is referenced, so the first sweep would clear them all and come back around to the first one
+        return entryKeys[firstEntry];
+    }
+
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        for (int entry = 0; entry < entryHighWaterMark; entry++) {
+            if (entryBuffers[entry] != null) {
+                recycle((T) entryBuffers[entry]);
+                entryBuffers[entry] = null;
+            }
+        }
+
+        Arrays.fill(slots, EMPTY);
+        freeEntryCount = 0;
+        entryHighWaterMark = 0;
+        clockHand = 0;
+        size = 0;
+        bytesCached = 0;
+    }
+
+    private int findEntry(long key) {
+        int slot = mix(key) & slotMask;
+        int entry;
+        while ((entry = slots[slot]) != EMPTY) {
+            if (entryKeys[entry - 1] == key) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    private void removeEntry(int entry) {
+        int slot = mix(entryKeys[entry]) & slotMask;
+        while (slots[slot] != entry + 1) {
+            slot = (slot + 1) & slotMask;
+        }
+
+        // Backward shift deletion, which keeps probe sequences intact without leaving tombstones behind
+        int next = slot;
+        while (true) {
+            next = (next + 1) & slotMask;
+            int nextEntry = slots[next];
+            if (nextEntry == EMPTY) {
+                break;
+            }
+
+            int ideal = mix(entryKeys[nextEntry - 1]) & slotMask;
+            // Only shift the entry back if the freed slot lies cyclically between its ideal slot and where it is now
+            if (((next - ideal) & slotMask) >= ((next - slot) & slotMask)) {
+                slots[slot] = nextEntry;
+                slot = next;
+            }
+        }
+        slots[slot] = EMPTY;
+
+        entryBuffers[entry] = null;
+        entryReferenced[entry] = false;
+        freeEntries[freeEntryCount++] = entry;
+        size--;
+    }
+
+    private void allocate(int slotCount) {
+        slots = new int[slotCount];
+        slotMask = slotCount - 1;
+
+        int entryCapacity = (int) (slotCount * MAX_LOAD_FACTOR);
+        entryKeys = new long[entryCapacity];
+        entryBuffers = new Object[entryCapacity];
+        entryReferenced = new boolean[entryCapacity];
+        freeEntries = new int[entryCapacity];
+    }
+
+    private void grow() {
+        long[] oldKeys = entryKeys;
+        Object[] oldBuffers = entryBuffers;
+        boolean[] oldReferenced = entryReferenced;
+        int[] oldFree = freeEntries;
+
+        allocate(slots.length * 2);
+
+        // Entry indices are preserved, so the CLOCK hand and free list remain valid
+        System.arraycopy(oldKeys, 0, entryKeys, 0, oldKeys.length);
+        System.arraycopy(oldBuffers, 0, entryBuffers, 0, oldBuffers.length);
+        System.arraycopy(oldReferenced, 0, entryReferenced, 0, oldReferenced.length);
+        System.arraycopy(oldFree, 0, freeEntries, 0, freeEntryCount);
+
+        for (int entry = 0; entry < entryHighWaterMark; entry++) {
+            if (entryBuffers[entry] == null) {
+                continue;
+            }
+
+            int slot = mix(entryKeys[entry]) & slotMask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    /**
+     * Fold the upper half of the key into the bits which survive masking, so keys which only differ there don't
+     * all land in the same slot.
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -3,89 +3,483 @@ package rs117.hd.model;
 import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.system.MemoryUtil;
 import rs117.hd.HdPlugin;
+import rs117.hd.utils.buffer.OffHeapMemory;
 
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
+/**
+ * A buddy allocator over one or more large off-heap chunks. Buffers are handed out in power-of-two size classes
+ * just large enough to fit the requested capacity, and freed blocks are merged with their buddies whenever both
+ * halves are free, so small and large models can share the same memory without fragmenting it permanently.
+ * <p>
+ * The pool starts out with a single chunk, and only adds more as they're needed, up to its maximum capacity.
+ * Each chunk keeps its own free lists, and blocks are taken from the oldest chunk with room to spare, which packs
+ * buffers into as few chunks as possible. Chunks which have been left empty for a while can then be released.
+ */
 @Slf4j
 public class BufferPool {
-    private static final long BUFFER_SIZE = HdPlugin.MAX_TRIANGLE * ModelPusher.DATUM_PER_FACE * ModelPusher.BYTES_PER_DATUM;
+    private static final long MAX_BUFFER_SIZE = HdPlugin.MAX_TRIANGLE * ModelPusher.DATUM_PER_FACE * ModelPusher.BYTES_PER_DATUM;
+    public static final long DEFAULT_CHUNK_SIZE = 64 * ModelCache.MiB;
 
-    private final ArrayList<Long> allocationHandles = new ArrayList<>();
-    private final ArrayDeque<Long> bufferAddressStack = new ArrayDeque<>();
+    // The smallest size class is 1 KiB, which fits a model of around 20 faces
+    private static final int MIN_BLOCK_SHIFT = 10;
+    public static final int SIZE_CLASS_COUNT = orderForSize(MAX_BUFFER_SIZE) + 1;
+    private static final int MAX_ORDER = SIZE_CLASS_COUNT - 1;
+
+    // Free blocks are linked together in place, with the next and previous block addresses stored at the start
+    private static final int NEXT_OFFSET = 0;
+    private static final int PREV_OFFSET = 8;
+    private static final long NULL = 0;
+
+    private final long maxCapacity;
+    private final long chunkSize;
+
+    private long[] chunkAddresses = new long[0];
+    private long[] chunkSizes = new long[0];
+    // Per chunk and size class, the first block of the chunk's free list
+    private long[][] chunkFreeListHeads = new long[0][];
+    // Per chunk and size class, a bitmap of which blocks are currently on a free list
+    private long[][][] chunkFreeBitmaps = new long[0][][];
+    private long[] chunkBytesAllocated = new long[0];
+    // When each chunk was last left empty, which is only meaningful for chunks with nothing allocated
+    private long[] chunkIdleSince = new long[0];
+
+    private final int[] freeBlockCounts = new int[SIZE_CLASS_COUNT];
+    private final int[] allocatedBlockCounts = new int[SIZE_CLASS_COUNT];
+    private long bytesRequested;
+
+    public BufferPool(long maxCapacity) throws OutOfMemoryError {
+        this(maxCapacity, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param maxCapacity the most memory the pool may grow to, in bytes
+     * @param chunkSize   how much memory to add to the pool at a time, which is raised to fit the largest buffer
+     */
+    public BufferPool(long maxCapacity, long chunkSize) throws OutOfMemoryError {
+        this.maxCapacity = maxCapacity;
+        this.chunkSize = Math.max(chunkSize, blockSize(MAX_ORDER));
 
-    public BufferPool(long byteCapacity) throws OutOfMemoryError {
         try {
-            // Try allocating the whole size as a single chunk
-            allocateChunk(byteCapacity);
+            allocateChunk(Math.min(this.chunkSize, maxCapacity));
         } catch (Throwable err) {
-            // Largely unnecessary, but free the above allocation in case it failed while initializing buffer addresses
-            freeAllocations();
-            log.warn("Unable to allocate {} bytes as a single chunk", byteCapacity, err);
-
-            try {
-                // Try allocating in 1 GiB chunks
-                long bytesRemaining = byteCapacity;
-                while (bytesRemaining > 0) {
-                    long chunkSize = Math.min(bytesRemaining, ModelCache.GiB);
-                    allocateChunk(chunkSize);
-                    bytesRemaining -= chunkSize;
-                }
-            } catch (Throwable err2) {
-                freeAllocations();
-                log.error("Unable to allocate {} bytes in chunks of 1 GiB", byteCapacity, err2);
-                throw err2;
+            log.error("Unable to allocate the first {} bytes of the buffer pool", Math.min(this.chunkSize, maxCapacity), err);
+            throw err;
+        }
+    }
+
+    /**
+     * Add another chunk to the pool, if that wouldn't exceed its maximum capacity or the off-heap memory budget.
+     *
+     * @param size the size of the block which needs to fit in the new chunk
+     * @return whether a chunk was added
+     */
+    private boolean grow(long size) {
+        if (!canGrow(size)) {
+            return false;
+        }
+
+        long newChunkSize = Math.min(this.chunkSize, maxCapacity - getByteCapacity());
+        try {
+            allocateChunk(newChunkSize);
+            return true;
+        } catch (OutOfMemoryError err) {
+            log.warn("Unable to grow the buffer pool by {} bytes", newChunkSize, err);
+            return false;
+        }
+    }
+
+    private boolean canGrow(long size) {
+        long newChunkSize = Math.min(this.chunkSize, maxCapacity - getByteCapacity());
+        return newChunkSize >= blockSize(orderForSize(size)) && OffHeapMemory.getAvailable() >= newChunkSize;
+    }
+
+    private void allocateChunk(long size) throws OutOfMemoryError {
+        long handle = OffHeapMemory.allocate(OffHeapMemory.Subsystem.MODEL_CACHE, size);
+
+        int chunk = chunkAddresses.length;
+        chunkAddresses = Arrays.copyOf(chunkAddresses, chunk + 1);
+        chunkSizes = Arrays.copyOf(chunkSizes, chunk + 1);
+        chunkFreeListHeads = Arrays.copyOf(chunkFreeListHeads, chunk + 1);
+        chunkFreeBitmaps = Arrays.copyOf(chunkFreeBitmaps, chunk + 1);
+        chunkBytesAllocated = Arrays.copyOf(chunkBytesAllocated, chunk + 1);
+        chunkIdleSince = Arrays.copyOf(chunkIdleSince, chunk + 1);
+        chunkAddresses[chunk] = handle;
+        chunkSizes[chunk] = size;
+        chunkFreeListHeads[chunk] = new long[SIZE_CLASS_COUNT];
+        chunkIdleSince[chunk] = System.nanoTime();
+
+        long[][] bitmaps = new long[SIZE_CLASS_COUNT][];
+        for (int order = 0; order < SIZE_CLASS_COUNT; order++) {
+            long blockCount = size >> (MIN_BLOCK_SHIFT + order);
+            bitmaps[order] = new long[(int) ((blockCount + 63) >> 6)];
+        }
+        chunkFreeBitmaps[chunk] = bitmaps;
+
+        // Carve the chunk into the largest blocks possible. Offsets stay aligned to each block's size, since the
+        // blocks are carved in descending order of size
+        long offset = 0;
+        for (int order = MAX_ORDER; order >= 0; order--) {
+            long blockSize = blockSize(order);
+            while (size - offset >= blockSize) {
+                pushFreeBlock(chunk, offset, order);
+                offset += blockSize;
             }
         }
     }
 
-    public boolean isEmpty() {
-        return bufferAddressStack.isEmpty();
+    /**
+     * Free a chunk which has nothing allocated from it.
+     *
+     * @return the number of bytes freed
+     */
+    public long releaseChunk(int chunk) {
+        if (chunkBytesAllocated[chunk] != 0) {
+            throw new IllegalStateException("Unable to release a chunk of the buffer pool while buffers are in use");
+        }
+
+        // The chunk is entirely free, so all that's left of it are free blocks to unlink
+        for (int order = 0; order < SIZE_CLASS_COUNT; order++) {
+            while (chunkFreeListHeads[chunk][order] != NULL) {
+                popFreeBlock(chunk, order);
+            }
+        }
+
+        long size = chunkSizes[chunk];
+        OffHeapMemory.free(OffHeapMemory.Subsystem.MODEL_CACHE, chunkAddresses[chunk], size);
+
+        chunkAddresses = remove(chunkAddresses, chunk);
+        chunkSizes = remove(chunkSizes, chunk);
+        chunkBytesAllocated = remove(chunkBytesAllocated, chunk);
+        chunkIdleSince = remove(chunkIdleSince, chunk);
+        chunkFreeListHeads = remove(chunkFreeListHeads, chunk);
+        chunkFreeBitmaps = remove(chunkFreeBitmaps, chunk);
+        return size;
     }
 
-    private void allocateChunk(long chunkSize) throws OutOfMemoryError {
-        long handle = MemoryUtil.nmemAllocChecked(chunkSize);
-        allocationHandles.add(handle);
+    /**
+     * Release every chunk but the first which has been empty since before the given time.
+     *
+     * @param idleBefore a {@link System#nanoTime()} timestamp
+     * @return the number of bytes freed
+     */
+    public long releaseIdleChunks(long idleBefore) {
+        long released = 0;
+        for (int chunk = chunkAddresses.length - 1; chunk > 0; chunk--) {
+            if (chunkBytesAllocated[chunk] == 0 && chunkIdleSince[chunk] - idleBefore <= 0) {
+                released += releaseChunk(chunk);
+            }
+        }
+        return released;
+    }
 
-        for (long cursor = 0; chunkSize - cursor >= BUFFER_SIZE; cursor += BUFFER_SIZE) {
-            bufferAddressStack.push(handle + cursor);
+    /**
+     * Find the chunk which would be the cheapest to empty, by having the fewest bytes allocated from it.
+     *
+     * @return the index of the chunk, or -1 if the pool has no chunks
+     */
+    public int getLeastUsedChunk() {
+        int leastUsed = -1;
+        for (int chunk = 0; chunk < chunkAddresses.length; chunk++) {
+            if (leastUsed == -1 || chunkBytesAllocated[chunk] < chunkBytesAllocated[leastUsed]) {
+                leastUsed = chunk;
+            }
         }
+        return leastUsed;
     }
 
-    public void freeAllocations() {
-        bufferAddressStack.clear();
+    public boolean isInChunk(Buffer buffer, int chunk) {
+        long address = MemoryUtil.memAddress0(buffer);
+        return address >= chunkAddresses[chunk] && address < chunkAddresses[chunk] + chunkSizes[chunk];
+    }
+
+    public int getChunkCount() {
+        return chunkAddresses.length;
+    }
 
-        Iterator<Long> iterator = allocationHandles.iterator();
-        while(iterator.hasNext()) {
-            MemoryUtil.nmemFree(iterator.next());
-            iterator.remove();
+    public long getChunkBytesAllocated(int chunk) {
+        return chunkBytesAllocated[chunk];
+    }
+
+    public void freeAllocations() {
+        for (int chunk = 0; chunk < chunkAddresses.length; chunk++) {
+            OffHeapMemory.free(OffHeapMemory.Subsystem.MODEL_CACHE, chunkAddresses[chunk], chunkSizes[chunk]);
         }
+
+        chunkAddresses = new long[0];
+        chunkSizes = new long[0];
+        chunkFreeListHeads = new long[0][];
+        chunkFreeBitmaps = new long[0][][];
+        chunkBytesAllocated = new long[0];
+        chunkIdleSince = new long[0];
+        Arrays.fill(freeBlockCounts, 0);
+        Arrays.fill(allocatedBlockCounts, 0);
+        bytesRequested = 0;
     }
 
     public void putIntBuffer(IntBuffer buffer) {
-        bufferAddressStack.push(MemoryUtil.memAddress(buffer));
+        freeBlock(MemoryUtil.memAddress0(buffer), (long) buffer.capacity() * Integer.BYTES);
     }
 
     public IntBuffer takeIntBuffer(int capacity) {
-        if (bufferAddressStack.isEmpty()) {
+        long address = allocateBlock((long) capacity * Integer.BYTES);
+        if (address == NULL) {
             return null;
         }
 
-        return MemoryUtil.memIntBuffer(bufferAddressStack.pop(), capacity);
+        return MemoryUtil.memIntBuffer(address, capacity);
     }
 
     public void putFloatBuffer(FloatBuffer buffer) {
-        bufferAddressStack.push(MemoryUtil.memAddress(buffer));
+        freeBlock(MemoryUtil.memAddress0(buffer), (long) buffer.capacity() * Float.BYTES);
     }
 
     public FloatBuffer takeFloatBuffer(int capacity) {
-        if (bufferAddressStack.isEmpty()) {
+        long address = allocateBlock((long) capacity * Float.BYTES);
+        if (address == NULL) {
             return null;
         }
 
-        return MemoryUtil.memFloatBuffer(bufferAddressStack.pop(), capacity);
+        return MemoryUtil.memFloatBuffer(address, capacity);
+    }
+
+    /**
+     * Whether a buffer of the given size can be taken without having to evict anything first.
+     */
+    public boolean hasFreeBlock(long size) {
+        for (int order = orderForSize(size); order <= MAX_ORDER; order++) {
+            if (freeBlockCounts[order] != 0) {
+                return true;
+            }
+        }
+        return canGrow(size);
+    }
+
+    public static long blockSize(int sizeClass) {
+        return 1L << (MIN_BLOCK_SHIFT + sizeClass);
+    }
+
+    public int getAllocatedBlockCount(int sizeClass) {
+        return allocatedBlockCounts[sizeClass];
+    }
+
+    public int getFreeBlockCount(int sizeClass) {
+        return freeBlockCounts[sizeClass];
+    }
+
+    public long getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * The total size of the off-heap memory currently backing the pool.
+     */
+    public long getByteCapacity() {
+        long bytes = 0;
+        for (long chunkSize : chunkSizes) {
+            bytes += chunkSize;
+        }
+        return bytes;
+    }
+
+    public long getBytesAllocated() {
+        long bytes = 0;
+        for (int order = 0; order < SIZE_CLASS_COUNT; order++) {
+            bytes += allocatedBlockCounts[order] * blockSize(order);
+        }
+        return bytes;
+    }
+
+    public long getBytesFree() {
+        long bytes = 0;
+        for (int order = 0; order < SIZE_CLASS_COUNT; order++) {
+            bytes += freeBlockCounts[order] * blockSize(order);
+        }
+        return bytes;
+    }
+
+    /**
+     * The number of bytes actually requested by the buffers currently handed out, excluding size class rounding.
+     */
+    public long getBytesRequested() {
+        return bytesRequested;
+    }
+
+    public void logStats() {
+        StringBuilder stats = new StringBuilder("\nModel buffer pool stats:\n");
+        for (int order = 0; order < SIZE_CLASS_COUNT; order++) {
+            stats.append(String.format("%7d KiB: %7d allocated, %7d free\n",
+                blockSize(order) / ModelCache.KiB, allocatedBlockCounts[order], freeBlockCounts[order]));
+        }
+        long bytesAllocated = getBytesAllocated();
+        stats.append(String.format("%d MiB allocated, %d MiB free in %d chunks, %.1f%% of allocated bytes in use",
+            bytesAllocated / ModelCache.MiB, getBytesFree() / ModelCache.MiB, chunkAddresses.length,
+            bytesAllocated == 0 ? 100 : bytesRequested * 100. / bytesAllocated));
+        log.debug(stats.toString());
+    }
+
+    private static int orderForSize(long size) {
+        long blocks = (Math.max(size, 1) + (1L << MIN_BLOCK_SHIFT) - 1) >> MIN_BLOCK_SHIFT;
+        return 64 - Long.numberOfLeadingZeros(blocks - 1);
+    }
+
+    private long allocateBlock(long size) {
+        int order = orderForSize(size);
+        if (order > MAX_ORDER) {
+            log.error("Requested buffer of {} bytes exceeds the largest size class", size);
+            return NULL;
+        }
+
+        // Find the oldest chunk with a free block that fits, adding a new chunk if there's none
+        int chunk = findChunkWithFreeBlock(order);
+        if (chunk == -1) {
+            if (!grow(size)) {
+                return NULL;
+            }
+            chunk = chunkAddresses.length - 1;
+        }
+
+        // Take the smallest free block that fits, then split it down to the requested size class
+        int available = order;
+        while (chunkFreeListHeads[chunk][available] == NULL) {
+            available++;
+        }
+
+        long address = popFreeBlock(chunk, available);
+        long offset = address - chunkAddresses[chunk];
+        while (available > order) {
+            available--;
+            pushFreeBlock(chunk, offset + blockSize(available), available);
+        }
+
+        allocatedBlockCounts[order]++;
+        chunkBytesAllocated[chunk] += blockSize(order);
+        bytesRequested += size;
+        return address;
+    }
+
+    private void freeBlock(long address, long size) {
+        int order = orderForSize(size);
+        int chunk = findChunk(address);
+        long offset = address - chunkAddresses[chunk];
+
+        allocatedBlockCounts[order]--;
+        bytesRequested -= size;
+        chunkBytesAllocated[chunk] -= blockSize(order);
+        if (chunkBytesAllocated[chunk] == 0) {
+            chunkIdleSince[chunk] = System.nanoTime();
+        }
+
+        // Merge with the block's buddy for as long as the buddy is free
+        while (order < MAX_ORDER) {
+            long buddyOffset = offset ^ blockSize(order);
+            if (!isFree(chunk, buddyOffset, order)) {
+                break;
+            }
+
+            removeFreeBlock(chunk, buddyOffset, order);
+            offset = Math.min(offset, buddyOffset);
+            order++;
+        }
+
+        pushFreeBlock(chunk, offset, order);
+    }
+
+    private int findChunkWithFreeBlock(int order) {
+        boolean anyFree = false;
+        for (int available = order; available <= MAX_ORDER && !anyFree; available++) {
+            anyFree = freeBlockCounts[available] != 0;
+        }
+        if (!anyFree) {
+            return -1;
+        }
+
+        for (int chunk = 0; chunk < chunkAddresses.length; chunk++) {
+            long[] heads = chunkFreeListHeads[chunk];
+            for (int available = order; available <= MAX_ORDER; available++) {
+                if (heads[available] != NULL) {
+                    return chunk;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long[] remove(long[] array, int index) {
+        long[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    private static <T> T[] remove(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    private int findChunk(long address) {
+        for (int chunk = 0; chunk < chunkAddresses.length; chunk++) {
+            long start = chunkAddresses[chunk];
+            if (address >= start && address < start + chunkSizes[chunk]) {
+                return chunk;
+            }
+        }
+        throw new IllegalArgumentException("Address does not belong to the buffer pool: " + address);
+    }
+
+    private boolean isFree(int chunk, long offset, int order) {
+        long index = offset >> (MIN_BLOCK_SHIFT + order);
+        long[] bitmap = chunkFreeBitmaps[chunk][order];
+        int word = (int) (index >> 6);
+        return word < bitmap.length && (bitmap[word] & (1L << index)) != 0;
+    }
+
+    private void setFree(int chunk, long offset, int order, boolean free) {
+        long index = offset >> (MIN_BLOCK_SHIFT + order);
+        long[] bitmap = chunkFreeBitmaps[chunk][order];
+        int word = (int) (index >> 6);
+        if (free) {
+            bitmap[word] |= 1L << index;
+        } else {
+            bitmap[word] &= ~(1L << index);
+        }
+    }
+
+    private void pushFreeBlock(int chunk, long offset, int order) {
+        long address = chunkAddresses[chunk] + offset;
+        long head = chunkFreeListHeads[chunk][order];
+        MemoryUtil.memPutLong(address + NEXT_OFFSET, head);
+        MemoryUtil.memPutLong(address + PREV_OFFSET, NULL);
+        if (head != NULL) {
+            MemoryUtil.memPutLong(head + PREV_OFFSET, address);
+        }
+        chunkFreeListHeads[chunk][order] = address;
+        freeBlockCounts[order]++;
+        setFree(chunk, offset, order, true);
+    }
+
+    private long popFreeBlock(int chunk, int order) {
+        long address = chunkFreeListHeads[chunk][order];
+        removeFreeBlock(chunk, address - chunkAddresses[chunk], order);
+        return address;
+    }
+
+    private void removeFreeBlock(int chunk, long offset, int order) {
+        long address = chunkAddresses[chunk] + offset;
+        long next = MemoryUtil.memGetLong(address + NEXT_OFFSET);
+        long prev = MemoryUtil.memGetLong(address + PREV_OFFSET);
+        if (prev == NULL) {
+            chunkFreeListHeads[chunk][order] = next;
+        } else {
+            MemoryUtil.memPutLong(prev + NEXT_OFFSET, next);
+        }
+        if (next != NULL) {
+            MemoryUtil.memPutLong(next + PREV_OFFSET, prev);
+        }
+        freeBlockCounts[order]--;
+        setFree(chunk, offset, order, false);
     }
 }
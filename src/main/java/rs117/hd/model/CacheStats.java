@@ -0,0 +1,54 @@
+package rs117.hd.model;
+
+/**
+ * Per-frame access counters for one of the model data caches. The counters for the frame in progress are
+ * accumulated separately, so the values exposed here are always those of the last completed frame.
+ */
+public class CacheStats {
+    private int lastFrameGets;
+    private int lastFrameHits;
+    private int lastFrameMisses;
+    /**
+     * An exponential moving average of the number of gets per frame, which is what the caches are balanced by.
+     */
+    private float smoothedGets;
+
+    private int frameHits;
+    private int frameMisses;
+
+    public int getLastFrameGets() {
+        return lastFrameGets;
+    }
+
+    public int getLastFrameHits() {
+        return lastFrameHits;
+    }
+
+    public int getLastFrameMisses() {
+        return lastFrameMisses;
+    }
+
+    public float getSmoothedGets() {
+        return smoothedGets;
+    }
+
+    void recordHit() {
+        frameHits++;
+    }
+
+    void recordMiss() {
+        frameMisses++;
+    }
+
+    /**
+     * @param smoothing how much of the previous average to keep, between 0 for none and 1 for all of it
+     */
+    void endFrame(float smoothing) {
+        lastFrameHits = frameHits;
+        lastFrameMisses = frameMisses;
+        lastFrameGets = frameHits + frameMisses;
+        smoothedGets = smoothing * smoothedGets + (1 - smoothing) * lastFrameGets;
+        frameHits = 0;
+        frameMisses = 0;
+    }
+}
@@ -0,0 +1,502 @@
+package rs117.hd.model;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryUtil;
+import rs117.hd.utils.buffer.OffHeapMemory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent tier below {@link ModelCache}, backed by a memory-mapped file, so model data computed in a previous
+ * session doesn't need to be pushed from scratch after a restart.
+ * <p>
+ * The file is a ring of records following a fixed header. New records are appended at the head, and once the file
+ * is full, writing wraps around to the start, overwriting the oldest records. Every record carries a checksum of its
+ * data, and the header carries one of its own, so a file which was only partially written, or which was written by a
+ * different plugin version or with different settings, is discarded or truncated rather than trusted.
+ * <p>
+ * The file is opened and indexed on a background thread, which also performs all writes and closes the file again.
+ * Reads happen directly on the calling thread, and return nothing until the cache is ready. The thread is shared by
+ * every instance, so a cache reopened with the same file only gets to it once the previous one is done with it.
+ */
+@Slf4j
+public class DiskModelCache {
+    public static final int KIND_VERTEX = 0;
+    public static final int KIND_COLOR = 1;
+    public static final int KIND_NORMAL = 2;
+    public static final int KIND_UV = 3;
+    private static final int KIND_COUNT = 4;
+
+    private static final int MAGIC = 0x31313748; // "117H"
+    private static final int FORMAT_VERSION = 2;
+    private static final int RECORD_MAGIC = 0x4D4F444C; // "MODL"
+
+    // Header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 4;
+    private static final int VERSION_STAMP_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int HEAD_OFFSET = 20;
+    private static final int TAIL_OFFSET = 24;
+    private static final int WRAP_END_OFFSET = 28;
+    private static final int HEADER_CHECKSUM_OFFSET = 32;
+    private static final int HEADER_SIZE = 64;
+
+    // Record layout, with the data following the record header
+    private static final int RECORD_KIND_OFFSET = 4;
+    private static final int RECORD_KEY_OFFSET = 8;
+    private static final int RECORD_LENGTH_OFFSET = 16;
+    private static final int RECORD_CHECKSUM_OFFSET = 20;
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    // Drop writes rather than queueing up an unbounded amount of memory if the disk can't keep up
+    private static final int MAX_PENDING_WRITES = 256;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "117HD disk model cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final int capacity;
+    private final long versionStamp;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final CRC32 crc = new CRC32();
+
+    private volatile boolean ready;
+    private volatile boolean closed;
+    private FileChannel channel;
+    private MappedByteBuffer mappedBuffer;
+    private long mappedAddress;
+
+    // Records live in [HEADER_SIZE, head) and in [tail, wrapEnd), the latter being what's left of the previous lap
+    private int head;
+    private int tail;
+    private int wrapEnd;
+
+    // Maps each kind and key to the offset of its record, with zero marking an empty slot
+    private long[] indexKeys = new long[1024];
+    private int[] indexOffsets = new int[1024];
+    private int indexSize;
+
+    /**
+     * @param capacity     the maximum size of the cache file in bytes
+     * @param versionStamp identifies the plugin version and settings the model data was computed with,
+     *                     and any existing data with a different stamp is discarded
+     */
+    public DiskModelCache(Path path, int capacity, long versionStamp) {
+        this.path = path;
+        this.capacity = capacity;
+        this.versionStamp = versionStamp;
+        EXECUTOR.execute(this::open);
+    }
+
+    public boolean matches(Path path, int capacity, long versionStamp) {
+        return this.path.equals(path) && this.capacity == capacity && this.versionStamp == versionStamp;
+    }
+
+    /**
+     * @return whether the cache file has been opened and indexed, and can be read from and written to
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Stop accepting writes, and close the file in the background once any pending writes have been completed,
+     * without waiting for it.
+     *
+     * @return completes once the file has been closed
+     */
+    public Future<?> close() {
+        closed = true;
+        return EXECUTOR.submit(this::release);
+    }
+
+    private synchronized void release() {
+        ready = false;
+        if (mappedBuffer != null) {
+            mappedBuffer.force();
+            mappedBuffer = null;
+            mappedAddress = 0;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                log.warn("Failed to close disk model cache", ex);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Read cached data into a buffer provided by the allocator, which is given the number of ints to allocate.
+     *
+     * @return the buffer, or null if the data isn't cached or the allocator failed
+     */
+    public IntBuffer readIntBuffer(int kind, long key, IntFunction<IntBuffer> allocator) {
+        // Avoid waiting on the background thread while it's still indexing the file
+        if (!ready) {
+            return null;
+        }
+
+        synchronized (this) {
+            int offset = findRecord(kind, key);
+            if (offset == 0) {
+                return null;
+            }
+
+            IntBuffer buffer = allocator.apply(getRecordLength(offset) / Integer.BYTES);
+            if (buffer != null) {
+                copyRecord(offset, buffer);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Read cached data into a buffer provided by the allocator, which is given the number of floats to allocate.
+     *
+     * @return the buffer, or null if the data isn't cached or the allocator failed
+     */
+    public FloatBuffer readFloatBuffer(int kind, long key, IntFunction<FloatBuffer> allocator) {
+        // Avoid waiting on the background thread while it's still indexing the file
+        if (!ready) {
+            return null;
+        }
+
+        synchronized (this) {
+            int offset = findRecord(kind, key);
+            if (offset == 0) {
+                return null;
+            }
+
+            FloatBuffer buffer = allocator.apply(getRecordLength(offset) / Float.BYTES);
+            if (buffer != null) {
+                copyRecord(offset, buffer);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Queue up the remaining contents of the buffer to be written to disk in the background.
+     * The buffer itself isn't referenced after this method returns.
+     */
+    public void write(int kind, long key, IntBuffer data) {
+        write(kind, key, data, data.remaining() * Integer.BYTES);
+    }
+
+    /**
+     * Queue up the remaining contents of the buffer to be written to disk in the background.
+     * The buffer itself isn't referenced after this method returns.
+     */
+    public void write(int kind, long key, FloatBuffer data) {
+        write(kind, key, data, data.remaining() * Float.BYTES);
+    }
+
+    private void write(int kind, long key, Buffer data, int length) {
+        if (!ready || closed || pendingWrites.get() >= MAX_PENDING_WRITES) {
+            return;
+        }
+
+        // The buffer may be recycled before the write happens, so make a copy of it
+        long copy = MemoryUtil.nmemAlloc(length);
+        if (copy == 0) {
+            return;
+        }
+        OffHeapMemory.track(OffHeapMemory.Subsystem.DISK_CACHE, length);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(data), copy, length);
+
+        pendingWrites.incrementAndGet();
+        try {
+            EXECUTOR.execute(() -> {
+                try {
+                    append(kind, key, copy, length);
+                } catch (Throwable err) {
+                    log.error("Failed to write to disk model cache", err);
+                } finally {
+                    OffHeapMemory.free(OffHeapMemory.Subsystem.DISK_CACHE, copy, length);
+                    pendingWrites.decrementAndGet();
+                }
+            });
+        } catch (Throwable err) {
+            // Most likely out of memory for the task itself
+            OffHeapMemory.free(OffHeapMemory.Subsystem.DISK_CACHE, copy, length);
+            pendingWrites.decrementAndGet();
+        }
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() > capacity) {
+                channel.truncate(capacity);
+            }
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            mappedAddress = MemoryUtil.memAddress(mappedBuffer);
+
+            if (isHeaderValid()) {
+                head = mappedBuffer.getInt(HEAD_OFFSET);
+                tail = mappedBuffer.getInt(TAIL_OFFSET);
+                wrapEnd = mappedBuffer.getInt(WRAP_END_OFFSET);
+
+                // Index the previous lap first, so newer records take precedence
+                wrapEnd = indexRecords(tail, wrapEnd);
+                head = indexRecords(HEADER_SIZE, head);
+                writeHeader();
+                log.debug("Loaded {} models from the disk model cache", indexSize);
+            } else {
+                log.debug("Discarding outdated or corrupt disk model cache");
+                head = tail = wrapEnd = HEADER_SIZE;
+                writeHeader();
+            }
+
+            ready = true;
+        } catch (Throwable err) {
+            log.error("Failed to open the disk model cache at {}", path, err);
+            mappedBuffer = null;
+            mappedAddress = 0;
+        }
+    }
+
+    private boolean isHeaderValid() {
+        if (mappedBuffer.getInt(MAGIC_OFFSET) != MAGIC ||
+            mappedBuffer.getInt(FORMAT_VERSION_OFFSET) != FORMAT_VERSION ||
+            mappedBuffer.getLong(VERSION_STAMP_OFFSET) != versionStamp ||
+            mappedBuffer.getInt(CAPACITY_OFFSET) != capacity ||
+            mappedBuffer.getInt(HEADER_CHECKSUM_OFFSET) != checksum(0, HEADER_CHECKSUM_OFFSET)) {
+            return false;
+        }
+
+        int head = mappedBuffer.getInt(HEAD_OFFSET);
+        int tail = mappedBuffer.getInt(TAIL_OFFSET);
+        int wrapEnd = mappedBuffer.getInt(WRAP_END_OFFSET);
+        return HEADER_SIZE <= head && head <= tail && tail <= wrapEnd && wrapEnd <= capacity;
+    }
+
+    private void writeHeader() {
+        mappedBuffer.putInt(MAGIC_OFFSET, MAGIC);
+        mappedBuffer.putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+        mappedBuffer.putLong(VERSION_STAMP_OFFSET, versionStamp);
+        mappedBuffer.putInt(CAPACITY_OFFSET, capacity);
+        mappedBuffer.putInt(HEAD_OFFSET, head);
+        mappedBuffer.putInt(TAIL_OFFSET, tail);
+        mappedBuffer.putInt(WRAP_END_OFFSET, wrapEnd);
+        mappedBuffer.putInt(HEADER_CHECKSUM_OFFSET, checksum(0, HEADER_CHECKSUM_OFFSET));
+    }
+
+    /**
+     * Index every valid record between the two offsets, stopping at the first invalid one.
+     *
+     * @return the offset following the last valid record
+     */
+    private int indexRecords(int start, int end) {
+        int offset = start;
+        while (end - offset >= RECORD_HEADER_SIZE) {
+            int kind = mappedBuffer.getInt(offset + RECORD_KIND_OFFSET);
+            int length = mappedBuffer.getInt(offset + RECORD_LENGTH_OFFSET);
+            if (mappedBuffer.getInt(offset) != RECORD_MAGIC ||
+                kind < 0 || kind >= KIND_COUNT ||
+                length < 0 || length > end - offset - RECORD_HEADER_SIZE ||
+                mappedBuffer.getInt(offset + RECORD_CHECKSUM_OFFSET) != checksum(offset + RECORD_HEADER_SIZE, length)) {
+                break;
+            }
+
+            indexPut(indexKey(kind, mappedBuffer.getLong(offset + RECORD_KEY_OFFSET)), offset);
+            offset += recordSize(length);
+        }
+        return offset;
+    }
+
+    private synchronized void append(int kind, long key, long data, int length) {
+        if (!ready || indexGet(indexKey(kind, key)) != 0) {
+            return;
+        }
+
+        int size = recordSize(length);
+        if (size > capacity - HEADER_SIZE) {
+            return;
+        }
+
+        if (head + size > capacity) {
+            // Start the next lap, abandoning what's left of the previous one, and keep whatever records of the
+            // current lap aren't overwritten yet
+            while (tail < wrapEnd) {
+                tail = dropRecord(tail);
+            }
+            wrapEnd = head;
+            head = tail = HEADER_SIZE;
+        }
+
+        // Drop the oldest records which are about to be overwritten
+        while (tail < wrapEnd && tail < head + size) {
+            tail = dropRecord(tail);
+        }
+        if (tail >= wrapEnd) {
+            tail = wrapEnd = head + size;
+        }
+
+        // Persist the new tail before overwriting anything, so an interrupted write can't leave the header
+        // pointing at a partially overwritten record
+        writeHeader();
+
+        int offset = head;
+        mappedBuffer.putInt(offset, RECORD_MAGIC);
+        mappedBuffer.putInt(offset + RECORD_KIND_OFFSET, kind);
+        mappedBuffer.putLong(offset + RECORD_KEY_OFFSET, key);
+        mappedBuffer.putInt(offset + RECORD_LENGTH_OFFSET, length);
+        MemoryUtil.memCopy(data, mappedAddress + offset + RECORD_HEADER_SIZE, length);
+        mappedBuffer.putInt(offset + RECORD_CHECKSUM_OFFSET, checksum(offset + RECORD_HEADER_SIZE, length));
+
+        head += size;
+        writeHeader();
+        indexPut(indexKey(kind, key), offset);
+    }
+
+    /**
+     * Remove the record at the offset from the index.
+     *
+     * @return the offset following the record
+     */
+    private int dropRecord(int offset) {
+        int kind = mappedBuffer.getInt(offset + RECORD_KIND_OFFSET);
+        long key = mappedBuffer.getLong(offset + RECORD_KEY_OFFSET);
+        indexRemove(indexKey(kind, key), offset);
+        return offset + recordSize(getRecordLength(offset));
+    }
+
+    private int findRecord(int kind, long key) {
+        if (!ready) {
+            return 0;
+        }
+
+        // Index keys mix the kind into the key, so make sure the record is the one which was asked for
+        int offset = indexGet(indexKey(kind, key));
+        if (offset == 0 ||
+            mappedBuffer.getInt(offset + RECORD_KIND_OFFSET) != kind ||
+            mappedBuffer.getLong(offset + RECORD_KEY_OFFSET) != key) {
+            return 0;
+        }
+        return offset;
+    }
+
+    private int getRecordLength(int offset) {
+        return mappedBuffer.getInt(offset + RECORD_LENGTH_OFFSET);
+    }
+
+    private void copyRecord(int offset, Buffer buffer) {
+        MemoryUtil.memCopy(mappedAddress + offset + RECORD_HEADER_SIZE, MemoryUtil.memAddress(buffer), getRecordLength(offset));
+    }
+
+    private int checksum(int offset, int length) {
+        ByteBuffer slice = mappedBuffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        crc.reset();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    private static int recordSize(int length) {
+        // Keep records 8-byte aligned
+        return (RECORD_HEADER_SIZE + length + 7) & ~7;
+    }
+
+    private static long indexKey(int kind, long key) {
+        return key ^ kind * 0xC2B2AE3D27D4EB4FL;
+    }
+
+    private static int indexSlot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int indexGet(long key) {
+        int mask = indexKeys.length - 1;
+        for (int slot = indexSlot(key, mask); indexOffsets[slot] != 0; slot = (slot + 1) & mask) {
+            if (indexKeys[slot] == key) {
+                return indexOffsets[slot];
+            }
+        }
+        return 0;
+    }
+
+    private void indexPut(long key, int offset) {
+        if (indexSize + 1 > indexKeys.length / 2) {
+            long[] oldKeys = indexKeys;
+            int[] oldOffsets = indexOffsets;
+            indexKeys = new long[oldKeys.length * 2];
+            indexOffsets = new int[oldOffsets.length * 2];
+            indexSize = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldOffsets[i] != 0) {
+                    indexPut(oldKeys[i], oldOffsets[i]);
+                }
+            }
+        }
+
+        int mask = indexKeys.length - 1;
+        int slot = indexSlot(key, mask);
+        while (indexOffsets[slot] != 0) {
+            if (indexKeys[slot] == key) {
+                indexOffsets[slot] = offset;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        indexKeys[slot] = key;
+        indexOffsets[slot] = offset;
+        indexSize++;
+    }
+
+    /**
+     * Remove the key from the index, but only if it still refers to the record at the given offset.
+     */
+    private void indexRemove(long key, int offset) {
+        int mask = indexKeys.length - 1;
+        int slot = indexSlot(key, mask);
+        while (indexOffsets[slot] != 0 && indexKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (indexOffsets[slot] != offset) {
+            return;
+        }
+
+        // Backward shift deletion, same as in BufferCache
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (indexOffsets[next] == 0) {
+                break;
+            }
+
+            int ideal = indexSlot(indexKeys[next], mask);
+            if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+                indexKeys[slot] = indexKeys[next];
+                indexOffsets[slot] = indexOffsets[next];
+                slot = next;
+            }
+        }
+        indexOffsets[slot] = 0;
+        indexSize--;
+    }
+}
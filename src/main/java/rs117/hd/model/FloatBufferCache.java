@@ -1,37 +1,31 @@
 package rs117.hd.model;
 
-import lombok.extern.slf4j.Slf4j;
-
 import java.nio.FloatBuffer;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 
-@Slf4j
-public class FloatBufferCache extends LinkedHashMap<Integer, FloatBuffer> {
+public class FloatBufferCache extends BufferCache<FloatBuffer> {
     private final BufferPool bufferPool;
 
     public FloatBufferCache(BufferPool bufferPool) {
-        super(512, 0.7f, true);
+        super(512);
         this.bufferPool = bufferPool;
     }
 
-    public boolean makeRoom() {
-        Iterator<FloatBuffer> iterator = super.values().iterator();
-        if (iterator.hasNext()) {
-            this.bufferPool.putFloatBuffer(iterator.next());
-            iterator.remove();
-            return true;
-        }
+    @Override
+    protected void recycle(FloatBuffer buffer) {
+        this.bufferPool.putFloatBuffer(buffer);
+    }
 
-        return false;
+    /**
+     * Evict every buffer taken from the given chunk of the pool, so the chunk can be released.
+     *
+     * @return the number of entries evicted
+     */
+    public int evictChunk(int chunk) {
+        return evictIf(buffer -> this.bufferPool.isInChunk(buffer, chunk));
     }
 
     @Override
-    public void clear() {
-        Iterator<FloatBuffer> iterator = super.values().iterator();
-        while (iterator.hasNext()) {
-            this.bufferPool.putFloatBuffer(iterator.next());
-            iterator.remove();
-        }
+    protected long sizeOf(FloatBuffer buffer) {
+        return (long) buffer.capacity() * Float.BYTES;
     }
 }
@@ -0,0 +1,92 @@
+package rs117.hd.model;
+
+import rs117.hd.utils.HDUtils;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch of 4-bit counters, estimating how often each key has been requested recently. Every counter
+ * is halved once enough increments have been recorded, so keys which were popular a long time ago fade out.
+ * This is the frequency filter behind TinyLFU admission, which only lets new data into a full cache if it's
+ * likely to be requested more often than the data it would replace.
+ */
+class FrequencySketch {
+    private static final int ROWS = 4;
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L,
+        0xC2B2AE3D27D4EB4FL,
+        0x165667B19E3779F9L,
+        0xD6E8FEB86659FD93L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    // Each long holds sixteen 4-bit counters
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int sampleCount;
+
+    /**
+     * @param expectedKeys roughly how many distinct keys the cache is expected to hold at once
+     */
+    FrequencySketch(int expectedKeys) {
+        int length = (int) HDUtils.ceilPow2(Math.max(64, expectedKeys));
+        table = new long[length];
+        tableMask = length - 1;
+        // Age the counters after around ten increments per key, which is what TinyLFU recommends
+        sampleSize = 10 * length;
+    }
+
+    void increment(long key) {
+        boolean incremented = false;
+        for (int row = 0; row < ROWS; row++) {
+            long hash = hash(key, row);
+            int index = (int) hash & tableMask;
+            int shift = counterShift(hash);
+            if (((table[index] >>> shift) & 0xF) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++sampleCount >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * @return the estimated number of recent requests for the key, capped at 15
+     */
+    int frequency(long key) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            long hash = hash(key, row);
+            int count = (int) (table[(int) hash & tableMask] >>> counterShift(hash)) & 0xF;
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+        sampleCount = 0;
+    }
+
+    private void age() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        sampleCount /= 2;
+    }
+
+    private static long hash(long key, int row) {
+        long h = (key + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 32);
+    }
+
+    private static int counterShift(long hash) {
+        // Pick one of the sixteen counters in the long, using bits which aren't used for the table index
+        return (int) (hash >>> 40 & 0xF) << 2;
+    }
+}
@@ -0,0 +1,256 @@
+package rs117.hd.model;
+
+import rs117.hd.HdPlugin;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the pushed geometry of temporary models resident on the GPU, in a region of the staging buffers between the
+ * static scene data and the per-frame dynamic data. On a cache hit, the model's record can point straight at the
+ * resident data, so nothing needs to be pushed into the staging buffers or uploaded again.
+ * <p>
+ * The region is split up by a buddy allocator, similar to {@link BufferPool}, except that it only tracks vertex
+ * offsets, since the memory itself lives on the GPU. Newly cached models are queued up as copies from the dynamic
+ * part of the staging buffers, which must be performed before the compute shaders run.
+ * <p>
+ * Besides being evicted to make room, models which haven't been drawn for {@link #MAX_AGE_FRAMES} frames expire at
+ * the end of a frame, so the region is mostly taken up by models which are still on screen, like players standing
+ * around, rather than by whatever was seen last before the region filled up.
+ */
+public class GpuModelCache extends BufferCache<TempModelInfo> {
+    // The smallest block fits 64 vertices, or around 21 faces
+    private static final int MIN_BLOCK_SHIFT = 6;
+    private static final int SIZE_CLASS_COUNT = orderForSize(HdPlugin.MAX_TRIANGLE * 3) + 1;
+    private static final int MAX_ORDER = SIZE_CLASS_COUNT - 1;
+    public static final int MAX_BLOCK_VERTICES = 1 << (MIN_BLOCK_SHIFT + MAX_ORDER);
+
+    // Each pending copy consists of the source vertex offset, source UV offset, destination vertex offset,
+    // destination UV offset, vertex count and UV count
+    public static final int COPY_STRIDE = 6;
+
+    // Models which haven't been drawn for this many frames are evicted at the end of the frame
+    public static final int MAX_AGE_FRAMES = 300;
+
+    private int vertexOffset;
+    private int uvOffset;
+    private int vertexCapacity;
+
+    // Per size class, a bitmap of which blocks are currently free
+    private long[][] freeBitmaps = new long[SIZE_CLASS_COUNT][0];
+    private final int[] freeBlockCounts = new int[SIZE_CLASS_COUNT];
+
+    // Blocks evicted during a frame may still be read by model records written earlier in the same frame,
+    // so they're only returned to the allocator once the frame is over
+    private int[] deferredFrees = new int[64];
+    private int deferredFreeCount;
+    private int deferredFreeVertices;
+
+    private int[] pendingCopies = new int[COPY_STRIDE * 64];
+    private int pendingCopyCount;
+    private int frame;
+
+    public GpuModelCache() {
+        super(1024);
+    }
+
+    /**
+     * Discard all cached models and move the cache to a new region of the staging buffers. This must only be called
+     * between frames, since it drops any pending copies.
+     *
+     * @param vertexOffset   the vertex offset at which the region starts in the vertex and normal buffers
+     * @param uvOffset       the vertex offset at which the region starts in the UV buffer
+     * @param vertexCapacity the number of vertices to reserve, which is rounded down to a multiple of the largest
+     *                       block size
+     */
+    public void reset(int vertexOffset, int uvOffset, int vertexCapacity) {
+        super.clear();
+
+        this.vertexOffset = vertexOffset;
+        this.uvOffset = uvOffset;
+        this.vertexCapacity = vertexCapacity / MAX_BLOCK_VERTICES * MAX_BLOCK_VERTICES;
+
+        for (int order = 0; order < SIZE_CLASS_COUNT; order++) {
+            int blockCount = this.vertexCapacity >> (MIN_BLOCK_SHIFT + order);
+            freeBitmaps[order] = new long[(blockCount + 63) >> 6];
+        }
+        Arrays.fill(freeBlockCounts, 0);
+        for (int offset = 0; offset < this.vertexCapacity; offset += MAX_BLOCK_VERTICES) {
+            setFree(offset >> (MIN_BLOCK_SHIFT + MAX_ORDER), MAX_ORDER);
+        }
+
+        deferredFreeCount = 0;
+        deferredFreeVertices = 0;
+        pendingCopyCount = 0;
+    }
+
+    public int getVertexCapacity() {
+        return vertexCapacity;
+    }
+
+    @Override
+    public TempModelInfo get(long key) {
+        TempModelInfo info = super.get(key);
+        if (info != null) {
+            info.setLastUsedFrame(frame);
+        }
+        return info;
+    }
+
+    /**
+     * Cache a model which was just pushed to the dynamic part of the staging buffers, by queueing up a copy of it
+     * into the resident region. If there's no room for it, some models are evicted to make room for next frame.
+     *
+     * @param srcVertexOffset the vertex offset the model was pushed to
+     * @param srcUvOffset     the UV offset the model was pushed to, or -1 if the model has no UVs
+     * @param faceCount       the number of faces pushed
+     * @param uvLength        the number of UV vertices pushed
+     * @return whether the model was cached
+     */
+    public boolean cacheModel(long hash, int srcVertexOffset, int srcUvOffset, int faceCount, int uvLength) {
+        int vertexCount = faceCount * 3;
+        int order = orderForSize(vertexCount);
+        if (vertexCapacity == 0 || order > MAX_ORDER) {
+            return false;
+        }
+
+        int offset = allocateBlock(order);
+        if (offset == -1) {
+            // Blocks evicted now can't be reused until the next frame, so only evict enough to fit the model then
+            while (deferredFreeVertices < vertexCount && makeRoom()) {
+                // keep evicting
+            }
+            return false;
+        }
+
+        int dstUvOffset = srcUvOffset == -1 ? -1 : uvOffset + offset;
+        if (pendingCopyCount * COPY_STRIDE == pendingCopies.length) {
+            pendingCopies = Arrays.copyOf(pendingCopies, pendingCopies.length * 2);
+        }
+        int i = pendingCopyCount++ * COPY_STRIDE;
+        pendingCopies[i] = srcVertexOffset;
+        pendingCopies[i + 1] = srcUvOffset;
+        pendingCopies[i + 2] = vertexOffset + offset;
+        pendingCopies[i + 3] = dstUvOffset;
+        pendingCopies[i + 4] = vertexCount;
+        pendingCopies[i + 5] = srcUvOffset == -1 ? 0 : uvLength;
+
+        put(hash, new TempModelInfo()
+            .setTempOffset(vertexOffset + offset)
+            .setTempUvOffset(dstUvOffset)
+            .setFaceCount(faceCount)
+            .setLastUsedFrame(frame));
+        return true;
+    }
+
+    public int[] getPendingCopies() {
+        return pendingCopies;
+    }
+
+    public int getPendingCopyCount() {
+        return pendingCopyCount;
+    }
+
+    /**
+     * Call once the pending copies have been submitted for the current frame.
+     */
+    public void finishFrame() {
+        pendingCopyCount = 0;
+
+        // Nothing drawn during this frame has expired, so the blocks of expired models can be freed right away
+        evictExpired();
+        frame++;
+
+        for (int i = 0; i < deferredFreeCount; i += 2) {
+            freeBlock(deferredFrees[i], deferredFrees[i + 1]);
+        }
+        deferredFreeCount = 0;
+        deferredFreeVertices = 0;
+    }
+
+    @Override
+    protected void recycle(TempModelInfo info) {
+        int order = orderForSize(info.getFaceCount() * 3);
+        if (deferredFreeCount == deferredFrees.length) {
+            deferredFrees = Arrays.copyOf(deferredFrees, deferredFrees.length * 2);
+        }
+        deferredFrees[deferredFreeCount++] = info.getTempOffset() - vertexOffset;
+        deferredFrees[deferredFreeCount++] = order;
+        deferredFreeVertices += 1 << (MIN_BLOCK_SHIFT + order);
+    }
+
+    @Override
+    protected boolean isExpired(TempModelInfo info) {
+        return frame - info.getLastUsedFrame() >= MAX_AGE_FRAMES;
+    }
+
+    @Override
+    protected long sizeOf(TempModelInfo info) {
+        return (long) info.getFaceCount() * 3 * (HdPlugin.VERTEX_SIZE + HdPlugin.NORMAL_SIZE + HdPlugin.UV_SIZE) * HdPlugin.SCALAR_BYTES;
+    }
+
+    private static int orderForSize(int vertexCount) {
+        int blocks = (Math.max(vertexCount, 1) + (1 << MIN_BLOCK_SHIFT) - 1) >> MIN_BLOCK_SHIFT;
+        return 32 - Integer.numberOfLeadingZeros(blocks - 1);
+    }
+
+    private int allocateBlock(int order) {
+        // Find the smallest free block that fits, then split it down to the requested size class
+        int available = order;
+        while (available <= MAX_ORDER && freeBlockCounts[available] == 0) {
+            available++;
+        }
+        if (available > MAX_ORDER) {
+            return -1;
+        }
+
+        int index = takeFreeBlock(available);
+        while (available > order) {
+            available--;
+            index <<= 1;
+            setFree(index + 1, available);
+        }
+
+        return index << (MIN_BLOCK_SHIFT + order);
+    }
+
+    private void freeBlock(int offset, int order) {
+        int index = offset >> (MIN_BLOCK_SHIFT + order);
+
+        // Merge with the block's buddy for as long as the buddy is free
+        while (order < MAX_ORDER && isFree(index ^ 1, order)) {
+            clearFree(index ^ 1, order);
+            index >>= 1;
+            order++;
+        }
+
+        setFree(index, order);
+    }
+
+    private int takeFreeBlock(int order) {
+        long[] bitmap = freeBitmaps[order];
+        for (int word = 0; word < bitmap.length; word++) {
+            if (bitmap[word] != 0) {
+                int index = word << 6 | Long.numberOfTrailingZeros(bitmap[word]);
+                clearFree(index, order);
+                return index;
+            }
+        }
+        throw new IllegalStateException("Free block count is out of sync with the free bitmap");
+    }
+
+    private boolean isFree(int index, int order) {
+        long[] bitmap = freeBitmaps[order];
+        int word = index >> 6;
+        return word < bitmap.length && (bitmap[word] & (1L << index)) != 0;
+    }
+
+    private void setFree(int index, int order) {
+        freeBitmaps[order][index >> 6] |= 1L << index;
+        freeBlockCounts[order]++;
+    }
+
+    private void clearFree(int index, int order) {
+        freeBitmaps[order][index >> 6] &= ~(1L << index);
+        freeBlockCounts[order]--;
+    }
+}
@@ -1,37 +1,31 @@
 package rs117.hd.model;
 
-import lombok.extern.slf4j.Slf4j;
-
 import java.nio.IntBuffer;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 
-@Slf4j
-class IntBufferCache extends LinkedHashMap<Integer, IntBuffer> {
+class IntBufferCache extends BufferCache<IntBuffer> {
     private final BufferPool bufferPool;
 
     public IntBufferCache(BufferPool bufferPool) {
-        super(512, 0.7f, true);
+        super(512);
         this.bufferPool = bufferPool;
     }
 
-    public boolean makeRoom() {
-        Iterator<IntBuffer> iterator = super.values().iterator();
-        if (iterator.hasNext()) {
-            this.bufferPool.putIntBuffer(iterator.next());
-            iterator.remove();
-            return true;
-        }
+    @Override
+    protected void recycle(IntBuffer buffer) {
+        this.bufferPool.putIntBuffer(buffer);
+    }
 
-        return false;
+    /**
+     * Evict every buffer taken from the given chunk of the pool, so the chunk can be released.
+     *
+     * @return the number of entries evicted
+     */
+    public int evictChunk(int chunk) {
+        return evictIf(buffer -> this.bufferPool.isInChunk(buffer, chunk));
     }
 
     @Override
-    public void clear() {
-        Iterator<IntBuffer> iterator = super.values().iterator();
-        while (iterator.hasNext()) {
-            this.bufferPool.putIntBuffer(iterator.next());
-            iterator.remove();
-        }
+    protected long sizeOf(IntBuffer buffer) {
+        return (long) buffer.capacity() * Integer.BYTES;
     }
 }
@@ -1,9 +1,12 @@
 package rs117.hd.model;
 
 import lombok.extern.slf4j.Slf4j;
+import rs117.hd.utils.HDUtils;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
 
 @Slf4j
 public class ModelCache {
@@ -11,10 +14,24 @@ public class ModelCache {
     public static final long MiB = 1024 * KiB;
     public static final long GiB = 1024 * MiB;
 
+    // How long a chunk of the buffer pool must have been empty before it's released
+    private static final long CHUNK_COOLDOWN_NANOS = 60_000_000_000L;
+    private static final long MEMORY_CHECK_INTERVAL_NANOS = 5_000_000_000L;
+
     private final BufferPool bufferPool;
     private final IntBufferCache vertexDataCache;
+    private final IntBufferCache colorDataCache;
     private final FloatBufferCache normalDataCache;
     private final FloatBufferCache uvDataCache;
+    private final BufferCache<?>[] caches;
+    private final FrequencySketch frequencySketch;
+    private final IntFunction<IntBuffer> intBufferAllocator = this::takeIntBuffer;
+    private final IntFunction<FloatBuffer> floatBufferAllocator = this::takeFloatBuffer;
+    private DiskModelCache diskCache;
+
+    // How much of the previous demand estimate to keep each frame when balancing the caches
+    private float demandSmoothing = .9f;
+    private long lastMemoryCheck = System.nanoTime();
 
     public ModelCache(int modelCacheSizeMiB) {
         // Limit cache size to 512MiB for 32-bit
@@ -39,13 +56,19 @@ public class ModelCache {
             log.warn("Unable to check physical memory size: " + e);
         }
 
+        // The pool only grows as far as the off-heap memory budget allows
         this.bufferPool = new BufferPool(modelCacheSizeMiB * MiB);
         this.vertexDataCache = new IntBufferCache(this.bufferPool);
+        this.colorDataCache = new IntBufferCache(this.bufferPool);
         this.normalDataCache = new FloatBufferCache(this.bufferPool);
         this.uvDataCache = new FloatBufferCache(this.bufferPool);
+        this.caches = new BufferCache<?>[] { vertexDataCache, colorDataCache, normalDataCache, uvDataCache };
+        // Size the sketch for an average entry of around 16 KiB
+        this.frequencySketch = new FrequencySketch((int) Math.min(modelCacheSizeMiB * MiB / (16 * KiB), 1 << 24));
     }
 
     public void destroy() {
+        closeDiskCache();
         clear();
 
         if (this.bufferPool != null) {
@@ -53,69 +76,276 @@ public class ModelCache {
         }
     }
 
-    public IntBuffer getVertexData(int hash) {
-        return this.vertexDataCache.get(hash);
+    /**
+     * Give memory back by releasing chunks of the buffer pool, starting with whichever chunk holds the least data.
+     * Everything cached in a chunk is evicted before it's released.
+     *
+     * @param bytes how many bytes should ideally be freed
+     * @return how many bytes were actually freed
+     */
+    public long releaseMemory(long bytes) {
+        long released = 0;
+        while (released < bytes && this.bufferPool.getChunkCount() > 0) {
+            int chunk = this.bufferPool.getLeastUsedChunk();
+            this.vertexDataCache.evictChunk(chunk);
+            this.colorDataCache.evictChunk(chunk);
+            this.normalDataCache.evictChunk(chunk);
+            this.uvDataCache.evictChunk(chunk);
+            if (this.bufferPool.getChunkBytesAllocated(chunk) != 0) {
+                // Some buffer taken from the chunk is still in use outside of the cache
+                break;
+            }
+            released += this.bufferPool.releaseChunk(chunk);
+        }
+
+        if (released > 0) {
+            log.info("Released {} MiB of the model cache due to off-heap memory pressure", released / MiB);
+        }
+        return released;
     }
 
-    public void putVertexData(int hash, IntBuffer data) {
+    public IntBuffer getVertexData(long hash) {
+        this.frequencySketch.increment(hash);
+        IntBuffer data = this.vertexDataCache.get(hash);
+        if (data == null && this.diskCache != null) {
+            data = this.diskCache.readIntBuffer(DiskModelCache.KIND_VERTEX, hash, this.intBufferAllocator);
+            if (data != null) {
+                this.vertexDataCache.put(hash, data);
+            }
+        }
+        return data;
+    }
+
+    public void putVertexData(long hash, IntBuffer data) {
         this.vertexDataCache.put(hash, data);
+        if (this.diskCache != null) {
+            this.diskCache.write(DiskModelCache.KIND_VERTEX, hash, data);
+        }
+    }
+
+    public IntBuffer getColorData(long hash) {
+        this.frequencySketch.increment(hash);
+        IntBuffer data = this.colorDataCache.get(hash);
+        if (data == null && this.diskCache != null) {
+            data = this.diskCache.readIntBuffer(DiskModelCache.KIND_COLOR, hash, this.intBufferAllocator);
+            if (data != null) {
+                this.colorDataCache.put(hash, data);
+            }
+        }
+        return data;
+    }
+
+    public void putColorData(long hash, IntBuffer data) {
+        this.colorDataCache.put(hash, data);
+        if (this.diskCache != null) {
+            this.diskCache.write(DiskModelCache.KIND_COLOR, hash, data);
+        }
     }
 
-    public FloatBuffer getNormalData(int hash) {
-        return this.normalDataCache.get(hash);
+    public FloatBuffer getNormalData(long hash) {
+        this.frequencySketch.increment(hash);
+        FloatBuffer data = this.normalDataCache.get(hash);
+        if (data == null && this.diskCache != null) {
+            data = this.diskCache.readFloatBuffer(DiskModelCache.KIND_NORMAL, hash, this.floatBufferAllocator);
+            if (data != null) {
+                this.normalDataCache.put(hash, data);
+            }
+        }
+        return data;
     }
 
-    public void putNormalData(int hash, FloatBuffer data) {
+    public void putNormalData(long hash, FloatBuffer data) {
         this.normalDataCache.put(hash, data);
+        if (this.diskCache != null) {
+            this.diskCache.write(DiskModelCache.KIND_NORMAL, hash, data);
+        }
     }
 
-    public FloatBuffer getUvData(int hash) {
-        return this.uvDataCache.get(hash);
+    public FloatBuffer getUvData(long hash) {
+        this.frequencySketch.increment(hash);
+        FloatBuffer data = this.uvDataCache.get(hash);
+        if (data == null && this.diskCache != null) {
+            data = this.diskCache.readFloatBuffer(DiskModelCache.KIND_UV, hash, this.floatBufferAllocator);
+            if (data != null) {
+                this.uvDataCache.put(hash, data);
+            }
+        }
+        return data;
     }
 
-    public void putUvData(int hash, FloatBuffer data) {
+    public void putUvData(long hash, FloatBuffer data) {
         this.uvDataCache.put(hash, data);
+        if (this.diskCache != null) {
+            this.diskCache.write(DiskModelCache.KIND_UV, hash, data);
+        }
+    }
+
+    /**
+     * TinyLFU admission: once the pool is full, new data is only worth caching if it has been requested more often
+     * than the entry it would end up evicting. This keeps one-off models, like the frames of a rarely seen animation,
+     * from pushing out models which are drawn all the time, and saves copying them into the cache at all.
+     *
+     * @param hash  the key the data would be cached under, which should already have been looked up
+     * @param bytes the size of the data
+     */
+    public boolean shouldAdmit(long hash, long bytes) {
+        if (this.bufferPool.hasFreeBlock(bytes)) {
+            return true;
+        }
+
+        BufferCache<?> victim = this.pickVictimCache();
+        return victim == null || this.frequencySketch.frequency(hash) > this.frequencySketch.frequency(victim.peekVictimKey());
     }
 
     public IntBuffer takeIntBuffer(int capacity) {
-        if (this.bufferPool.isEmpty()) {
-            if(!this.makeRoom()) {
+        IntBuffer buffer = this.bufferPool.takeIntBuffer(capacity);
+        // Evicting a single entry may not free up a large enough block, so keep going until one fits
+        while (buffer == null) {
+            if (!this.makeRoom()) {
                 log.error("failed to make room for int buffer");
+                return null;
             }
+            buffer = this.bufferPool.takeIntBuffer(capacity);
         }
 
-        return this.bufferPool.takeIntBuffer(capacity);
+        return buffer;
     }
 
     public FloatBuffer takeFloatBuffer(int capacity) {
-        if (this.bufferPool.isEmpty()) {
-            if(!this.makeRoom()) {
+        FloatBuffer buffer = this.bufferPool.takeFloatBuffer(capacity);
+        while (buffer == null) {
+            if (!this.makeRoom()) {
                 log.error("failed to make room for float buffer");
+                return null;
             }
+            buffer = this.bufferPool.takeFloatBuffer(capacity);
         }
 
-        return this.bufferPool.takeFloatBuffer(capacity);
+        return buffer;
     }
 
-    // a more idealized way to balance the caches might look like:
-    // 1) count the number of gets for vertex, normal, and uv data on each frame
-    // 2) use the data from the previous frame to determine the cache usage for the scene (e.g. 85% vertex, 10% normal, 5% uv)
-    // 3) makeRoom here based on those weights to try and reactively match the cache pressure with usage
+    /**
+     * Evict an entry from whichever cache holds the most memory relative to how often it has been used in recent
+     * frames, so the split between vertex, color, normal and UV data follows the demand of the current scene.
+     */
     public boolean makeRoom() {
-        if (this.uvDataCache.size() * 16 > this.normalDataCache.size() && this.normalDataCache.size() > 0) {
-            return this.uvDataCache.makeRoom();
-        } else if (this.normalDataCache.size() * 2 > this.vertexDataCache.size()) {
-            return this.normalDataCache.makeRoom();
-        } else {
-            return this.vertexDataCache.makeRoom();
+        BufferCache<?> victim = this.pickVictimCache();
+        return victim != null && victim.makeRoom();
+    }
+
+    private BufferCache<?> pickVictimCache() {
+        BufferCache<?> victim = null;
+        double victimBytesPerGet = -1;
+        for (BufferCache<?> cache : this.caches) {
+            if (cache.size() == 0) {
+                continue;
+            }
+
+            // Offset by one get, so caches which haven't been used recently are the first to go
+            double bytesPerGet = cache.getBytesCached() / (cache.getStats().getSmoothedGets() + 1.);
+            if (bytesPerGet > victimBytesPerGet) {
+                victim = cache;
+                victimBytesPerGet = bytesPerGet;
+            }
+        }
+
+        return victim;
+    }
+
+    /**
+     * Roll the access counters of each cache over to a new frame.
+     */
+    public void endFrame() {
+        for (BufferCache<?> cache : this.caches) {
+            cache.getStats().endFrame(this.demandSmoothing);
+        }
+
+        long now = System.nanoTime();
+        long idleBefore = now - CHUNK_COOLDOWN_NANOS;
+        if (now - this.lastMemoryCheck >= MEMORY_CHECK_INTERVAL_NANOS) {
+            this.lastMemoryCheck = now;
+            // Don't wait for the cooldown while the system is running low on memory
+            if (isSystemMemoryLow()) {
+                idleBefore = now;
+            }
+        }
+
+        long released = this.bufferPool.releaseIdleChunks(idleBefore);
+        if (released > 0) {
+            log.debug("Released {} MiB of idle model cache memory", released / MiB);
+        }
+    }
+
+    private static boolean isSystemMemoryLow() {
+        try {
+            com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean)
+                java.lang.management.ManagementFactory.getOperatingSystemMXBean();
+            return os.getFreePhysicalMemorySize() < os.getTotalPhysicalMemorySize() / 20;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param smoothing how much of the previous demand estimate to keep each frame, between 0 and 1
+     */
+    public void setDemandSmoothing(float smoothing) {
+        this.demandSmoothing = HDUtils.clamp(smoothing, 0, 1);
+    }
+
+    public CacheStats getVertexDataStats() {
+        return this.vertexDataCache.getStats();
+    }
+
+    public CacheStats getColorDataStats() {
+        return this.colorDataCache.getStats();
+    }
+
+    public CacheStats getNormalDataStats() {
+        return this.normalDataCache.getStats();
+    }
+
+    public CacheStats getUvDataStats() {
+        return this.uvDataCache.getStats();
+    }
+
+    /**
+     * Back the cache with a file on disk, which persists model data across sessions. Data missing from memory is
+     * looked up on disk, and data put into the cache is written to disk in the background.
+     *
+     * @param capacity     the maximum size of the file in bytes
+     * @param versionStamp identifies everything the cached data depends on, and existing data with a different
+     *                     stamp is discarded
+     */
+    public void openDiskCache(Path path, int capacity, long versionStamp) {
+        if (this.diskCache != null && this.diskCache.matches(path, capacity, versionStamp)) {
+            return;
+        }
+
+        closeDiskCache();
+        this.diskCache = new DiskModelCache(path, capacity, versionStamp);
+    }
+
+    public void closeDiskCache() {
+        if (this.diskCache != null) {
+            this.diskCache.close();
+            this.diskCache = null;
         }
     }
 
+    public BufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
     public void clear() {
         if (this.vertexDataCache != null) {
             this.vertexDataCache.clear();
         }
 
+        if (this.colorDataCache != null) {
+            this.colorDataCache.clear();
+        }
+
         if (this.normalDataCache != null) {
             this.normalDataCache.clear();
         }
@@ -0,0 +1,183 @@
+package rs117.hd.model;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A debugging aid which spot-checks cache hits against freshly pushed data, to find out how often two different
+ * models end up with the same cache key. Every so often, {@link ModelPusher} hands the verifier whatever the cache
+ * returned, treats the hits as misses, pushes the model from scratch, and has the verifier compare the two. How many
+ * of the checks turned up different data is logged periodically.
+ */
+@Slf4j
+class ModelCacheVerifier {
+    private static final String[] KIND_NAMES = { "vertex", "color", "normal", "uv" };
+    private static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final int sampleInterval;
+    private int untilNextSample;
+    private final long[] checks = new long[KIND_NAMES.length];
+    private final long[] mismatches = new long[KIND_NAMES.length];
+    private long lastReport = System.nanoTime();
+
+    // Copies of the cached data, since the cached buffers may be evicted and reused before the model has been pushed
+    private final int[][] captured = new int[KIND_NAMES.length][];
+    private final int[] capturedLength = new int[KIND_NAMES.length];
+
+    /**
+     * @param sampleInterval how many pushes to skip between each verified push
+     */
+    ModelCacheVerifier(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+        this.untilNextSample = sampleInterval;
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            captured[kind] = new int[0];
+        }
+    }
+
+    /**
+     * Start verifying a push if it's time for the next sample, forgetting any previously captured data.
+     *
+     * @return whether the model about to be pushed should be verified
+     */
+    boolean sample() {
+        if (--untilNextSample > 0) {
+            return false;
+        }
+        untilNextSample = sampleInterval;
+        Arrays.fill(capturedLength, -1);
+        return true;
+    }
+
+    /**
+     * Remember the remaining contents of a cache hit, without moving the buffer's position.
+     *
+     * @param kind one of the {@link DiskModelCache} kinds
+     * @param data the cached data, or null if nothing was cached
+     */
+    void capture(int kind, IntBuffer data) {
+        if (data == null) {
+            return;
+        }
+
+        int length = data.remaining();
+        int[] copy = reserve(kind, length);
+        for (int i = 0; i < length; i++) {
+            copy[i] = data.get(data.position() + i);
+        }
+        capturedLength[kind] = length;
+    }
+
+    /**
+     * Remember the remaining contents of a cache hit, without moving the buffer's position.
+     *
+     * @param kind one of the {@link DiskModelCache} kinds
+     * @param data the cached data, or null if nothing was cached
+     */
+    void capture(int kind, FloatBuffer data) {
+        if (data == null) {
+            return;
+        }
+
+        int length = data.remaining();
+        int[] copy = reserve(kind, length);
+        for (int i = 0; i < length; i++) {
+            // Compare the bits, so NaNs match themselves
+            copy[i] = Float.floatToIntBits(data.get(data.position() + i));
+        }
+        capturedLength[kind] = length;
+    }
+
+    /**
+     * Compare the captured data with ints which have just been pushed, picking one component out of every stride.
+     *
+     * @param kind   one of the {@link DiskModelCache} kinds
+     * @param offset where the freshly pushed data starts
+     * @param length how many values were pushed, after picking out the component
+     */
+    void verify(int kind, IntBuffer pushed, int offset, int length, int stride, int component) {
+        if (capturedLength[kind] == -1) {
+            return;
+        }
+
+        int[] copy = captured[kind];
+        boolean matches = capturedLength[kind] == length;
+        for (int i = 0; matches && i < length; i++) {
+            matches = copy[i] == pushed.get(offset + i * stride + component);
+        }
+        record(kind, matches);
+    }
+
+    /**
+     * Compare the captured data with floats which have just been pushed.
+     *
+     * @param kind   one of the {@link DiskModelCache} kinds
+     * @param offset where the freshly pushed data starts
+     * @param length how many values were pushed
+     */
+    void verify(int kind, FloatBuffer pushed, int offset, int length) {
+        if (capturedLength[kind] == -1) {
+            return;
+        }
+
+        int[] copy = captured[kind];
+        boolean matches = capturedLength[kind] == length;
+        for (int i = 0; matches && i < length; i++) {
+            matches = copy[i] == Float.floatToIntBits(pushed.get(offset + i));
+        }
+        record(kind, matches);
+    }
+
+    long getChecks(int kind) {
+        return checks[kind];
+    }
+
+    long getMismatches(int kind) {
+        return mismatches[kind];
+    }
+
+    private void record(int kind, boolean matches) {
+        checks[kind]++;
+        if (!matches) {
+            mismatches[kind]++;
+        }
+
+        long now = System.nanoTime();
+        if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+            lastReport = now;
+            report();
+        }
+    }
+
+    private void report() {
+        StringBuilder sb = new StringBuilder("Model cache verification:");
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            sb.append(String.format(" %s %d/%d (%.4f%%)", KIND_NAMES[kind], mismatches[kind], checks[kind],
+                checks[kind] == 0 ? 0 : 100. * mismatches[kind] / checks[kind]));
+        }
+        if (hasMismatches()) {
+            log.warn("{}", sb);
+        } else {
+            log.info("{}", sb);
+        }
+    }
+
+    private int[] reserve(int kind, int length) {
+        if (captured[kind].length < length) {
+            captured[kind] = new int[length];
+        }
+        return captured[kind];
+    }
+
+    private boolean hasMismatches() {
+        for (long count : mismatches) {
+            if (count > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+package rs117.hd.model;
+
+import net.runelite.api.Model;
+
+/**
+ * The parts of a {@link Model} which {@link ModelPusher} reads while pushing it. This either refers straight to the
+ * model's own arrays, or holds a copy of them for models which are pushed later on, since the client reuses the same
+ * arrays for many of its temporary models, overwriting them long before the end of the frame.
+ * <p>
+ * An instance should only ever be used with one of {@link #set} or {@link #copy}, since copying reuses the arrays
+ * it already holds.
+ */
+class ModelData {
+    int faceCount;
+    int[] verticesX;
+    int[] verticesY;
+    int[] verticesZ;
+    int[] faceIndices1;
+    int[] faceIndices2;
+    int[] faceIndices3;
+    int[] faceColors1;
+    int[] faceColors2;
+    int[] faceColors3;
+    int[] vertexNormalsX;
+    int[] vertexNormalsY;
+    int[] vertexNormalsZ;
+    byte[] faceTransparencies;
+    short[] faceTextures;
+    float[] faceTextureUVCoordinates;
+    byte[] faceRenderPriorities;
+    byte overrideAmount;
+    byte overrideHue;
+    byte overrideSaturation;
+    byte overrideLuminance;
+
+    /**
+     * Refer to the model's arrays, which must not change until the model has been pushed.
+     */
+    void set(Model model) {
+        faceCount = model.getFaceCount();
+        verticesX = model.getVerticesX();
+        verticesY = model.getVerticesY();
+        verticesZ = model.getVerticesZ();
+        faceIndices1 = model.getFaceIndices1();
+        faceIndices2 = model.getFaceIndices2();
+        faceIndices3 = model.getFaceIndices3();
+        faceColors1 = model.getFaceColors1();
+        faceColors2 = model.getFaceColors2();
+        faceColors3 = model.getFaceColors3();
+        vertexNormalsX = model.getVertexNormalsX();
+        vertexNormalsY = model.getVertexNormalsY();
+        vertexNormalsZ = model.getVertexNormalsZ();
+        faceTransparencies = model.getFaceTransparencies();
+        faceTextures = model.getFaceTextures();
+        faceTextureUVCoordinates = model.getFaceTextureUVCoordinates();
+        faceRenderPriorities = model.getFaceRenderPriorities();
+        overrideAmount = model.getOverrideAmount();
+        overrideHue = model.getOverrideHue();
+        overrideSaturation = model.getOverrideSaturation();
+        overrideLuminance = model.getOverrideLuminance();
+    }
+
+    /**
+     * Copy the parts of the model's arrays which are in use, so the model may change afterwards.
+     *
+     * @param faceCount the number of faces to copy
+     */
+    void copy(Model model, int faceCount) {
+        int vertexCount = model.getVerticesCount();
+        this.faceCount = faceCount;
+        verticesX = copy(model.getVerticesX(), verticesX, vertexCount);
+        verticesY = copy(model.getVerticesY(), verticesY, vertexCount);
+        verticesZ = copy(model.getVerticesZ(), verticesZ, vertexCount);
+        faceIndices1 = copy(model.getFaceIndices1(), faceIndices1, faceCount);
+        faceIndices2 = copy(model.getFaceIndices2(), faceIndices2, faceCount);
+        faceIndices3 = copy(model.getFaceIndices3(), faceIndices3, faceCount);
+        faceColors1 = copy(model.getFaceColors1(), faceColors1, faceCount);
+        faceColors2 = copy(model.getFaceColors2(), faceColors2, faceCount);
+        faceColors3 = copy(model.getFaceColors3(), faceColors3, faceCount);
+        vertexNormalsX = copy(model.getVertexNormalsX(), vertexNormalsX, vertexCount);
+        vertexNormalsY = copy(model.getVertexNormalsY(), vertexNormalsY, vertexCount);
+        vertexNormalsZ = copy(model.getVertexNormalsZ(), vertexNormalsZ, vertexCount);
+        faceTransparencies = copy(model.getFaceTransparencies(), faceTransparencies, faceCount);
+        faceTextures = copy(model.getFaceTextures(), faceTextures, faceCount);
+        faceTextureUVCoordinates = copy(model.getFaceTextureUVCoordinates(), faceTextureUVCoordinates, faceCount * 6);
+        faceRenderPriorities = copy(model.getFaceRenderPriorities(), faceRenderPriorities, faceCount);
+        overrideAmount = model.getOverrideAmount();
+        overrideHue = model.getOverrideHue();
+        overrideSaturation = model.getOverrideSaturation();
+        overrideLuminance = model.getOverrideLuminance();
+    }
+
+    private static int[] copy(int[] src, int[] dst, int length) {
+        if (src == null) {
+            return null;
+        }
+        length = Math.min(length, src.length);
+        if (dst == null || dst.length < length) {
+            dst = new int[length];
+        }
+        System.arraycopy(src, 0, dst, 0, length);
+        return dst;
+    }
+
+    private static short[] copy(short[] src, short[] dst, int length) {
+        if (src == null) {
+            return null;
+        }
+        length = Math.min(length, src.length);
+        if (dst == null || dst.length < length) {
+            dst = new short[length];
+        }
+        System.arraycopy(src, 0, dst, 0, length);
+        return dst;
+    }
+
+    private static byte[] copy(byte[] src, byte[] dst, int length) {
+        if (src == null) {
+            return null;
+        }
+        length = Math.min(length, src.length);
+        if (dst == null || dst.length < length) {
+            dst = new byte[length];
+        }
+        System.arraycopy(src, 0, dst, 0, length);
+        return dst;
+    }
+
+    private static float[] copy(float[] src, float[] dst, int length) {
+        if (src == null) {
+            return null;
+        }
+        length = Math.min(length, src.length);
+        if (dst == null || dst.length < length) {
+            dst = new float[length];
+        }
+        System.arraycopy(src, 0, dst, 0, length);
+        return dst;
+    }
+}
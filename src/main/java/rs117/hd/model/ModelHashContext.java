@@ -0,0 +1,319 @@
+package rs117.hd.model;
+
+import lombok.NonNull;
+import net.runelite.api.Model;
+import rs117.hd.scene.model_overrides.ModelOverride;
+
+import static rs117.hd.model.ModelHasher.fastByteHash64;
+import static rs117.hd.model.ModelHasher.fastFloatHash64;
+import static rs117.hd.model.ModelHasher.fastIntHash64;
+import static rs117.hd.model.ModelHasher.fastShortHash64;
+
+/**
+ * Calculates the cache keys of one model at a time, without allocating anything. Each hash of a model array is only
+ * calculated once it's first needed, and then reused by every cache key which depends on it, until the next model is
+ * set. A context is not thread-safe, so each thread hashing models needs its own.
+ */
+public class ModelHashContext {
+    private static final int FACE_COLORS_ONE = 1;
+    private static final int FACE_COLORS_TWO = 1 << 1;
+    private static final int FACE_COLORS_THREE = 1 << 2;
+    private static final int FACE_TRANSPARENCIES = 1 << 3;
+    private static final int FACE_TEXTURES = 1 << 4;
+    private static final int FACE_TEXTURES_UV = 1 << 5;
+    private static final int X_VERTICES = 1 << 6;
+    private static final int Y_VERTICES = 1 << 7;
+    private static final int Z_VERTICES = 1 << 8;
+    private static final int FACE_INDICES_ONE = 1 << 9;
+    private static final int FACE_INDICES_TWO = 1 << 10;
+    private static final int FACE_INDICES_THREE = 1 << 11;
+    private static final int X_VERTEX_NORMALS = 1 << 12;
+    private static final int Y_VERTEX_NORMALS = 1 << 13;
+    private static final int Z_VERTEX_NORMALS = 1 << 14;
+
+    static final long SEED = 0x27D4EB2F165667C5L;
+
+    private Model model;
+    // Optionally skips rehashing arrays which were hashed on a recent frame
+    private ModelHashMemo memo;
+    // Whether the current model's arrays can be trusted not to change. Otherwise, only the arrays animations don't
+    // overwrite may be looked up in the memo, and only after checking their fingerprints
+    private boolean immutable;
+    // Which of the hashes below have been calculated for the current model
+    private int calculated;
+
+    private long faceColorsOneHash;
+    private long faceColorsTwoHash;
+    private long faceColorsThreeHash;
+    private long faceTransparenciesHash;
+    private long faceTexturesHash;
+    private long faceTexturesUvHash;
+    private long xVerticesHash;
+    private long yVerticesHash;
+    private long zVerticesHash;
+    private long faceIndicesOneHash;
+    private long faceIndicesTwoHash;
+    private long faceIndicesThreeHash;
+    private long xVertexNormalsHash;
+    private long yVertexNormalsHash;
+    private long zVertexNormalsHash;
+
+    void setMemo(ModelHashMemo memo) {
+        this.memo = memo;
+    }
+
+    public void setModel(Model model) {
+        setModel(model, false);
+    }
+
+    /**
+     * @param immutable whether the model's arrays are known never to be changed by the client, in which case all of
+     *                  their hashes may be remembered across frames. Otherwise, only the hashes of arrays animations
+     *                  don't overwrite are remembered, like the faces, colors and textures of animated models
+     */
+    public void setModel(Model model, boolean immutable) {
+        this.model = model;
+        this.immutable = immutable;
+        this.calculated = 0;
+    }
+
+    public long calculateVertexCacheHash() {
+        long hash = SEED;
+        hash = combine(hash, faceColorsOneHash());
+        hash = combine(hash, faceColorsTwoHash());
+        hash = combine(hash, faceColorsThreeHash());
+        hash = combine(hash, faceTransparenciesHash());
+        hash = combine(hash, faceTexturesHash());
+        hash = combine(hash, faceTexturesUvHash());
+        hash = combine(hash, model.getOverrideAmount());
+        hash = combine(hash, model.getOverrideHue());
+        hash = combine(hash, model.getOverrideSaturation());
+        hash = combine(hash, model.getOverrideLuminance());
+        hash = combine(hash, faceIndicesOneHash());
+        hash = combine(hash, faceIndicesTwoHash());
+        hash = combine(hash, faceIndicesThreeHash());
+        hash = combine(hash, xVerticesHash());
+        hash = combine(hash, yVerticesHash());
+        hash = combine(hash, zVerticesHash());
+        return ModelHasher.avalanche(hash);
+    }
+
+    public long calculateNormalCacheHash() {
+        long hash = SEED;
+        hash = combine(hash, faceIndicesOneHash());
+        hash = combine(hash, faceIndicesTwoHash());
+        hash = combine(hash, faceIndicesThreeHash());
+        hash = combine(hash, xVertexNormalsHash());
+        hash = combine(hash, yVertexNormalsHash());
+        hash = combine(hash, zVertexNormalsHash());
+        return ModelHasher.avalanche(hash);
+    }
+
+    public long calculateUvCacheHash(int orientation, @NonNull ModelOverride modelOverride) {
+        long hash = SEED;
+        hash = combine(hash, orientation);
+        hash = combine(hash, faceTexturesHash());
+        hash = combine(hash, faceTexturesUvHash());
+        hash = combine(hash, modelOverride.hashCode());
+        return ModelHasher.avalanche(hash);
+    }
+
+    /**
+     * Hashes everything the per-vertex colors depend on, except for vertex positions unless they're requested.
+     * Vanilla shading is reversed using vertex normals, so those are always included, while positions only affect
+     * colors for flat-normal models, TzHaar recoloring and baked shading removal.
+     */
+    public long calculateColorCacheHash(@NonNull ModelOverride modelOverride, boolean includeVertexPositions) {
+        long hash = SEED;
+        hash = combine(hash, faceColorsOneHash());
+        hash = combine(hash, faceColorsTwoHash());
+        hash = combine(hash, faceColorsThreeHash());
+        hash = combine(hash, faceTransparenciesHash());
+        hash = combine(hash, faceTexturesHash());
+        hash = combine(hash, faceTexturesUvHash());
+        hash = combine(hash, model.getOverrideAmount());
+        hash = combine(hash, model.getOverrideHue());
+        hash = combine(hash, model.getOverrideSaturation());
+        hash = combine(hash, model.getOverrideLuminance());
+        hash = combine(hash, faceIndicesOneHash());
+        hash = combine(hash, faceIndicesTwoHash());
+        hash = combine(hash, faceIndicesThreeHash());
+        hash = combine(hash, xVertexNormalsHash());
+        hash = combine(hash, yVertexNormalsHash());
+        hash = combine(hash, zVertexNormalsHash());
+        hash = combine(hash, modelOverride.hashCode());
+        hash = combine(hash, includeVertexPositions ? xVerticesHash() : 0);
+        hash = combine(hash, includeVertexPositions ? yVerticesHash() : 0);
+        hash = combine(hash, includeVertexPositions ? zVerticesHash() : 0);
+        return ModelHasher.avalanche(hash);
+    }
+
+    /**
+     * Hashes everything that goes into a pushed model, for looking up models which are already resident on the GPU.
+     */
+    public long calculateGpuCacheHash(int orientation, @NonNull ModelOverride modelOverride) {
+        long hash = SEED;
+        hash = combine(hash, calculateVertexCacheHash());
+        hash = combine(hash, calculateNormalCacheHash());
+        hash = combine(hash, calculateUvCacheHash(orientation, modelOverride));
+        return ModelHasher.avalanche(hash);
+    }
+
+    public long calculateBatchHash() {
+        return calculateVertexCacheHash();
+    }
+
+    /**
+     * Fold a value into a running hash, starting from {@link #SEED}, the same way xxHash64 folds in the trailing
+     * 8-byte words of its input. Cache keys are avalanched once all values have been folded in.
+     */
+    static long combine(long hash, long value) {
+        hash ^= ModelHasher.round(0, value);
+        return Long.rotateLeft(hash, 27) * ModelHasher.PRIME64_1 + ModelHasher.PRIME64_4;
+    }
+
+    private long faceColorsOneHash() {
+        if ((calculated & FACE_COLORS_ONE) == 0) {
+            faceColorsOneHash = hashInts(model.getFaceColors1(), -1);
+            calculated |= FACE_COLORS_ONE;
+        }
+        return faceColorsOneHash;
+    }
+
+    private long faceColorsTwoHash() {
+        if ((calculated & FACE_COLORS_TWO) == 0) {
+            faceColorsTwoHash = hashInts(model.getFaceColors2(), -1);
+            calculated |= FACE_COLORS_TWO;
+        }
+        return faceColorsTwoHash;
+    }
+
+    private long faceColorsThreeHash() {
+        if ((calculated & FACE_COLORS_THREE) == 0) {
+            faceColorsThreeHash = hashInts(model.getFaceColors3(), -1);
+            calculated |= FACE_COLORS_THREE;
+        }
+        return faceColorsThreeHash;
+    }
+
+    private long faceTransparenciesHash() {
+        if ((calculated & FACE_TRANSPARENCIES) == 0) {
+            faceTransparenciesHash = hashBytes(model.getFaceTransparencies());
+            calculated |= FACE_TRANSPARENCIES;
+        }
+        return faceTransparenciesHash;
+    }
+
+    private long faceTexturesHash() {
+        if ((calculated & FACE_TEXTURES) == 0) {
+            faceTexturesHash = hashShorts(model.getFaceTextures());
+            calculated |= FACE_TEXTURES;
+        }
+        return faceTexturesHash;
+    }
+
+    private long faceTexturesUvHash() {
+        if ((calculated & FACE_TEXTURES_UV) == 0) {
+            faceTexturesUvHash = hashFloats(model.getFaceTextureUVCoordinates());
+            calculated |= FACE_TEXTURES_UV;
+        }
+        return faceTexturesUvHash;
+    }
+
+    private long xVerticesHash() {
+        if ((calculated & X_VERTICES) == 0) {
+            xVerticesHash = hashAnimatedInts(model.getVerticesX(), model.getVerticesCount());
+            calculated |= X_VERTICES;
+        }
+        return xVerticesHash;
+    }
+
+    private long yVerticesHash() {
+        if ((calculated & Y_VERTICES) == 0) {
+            yVerticesHash = hashAnimatedInts(model.getVerticesY(), model.getVerticesCount());
+            calculated |= Y_VERTICES;
+        }
+        return yVerticesHash;
+    }
+
+    private long zVerticesHash() {
+        if ((calculated & Z_VERTICES) == 0) {
+            zVerticesHash = hashAnimatedInts(model.getVerticesZ(), model.getVerticesCount());
+            calculated |= Z_VERTICES;
+        }
+        return zVerticesHash;
+    }
+
+    private long faceIndicesOneHash() {
+        if ((calculated & FACE_INDICES_ONE) == 0) {
+            faceIndicesOneHash = hashInts(model.getFaceIndices1(), -1);
+            calculated |= FACE_INDICES_ONE;
+        }
+        return faceIndicesOneHash;
+    }
+
+    private long faceIndicesTwoHash() {
+        if ((calculated & FACE_INDICES_TWO) == 0) {
+            faceIndicesTwoHash = hashInts(model.getFaceIndices2(), -1);
+            calculated |= FACE_INDICES_TWO;
+        }
+        return faceIndicesTwoHash;
+    }
+
+    private long faceIndicesThreeHash() {
+        if ((calculated & FACE_INDICES_THREE) == 0) {
+            faceIndicesThreeHash = hashInts(model.getFaceIndices3(), -1);
+            calculated |= FACE_INDICES_THREE;
+        }
+        return faceIndicesThreeHash;
+    }
+
+    private long xVertexNormalsHash() {
+        if ((calculated & X_VERTEX_NORMALS) == 0) {
+            xVertexNormalsHash = hashAnimatedInts(model.getVertexNormalsX(), -1);
+            calculated |= X_VERTEX_NORMALS;
+        }
+        return xVertexNormalsHash;
+    }
+
+    private long yVertexNormalsHash() {
+        if ((calculated & Y_VERTEX_NORMALS) == 0) {
+            yVertexNormalsHash = hashAnimatedInts(model.getVertexNormalsY(), -1);
+            calculated |= Y_VERTEX_NORMALS;
+        }
+        return yVertexNormalsHash;
+    }
+
+    private long zVertexNormalsHash() {
+        if ((calculated & Z_VERTEX_NORMALS) == 0) {
+            zVertexNormalsHash = hashAnimatedInts(model.getVertexNormalsZ(), -1);
+            calculated |= Z_VERTEX_NORMALS;
+        }
+        return zVertexNormalsHash;
+    }
+
+    private long hashInts(int[] a, int actualLength) {
+        return memo == null ? fastIntHash64(a, actualLength) : memo.intHash(a, actualLength, !immutable);
+    }
+
+    /**
+     * Hash an array which animations overwrite in place, like vertex positions, which only the arrays of immutable
+     * models can be remembered for.
+     */
+    private long hashAnimatedInts(int[] a, int actualLength) {
+        return memo == null || !immutable ? fastIntHash64(a, actualLength) : memo.intHash(a, actualLength, false);
+    }
+
+    private long hashBytes(byte[] a) {
+        // Transparencies are overwritten in place by animations which fade faces in and out
+        return memo == null || !immutable ? fastByteHash64(a) : memo.byteHash(a, false);
+    }
+
+    private long hashShorts(short[] a) {
+        return memo == null ? fastShortHash64(a) : memo.shortHash(a, !immutable);
+    }
+
+    private long hashFloats(float[] a) {
+        return memo == null ? fastFloatHash64(a) : memo.floatHash(a, !immutable);
+    }
+}
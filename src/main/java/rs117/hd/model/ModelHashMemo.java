@@ -0,0 +1,176 @@
+package rs117.hd.model;
+
+import static rs117.hd.model.ModelHasher.fastByteHash64;
+import static rs117.hd.model.ModelHasher.fastFloatHash64;
+import static rs117.hd.model.ModelHasher.fastIntHash64;
+import static rs117.hd.model.ModelHasher.fastShortHash64;
+
+/**
+ * Remembers the hashes of recently hashed model arrays by identity, so arrays which are drawn again on the following
+ * frames, like those of ground items, don't have to be hashed in full every time.
+ * <p>
+ * The client overwrites some arrays in place, most notably the vertices of animated models, and nothing short of
+ * hashing an array in full can tell whether it has changed. Arrays which may be overwritten like that must therefore
+ * never be given to the memo, which {@link ModelHashContext} takes care of. The remaining arrays of models which
+ * aren't known never to change can be verified against a fingerprint of a few sampled elements, which catches them
+ * being refilled without costing anywhere near as much as hashing them. Entries also expire a fixed number of frames
+ * after they were hashed, so the memo doesn't hold on to arrays of models which are no longer drawn.
+ * <p>
+ * The memo is direct-mapped, so it never grows, and an array simply replaces whichever entry it maps to.
+ */
+class ModelHashMemo {
+    // Hashing short arrays is cheaper than looking them up
+    static final int MIN_LENGTH = 64;
+
+    // How many elements of an array its fingerprint is made up of
+    static final int FINGERPRINT_SAMPLES = 8;
+
+    private interface ArrayHasher {
+        long hash(Object array, int length);
+
+        long element(Object array, int index);
+    }
+
+    private static final ArrayHasher INT_HASHER = new ArrayHasher() {
+        public long hash(Object array, int length) {
+            return fastIntHash64((int[]) array, length);
+        }
+
+        public long element(Object array, int index) {
+            return ((int[]) array)[index];
+        }
+    };
+
+    private static final ArrayHasher BYTE_HASHER = new ArrayHasher() {
+        public long hash(Object array, int length) {
+            return fastByteHash64((byte[]) array);
+        }
+
+        public long element(Object array, int index) {
+            return ((byte[]) array)[index];
+        }
+    };
+
+    private static final ArrayHasher SHORT_HASHER = new ArrayHasher() {
+        public long hash(Object array, int length) {
+            return fastShortHash64((short[]) array);
+        }
+
+        public long element(Object array, int index) {
+            return ((short[]) array)[index];
+        }
+    };
+
+    private static final ArrayHasher FLOAT_HASHER = new ArrayHasher() {
+        public long hash(Object array, int length) {
+            return fastFloatHash64((float[]) array);
+        }
+
+        public long element(Object array, int index) {
+            return Float.floatToRawIntBits(((float[]) array)[index]);
+        }
+    };
+
+    private final int maxAge;
+    private final int slotShift;
+    private final Object[] arrays;
+    private final int[] lengths;
+    private final long[] hashes;
+    private final long[] fingerprints;
+    private final int[] hashedFrames;
+    private int frame;
+
+    /**
+     * @param capacity the number of entries, rounded up to a power of two
+     * @param maxAge   the number of frames after which an array is hashed in full again
+     */
+    ModelHashMemo(int capacity, int maxAge) {
+        int slotCount = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.maxAge = maxAge;
+        this.slotShift = 32 - Integer.numberOfTrailingZeros(slotCount);
+        this.arrays = new Object[slotCount];
+        this.lengths = new int[slotCount];
+        this.hashes = new long[slotCount];
+        this.fingerprints = new long[slotCount];
+        this.hashedFrames = new int[slotCount];
+    }
+
+    /**
+     * Expire entries which have become too old, and let go of the arrays they refer to.
+     */
+    void nextFrame() {
+        frame++;
+        if (frame % (maxAge + 1) != 0) {
+            return;
+        }
+
+        for (int slot = 0; slot < arrays.length; slot++) {
+            if (arrays[slot] != null && isExpired(slot)) {
+                arrays[slot] = null;
+            }
+        }
+    }
+
+    /**
+     * @param verify whether the array may have been refilled since it was last hashed, in which case a remembered hash
+     *               is only used if the array still matches its fingerprint
+     */
+    long intHash(int[] a, int actualLength, boolean verify) {
+        return a == null ? 0 : hash(a, actualLength == -1 ? a.length : actualLength, INT_HASHER, verify);
+    }
+
+    long byteHash(byte[] a, boolean verify) {
+        return a == null ? 0 : hash(a, a.length, BYTE_HASHER, verify);
+    }
+
+    long shortHash(short[] a, boolean verify) {
+        return a == null ? 0 : hash(a, a.length, SHORT_HASHER, verify);
+    }
+
+    long floatHash(float[] a, boolean verify) {
+        return a == null ? 0 : hash(a, a.length, FLOAT_HASHER, verify);
+    }
+
+    private long hash(Object array, int length, ArrayHasher hasher, boolean verify) {
+        if (length < MIN_LENGTH) {
+            return hasher.hash(array, length);
+        }
+
+        int slot = slot(array);
+        if (arrays[slot] == array && lengths[slot] == length && !isExpired(slot) &&
+            (!verify || fingerprints[slot] == fingerprint(array, length, hasher))) {
+            return hashes[slot];
+        }
+        return store(slot, array, length, hasher.hash(array, length), fingerprint(array, length, hasher));
+    }
+
+    /**
+     * Sample elements spread evenly across the array, including the first and the last.
+     */
+    private static long fingerprint(Object array, int length, ArrayHasher hasher) {
+        long fingerprint = 0;
+        for (int i = 0; i < FINGERPRINT_SAMPLES; i++) {
+            int index = (int) ((long) (length - 1) * i / (FINGERPRINT_SAMPLES - 1));
+            fingerprint = fingerprint * 31 + hasher.element(array, index);
+        }
+        return fingerprint;
+    }
+
+    private int slot(Object array) {
+        // Fibonacci hashing, taking the top bits, since identity hash codes are often poorly distributed
+        return (System.identityHashCode(array) * 0x9E3779B9) >>> slotShift;
+    }
+
+    private boolean isExpired(int slot) {
+        return frame - hashedFrames[slot] > maxAge;
+    }
+
+    private long store(int slot, Object array, int length, long hash, long fingerprint) {
+        arrays[slot] = array;
+        lengths[slot] = length;
+        hashes[slot] = hash;
+        fingerprints[slot] = fingerprint;
+        hashedFrames[slot] = frame;
+        return hash;
+    }
+}
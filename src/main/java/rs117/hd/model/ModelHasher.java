@@ -6,200 +6,259 @@ import rs117.hd.scene.model_overrides.ModelOverride;
 
 import javax.inject.Singleton;
 
+/**
+ * Calculates the cache keys of models drawn on the client thread, using a {@link ModelHashContext} which is reused for
+ * every model. Any other thread hashing models needs a context of its own.
+ */
 @Singleton
 public class ModelHasher {
-    private Model model;
-    private int faceColorsOneHash;
-    private int faceColorsTwoHash;
-    private int faceColorsThreeHash;
-    private int faceTransparenciesHash;
-    private int faceTexturesHash;
-    private int faceTexturesUvHash;
-    private int xVerticesHash;
-    private int yVerticesHash;
-    private int zVerticesHash;
-    private int faceIndicesOneHash;
-    private int faceIndicesTwoHash;
-    private int faceIndicesThreeHash;
+    static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private static final int MEMO_CAPACITY = 4096;
+    private static final int MEMO_MAX_AGE = 30;
+
+    private final ModelHashContext context = new ModelHashContext();
+    private ModelHashMemo memo;
+
+    public ModelHashContext getContext() {
+        return context;
+    }
+
+    /**
+     * Enable or disable remembering the hashes of model arrays between frames, for arrays which aren't overwritten.
+     */
+    public void setMemoizing(boolean memoizing) {
+        if (memoizing == (memo != null)) {
+            return;
+        }
+
+        memo = memoizing ? new ModelHashMemo(MEMO_CAPACITY, MEMO_MAX_AGE) : null;
+        context.setMemo(memo);
+    }
+
+    /**
+     * Should be called once per frame, to expire remembered hashes.
+     */
+    public void nextFrame() {
+        if (memo != null) {
+            memo.nextFrame();
+        }
+    }
 
     public void setModel(Model model) {
-        this.model = model;
-
-        this.faceColorsOneHash = fastIntHash(model.getFaceColors1(), -1);
-        this.faceColorsTwoHash = fastIntHash(model.getFaceColors2(), -1);
-        this.faceColorsThreeHash = fastIntHash(model.getFaceColors3(), -1);
-        this.faceTransparenciesHash = fastByteHash(model.getFaceTransparencies());
-        this.faceTexturesHash = fastShortHash(model.getFaceTextures());
-        this.faceTexturesUvHash = fastFloatHash(model.getFaceTextureUVCoordinates());
-        this.xVerticesHash = fastIntHash(model.getVerticesX(), model.getVerticesCount());
-        this.yVerticesHash = fastIntHash(model.getVerticesY(), model.getVerticesCount());
-        this.zVerticesHash = fastIntHash(model.getVerticesZ(), model.getVerticesCount());
-        this.faceIndicesOneHash = fastIntHash(model.getFaceIndices1(), -1);
-        this.faceIndicesTwoHash = fastIntHash(model.getFaceIndices2(), -1);
-        this.faceIndicesThreeHash = fastIntHash(model.getFaceIndices3(), -1);
-    }
-
-    public int calculateVertexCacheHash() {
-        return fastIntHash(new int[]{
-            this.faceColorsOneHash,
-            this.faceColorsTwoHash,
-            this.faceColorsThreeHash,
-            this.faceTransparenciesHash,
-            this.faceTexturesHash,
-            this.faceTexturesUvHash,
-            this.model.getOverrideAmount(),
-            this.model.getOverrideHue(),
-            this.model.getOverrideSaturation(),
-            this.model.getOverrideLuminance(),
-            faceIndicesOneHash,
-            faceIndicesTwoHash,
-            faceIndicesThreeHash,
-            xVerticesHash,
-            yVerticesHash,
-            zVerticesHash,
-        }, -1);
-    }
-
-    public int calculateNormalCacheHash() {
-        return fastIntHash(new int[]{
-            this.faceIndicesOneHash,
-            this.faceIndicesTwoHash,
-            this.faceIndicesThreeHash,
-            fastIntHash(this.model.getVertexNormalsX(), -1),
-            fastIntHash(this.model.getVertexNormalsY(), -1),
-            fastIntHash(this.model.getVertexNormalsZ(), -1),
-        }, -1);
-    }
-
-    public int calculateUvCacheHash(int orientation, @NonNull ModelOverride modelOverride) {
-        return fastIntHash(new int[]{
-            orientation,
-            this.faceTexturesHash,
-            this.faceTexturesUvHash,
-            modelOverride.hashCode()
-        }, -1);
-    }
-
-    public int calculateColorCacheHash() {
-        return fastIntHash(new int[]{
-            this.faceColorsOneHash,
-            this.faceColorsTwoHash,
-            this.faceColorsThreeHash,
-            this.faceTransparenciesHash,
-            this.faceTexturesHash,
-            this.faceTexturesUvHash,
-            this.model.getOverrideAmount(),
-            this.model.getOverrideHue(),
-            this.model.getOverrideSaturation(),
-            this.model.getOverrideLuminance()
-        }, -1);
-    }
-
-    public int calculateBatchHash() {
-        return calculateVertexCacheHash();
-    }
-
-    public static int fastIntHash(int[] a, int actualLength) {
+        context.setModel(model);
+    }
+
+    /**
+     * @param immutable whether the model's arrays are known never to be changed by the client
+     * @see ModelHashContext#setModel(Model, boolean)
+     */
+    public void setModel(Model model, boolean immutable) {
+        context.setModel(model, immutable);
+    }
+
+    public long calculateVertexCacheHash() {
+        return context.calculateVertexCacheHash();
+    }
+
+    public long calculateNormalCacheHash() {
+        return context.calculateNormalCacheHash();
+    }
+
+    public long calculateUvCacheHash(int orientation, @NonNull ModelOverride modelOverride) {
+        return context.calculateUvCacheHash(orientation, modelOverride);
+    }
+
+    public long calculateColorCacheHash(@NonNull ModelOverride modelOverride, boolean includeVertexPositions) {
+        return context.calculateColorCacheHash(modelOverride, includeVertexPositions);
+    }
+
+    public long calculateGpuCacheHash(int orientation, @NonNull ModelOverride modelOverride) {
+        return context.calculateGpuCacheHash(orientation, modelOverride);
+    }
+
+    public long calculateBatchHash() {
+        return context.calculateBatchHash();
+    }
+
+    /**
+     * A 64-bit hash of the array in the style of xxHash64. Four independent lanes each consume two values per
+     * iteration, so the multiplications don't have to wait on each other, and the result is avalanched at the end.
+     * Unlike {@link java.util.Arrays#hashCode(int[])}, any change to the input is expected to flip about half of the output bits.
+     */
+    public static long fastIntHash64(int[] a, int actualLength) {
         if (a == null) {
             return 0;
         }
 
         int i = 0;
-        int r = 1;
         int length = a.length;
         if (actualLength != -1) {
             length = actualLength;
         }
 
-        for (; i + 5 < length; i += 6) {
-            r = 31 * 31 * 31 * 31 * 31 * 31 * r
-                + 31 * 31 * 31 * 31 * 31 * a[i]
-                + 31 * 31 * 31 * 31 * a[i + 1]
-                + 31 * 31 * 31 * a[i + 2]
-                + 31 * 31 * a[i + 3]
-                + 31 * a[i + 4]
-                + a[i + 5];
+        long h;
+        if (length >= 8) {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            for (; i + 7 < length; i += 8) {
+                v1 = round(v1, pack(a[i], a[i + 1]));
+                v2 = round(v2, pack(a[i + 2], a[i + 3]));
+                v3 = round(v3, pack(a[i + 4], a[i + 5]));
+                v4 = round(v4, pack(a[i + 6], a[i + 7]));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = PRIME64_5;
         }
 
+        h += length;
         for (; i < length; i++) {
-            r = 31 * r + a[i];
+            h = tail(h, a[i]);
         }
 
-        return r;
+        return avalanche(h);
     }
 
-    public static int fastByteHash(byte[] a) {
+    public static long fastByteHash64(byte[] a) {
         if (a == null) {
             return 0;
         }
 
         int i = 0;
-        int r = 1;
-
-        for (; i + 5 < a.length; i += 6) {
-            r = 31 * 31 * 31 * 31 * 31 * 31 * r
-                + 31 * 31 * 31 * 31 * 31 * a[i]
-                + 31 * 31 * 31 * 31 * a[i + 1]
-                + 31 * 31 * 31 * a[i + 2]
-                + 31 * 31 * a[i + 3]
-                + 31 * a[i + 4]
-                + a[i + 5];
+        int length = a.length;
+
+        long h;
+        if (length >= 16) {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            for (; i + 15 < length; i += 16) {
+                v1 = round(v1, pack(a[i], a[i + 1], a[i + 2], a[i + 3]));
+                v2 = round(v2, pack(a[i + 4], a[i + 5], a[i + 6], a[i + 7]));
+                v3 = round(v3, pack(a[i + 8], a[i + 9], a[i + 10], a[i + 11]));
+                v4 = round(v4, pack(a[i + 12], a[i + 13], a[i + 14], a[i + 15]));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = PRIME64_5;
         }
 
-        for (; i < a.length; i++) {
-            r = 31 * r + a[i];
+        h += length;
+        for (; i < length; i++) {
+            h = tail(h, a[i]);
         }
 
-        return r;
+        return avalanche(h);
     }
 
-    public static int fastShortHash(short[] a) {
+    public static long fastShortHash64(short[] a) {
         if (a == null) {
             return 0;
         }
 
         int i = 0;
-        int r = 1;
-
-        for (; i + 5 < a.length; i += 6) {
-            r = 31 * 31 * 31 * 31 * 31 * 31 * r
-                + 31 * 31 * 31 * 31 * 31 * a[i]
-                + 31 * 31 * 31 * 31 * a[i + 1]
-                + 31 * 31 * 31 * a[i + 2]
-                + 31 * 31 * a[i + 3]
-                + 31 * a[i + 4]
-                + a[i + 5];
+        int length = a.length;
+
+        long h;
+        if (length >= 8) {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            for (; i + 7 < length; i += 8) {
+                v1 = round(v1, pack(a[i], a[i + 1]));
+                v2 = round(v2, pack(a[i + 2], a[i + 3]));
+                v3 = round(v3, pack(a[i + 4], a[i + 5]));
+                v4 = round(v4, pack(a[i + 6], a[i + 7]));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = PRIME64_5;
         }
 
-        for (; i < a.length; i++) {
-            r = 31 * r + a[i];
+        h += length;
+        for (; i < length; i++) {
+            h = tail(h, a[i]);
         }
 
-        return r;
+        return avalanche(h);
     }
 
-    public static int fastFloatHash(float[] a) {
+    public static long fastFloatHash64(float[] a) {
         if (a == null) {
             return 0;
         }
 
         int i = 0;
-        int r = 1;
-
-        for (; i + 5 < a.length; i += 6) {
-            r = 31 * 31 * 31 * 31 * 31 * 31 * r
-                + 31 * 31 * 31 * 31 * 31 * Float.floatToIntBits(a[i])
-                + 31 * 31 * 31 * 31 * Float.floatToIntBits(a[i + 1])
-                + 31 * 31 * 31 * Float.floatToIntBits(a[i + 2])
-                + 31 * 31 * Float.floatToIntBits(a[i + 3])
-                + 31 * Float.floatToIntBits(a[i + 4])
-                + Float.floatToIntBits(a[i + 5]);
+        int length = a.length;
+
+        long h;
+        if (length >= 8) {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            for (; i + 7 < length; i += 8) {
+                v1 = round(v1, pack(Float.floatToIntBits(a[i]), Float.floatToIntBits(a[i + 1])));
+                v2 = round(v2, pack(Float.floatToIntBits(a[i + 2]), Float.floatToIntBits(a[i + 3])));
+                v3 = round(v3, pack(Float.floatToIntBits(a[i + 4]), Float.floatToIntBits(a[i + 5])));
+                v4 = round(v4, pack(Float.floatToIntBits(a[i + 6]), Float.floatToIntBits(a[i + 7])));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = PRIME64_5;
         }
 
-        for (; i < a.length; i++) {
-            r = 31 * r + Float.floatToIntBits(a[i]);
+        h += length;
+        for (; i < length; i++) {
+            h = tail(h, Float.floatToIntBits(a[i]));
         }
 
-        return r;
+        return avalanche(h);
+    }
+
+    static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long merge(long v1, long v2, long v3, long v4) {
+        long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = (h ^ round(0, v1)) * PRIME64_1 + PRIME64_4;
+        h = (h ^ round(0, v2)) * PRIME64_1 + PRIME64_4;
+        h = (h ^ round(0, v3)) * PRIME64_1 + PRIME64_4;
+        h = (h ^ round(0, v4)) * PRIME64_1 + PRIME64_4;
+        return h;
+    }
+
+    private static long tail(long h, int value) {
+        h ^= (value & 0xFFFFFFFFL) * PRIME64_1;
+        return Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+    }
+
+    private static long pack(int a, int b) {
+        return (long) a << 32 | (b & 0xFFFFFFFFL);
+    }
+
+    private static long pack(byte a, byte b, byte c, byte d) {
+        return (long) ((a & 0xFF) << 24 | (b & 0xFF) << 16 | (c & 0xFF) << 8 | (d & 0xFF));
     }
 }
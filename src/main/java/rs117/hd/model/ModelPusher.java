@@ -4,7 +4,9 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.kit.KitType;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
+import org.lwjgl.system.MemoryUtil;
 import rs117.hd.HdPlugin;
 import rs117.hd.HdPluginConfig;
 import rs117.hd.data.materials.Material;
@@ -15,15 +17,24 @@ import rs117.hd.scene.model_overrides.ModelOverride;
 import rs117.hd.scene.model_overrides.ObjectType;
 import rs117.hd.scene.model_overrides.TzHaarRecolorType;
 import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.utils.Env;
 import rs117.hd.utils.HDUtils;
 import rs117.hd.utils.ModelHash;
 import rs117.hd.utils.buffer.GpuFloatBuffer;
 import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.buffer.OffHeapMemory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static rs117.hd.utils.HDUtils.dotLightDirectionModel;
 
@@ -55,6 +66,36 @@ public class ModelPusher {
     public static final int DATUM_PER_FACE = 12;
     public static final int BYTES_PER_DATUM = 4;
 
+    // The client thread's model data and scratch arrays, used by pushModel and while helping out with queued models
+    private final ModelData clientModelData = new ModelData();
+    private final PushScratch clientScratch = new PushScratch();
+
+    // Models queued up to be pushed in parallel at the end of the scene draw, which are reused between frames
+    private final ArrayList<QueuedModel> queuedModels = new ArrayList<>();
+    private int queuedModelCount;
+    private final AtomicInteger nextQueuedModel = new AtomicInteger();
+    private GpuIntBuffer queuedVertexBuffer;
+    private GpuFloatBuffer queuedUvBuffer;
+    private GpuFloatBuffer queuedNormalBuffer;
+    private ExecutorService pushExecutor;
+    // One task for each worker, which pushes queued models until there are none left
+    private Runnable[] pushTasks = new Runnable[0];
+    // Registered to by the client thread for good, and by each worker for as long as it's pushing
+    private final Phaser pushPhaser = new Phaser(1);
+
+    private static final Path DISK_CACHE_PATH = RuneLite.RUNELITE_DIR.toPath().resolve("117hd").resolve("model-cache.bin");
+    // Bump this whenever the way model data is pushed changes, to invalidate data cached on disk
+    private static final int DISK_CACHE_DATA_VERSION = 1;
+    private static final int MAX_PUSH_WORKERS = 7;
+    // Set to spot-check model cache hits against freshly pushed data, and log how often they don't match
+    private static final String ENV_VERIFY_MODEL_CACHE = "RLHD_VERIFY_MODEL_CACHE";
+    private static final int VERIFY_SAMPLE_INTERVAL = 64;
+
+    private ModelCacheVerifier cacheVerifier;
+    // Shrinks the model cache whenever off-heap memory usage goes over budget
+    private final OffHeapMemory.PressureListener memoryPressureListener =
+        bytes -> modelCache == null ? 0 : modelCache.releaseMemory(bytes);
+
 
 //    private int pushes = 0;
 //    private int vertexdatahits = 0;
@@ -62,9 +103,18 @@ public class ModelPusher {
 //    private int uvdatahits = 0;
 
     public void startUp() {
+        updateParallelPushing();
+        modelHasher.setMemoizing(config.memoizeModelHashes());
+
         if (config.enableModelCaching()) {
             try {
                 modelCache = new ModelCache(config.modelCacheSizeMiB());
+                OffHeapMemory.addPressureListener(memoryPressureListener);
+                if (Env.getBooleanOrDefault(ENV_VERIFY_MODEL_CACHE, false)) {
+                    cacheVerifier = new ModelCacheVerifier(VERIFY_SAMPLE_INTERVAL);
+                }
+                updateCacheBalancing();
+                updateDiskCache();
             } catch (Throwable err) {
                 log.error("Error while initializing model cache. Stopping the plugin...", err);
                 // Allow the model pusher to be used until the plugin has cleanly shut down
@@ -74,10 +124,16 @@ public class ModelPusher {
     }
 
     public void shutDown() {
+        clearQueuedModels();
+        stopPushWorkers();
+        modelHasher.setMemoizing(false);
+        OffHeapMemory.removePressureListener(memoryPressureListener);
+
         if (modelCache != null) {
             modelCache.destroy();
             modelCache = null;
         }
+        cacheVerifier = null;
     }
 
     // subtracts the X lowest lightness levels from the formula.
@@ -91,16 +147,455 @@ public class ModelPusher {
     // same thing but for the normalBuffer and uvBuffer
     private final static float[] zeroFloats = new float[12];
     private final static int[] twoInts = new int[2];
-    private final static int[] fourInts = new int[4];
-    private final static int[] twelveInts = new int[12];
-    private final static float[] twelveFloats = new float[12];
 
     public void clearModelCache() {
         if (modelCache != null) {
             modelCache.clear();
+            // The cache is usually cleared because settings affecting the pushed data have changed
+            updateDiskCache();
+        }
+    }
+
+    /**
+     * Open, reopen or close the disk tier of the model cache, depending on the current settings.
+     */
+    public void updateDiskCache() {
+        if (modelCache == null) {
+            return;
+        }
+
+        if (!config.diskModelCache()) {
+            modelCache.closeDiskCache();
+            return;
+        }
+
+        // Include everything the pushed data depends on, besides the model and its override
+        long versionStamp = DISK_CACHE_DATA_VERSION;
+        versionStamp = versionStamp * 31 + String.valueOf(HdPlugin.class.getPackage().getImplementationVersion()).hashCode();
+        versionStamp = versionStamp * 31 + (plugin.configModelTextures ? 1 : 0);
+        versionStamp = versionStamp * 31 + (plugin.configTzhaarHD ? 1 : 0);
+        versionStamp = versionStamp * 31 + (plugin.configHideBakedEffects ? 1 : 0);
+        versionStamp = versionStamp * 31 + (plugin.configReduceOverExposure ? 1 : 0);
+
+        try {
+            modelCache.openDiskCache(DISK_CACHE_PATH, (int) (config.diskModelCacheSizeMiB() * ModelCache.MiB), versionStamp);
+        } catch (Throwable err) {
+            log.error("Error while opening the disk model cache", err);
+        }
+    }
+
+    public void updateCacheBalancing() {
+        if (modelCache != null) {
+            modelCache.setDemandSmoothing(config.modelCacheBalanceSmoothing() / 100f);
+        }
+    }
+
+    public void endFrame() {
+        if (modelCache != null) {
+            modelCache.endFrame();
+        }
+    }
+
+    /**
+     * Start or stop the worker threads used to push queued models, depending on the current settings.
+     * Without workers, queued models are pushed by the client thread alone.
+     */
+    public void updateParallelPushing() {
+        stopPushWorkers();
+
+        if (!config.parallelModelPushing()) {
+            return;
+        }
+
+        // Leave one core for the client thread, which helps out with the pushing
+        int workerCount = Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_PUSH_WORKERS);
+        if (workerCount <= 0) {
+            return;
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        pushExecutor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "117HD model pusher " + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pushTasks = new Runnable[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            PushScratch scratch = new PushScratch();
+            pushTasks[i] = () -> {
+                try {
+                    pushQueuedModels(scratch);
+                } finally {
+                    pushPhaser.arriveAndDeregister();
+                }
+            };
+        }
+    }
+
+    private void stopPushWorkers() {
+        if (pushExecutor != null) {
+            pushExecutor.shutdown();
+            pushExecutor = null;
+        }
+        pushTasks = new Runnable[0];
+    }
+
+    /**
+     * Reserve room for a model in the buffers, to be filled in by {@link #pushQueuedModels()} along with all other
+     * queued models, spread across multiple threads. Any data already in the model cache is copied over right away.
+     * Unlike {@link #pushModel}, all faces are always pushed with UVs, and the buffers must not be written to by
+     * anything else until the queued models have been pushed.
+     *
+     * @return the vertex and UV lengths reserved, same as for {@link #pushModel}
+     */
+    public int[] queueModel(
+        long hash, Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer,
+        @NonNull ModelOverride modelOverride, boolean shouldCache
+    ) {
+        if (modelCache == null) {
+            shouldCache = false;
+        }
+
+        if (queuedModelCount > 0 &&
+            (vertexBuffer != queuedVertexBuffer || uvBuffer != queuedUvBuffer || normalBuffer != queuedNormalBuffer)) {
+            throw new IllegalStateException("Models can only be queued up for one set of buffers at a time");
+        }
+        queuedVertexBuffer = vertexBuffer;
+        queuedUvBuffer = uvBuffer;
+        queuedNormalBuffer = normalBuffer;
+
+        final int faceCount = Math.min(model.getFaceCount(), HdPlugin.MAX_TRIANGLE);
+        final int bufferSize = faceCount * DATUM_PER_FACE;
+        vertexBuffer.ensureCapacity(bufferSize);
+        normalBuffer.ensureCapacity(bufferSize);
+        uvBuffer.ensureCapacity(bufferSize);
+
+        boolean cachedVertexData = false;
+        boolean cachedNormalData = false;
+        boolean cachedUvData = false;
+        long vertexDataCacheHash = 0;
+        long normalDataCacheHash = 0;
+        long uvDataCacheHash = 0;
+        long colorDataCacheHash = 0;
+
+        if (shouldCache) {
+            vertexDataCacheHash = modelHasher.calculateVertexCacheHash();
+            normalDataCacheHash = modelHasher.calculateNormalCacheHash();
+            uvDataCacheHash = modelHasher.calculateUvCacheHash(0, modelOverride);
+
+            IntBuffer vertexData = this.modelCache.getVertexData(vertexDataCacheHash);
+            cachedVertexData = vertexData != null && vertexData.remaining() == bufferSize;
+            if (cachedVertexData) {
+                vertexBuffer.put(vertexData);
+                vertexData.rewind();
+            }
+
+            FloatBuffer normalData = this.modelCache.getNormalData(normalDataCacheHash);
+            cachedNormalData = normalData != null && normalData.remaining() == bufferSize;
+            if (cachedNormalData) {
+                normalBuffer.put(normalData);
+                normalData.rewind();
+            }
+
+            FloatBuffer uvData = this.modelCache.getUvData(uvDataCacheHash);
+            cachedUvData = uvData != null && uvData.remaining() <= bufferSize;
+            if (cachedUvData) {
+                // Models without UVs still get their UVs reserved, which are left zeroed
+                FloatBuffer uvs = uvBuffer.getBuffer();
+                int padding = bufferSize - uvData.remaining();
+                uvs.put(uvData);
+                uvData.rewind();
+                MemoryUtil.memSet(MemoryUtil.memAddress(uvs), 0, (long) padding * BYTES_PER_DATUM);
+                uvs.position(uvs.position() + padding);
+            }
+
+            if (!cachedVertexData) {
+                boolean colorsDependOnPositions = modelOverride.flatNormals ||
+                    plugin.configTzhaarHD && modelOverride.tzHaarRecolorType != TzHaarRecolorType.NONE ||
+                    plugin.configHideBakedEffects && model.getFaceTransparencies() != null;
+                colorDataCacheHash = modelHasher.calculateColorCacheHash(modelOverride, colorsDependOnPositions);
+            }
+        }
+
+        twoInts[0] = faceCount * 3;
+        twoInts[1] = faceCount * 3;
+        if (cachedVertexData && cachedNormalData && cachedUvData) {
+            return twoInts;
+        }
+
+        if (queuedModelCount == queuedModels.size()) {
+            queuedModels.add(new QueuedModel());
+        }
+        QueuedModel queued = queuedModels.get(queuedModelCount++);
+        queued.data.copy(model, faceCount);
+        queued.modelOverride = modelOverride;
+        queued.cachedColorData = false;
+
+        // The buffers to cache the data in are taken up front and filled in as the data is pushed, since the
+        // buffers being pushed to may not be readable, like when they're mapped for streaming
+        final long bytes = (long) bufferSize * BYTES_PER_DATUM;
+        if (!cachedVertexData && shouldCache && this.modelCache.shouldAdmit(vertexDataCacheHash, bytes)) {
+            queued.vertexData = this.modelCache.takeIntBuffer(bufferSize);
+        }
+        if (!cachedNormalData && shouldCache && this.modelCache.shouldAdmit(normalDataCacheHash, bytes)) {
+            queued.normalData = this.modelCache.takeFloatBuffer(bufferSize);
+        }
+        if (!cachedUvData && shouldCache && this.modelCache.shouldAdmit(uvDataCacheHash, bytes)) {
+            queued.uvData = this.modelCache.takeFloatBuffer(bufferSize);
+        }
+
+        if (!cachedVertexData) {
+            // The colors can usually be reused even when the vertex data can't. They're copied out right away,
+            // since the cached data may be evicted before the queued models get pushed. This must happen after
+            // taking the other buffers, since taking a buffer may evict the cached color data
+            IntBuffer colorData = shouldCache ? this.modelCache.getColorData(colorDataCacheHash) : null;
+            int colorCount = faceCount * 3;
+            if (colorData != null && colorData.remaining() == colorCount) {
+                if (queued.colors.length < colorCount) {
+                    queued.colors = new int[colorCount];
+                }
+                colorData.get(queued.colors, 0, colorCount);
+                colorData.rewind();
+                queued.cachedColorData = true;
+            } else {
+                if (shouldCache && this.modelCache.shouldAdmit(colorDataCacheHash, (long) colorCount * BYTES_PER_DATUM)) {
+                    queued.colorData = this.modelCache.takeIntBuffer(colorCount);
+                }
+                // The client may only be accessed from the client thread, so anything the colors depend on is
+                // looked up now
+                queued.removeBakedLighting = plugin.configHideBakedEffects && shouldRemoveBakedLighting(hash, modelOverride);
+                queued.tileColorHSL = getInheritedTileColor(modelOverride, 0, 0, 0);
+            }
+        }
+        queued.faceCount = faceCount;
+        queued.shouldCache = shouldCache;
+        queued.vertexOffset = cachedVertexData ? -1 : reserve(vertexBuffer.getBuffer(), bufferSize);
+        queued.normalOffset = cachedNormalData ? -1 : reserve(normalBuffer.getBuffer(), bufferSize);
+        queued.uvOffset = cachedUvData ? -1 : reserve(uvBuffer.getBuffer(), bufferSize);
+        queued.vertexDataCacheHash = vertexDataCacheHash;
+        queued.normalDataCacheHash = normalDataCacheHash;
+        queued.uvDataCacheHash = uvDataCacheHash;
+        queued.colorDataCacheHash = colorDataCacheHash;
+
+        return twoInts;
+    }
+
+    /**
+     * Push all queued models into the space reserved for them, using the worker threads along with the calling
+     * thread, then cache their data.
+     */
+    public void pushQueuedModels() {
+        if (queuedModelCount == 0) {
+            return;
+        }
+
+        nextQueuedModel.set(0);
+
+        // Handing the tasks over to the executor makes the queued models visible to the workers
+        int helperCount = pushExecutor == null ? 0 : Math.min(pushTasks.length, queuedModelCount - 1);
+        if (helperCount > 0) {
+            pushPhaser.bulkRegister(helperCount);
+            for (int i = 0; i < helperCount; i++) {
+                pushExecutor.execute(pushTasks[i]);
+            }
+        }
+
+        pushQueuedModels(clientScratch);
+        // Wait for the workers to finish their last models
+        pushPhaser.arriveAndAwaitAdvance();
+
+        for (int i = 0; i < queuedModelCount; i++) {
+            cacheQueuedModel(queuedModels.get(i));
+        }
+
+        clearQueuedModels();
+    }
+
+    /**
+     * Forget about queued models without pushing them, which must be done whenever the buffers they're queued up
+     * for are cleared.
+     */
+    public void clearQueuedModels() {
+        for (int i = 0; i < queuedModelCount; i++) {
+            QueuedModel queued = queuedModels.get(i);
+            queued.modelOverride = null;
+            queued.tileColorHSL = null;
+            releaseCacheBuffers(queued);
+        }
+        queuedModelCount = 0;
+        queuedVertexBuffer = null;
+        queuedUvBuffer = null;
+        queuedNormalBuffer = null;
+    }
+
+    private void pushQueuedModels(PushScratch scratch) {
+        IntBuffer vertexBuffer = queuedVertexBuffer.getBuffer();
+        FloatBuffer uvBuffer = queuedUvBuffer.getBuffer();
+        FloatBuffer normalBuffer = queuedNormalBuffer.getBuffer();
+        int i;
+        while ((i = nextQueuedModel.getAndIncrement()) < queuedModelCount) {
+            QueuedModel queued = queuedModels.get(i);
+            try {
+                pushQueuedModel(queued, scratch, vertexBuffer, uvBuffer, normalBuffer);
+            } catch (Throwable err) {
+                log.error("Error while pushing queued model", err);
+                // Make sure the garbage left behind doesn't get cached
+                queued.shouldCache = false;
+            }
         }
     }
 
+    private void pushQueuedModel(QueuedModel queued, PushScratch scratch, IntBuffer vertexBuffer, FloatBuffer uvBuffer, FloatBuffer normalBuffer) {
+        final ModelData data = queued.data;
+        final ModelOverride modelOverride = queued.modelOverride;
+        int vertexOffset = queued.vertexOffset;
+        int normalOffset = queued.normalOffset;
+        int uvOffset = queued.uvOffset;
+        final IntBuffer vertexData = queued.vertexData;
+        final IntBuffer colorData = queued.colorData;
+        final FloatBuffer normalData = queued.normalData;
+        final FloatBuffer uvData = queued.uvData;
+
+        for (int face = 0; face < queued.faceCount; face++) {
+            if (vertexOffset != -1) {
+                int colorA, colorB, colorC;
+                if (queued.cachedColorData) {
+                    colorA = queued.colors[face * 3];
+                    colorB = queued.colors[face * 3 + 1];
+                    colorC = queued.colors[face * 3 + 2];
+                } else {
+                    int[] faceColors = getColorsForFace(data, modelOverride, ObjectType.NONE,
+                        queued.removeBakedLighting, queued.tileColorHSL, face, scratch);
+                    colorA = faceColors[3] | faceColors[0];
+                    colorB = faceColors[3] | faceColors[1];
+                    colorC = faceColors[3] | faceColors[2];
+                }
+                if (colorData != null) {
+                    colorData.put(face * 3, colorA);
+                    colorData.put(face * 3 + 1, colorB);
+                    colorData.put(face * 3 + 2, colorC);
+                }
+
+                int[] tempVertexData = getVertexDataForFace(data, colorA, colorB, colorC, face, scratch);
+                for (int j = 0; j < DATUM_PER_FACE; j++) {
+                    vertexBuffer.put(vertexOffset++, tempVertexData[j]);
+                }
+                if (vertexData != null) {
+                    for (int j = 0; j < DATUM_PER_FACE; j++) {
+                        vertexData.put(face * DATUM_PER_FACE + j, tempVertexData[j]);
+                    }
+                }
+            }
+
+            if (normalOffset != -1) {
+                float[] tempNormalData = getNormalDataForFace(data, modelOverride, face, scratch);
+                for (int j = 0; j < DATUM_PER_FACE; j++) {
+                    normalBuffer.put(normalOffset++, tempNormalData[j]);
+                }
+                if (normalData != null) {
+                    for (int j = 0; j < DATUM_PER_FACE; j++) {
+                        normalData.put(face * DATUM_PER_FACE + j, tempNormalData[j]);
+                    }
+                }
+            }
+
+            if (uvOffset != -1) {
+                float[] tempUvData = getUvDataForFace(data, 0, modelOverride, face, scratch);
+                if (tempUvData == null) {
+                    tempUvData = zeroFloats;
+                }
+                for (int j = 0; j < DATUM_PER_FACE; j++) {
+                    uvBuffer.put(uvOffset++, tempUvData[j]);
+                }
+                if (uvData != null) {
+                    for (int j = 0; j < DATUM_PER_FACE; j++) {
+                        uvData.put(face * DATUM_PER_FACE + j, tempUvData[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void cacheQueuedModel(QueuedModel queued) {
+        if (!queued.shouldCache) {
+            // Whatever was written to the buffers is unusable
+            return;
+        }
+
+        // Every datum was written with an absolute put, so the buffers are still positioned at the start
+        if (queued.vertexData != null) {
+            this.modelCache.putVertexData(queued.vertexDataCacheHash, queued.vertexData);
+            queued.vertexData = null;
+        }
+
+        if (queued.colorData != null) {
+            this.modelCache.putColorData(queued.colorDataCacheHash, queued.colorData);
+            queued.colorData = null;
+        }
+
+        if (queued.normalData != null) {
+            this.modelCache.putNormalData(queued.normalDataCacheHash, queued.normalData);
+            queued.normalData = null;
+        }
+
+        if (queued.uvData != null) {
+            this.modelCache.putUvData(queued.uvDataCacheHash, queued.uvData);
+            queued.uvData = null;
+        }
+    }
+
+    /**
+     * Hand any buffers taken for caching a queued model back to the buffer pool, if they didn't end up in the cache.
+     */
+    private void releaseCacheBuffers(QueuedModel queued) {
+        BufferPool bufferPool = this.modelCache == null ? null : this.modelCache.getBufferPool();
+        if (queued.vertexData != null) {
+            if (bufferPool != null) {
+                bufferPool.putIntBuffer(queued.vertexData);
+            }
+            queued.vertexData = null;
+        }
+
+        if (queued.colorData != null) {
+            if (bufferPool != null) {
+                bufferPool.putIntBuffer(queued.colorData);
+            }
+            queued.colorData = null;
+        }
+
+        if (queued.normalData != null) {
+            if (bufferPool != null) {
+                bufferPool.putFloatBuffer(queued.normalData);
+            }
+            queued.normalData = null;
+        }
+
+        if (queued.uvData != null) {
+            if (bufferPool != null) {
+                bufferPool.putFloatBuffer(queued.uvData);
+            }
+            queued.uvData = null;
+        }
+    }
+
+    /**
+     * Skip over the given amount of space in the buffer, to be written to later.
+     *
+     * @return the position of the reserved space
+     */
+    private static int reserve(Buffer buffer, int size) {
+        int position = buffer.position();
+        buffer.position(position + size);
+        return position;
+    }
+
+    /**
+     * @return the model cache, or null if model caching is disabled
+     */
+    public ModelCache getModelCache() {
+        return modelCache;
+    }
+
 //    public void printStats() {
 //        StringBuilder stats = new StringBuilder();
 //        stats.append("\nModel pusher cache stats:\n");
@@ -132,6 +627,9 @@ public class ModelPusher {
 //        pushes++;
         final int faceCount = Math.min(model.getFaceCount(), HdPlugin.MAX_TRIANGLE);
         final int bufferSize = faceCount * DATUM_PER_FACE;
+        final ModelData data = clientModelData;
+        final PushScratch scratch = clientScratch;
+        data.set(model);
         int vertexLength = 0;
         int uvLength = 0;
 
@@ -140,12 +638,24 @@ public class ModelPusher {
         normalBuffer.ensureCapacity(bufferSize);
         uvBuffer.ensureCapacity(bufferSize);
 
+        // When verifying, cache hits are only captured, and the model is pushed from scratch for comparison.
+        // Nothing is added to the cache meanwhile, so the lookups can't evict each other's data.
+        // The pushed data is read back to compare it, which can't be done from write-only streaming buffers
+        final boolean verifying = shouldCache && cacheVerifier != null &&
+            vertexBuffer.getStreamingBuffer() == null &&
+            normalBuffer.getStreamingBuffer() == null &&
+            uvBuffer.getStreamingBuffer() == null &&
+            cacheVerifier.sample();
+        final int vertexStart = vertexBuffer.getBuffer().position();
+        final int normalStart = normalBuffer.getBuffer().position();
+        final int uvStart = uvBuffer.getBuffer().position();
+
         boolean cachedVertexData = false;
         boolean cachedNormalData = false;
         boolean cachedUvData = false;
-        int vertexDataCacheHash = 0;
-        int normalDataCacheHash = 0;
-        int uvDataCacheHash = 0;
+        long vertexDataCacheHash = 0;
+        long normalDataCacheHash = 0;
+        long uvDataCacheHash = 0;
 
         if (shouldCache) {
             vertexDataCacheHash = modelHasher.calculateVertexCacheHash();
@@ -153,6 +663,10 @@ public class ModelPusher {
             uvDataCacheHash = modelHasher.calculateUvCacheHash(preOrientation, modelOverride);
 
             IntBuffer vertexData = this.modelCache.getVertexData(vertexDataCacheHash);
+            if (verifying) {
+                cacheVerifier.capture(DiskModelCache.KIND_VERTEX, vertexData);
+                vertexData = null;
+            }
             cachedVertexData = vertexData != null && vertexData.remaining() == bufferSize;
             if (cachedVertexData) {
 //                vertexDataHits++;
@@ -162,6 +676,10 @@ public class ModelPusher {
             }
 
             FloatBuffer normalData = this.modelCache.getNormalData(normalDataCacheHash);
+            if (verifying) {
+                cacheVerifier.capture(DiskModelCache.KIND_NORMAL, normalData);
+                normalData = null;
+            }
             cachedNormalData = normalData != null && normalData.remaining() == bufferSize;
             if (cachedNormalData) {
 //                normalDataHits++;
@@ -170,6 +688,10 @@ public class ModelPusher {
             }
 
             FloatBuffer uvData = this.modelCache.getUvData(uvDataCacheHash);
+            if (verifying) {
+                cacheVerifier.capture(DiskModelCache.KIND_UV, uvData);
+                uvData = null;
+            }
             cachedUvData = uvData != null;
             if (cachedUvData) {
 //                uvDataHits++;
@@ -186,10 +708,12 @@ public class ModelPusher {
         }
 
         IntBuffer fullVertexData = null;
+        IntBuffer fullColorData = null;
         FloatBuffer fullNormalData = null;
         FloatBuffer fullUvData = null;
 
-        boolean cachingVertexData = !cachedVertexData && shouldCache;
+        boolean cachingVertexData = !cachedVertexData && shouldCache && !verifying &&
+            this.modelCache.shouldAdmit(vertexDataCacheHash, (long) bufferSize * BYTES_PER_DATUM);
         if (cachingVertexData) {
             fullVertexData = this.modelCache.takeIntBuffer(bufferSize);
             if (fullVertexData == null) {
@@ -198,7 +722,8 @@ public class ModelPusher {
             }
         }
 
-        boolean cachingNormalData = !cachedNormalData && shouldCache;
+        boolean cachingNormalData = !cachedNormalData && shouldCache && !verifying &&
+            this.modelCache.shouldAdmit(normalDataCacheHash, (long) bufferSize * BYTES_PER_DATUM);
         if (cachingNormalData) {
             fullNormalData = this.modelCache.takeFloatBuffer(bufferSize);
             if (fullNormalData == null) {
@@ -207,7 +732,8 @@ public class ModelPusher {
             }
         }
 
-        boolean cachingUvData = !cachedUvData && shouldCache;
+        boolean cachingUvData = !cachedUvData && shouldCache && !verifying &&
+            this.modelCache.shouldAdmit(uvDataCacheHash, (long) bufferSize * BYTES_PER_DATUM);
         if (cachingUvData) {
             fullUvData = this.modelCache.takeFloatBuffer(bufferSize);
             if (fullUvData == null) {
@@ -216,9 +742,63 @@ public class ModelPusher {
             }
         }
 
+        // When the vertex data has to be recomputed, which happens on every frame of an animation, the colors can
+        // usually still be reused, since they only depend on vertex positions in a few special cases. This must happen
+        // after taking the other buffers, since taking a buffer may evict the cached color data
+        boolean cachedColorData = false;
+        long colorDataCacheHash = 0;
+        IntBuffer colorData = null;
+        if (shouldCache && !cachedVertexData) {
+            boolean colorsDependOnPositions = modelOverride.flatNormals ||
+                plugin.configTzhaarHD && modelOverride.tzHaarRecolorType != TzHaarRecolorType.NONE ||
+                plugin.configHideBakedEffects && model.getFaceTransparencies() != null;
+            colorDataCacheHash = modelHasher.calculateColorCacheHash(modelOverride, colorsDependOnPositions);
+
+            colorData = this.modelCache.getColorData(colorDataCacheHash);
+            if (verifying) {
+                cacheVerifier.capture(DiskModelCache.KIND_COLOR, colorData);
+                colorData = null;
+            }
+            cachedColorData = colorData != null && colorData.remaining() == faceCount * 3;
+        }
+
+        boolean cachingColorData = !cachedVertexData && !cachedColorData && shouldCache && !verifying &&
+            this.modelCache.shouldAdmit(colorDataCacheHash, (long) faceCount * 3 * BYTES_PER_DATUM);
+        if (cachingColorData) {
+            fullColorData = this.modelCache.takeIntBuffer(faceCount * 3);
+            if (fullColorData == null) {
+                log.error("failed to grab color buffer");
+                cachingColorData = false;
+            }
+        }
+
+        // Looked up once for the whole model, rather than for every face
+        boolean removeBakedLighting = false;
+        int[] tileColorHSL = null;
+        if (!cachedVertexData && !cachedColorData) {
+            removeBakedLighting = plugin.configHideBakedEffects && shouldRemoveBakedLighting(hash, modelOverride);
+            tileColorHSL = getInheritedTileColor(modelOverride, tileX, tileY, tileZ);
+        }
+
         for (int face = 0; face < faceCount; face++) {
             if (!cachedVertexData) {
-                int[] tempVertexData = getVertexDataForFace(model, getColorsForFace(hash, model, modelOverride, objectType, tileX, tileY, tileZ, face), face);
+                int colorA, colorB, colorC;
+                if (cachedColorData) {
+                    colorA = colorData.get();
+                    colorB = colorData.get();
+                    colorC = colorData.get();
+                } else {
+                    int[] faceColors = getColorsForFace(data, modelOverride, objectType, removeBakedLighting, tileColorHSL, face, scratch);
+                    colorA = faceColors[3] | faceColors[0];
+                    colorB = faceColors[3] | faceColors[1];
+                    colorC = faceColors[3] | faceColors[2];
+
+                    if (cachingColorData) {
+                        fullColorData.put(colorA).put(colorB).put(colorC);
+                    }
+                }
+
+                int[] tempVertexData = getVertexDataForFace(data, colorA, colorB, colorC, face, scratch);
                 vertexBuffer.put(tempVertexData);
                 vertexLength += 3;
 
@@ -228,7 +808,7 @@ public class ModelPusher {
             }
 
             if (!cachedNormalData) {
-                float[] tempNormalData = getNormalDataForFace(model, modelOverride, face);
+                float[] tempNormalData = getNormalDataForFace(data, modelOverride, face, scratch);
                 normalBuffer.put(tempNormalData);
 
                 if (cachingNormalData) {
@@ -237,7 +817,7 @@ public class ModelPusher {
             }
 
             if (!cachedUvData) {
-                float[] tempUvData = getUvDataForFace(model, preOrientation, modelOverride, face);
+                float[] tempUvData = getUvDataForFace(data, preOrientation, modelOverride, face, scratch);
                 if (tempUvData != null) {
                     uvBuffer.put(tempUvData);
                     uvLength += 3;
@@ -254,6 +834,15 @@ public class ModelPusher {
             this.modelCache.putVertexData(vertexDataCacheHash, fullVertexData);
         }
 
+        if (cachedColorData) {
+            colorData.rewind();
+        }
+
+        if (cachingColorData) {
+            fullColorData.flip();
+            this.modelCache.putColorData(colorDataCacheHash, fullColorData);
+        }
+
         if (cachingNormalData) {
             fullNormalData.flip();
             this.modelCache.putNormalData(normalDataCacheHash, fullNormalData);
@@ -264,47 +853,56 @@ public class ModelPusher {
             this.modelCache.putUvData(uvDataCacheHash, fullUvData);
         }
 
+        if (verifying) {
+            cacheVerifier.verify(DiskModelCache.KIND_VERTEX, vertexBuffer.getBuffer(), vertexStart, vertexLength * 4, 1, 0);
+            cacheVerifier.verify(DiskModelCache.KIND_COLOR, vertexBuffer.getBuffer(), vertexStart, vertexLength, 4, 3);
+            cacheVerifier.verify(DiskModelCache.KIND_NORMAL, normalBuffer.getBuffer(), normalStart, faceCount * DATUM_PER_FACE);
+            cacheVerifier.verify(DiskModelCache.KIND_UV, uvBuffer.getBuffer(), uvStart, uvLength * 4);
+        }
+
         twoInts[0] = vertexLength;
         twoInts[1] = uvLength;
 
         return twoInts;
     }
 
-    private int[] getVertexDataForFace(Model model, int[] faceColors, int face) {
-        final int[] xVertices = model.getVerticesX();
-        final int[] yVertices = model.getVerticesY();
-        final int[] zVertices = model.getVerticesZ();
-        final int triA = model.getFaceIndices1()[face];
-        final int triB = model.getFaceIndices2()[face];
-        final int triC = model.getFaceIndices3()[face];
+    private static int[] getVertexDataForFace(ModelData model, int colorA, int colorB, int colorC, int face, PushScratch scratch) {
+        final int[] twelveInts = scratch.twelveInts;
+        final int[] xVertices = model.verticesX;
+        final int[] yVertices = model.verticesY;
+        final int[] zVertices = model.verticesZ;
+        final int triA = model.faceIndices1[face];
+        final int triB = model.faceIndices2[face];
+        final int triC = model.faceIndices3[face];
 
         twelveInts[0] = xVertices[triA];
         twelveInts[1] = yVertices[triA];
         twelveInts[2] = zVertices[triA];
-        twelveInts[3] = faceColors[3] | faceColors[0];
+        twelveInts[3] = colorA;
         twelveInts[4] = xVertices[triB];
         twelveInts[5] = yVertices[triB];
         twelveInts[6] = zVertices[triB];
-        twelveInts[7] = faceColors[3] | faceColors[1];
+        twelveInts[7] = colorB;
         twelveInts[8] = xVertices[triC];
         twelveInts[9] = yVertices[triC];
         twelveInts[10] = zVertices[triC];
-        twelveInts[11] = faceColors[3] | faceColors[2];
+        twelveInts[11] = colorC;
 
         return twelveInts;
     }
 
-    private float[] getNormalDataForFace(Model model, @NonNull ModelOverride modelOverride, int face) {
-        if (modelOverride.flatNormals || model.getFaceColors3()[face] == -1) {
+    private static float[] getNormalDataForFace(ModelData model, @NonNull ModelOverride modelOverride, int face, PushScratch scratch) {
+        final float[] twelveFloats = scratch.twelveFloats;
+        if (modelOverride.flatNormals || model.faceColors3[face] == -1) {
             return zeroFloats;
         }
 
-        final int triA = model.getFaceIndices1()[face];
-        final int triB = model.getFaceIndices2()[face];
-        final int triC = model.getFaceIndices3()[face];
-        final int[] xVertexNormals = model.getVertexNormalsX();
-        final int[] yVertexNormals = model.getVertexNormalsY();
-        final int[] zVertexNormals = model.getVertexNormalsZ();
+        final int triA = model.faceIndices1[face];
+        final int triB = model.faceIndices2[face];
+        final int triC = model.faceIndices3[face];
+        final int[] xVertexNormals = model.vertexNormalsX;
+        final int[] yVertexNormals = model.vertexNormalsY;
+        final int[] zVertexNormals = model.vertexNormalsZ;
 
         twelveFloats[0] = xVertexNormals[triA];
         twelveFloats[1] = yVertexNormals[triA];
@@ -322,9 +920,10 @@ public class ModelPusher {
         return twelveFloats;
     }
 
-    private float[] getUvDataForFace(Model model, int orientation, @NonNull ModelOverride modelOverride, int face) {
-        final short[] faceTextures = model.getFaceTextures();
-        final float[] uv = model.getFaceTextureUVCoordinates();
+    private float[] getUvDataForFace(ModelData model, int orientation, @NonNull ModelOverride modelOverride, int face, PushScratch scratch) {
+        final float[] twelveFloats = scratch.twelveFloats;
+        final short[] faceTextures = model.faceTextures;
+        final float[] uv = model.faceTextureUVCoordinates;
 
         Material material = Material.NONE;
 
@@ -365,13 +964,13 @@ public class ModelPusher {
             case MODEL_YZ:
             case MODEL_YZ_MIRROR_A:
             case MODEL_YZ_MIRROR_B:
-                final int triA = model.getFaceIndices1()[face];
-                final int triB = model.getFaceIndices2()[face];
-                final int triC = model.getFaceIndices3()[face];
+                final int triA = model.faceIndices1[face];
+                final int triB = model.faceIndices2[face];
+                final int triC = model.faceIndices3[face];
 
-                final int[] xVertices = model.getVerticesX();
-                final int[] yVertices = model.getVerticesY();
-                final int[] zVertices = model.getVerticesZ();
+                final int[] xVertices = model.verticesX;
+                final int[] yVertices = model.verticesY;
+                final int[] zVertices = model.verticesZ;
 
                 modelOverride.computeModelUvw(twelveFloats, 0, xVertices[triA], yVertices[triA], zVertices[triA], orientation);
                 modelOverride.computeModelUvw(twelveFloats, 4, xVertices[triB], yVertices[triB], zVertices[triB], orientation);
@@ -427,15 +1026,124 @@ public class ModelPusher {
             (faceTransparencies[face] & 0xFF) > 100;
     }
 
-    private int[] getColorsForFace(long hash, Model model, @NonNull ModelOverride modelOverride, ObjectType objectType, int tileX, int tileY, int tileZ, int face) {
-        final int triA = model.getFaceIndices1()[face];
-        final int triB = model.getFaceIndices2()[face];
-        final int triC = model.getFaceIndices3()[face];
-        final byte[] faceTransparencies = model.getFaceTransparencies();
-        final short[] faceTextures = model.getFaceTextures();
-        final int[] xVertices = model.getVerticesX();
-        final int[] yVertices = model.getVerticesY();
-        final int[] zVertices = model.getVerticesZ();
+    /**
+     * Whether baked lighting should be removed from the model altogether. Must be called on the client thread.
+     */
+    private boolean shouldRemoveBakedLighting(long hash, @NonNull ModelOverride modelOverride) {
+        if (modelOverride.removeBakedLighting) {
+            return true;
+        }
+
+        if (ModelHash.getType(hash) == ModelHash.TYPE_PLAYER) {
+            int index = ModelHash.getIdOrIndex(hash);
+            Player[] players = client.getCachedPlayers();
+            Player player = index >= 0 && index < players.length ? players[index] : null;
+            return player != null && player.getPlayerComposition().getEquipmentId(KitType.WEAPON) == ItemID.MAGIC_CARPET;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the color of the tile under the model for the model to inherit, if its override calls for it.
+     * Must be called on the client thread.
+     *
+     * @return the color in HSL, or null if the model keeps its own colors
+     */
+    private int[] getInheritedTileColor(@NonNull ModelOverride modelOverride, int tileX, int tileY, int tileZ) {
+        if (modelOverride.inheritTileColorType == InheritTileColorType.NONE) {
+            return null;
+        }
+
+        final Tile tile = client.getScene().getTiles()[tileZ][tileX][tileY];
+        if (tile == null) {
+            return null;
+        }
+
+        SceneTileModel tileModel = tile.getSceneTileModel();
+        SceneTilePaint tilePaint = tile.getSceneTilePaint();
+        int[] tileColorHSL = null;
+
+        // No point in inheriting tilepaint color if the ground tile does not have a color, for example above a cave wall
+        if (tilePaint != null && tilePaint.getTexture() == -1 && tilePaint.getRBG() != 0 && tilePaint.getNeColor() != 12345678) {
+            // pull any corner color as either one should be OK
+            tileColorHSL = HDUtils.colorIntToHSL(tilePaint.getNeColor());
+
+            // average saturation and lightness
+            tileColorHSL[1] = (
+                tileColorHSL[1] +
+                HDUtils.colorIntToHSL(tilePaint.getSeColor())[1] +
+                HDUtils.colorIntToHSL(tilePaint.getNwColor())[1] +
+                HDUtils.colorIntToHSL(tilePaint.getNeColor())[1]
+            ) / 4;
+
+            tileColorHSL[2] = (
+                tileColorHSL[2] +
+                HDUtils.colorIntToHSL(tilePaint.getSeColor())[2] +
+                HDUtils.colorIntToHSL(tilePaint.getNwColor())[2] +
+                HDUtils.colorIntToHSL(tilePaint.getNeColor())[2]
+            ) / 4;
+
+            Overlay overlay = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client, plugin);
+            if (overlay != Overlay.NONE) {
+                tileColorHSL = proceduralGenerator.recolorOverlay(overlay, tileColorHSL);
+            } else {
+                Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client, plugin);
+                tileColorHSL = proceduralGenerator.recolorUnderlay(underlay, tileColorHSL);
+            }
+        } else if (tileModel != null && tileModel.getTriangleTextureId() == null) {
+            int faceColorIndex = -1;
+            for (int i = 0; i < tileModel.getTriangleColorA().length; i++) {
+                boolean isOverlayFace = proceduralGenerator.isOverlayFace(tile, i);
+                // Use underlay if the tile does not have an overlay, useful for rocks in cave corners.
+                if(modelOverride.inheritTileColorType == InheritTileColorType.UNDERLAY || tileModel.getModelOverlay() == 0) {
+                    // pulling the color from UNDERLAY is more desirable for green grass tiles
+                    // OVERLAY pulls in path color which is not desirable for grass next to paths
+                    if (!isOverlayFace) {
+                        faceColorIndex = i;
+                        break;
+                    }
+                }
+                else if(modelOverride.inheritTileColorType == InheritTileColorType.OVERLAY) {
+                    if (isOverlayFace) {
+                        // OVERLAY used in dirt/path/house tile color blend better with rubbles/rocks
+                        faceColorIndex = i;
+                        break;
+                    }
+                }
+            }
+
+            if (faceColorIndex != -1) {
+                int color = tileModel.getTriangleColorA()[faceColorIndex];
+                if (color != 12345678) {
+                    tileColorHSL = HDUtils.colorIntToHSL(color);
+
+                    Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client, plugin);
+                    tileColorHSL = proceduralGenerator.recolorUnderlay(underlay, tileColorHSL);
+                }
+            }
+        }
+
+        return tileColorHSL;
+    }
+
+    /**
+     * Work out the colors of a face. This may be called from the worker threads pushing queued models, so anything
+     * which has to be looked up from the client is passed in, having been looked up once for the whole model.
+     *
+     * @param removeBakedLighting from {@link #shouldRemoveBakedLighting}
+     * @param tileColorHSL        from {@link #getInheritedTileColor}
+     */
+    private int[] getColorsForFace(ModelData model, @NonNull ModelOverride modelOverride, ObjectType objectType, boolean removeBakedLighting, int[] tileColorHSL, int face, PushScratch scratch) {
+        final int[] fourInts = scratch.fourInts;
+        final int triA = model.faceIndices1[face];
+        final int triB = model.faceIndices2[face];
+        final int triC = model.faceIndices3[face];
+        final byte[] faceTransparencies = model.faceTransparencies;
+        final short[] faceTextures = model.faceTextures;
+        final int[] xVertices = model.verticesX;
+        final int[] yVertices = model.verticesY;
+        final int[] zVertices = model.verticesZ;
 
         int heightA = yVertices[triA];
         int heightB = yVertices[triB];
@@ -443,17 +1151,6 @@ public class ModelPusher {
 
         // Hide fake shadows or lighting that is often baked into models by making the fake shadow transparent
         if (plugin.configHideBakedEffects && isBakedGroundShading(face, heightA, heightB, heightC, faceTransparencies, faceTextures)) {
-            boolean removeBakedLighting = modelOverride.removeBakedLighting;
-
-            if (ModelHash.getType(hash) == ModelHash.TYPE_PLAYER) {
-                int index = ModelHash.getIdOrIndex(hash);
-                Player[] players = client.getCachedPlayers();
-                Player player = index >= 0 && index < players.length ? players[index] : null;
-                if (player != null && player.getPlayerComposition().getEquipmentId(KitType.WEAPON) == ItemID.MAGIC_CARPET) {
-                    removeBakedLighting = true;
-                }
-            }
-
             if (removeBakedLighting) {
                 fourInts[0] = 0;
                 fourInts[1] = 0;
@@ -463,17 +1160,16 @@ public class ModelPusher {
             }
         }
 
-        int color1 = model.getFaceColors1()[face];
-        int color2 = model.getFaceColors2()[face];
-        int color3 = model.getFaceColors3()[face];
-        final byte overrideAmount = model.getOverrideAmount();
-        final byte overrideHue = model.getOverrideHue();
-        final byte overrideSat = model.getOverrideSaturation();
-        final byte overrideLum = model.getOverrideLuminance();
-        final int[] xVertexNormals = model.getVertexNormalsX();
-        final int[] yVertexNormals = model.getVertexNormalsY();
-        final int[] zVertexNormals = model.getVertexNormalsZ();
-        final Tile tile = client.getScene().getTiles()[tileZ][tileX][tileY];
+        int color1 = model.faceColors1[face];
+        int color2 = model.faceColors2[face];
+        int color3 = model.faceColors3[face];
+        final byte overrideAmount = model.overrideAmount;
+        final byte overrideHue = model.overrideHue;
+        final byte overrideSat = model.overrideSaturation;
+        final byte overrideLum = model.overrideLuminance;
+        final int[] xVertexNormals = model.vertexNormalsX;
+        final int[] yVertexNormals = model.vertexNormalsY;
+        final int[] zVertexNormals = model.vertexNormalsZ;
 
         if (color3 == -2) {
             fourInts[0] = 0;
@@ -584,82 +1280,10 @@ public class ModelPusher {
             maxBrightness1 = maxBrightness2 = maxBrightness3 = 90;
         }
 
-        if (tile != null && modelOverride.inheritTileColorType != InheritTileColorType.NONE) {
-            SceneTileModel tileModel = tile.getSceneTileModel();
-            SceneTilePaint tilePaint = tile.getSceneTilePaint();
-
-            if (tilePaint != null || tileModel != null) {
-                int[] tileColorHSL;
-
-                // No point in inheriting tilepaint color if the ground tile does not have a color, for example above a cave wall
-                if (tilePaint != null && tilePaint.getTexture() == -1 && tilePaint.getRBG() != 0 && tilePaint.getNeColor() != 12345678) {
-                    // pull any corner color as either one should be OK
-                    tileColorHSL = HDUtils.colorIntToHSL(tilePaint.getNeColor());
-
-                    // average saturation and lightness
-                    tileColorHSL[1] = (
-                        tileColorHSL[1] +
-                        HDUtils.colorIntToHSL(tilePaint.getSeColor())[1] +
-                        HDUtils.colorIntToHSL(tilePaint.getNwColor())[1] +
-                        HDUtils.colorIntToHSL(tilePaint.getNeColor())[1]
-                    ) / 4;
-
-                    tileColorHSL[2] = (
-                        tileColorHSL[2] +
-                        HDUtils.colorIntToHSL(tilePaint.getSeColor())[2] +
-                        HDUtils.colorIntToHSL(tilePaint.getNwColor())[2] +
-                        HDUtils.colorIntToHSL(tilePaint.getNeColor())[2]
-                    ) / 4;
-
-                    Overlay overlay = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client, plugin);
-                    if (overlay != Overlay.NONE) {
-                        tileColorHSL = proceduralGenerator.recolorOverlay(overlay, tileColorHSL);
-                    } else {
-                        Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client, plugin);
-                        tileColorHSL = proceduralGenerator.recolorUnderlay(underlay, tileColorHSL);
-                    }
-
-                    color1H = color2H = color3H = tileColorHSL[0];
-                    color1S = color2S = color3S = tileColorHSL[1];
-                    color1L = color2L = color3L = tileColorHSL[2];
-
-                } else if (tileModel != null && tileModel.getTriangleTextureId() == null) {
-                    int faceColorIndex = -1;
-                    for (int i = 0; i < tileModel.getTriangleColorA().length; i++) {
-                        boolean isOverlayFace = proceduralGenerator.isOverlayFace(tile, i);
-                        // Use underlay if the tile does not have an overlay, useful for rocks in cave corners.
-                        if(modelOverride.inheritTileColorType == InheritTileColorType.UNDERLAY || tileModel.getModelOverlay() == 0) {
-                            // pulling the color from UNDERLAY is more desirable for green grass tiles
-                            // OVERLAY pulls in path color which is not desirable for grass next to paths
-                            if (!isOverlayFace) {
-                                faceColorIndex = i;
-                                break;
-                            }
-                        }  
-                        else if(modelOverride.inheritTileColorType == InheritTileColorType.OVERLAY) {
-                            if (isOverlayFace) {
-                                // OVERLAY used in dirt/path/house tile color blend better with rubbles/rocks
-                                faceColorIndex = i;
-                                break;
-                            }
-                        }
-                    }
-
-                    if (faceColorIndex != -1) {
-                        int color = tileModel.getTriangleColorA()[faceColorIndex];
-                        if (color != 12345678) {
-                            tileColorHSL = HDUtils.colorIntToHSL(color);
-
-                            Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client, plugin);
-                            tileColorHSL = proceduralGenerator.recolorUnderlay(underlay, tileColorHSL);
-
-                            color1H = color2H = color3H = tileColorHSL[0];
-                            color1S = color2S = color3S = tileColorHSL[1];
-                            color1L = color2L = color3L = tileColorHSL[2];
-                        }
-                    }
-                }
-            }
+        if (tileColorHSL != null) {
+            color1H = color2H = color3H = tileColorHSL[0];
+            color1S = color2S = color3S = tileColorHSL[1];
+            color1L = color2L = color3L = tileColorHSL[2];
         }
 
         int packedAlphaPriority = getPackedAlphaPriority(model, face);
@@ -715,10 +1339,10 @@ public class ModelPusher {
         return (hue << 10 | sat << 7 | lum) & 65535;
     }
 
-    private int getPackedAlphaPriority(Model model, int face) {
-        final short[] faceTextures = model.getFaceTextures();
-        final byte[] faceTransparencies = model.getFaceTransparencies();
-        final byte[] facePriorities = model.getFaceRenderPriorities();
+    private static int getPackedAlphaPriority(ModelData model, int face) {
+        final short[] faceTextures = model.faceTextures;
+        final byte[] faceTransparencies = model.faceTransparencies;
+        final byte[] facePriorities = model.faceRenderPriorities;
 
         int alpha = 0;
         if (faceTransparencies != null && (faceTextures == null || faceTextures[face] == -1)) {
@@ -730,4 +1354,38 @@ public class ModelPusher {
         }
         return alpha | priority;
     }
+
+    /**
+     * Scratch arrays for the per-face data, of which each thread pushing models needs its own.
+     */
+    private static class PushScratch {
+        final int[] fourInts = new int[4];
+        final int[] twelveInts = new int[12];
+        final float[] twelveFloats = new float[12];
+    }
+
+    private static class QueuedModel {
+        final ModelData data = new ModelData();
+        ModelOverride modelOverride;
+        boolean removeBakedLighting;
+        int[] tileColorHSL;
+        // Colors copied from the model cache, for when only the vertex positions have to be pushed
+        boolean cachedColorData;
+        int[] colors = new int[0];
+        int faceCount;
+        boolean shouldCache;
+        // Buffers taken from the model cache to capture the data in as it's pushed, or null if it isn't being cached
+        IntBuffer vertexData;
+        IntBuffer colorData;
+        FloatBuffer normalData;
+        FloatBuffer uvData;
+        // Where to push each kind of data, or -1 if it was already copied from the model cache
+        int vertexOffset;
+        int normalOffset;
+        int uvOffset;
+        long vertexDataCacheHash;
+        long normalDataCacheHash;
+        long uvDataCacheHash;
+        long colorDataCacheHash;
+    }
 }
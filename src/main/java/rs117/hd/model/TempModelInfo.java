@@ -4,6 +4,7 @@ public class TempModelInfo {
     private int tempOffset;
     private int tempUvOffset;
     private int faceCount;
+    private int lastUsedFrame;
 
     public int getTempOffset() {
         return tempOffset;
@@ -31,4 +32,13 @@ public class TempModelInfo {
         this.faceCount = faceCount;
         return this;
     }
+
+    public int getLastUsedFrame() {
+        return lastUsedFrame;
+    }
+
+    public TempModelInfo setLastUsedFrame(int lastUsedFrame) {
+        this.lastUsedFrame = lastUsedFrame;
+        return this;
+    }
 }
@@ -29,6 +29,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.function.Function;
 import javax.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.util.OSType;
@@ -77,6 +78,8 @@ public class OpenCLManager
 	// The number of faces each worker processes in the two kernels
 	private int largeFaceCount;
 	private int smallFaceCount;
+	// Whether the kernels write vertices packed and interleaved in a single render buffer
+	private boolean packedVertices;
 
 	private cl_platform_id platform;
 	private cl_device_id device;
@@ -91,9 +94,10 @@ public class OpenCLManager
 	private cl_kernel kernelSmall;
 	private cl_kernel kernelLarge;
 
-	public void init(AWTContext awtContext)
+	public void init(AWTContext awtContext, boolean packedVertices)
 	{
 		CL.setExceptionsEnabled(true);
+		this.packedVertices = packedVertices;
 
 		switch (OSType.getOSType())
 		{
@@ -375,15 +379,20 @@ public class OpenCLManager
 
 	private void compilePrograms()
 	{
+		Function<String, String> packedVerticesDefine = key ->
+			key.equals("PACKED_VERTICES") ? ("#define PACKED_VERTICES " + (packedVertices ? 1 : 0)) : null;
 		Template templateSmall = new Template()
 			.addInclude(OpenCLManager.class)
+			.add(packedVerticesDefine)
 			.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + smallFaceCount) : null);
 		Template templateLarge = new Template()
 			.addInclude(OpenCLManager.class)
+			.add(packedVerticesDefine)
 			.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + largeFaceCount) : null);
 
 		String unordered = new Template()
 			.addInclude(OpenCLManager.class)
+			.add(packedVerticesDefine)
 			.load("comp_unordered.cl");
 		String small = templateSmall.load("comp.cl");
 		String large = templateLarge.load("comp.cl");
@@ -437,9 +446,7 @@ public class OpenCLManager
 			clSetKernelArg(kernelUnordered, 1, Sizeof.cl_mem, stagingBufferVertices.ptr());
 			clSetKernelArg(kernelUnordered, 2, Sizeof.cl_mem, stagingBufferUvs.ptr());
 			clSetKernelArg(kernelUnordered, 3, Sizeof.cl_mem, stagingBufferNormals.ptr());
-			clSetKernelArg(kernelUnordered, 4, Sizeof.cl_mem, renderBufferVertices.ptr());
-			clSetKernelArg(kernelUnordered, 5, Sizeof.cl_mem, renderBufferUvs.ptr());
-			clSetKernelArg(kernelUnordered, 6, Sizeof.cl_mem, renderBufferNormals.ptr());
+			setRenderBufferArgs(kernelUnordered, 4, renderBufferVertices, renderBufferUvs, renderBufferNormals);
 
 			// queue compute call after acquireGLBuffers
 			clEnqueueNDRangeKernel(commandQueue, kernelUnordered, 1, null,
@@ -453,10 +460,8 @@ public class OpenCLManager
 			clSetKernelArg(kernelSmall, 2, Sizeof.cl_mem, stagingBufferVertices.ptr());
 			clSetKernelArg(kernelSmall, 3, Sizeof.cl_mem, stagingBufferUvs.ptr());
 			clSetKernelArg(kernelSmall, 4, Sizeof.cl_mem, stagingBufferNormals.ptr());
-			clSetKernelArg(kernelSmall, 5, Sizeof.cl_mem, renderBufferVertices.ptr());
-			clSetKernelArg(kernelSmall, 6, Sizeof.cl_mem, renderBufferUvs.ptr());
-			clSetKernelArg(kernelSmall, 7, Sizeof.cl_mem, renderBufferNormals.ptr());
-			clSetKernelArg(kernelSmall, 8, Sizeof.cl_mem, uniformBufferCamera.ptr());
+			int uniformArg = setRenderBufferArgs(kernelSmall, 5, renderBufferVertices, renderBufferUvs, renderBufferNormals);
+			clSetKernelArg(kernelSmall, uniformArg, Sizeof.cl_mem, uniformBufferCamera.ptr());
 
 			clEnqueueNDRangeKernel(commandQueue, kernelSmall, 1, null,
 				new long[]{(long) numSmallModels * (SMALL_SIZE / smallFaceCount)}, new long[]{SMALL_SIZE / smallFaceCount}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
@@ -469,10 +474,8 @@ public class OpenCLManager
 			clSetKernelArg(kernelLarge, 2, Sizeof.cl_mem, stagingBufferVertices.ptr());
 			clSetKernelArg(kernelLarge, 3, Sizeof.cl_mem, stagingBufferUvs.ptr());
 			clSetKernelArg(kernelLarge, 4, Sizeof.cl_mem, stagingBufferNormals.ptr());
-			clSetKernelArg(kernelLarge, 5, Sizeof.cl_mem, renderBufferVertices.ptr());
-			clSetKernelArg(kernelLarge, 6, Sizeof.cl_mem, renderBufferUvs.ptr());
-			clSetKernelArg(kernelLarge, 7, Sizeof.cl_mem, renderBufferNormals.ptr());
-			clSetKernelArg(kernelLarge, 8, Sizeof.cl_mem, uniformBufferCamera.ptr());
+			int uniformArg = setRenderBufferArgs(kernelLarge, 5, renderBufferVertices, renderBufferUvs, renderBufferNormals);
+			clSetKernelArg(kernelLarge, uniformArg, Sizeof.cl_mem, uniformBufferCamera.ptr());
 
 			clEnqueueNDRangeKernel(commandQueue, kernelLarge, 1, null,
 				new long[]{(long) numLargeModels * (LARGE_SIZE / largeFaceCount)}, new long[]{LARGE_SIZE / largeFaceCount}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
@@ -488,6 +491,22 @@ public class OpenCLManager
 		}
 	}
 
+	/**
+	 * Pass the render buffers to a kernel, starting at the given argument index.
+	 *
+	 * @return the index of the argument after the render buffers
+	 */
+	private int setRenderBufferArgs(cl_kernel kernel, int arg, GLBuffer vertices, GLBuffer uvs, GLBuffer normals)
+	{
+		clSetKernelArg(kernel, arg++, Sizeof.cl_mem, vertices.ptr());
+		if (!packedVertices)
+		{
+			clSetKernelArg(kernel, arg++, Sizeof.cl_mem, uvs.ptr());
+			clSetKernelArg(kernel, arg++, Sizeof.cl_mem, normals.ptr());
+		}
+		return arg;
+	}
+
 	public void finish()
 	{
 		clFinish(commandQueue);
@@ -0,0 +1,233 @@
+package rs117.hd.opengl.shader;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps linked programs on disk, as handed out by {@code glGetProgramBinary}, so they can be loaded back with
+ * {@code glProgramBinary} instead of being compiled from source on every startup and change of settings.
+ * <p>
+ * Each program is stored in a file of its own, named after a hash of the fully preprocessed sources of its shaders and
+ * of the GL vendor, renderer and version, since binaries are only meant to be loaded by the driver which produced
+ * them. Drivers may still reject a binary, like after an update which kept the same version string, in which case the
+ * program has to be compiled from source, and its binary saved again.
+ */
+@Slf4j
+public class ProgramBinaryCache
+{
+	private static final int MAGIC = 0x50524F47; // "PROG"
+	private static final int FORMAT_VERSION = 1;
+	// Magic, format version, binary format, binary length and checksum
+	private static final int HEADER_SIZE = 20;
+	private static final String EXTENSION = ".bin";
+
+	// Every combination of settings which affects the shaders leaves programs of its own, so the least recently used
+	// ones are deleted past this many
+	static final int MAX_PROGRAMS = 64;
+
+	@RequiredArgsConstructor
+	public static class Binary
+	{
+		public final int format;
+		public final ByteBuffer data;
+	}
+
+	private final Path directory;
+	private final String driver;
+
+	/**
+	 * @param driver identifies the GL driver, and any programs linked by a different driver are ignored
+	 */
+	public ProgramBinaryCache(Path directory, String driver)
+	{
+		this.directory = directory;
+		this.driver = driver;
+	}
+
+	/**
+	 * @param shaderTypes the type of each shader in the program
+	 * @param sources     the preprocessed source of each shader in the program
+	 * @return the key under which the program's binary is stored
+	 */
+	public String getKey(int[] shaderTypes, String[] sources)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+
+		update(digest, driver);
+		for (int i = 0; i < sources.length; i++)
+		{
+			update(digest, Integer.toString(shaderTypes[i]));
+			update(digest, sources[i]);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * @return the binary stored under the key, in a direct buffer, or null if there is none or it's unreadable
+	 */
+	@Nullable
+	public Binary load(String key)
+	{
+		Path path = getPath(key);
+		if (!Files.exists(path))
+			return null;
+
+		try
+		{
+			byte[] bytes = Files.readAllBytes(path);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+				throw new IOException("Unrecognized header");
+
+			int format = buffer.getInt();
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length != buffer.remaining())
+				throw new IOException("Truncated binary");
+			if (checksum != checksum(bytes, HEADER_SIZE, length))
+				throw new IOException("Checksum mismatch");
+
+			ByteBuffer data = ByteBuffer.allocateDirect(length);
+			data.put(bytes, HEADER_SIZE, length);
+			data.flip();
+
+			// Keep programs which are still in use from being pruned
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			return new Binary(format, data);
+		}
+		catch (IOException ex)
+		{
+			log.debug("Discarding unreadable program binary {}", path, ex);
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Store a binary under the key, replacing any binary already stored under it.
+	 *
+	 * @param data the binary, from its position to its limit, which are left unchanged
+	 */
+	public void save(String key, int format, ByteBuffer data)
+	{
+		Path temp = null;
+		try
+		{
+			Files.createDirectories(directory);
+
+			int length = data.remaining();
+			byte[] bytes = new byte[HEADER_SIZE + length];
+			data.duplicate().get(bytes, HEADER_SIZE, length);
+			ByteBuffer.wrap(bytes)
+				.putInt(MAGIC)
+				.putInt(FORMAT_VERSION)
+				.putInt(format)
+				.putInt(length)
+				.putInt(checksum(bytes, HEADER_SIZE, length));
+
+			// Write to a temporary file first, so a program is never left half written if the client exits midway
+			temp = Files.createTempFile(directory, key, ".tmp");
+			Files.write(temp, bytes);
+			Files.move(temp, getPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+
+			prune();
+		}
+		catch (IOException ex)
+		{
+			log.warn("Failed to save program binary", ex);
+		}
+		finally
+		{
+			if (temp != null)
+			{
+				try
+				{
+					Files.deleteIfExists(temp);
+				}
+				catch (IOException ex)
+				{
+					log.debug("Failed to delete temporary program binary {}", temp, ex);
+				}
+			}
+		}
+	}
+
+	public void remove(String key)
+	{
+		try
+		{
+			Files.deleteIfExists(getPath(key));
+		}
+		catch (IOException ex)
+		{
+			log.warn("Failed to delete program binary", ex);
+		}
+	}
+
+	private void prune() throws IOException
+	{
+		List<Path> programs = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory))
+		{
+			files
+				.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+				.forEach(programs::add);
+		}
+
+		if (programs.size() <= MAX_PROGRAMS)
+			return;
+
+		programs.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+		for (int i = 0; i < programs.size() - MAX_PROGRAMS; i++)
+			Files.deleteIfExists(programs.get(i));
+	}
+
+	private Path getPath(String key)
+	{
+		return directory.resolve(key + EXTENSION);
+	}
+
+	private static void update(MessageDigest digest, String value)
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		// Prefix each value with its length, so values can't run into each other and collide
+		digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+		digest.update(bytes);
+	}
+
+	private static int checksum(byte[] bytes, int offset, int length)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+}
@@ -32,6 +32,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.BufferUtils;
 import rs117.hd.utils.Env;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -71,6 +72,28 @@ public class Shader
 
 	public int compile(Template template) throws ShaderException
 	{
+		return compile(template, null);
+	}
+
+	/**
+	 * Compile and link the program, or load it from the cache if it was linked before from the same sources by the same
+	 * driver. Programs compiled from source are added to the cache.
+	 */
+	public int compile(Template template, @Nullable ProgramBinaryCache cache) throws ShaderException
+	{
+		String[] sources = new String[units.size()];
+		for (int j = 0; j < sources.length; j++)
+			sources[j] = template.load(units.get(j).filename);
+
+		String cacheKey = null;
+		if (cache != null)
+		{
+			cacheKey = cache.getKey(units.stream().mapToInt(Unit::getType).toArray(), sources);
+			int program = loadBinary(cache, cacheKey);
+			if (program != 0)
+				return program;
+		}
+
 		int program = glCreateProgram();
 		int[] shaders = new int[units.size()];
 		int i = 0;
@@ -86,8 +109,7 @@ public class Shader
 					throw new ShaderException("Unable to create shader of type " + unit.type);
 				}
 
-				String source = template.load(unit.filename);
-				glShaderSource(shader, source);
+				glShaderSource(shader, sources[i]);
 				glCompileShader(shader);
 
 				if (glGetShaderi(shader, GL_COMPILE_STATUS) != GL_TRUE)
@@ -95,6 +117,9 @@ public class Shader
 					String err = glGetShaderInfoLog(shader);
 					glDeleteShader(shader);
 
+					// The template only keeps track of the includes of the last file it loaded
+					template.load(unit.filename);
+
 					if (template.includeType == Template.IncludeType.GLSL) {
 						Matcher m = NVIDIA_ERROR_REGEX.matcher(err);
 						if (m.find()) {
@@ -143,6 +168,8 @@ public class Shader
 				shaders[i++] = shader;
 			}
 
+			if (cache != null)
+				glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
 			glLinkProgram(program);
 
 			if (glGetProgrami(program, GL_LINK_STATUS) == GL_FALSE)
@@ -153,6 +180,14 @@ public class Shader
 
 			ok = true;
 
+			if (cache != null)
+			{
+				int[] format = { 0 };
+				ByteBuffer binary = getProgramBinary(program, format);
+				if (binary != null)
+					cache.save(cacheKey, format[0], binary);
+			}
+
 			if (Env.has("RLHD_DUMP_SHADERS"))
 			{
 				int[] numFormats = { 0 };
@@ -160,22 +195,15 @@ public class Shader
 				if (numFormats[0] < 1) {
 					log.error("OpenGL driver does not support any binary formats");
 				} else {
-					int[] size = { 0 };
-					glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, size);
-
-					int[] format = { 0 };
-					ByteBuffer binary = BufferUtils.createByteBuffer(size[0]);
-					glGetProgramBinary(program, size, format, binary);
-
-					try {
-						String shaderName = units.stream()
-							.map(Unit::getFilename)
-							.collect(Collectors.joining(" + ")) + ".bin";
-						path("shader-dumps", shaderName)
-							.mkdirs()
-							.writeByteBuffer(binary);
-					} catch (IOException ex) {
-						throw new RuntimeException(ex);
+					ByteBuffer binary = getProgramBinary(program, new int[1]);
+					if (binary != null) {
+						try {
+							path("shader-dumps", getName() + ".bin")
+								.mkdirs()
+								.writeByteBuffer(binary);
+						} catch (IOException ex) {
+							throw new RuntimeException(ex);
+						}
 					}
 				}
 			}
@@ -197,4 +225,68 @@ public class Shader
 
 		return program;
 	}
+
+	private int loadBinary(ProgramBinaryCache cache, String key)
+	{
+		ProgramBinaryCache.Binary binary = cache.load(key);
+		if (binary == null)
+			return 0;
+
+		// Loading a binary in a format the driver doesn't support would raise an error, so it's never attempted, and any
+		// other binary the driver can't load only leaves the program unlinked
+		int program = 0;
+		if (isBinaryFormatSupported(binary.format))
+		{
+			program = glCreateProgram();
+			glProgramBinary(program, binary.format, binary.data);
+			if (glGetProgrami(program, GL_LINK_STATUS) == GL_TRUE)
+			{
+				log.debug("Loaded program {} from its cached binary", getName());
+				return program;
+			}
+		}
+
+		// Drivers may reject binaries they produced themselves, like after being updated
+		log.debug("Cached binary of program {} was rejected, compiling it from source", getName());
+		if (program != 0)
+			glDeleteProgram(program);
+		cache.remove(key);
+		return 0;
+	}
+
+	private static boolean isBinaryFormatSupported(int format)
+	{
+		int count = glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS);
+		if (count <= 0)
+			return false;
+
+		int[] formats = new int[count];
+		glGetIntegerv(GL_PROGRAM_BINARY_FORMATS, formats);
+		for (int supported : formats)
+		{
+			if (supported == format)
+				return true;
+		}
+		return false;
+	}
+
+	@Nullable
+	private static ByteBuffer getProgramBinary(int program, int[] format)
+	{
+		int[] size = { 0 };
+		glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, size);
+		if (size[0] <= 0)
+			return null;
+
+		ByteBuffer binary = BufferUtils.createByteBuffer(size[0]);
+		glGetProgramBinary(program, size, format, binary);
+		return binary;
+	}
+
+	private String getName()
+	{
+		return units.stream()
+			.map(Unit::getFilename)
+			.collect(Collectors.joining(" + "));
+	}
 }
@@ -0,0 +1,81 @@
+package rs117.hd.overlays;
+
+import com.google.inject.Inject;
+
+import java.awt.*;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+import rs117.hd.utils.FrameTimer;
+import rs117.hd.utils.FrameTimer.Timer;
+
+public class FrameTimingsOverlay extends OverlayPanel
+{
+	// Average over about a second's worth of frames, so the numbers are readable
+	private static final int AVERAGED_FRAMES = 60;
+
+	private final FrameTimer frameTimer;
+
+	@Inject
+	public FrameTimingsOverlay(FrameTimer frameTimer)
+	{
+		this.frameTimer = frameTimer;
+		setPosition(OverlayPosition.TOP_LEFT);
+		panelComponent.setPreferredSize(new Dimension(200, 0));
+	}
+
+	@Override
+	public Dimension render(Graphics2D g)
+	{
+		long[][] frames = frameTimer.getHistory().snapshot(AVERAGED_FRAMES);
+		if (frames.length == 0)
+		{
+			panelComponent.getChildren().add(TitleComponent.builder()
+				.text("Waiting for frame timings...")
+				.build());
+			return super.render(g);
+		}
+
+		panelComponent.getChildren().add(TitleComponent.builder()
+			.text("Frame timings (ms)")
+			.build());
+
+		long cpuTotal = 0;
+		long gpuTotal = 0;
+		for (Timer timer : FrameTimer.TIMERS)
+		{
+			long sum = 0;
+			for (long[] frame : frames)
+				sum += frame[timer.ordinal()];
+			long average = sum / frames.length;
+
+			if (timer.isGpuTimer())
+				gpuTotal += average;
+			else if (timer != Timer.UPDATE_ENVIRONMENT && timer != Timer.UPDATE_LIGHTS)
+				cpuTotal += average; // Environment and light updates are part of drawing the scene
+
+			panelComponent.getChildren().add(LineComponent.builder()
+				.left((timer.isGpuTimer() ? "GPU " : "CPU ") + timer.getDisplayName())
+				.right(formatMillis(average))
+				.build());
+		}
+
+		panelComponent.getChildren().add(LineComponent.builder()
+			.left("CPU total")
+			.right(formatMillis(cpuTotal))
+			.build());
+		panelComponent.getChildren().add(LineComponent.builder()
+			.left("GPU total")
+			.right(formatMillis(gpuTotal))
+			.build());
+
+		return super.render(g);
+	}
+
+	private static String formatMillis(long nanos)
+	{
+		return String.format("%.2f", nanos / 1e6);
+	}
+}
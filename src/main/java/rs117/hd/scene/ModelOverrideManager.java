@@ -5,6 +5,7 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
+import net.runelite.api.ObjectComposition;
 import net.runelite.api.coords.WorldPoint;
 import net.runelite.client.callback.ClientThread;
 import rs117.hd.HdPlugin;
@@ -137,6 +138,26 @@ public class ModelOverrideManager {
         return true;
     }
 
+    /**
+     * Whether the hash belongs to an object which can be interacted with. Objects which change into others by varbit
+     * are counted too, since it's usually only the object they change into which has any actions.
+     */
+    public boolean isInteractableObject(long hash) {
+        if (ModelHash.getType(hash) != ModelHash.TYPE_OBJECT)
+            return false;
+
+        ObjectComposition definition = client.getObjectDefinition(ModelHash.getIdOrIndex(hash));
+        if (definition.getImpostorIds() != null)
+            return true;
+
+        for (String action : definition.getActions()) {
+            if (action != null)
+                return true;
+        }
+
+        return false;
+    }
+
     @NonNull
     public ModelOverride getOverride(long hash) {
         return modelOverrides.getOrDefault(ModelHash.getUuid(client, hash), ModelOverride.NONE);
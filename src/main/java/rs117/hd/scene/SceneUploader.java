@@ -36,6 +36,7 @@ import rs117.hd.data.materials.Overlay;
 import rs117.hd.data.materials.Material;
 import rs117.hd.data.materials.Underlay;
 import rs117.hd.model.ModelPusher;
+import rs117.hd.scene.model_overrides.LevelOfDetail;
 import rs117.hd.scene.model_overrides.ModelOverride;
 import rs117.hd.scene.model_overrides.ObjectType;
 import rs117.hd.utils.HDUtils;
@@ -111,12 +112,18 @@ class SceneUploader
 
 		ModelOverride modelOverride = modelOverrideManager.getOverride(hash);
 
-		byte skipObject = 0b00;
+		int skipObject;
 		if (client.getBaseX() + tileX == 2558 && client.getBaseY() + tileY >= 3249 && client.getBaseY() + tileY <= 3252)
 		{
 			// fix for water by khazard spirit tree
 			// marks object to never be drawn
-			skipObject = 0b11;
+			skipObject = LevelOfDetail.SKIP;
+		}
+		else
+		{
+			model.calculateBoundsCylinder();
+			skipObject = LevelOfDetail.classify(modelOverride.levelOfDetail, objectType,
+				modelOverrideManager.isInteractableObject(hash), model.getRadius()).bits;
 		}
 
 		// pack a bit into bufferoffset that we can use later to hide
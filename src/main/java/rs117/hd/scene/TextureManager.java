@@ -28,7 +28,6 @@ import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Texture;
 import net.runelite.api.TextureProvider;
 import net.runelite.client.callback.ClientThread;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.EXTTextureFilterAnisotropic;
 import org.lwjgl.opengl.GL;
 import rs117.hd.HdPlugin;
@@ -36,6 +35,7 @@ import rs117.hd.HdPluginConfig;
 import rs117.hd.data.materials.Material;
 import rs117.hd.utils.Env;
 import rs117.hd.utils.ResourcePath;
+import rs117.hd.utils.buffer.OffHeapMemory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -169,143 +169,150 @@ public class TextureManager
 
 		setAnisotropicFilteringLevel();
 
+		int[] vanillaPixels = new int[128 * 128];
+		float[] textureAnimations = new float[textureCount * 2];
+		pixelBuffer = OffHeapMemory.allocateInts(OffHeapMemory.Subsystem.TEXTURES, textureSize * textureSize);
+
 		// Set brightness to 1.0d to upload unmodified textures to GPU
 		double save = textureProvider.getBrightness();
 		textureProvider.setBrightness(1.0d);
 
-		int[] vanillaPixels = new int[128 * 128];
-		pixelBuffer = BufferUtils.createIntBuffer(textureSize * textureSize);
-		scaledImage = new BufferedImage(textureSize, textureSize, BufferedImage.TYPE_INT_ARGB);
-		vanillaImage = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
-
-		int materialCount = Material.values().length;
-		materialOrdinalToTextureIndex = new int[materialCount];
-		materialReplacements = new int[materialCount];
-		Arrays.fill(materialOrdinalToTextureIndex, -1);
-		Arrays.fill(materialReplacements, -1);
-
-		float[] textureAnimations = new float[textureCount * 2];
-
-		// Load vanilla textures to texture array layers
-		ArrayDeque<Integer> unusedIndices = new ArrayDeque<>();
-		int i = 0;
-		for (; i < textures.length; i++)
+		try
 		{
-			Texture texture = textures[i];
-			if (texture == null)
-			{
-				unusedIndices.addLast(i);
-				continue;
-			}
-
-			Material material = Material.getTexture(i);
-			if (material.parent != null)
-			{
-				// Point this material to pre-existing texture from parent material
-				materialOrdinalToTextureIndex[material.ordinal()] = materialOrdinalToTextureIndex[material.parent.ordinal()];
-				continue;
-			}
+			scaledImage = new BufferedImage(textureSize, textureSize, BufferedImage.TYPE_INT_ARGB);
+			vanillaImage = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
 
-			String textureName = material == Material.NONE ? "" + i : material.name().toLowerCase();
+			int materialCount = Material.values().length;
+			materialOrdinalToTextureIndex = new int[materialCount];
+			materialReplacements = new int[materialCount];
+			Arrays.fill(materialOrdinalToTextureIndex, -1);
+			Arrays.fill(materialReplacements, -1);
 
-			BufferedImage image = loadTextureImage(textureName);
-			if (image == null)
+			// Load vanilla textures to texture array layers
+			ArrayDeque<Integer> unusedIndices = new ArrayDeque<>();
+			int i = 0;
+			for (; i < textures.length; i++)
 			{
-				// Load vanilla texture
-				int[] pixels = textureProvider.load(i);
-				if (pixels == null)
+				Texture texture = textures[i];
+				if (texture == null)
 				{
-					log.warn("No vanilla pixels for texture index {}", i);
 					unusedIndices.addLast(i);
 					continue;
 				}
-				if (pixels.length != 128 * 128)
+
+				Material material = Material.getTexture(i);
+				if (material.parent != null)
 				{
-					log.warn("Unknown dimensions for vanilla texture at index {} ({} pixels)", i, pixels.length);
-					unusedIndices.addLast(i);
+					// Point this material to pre-existing texture from parent material
+					materialOrdinalToTextureIndex[material.ordinal()] = materialOrdinalToTextureIndex[material.parent.ordinal()];
 					continue;
 				}
 
-				for (int j = 0; j < pixels.length; j++) {
-					int p = pixels[j];
-					vanillaPixels[j] = p == 0 ? 0 : 0xFF << 24 | p & 0xFFFFFF;
-				}
+				String textureName = material == Material.NONE ? "" + i : material.name().toLowerCase();
 
-				vanillaImage.setRGB(0, 0, 128, 128, vanillaPixels, 0, 128);
-				image = vanillaImage;
-			}
+				BufferedImage image = loadTextureImage(textureName);
+				if (image == null)
+				{
+					// Load vanilla texture
+					int[] pixels = textureProvider.load(i);
+					if (pixels == null)
+					{
+						log.warn("No vanilla pixels for texture index {}", i);
+						unusedIndices.addLast(i);
+						continue;
+					}
+					if (pixels.length != 128 * 128)
+					{
+						log.warn("Unknown dimensions for vanilla texture at index {} ({} pixels)", i, pixels.length);
+						unusedIndices.addLast(i);
+						continue;
+					}
+
+					for (int j = 0; j < pixels.length; j++) {
+						int p = pixels[j];
+						vanillaPixels[j] = p == 0 ? 0 : 0xFF << 24 | p & 0xFFFFFF;
+					}
+
+					vanillaImage.setRGB(0, 0, 128, 128, vanillaPixels, 0, 128);
+					image = vanillaImage;
+				}
 
-			uploadTexture(i, image);
-			if (material != Material.NONE)
-			{
-				materialOrdinalToTextureIndex[material.ordinal()] = i;
-			}
+				uploadTexture(i, image);
+				if (material != Material.NONE)
+				{
+					materialOrdinalToTextureIndex[material.ordinal()] = i;
+				}
 
-			// Convert texture animations to the same format as Material scrolling
-			int direction = texture.getAnimationDirection();
-			if (direction != 0) {
-				float speed = texture.getAnimationSpeed() * 50 / 128.f;
-				float radians = direction * -HALF_PI;
-				textureAnimations[i * 2] = (float) Math.cos(radians) * speed;
-				textureAnimations[i * 2 + 1] = (float) Math.sin(radians) * speed;
+				// Convert texture animations to the same format as Material scrolling
+				int direction = texture.getAnimationDirection();
+				if (direction != 0) {
+					float speed = texture.getAnimationSpeed() * 50 / 128.f;
+					float radians = direction * -HALF_PI;
+					textureAnimations[i * 2] = (float) Math.cos(radians) * speed;
+					textureAnimations[i * 2 + 1] = (float) Math.sin(radians) * speed;
+				}
 			}
-		}
 
-		int vanillaCount = i - unusedIndices.size();
-		log.debug("Loaded {} vanilla textures", vanillaCount);
+			int vanillaCount = i - unusedIndices.size();
+			log.debug("Loaded {} vanilla textures", vanillaCount);
 
-		for (Material material : Material.values())
-		{
-			if (material == Material.NONE)
+			for (Material material : Material.values())
 			{
-				continue;
-			}
+				if (material == Material.NONE)
+				{
+					continue;
+				}
 
-			if (material.parent != null)
-			{
-				// Point this material to pre-existing texture from parent material
-				materialOrdinalToTextureIndex[material.ordinal()] = materialOrdinalToTextureIndex[material.parent.ordinal()];
-				continue;
-			}
+				if (material.parent != null)
+				{
+					// Point this material to pre-existing texture from parent material
+					materialOrdinalToTextureIndex[material.ordinal()] = materialOrdinalToTextureIndex[material.parent.ordinal()];
+					continue;
+				}
 
-			String textureName = material.name().toLowerCase();
-			BufferedImage image = loadTextureImage(textureName);
-			if (image == null)
-			{
-				log.trace("No texture override for: {}", textureName);
-				continue;
-			}
+				String textureName = material.name().toLowerCase();
+				BufferedImage image = loadTextureImage(textureName);
+				if (image == null)
+				{
+					log.trace("No texture override for: {}", textureName);
+					continue;
+				}
 
-			Integer index = -1;
-			if (material.materialToReplace != null && material.replacementCondition.apply(config))
-			{
-				index = materialOrdinalToTextureIndex[material.materialToReplace.ordinal()];
-				materialReplacements[material.materialToReplace.ordinal()] = material.ordinal();
-			}
+				Integer index = -1;
+				if (material.materialToReplace != null && material.replacementCondition.apply(config))
+				{
+					index = materialOrdinalToTextureIndex[material.materialToReplace.ordinal()];
+					materialReplacements[material.materialToReplace.ordinal()] = material.ordinal();
+				}
 
-			if (index == -1)
-			{
-				index = unusedIndices.pollFirst();
-				if (index == null)
+				if (index == -1)
 				{
-					index = i++;
+					index = unusedIndices.pollFirst();
+					if (index == null)
+					{
+						index = i++;
+					}
 				}
-			}
 
-			uploadTexture(index, image);
-			materialOrdinalToTextureIndex[material.ordinal()] = index;
-		}
+				uploadTexture(index, image);
+				materialOrdinalToTextureIndex[material.ordinal()] = index;
+			}
 
-		int hdCount = i - unusedIndices.size() - vanillaCount;
-		log.debug("Loaded {} HD textures", hdCount);
+			int hdCount = i - unusedIndices.size() - vanillaCount;
+			log.debug("Loaded {} HD textures", hdCount);
 
-		glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+			glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+		}
+		finally
+		{
+			// Reset, even if loading failed partway through
+			OffHeapMemory.free(OffHeapMemory.Subsystem.TEXTURES, pixelBuffer);
+			pixelBuffer = null;
+			scaledImage = null;
+			vanillaImage = null;
+			textureProvider.setBrightness(save);
+		}
 
-		// Reset
-		pixelBuffer = null;
-		scaledImage = null;
-		vanillaImage = null;
-		textureProvider.setBrightness(save);
 		glActiveTexture(TEXTURE_UNIT_UI);
 
 		plugin.updateMaterialUniformBuffer(textureAnimations);
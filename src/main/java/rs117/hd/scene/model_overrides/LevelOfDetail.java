@@ -0,0 +1,61 @@
+package rs117.hd.scene.model_overrides;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * How far away from the camera a model stays drawn, when level of detail is enabled. The importance of each scene model
+ * is packed into the two lowest bits of its buffer offset at upload, next to the {@link #SKIP} marker, which hides the
+ * model at any distance.
+ */
+@RequiredArgsConstructor
+public enum LevelOfDetail
+{
+	/**
+	 * Picked from the type and size of the model
+	 */
+	AUTO(-1),
+	/**
+	 * Drawn at any distance, like buildings, walls and large scenery
+	 */
+	ALWAYS(0b00),
+	/**
+	 * Hidden past the medium object distance, like bushes, crates and furniture
+	 */
+	MEDIUM(0b01),
+	/**
+	 * Hidden past the small object distance, like flowers, pebbles and other ground clutter
+	 */
+	SMALL(0b10);
+
+	public static final int MASK = 0b11;
+	public static final int SKIP = 0b11;
+
+	// Bounding radii up to which models count as small or medium, in local units of which a tile is 128 across
+	static final int SMALL_RADIUS = 64;
+	static final int MEDIUM_RADIUS = 160;
+
+	public final int bits;
+
+	/**
+	 * @param interactable whether the model belongs to an object with actions, which is never hidden, since it should
+	 *                     stay clickable wherever it can be seen
+	 */
+	public static LevelOfDetail classify(LevelOfDetail override, ObjectType objectType, boolean interactable, int radius)
+	{
+		if (interactable)
+			return ALWAYS;
+
+		if (override != AUTO)
+			return override;
+
+		// Walls outline buildings and rooms, which shouldn't fall apart in the distance
+		if (objectType == ObjectType.WALL_OBJECT)
+			return ALWAYS;
+
+		if (radius <= SMALL_RADIUS)
+			return SMALL;
+		if (radius <= MEDIUM_RADIUS)
+			return MEDIUM;
+		return ALWAYS;
+	}
+}
@@ -36,10 +36,30 @@ public class ModelOverride
     public boolean disableShadows = false;
     public TzHaarRecolorType tzHaarRecolorType = TzHaarRecolorType.NONE;
     public InheritTileColorType inheritTileColorType = InheritTileColorType.NONE;
+    public LevelOfDetail levelOfDetail = LevelOfDetail.AUTO;
 
     @JsonAdapter(AABB.JsonAdapter.class)
     public AABB[] hideInAreas = {};
 
+    /**
+     * Hashes only the fields which affect pushed model data, based on their contents rather than identity,
+     * so the hash stays the same between client sessions and can be used in persistent cache keys.
+     */
+    @Override
+    public int hashCode() {
+        int hash = baseMaterial.name().hashCode();
+        hash = hash * 31 + textureMaterial.name().hashCode();
+        hash = hash * 31 + uvType.name().hashCode();
+        hash = hash * 31 + Float.floatToIntBits(uvScale);
+        hash = hash * 31 + uvOrientation;
+        hash = hash * 31 + (flatNormals ? 1 : 0);
+        hash = hash * 31 + (removeBakedLighting ? 1 : 0);
+        hash = hash * 31 + (disableShadows ? 1 : 0);
+        hash = hash * 31 + tzHaarRecolorType.name().hashCode();
+        hash = hash * 31 + inheritTileColorType.name().hashCode();
+        return hash;
+    }
+
     public void computeModelUvw(float[] out, int i, float x, float y, float z, int orientation) {
         double rad, cos, sin;
         float temp;
@@ -1,15 +1,21 @@
 package rs117.hd.utils;
 
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 import net.runelite.client.config.Keybind;
 import net.runelite.client.input.KeyListener;
 import net.runelite.client.input.KeyManager;
 import net.runelite.client.ui.overlay.OverlayManager;
+import rs117.hd.overlays.FrameTimingsOverlay;
 import rs117.hd.overlays.TileInfoOverlay;
 
 import javax.inject.Inject;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 @Slf4j
 public class DeveloperTools implements KeyListener
@@ -17,6 +23,9 @@ public class DeveloperTools implements KeyListener
 
 	// This could be part of the config if we had developer mode config sections
 	private static final Keybind KEY_TOGGLE_TILE_INFO = new Keybind(KeyEvent.VK_F3, InputEvent.CTRL_DOWN_MASK);
+	private static final Keybind KEY_TOGGLE_FRAME_TIMINGS = new Keybind(KeyEvent.VK_F4, InputEvent.CTRL_DOWN_MASK);
+	private static final Keybind KEY_EXPORT_FRAME_TIMINGS = new Keybind(KeyEvent.VK_F5, InputEvent.CTRL_DOWN_MASK);
+	private static final Path FRAME_TIMINGS_DIR = RuneLite.RUNELITE_DIR.toPath().resolve("117hd").resolve("frame-timings");
 
 	@Inject
 	private KeyManager keyManager;
@@ -27,6 +36,12 @@ public class DeveloperTools implements KeyListener
 	@Inject
 	private TileInfoOverlay tileInfoOverlay;
 
+	@Inject
+	private FrameTimingsOverlay frameTimingsOverlay;
+
+	@Inject
+	private FrameTimer frameTimer;
+
 	private boolean tileInfoOverlayEnabled = false;
 
 	public void activate() {
@@ -35,11 +50,16 @@ public class DeveloperTools implements KeyListener
 		{
 			overlayManager.add(tileInfoOverlay);
 		}
+		if (frameTimer.isEnabled())
+		{
+			overlayManager.add(frameTimingsOverlay);
+		}
 	}
 
 	public void deactivate() {
 		keyManager.unregisterKeyListener(this);
 		overlayManager.remove(tileInfoOverlay);
+		overlayManager.remove(frameTimingsOverlay);
 	}
 
 	@Override
@@ -58,6 +78,32 @@ public class DeveloperTools implements KeyListener
 				overlayManager.remove(tileInfoOverlay);
 			}
 		}
+		else if (KEY_TOGGLE_FRAME_TIMINGS.matches(event))
+		{
+			event.consume();
+			frameTimer.setEnabled(!frameTimer.isEnabled());
+			if (frameTimer.isEnabled())
+			{
+				overlayManager.add(frameTimingsOverlay);
+			}
+			else
+			{
+				overlayManager.remove(frameTimingsOverlay);
+			}
+		}
+		else if (KEY_EXPORT_FRAME_TIMINGS.matches(event))
+		{
+			event.consume();
+			String timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+			try
+			{
+				frameTimer.exportCsv(FRAME_TIMINGS_DIR.resolve(timestamp + ".csv"));
+			}
+			catch (IOException ex)
+			{
+				log.error("Failed to export frame timings", ex);
+			}
+		}
 	}
 
 	@Override
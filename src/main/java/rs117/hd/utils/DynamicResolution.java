@@ -0,0 +1,174 @@
+package rs117.hd.utils;
+
+import lombok.Getter;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL33C.*;
+
+/**
+ * Picks the scale to draw the scene at, relative to the viewport, from how long the GPU took to draw recent frames
+ * compared to the frame time of the target FPS. GPU frame times are measured with {@code GL_TIMESTAMP} queries, which
+ * unlike the time elapsed queries of the {@link FrameTimer} may overlap with other queries, and are read back a few
+ * frames late, so waiting for the results never stalls the pipeline.
+ * <p>
+ * The scale steps down as soon as frames run over budget, but only steps back up once the next step is expected to
+ * leave plenty of headroom, so it doesn't keep flipping back and forth around the target.
+ */
+@Singleton
+public class DynamicResolution
+{
+	public static final float MAX_SCALE = 1;
+
+	// Scales are rounded to steps, so the scene texture isn't reallocated for every tiny adjustment
+	static final float SCALE_STEP = .05f;
+	// Fractions of the frame budget above which the scale steps down, and below which it may step back up
+	static final float DOWNSCALE_THRESHOLD = .9f;
+	static final float UPSCALE_THRESHOLD = .7f;
+	// Frame time to aim for when stepping down, in between the two thresholds
+	static final float DOWNSCALE_GOAL = .8f;
+	// The number of frames averaged before each adjustment
+	static final int SAMPLED_FRAMES = 10;
+
+	// The number of frames in flight before their GPU timings are read back
+	private static final int QUERY_LATENCY = 4;
+
+	@Getter
+	private float scale = MAX_SCALE;
+
+	private final int[][] queries = new int[QUERY_LATENCY][2];
+	private final boolean[] framesPending = new boolean[QUERY_LATENCY];
+	private boolean queriesCreated;
+	private int frame;
+
+	private long sampledNanos;
+	private int sampledFrames;
+	// Frames still to be ignored after a change in scale, which were drawn before the change took effect
+	private int settlingFrames;
+
+	/**
+	 * Mark the start of the frame's GPU work, which must be done on the GL thread.
+	 */
+	public void beginFrame()
+	{
+		if (!queriesCreated)
+		{
+			for (int[] frameQueries : queries)
+				glGenQueries(frameQueries);
+			queriesCreated = true;
+		}
+
+		glQueryCounter(queries[frame][0], GL_TIMESTAMP);
+	}
+
+	/**
+	 * Mark the end of the frame's GPU work, and adjust the scale from the timings of the oldest frame in flight.
+	 *
+	 * @param targetFps the frame rate to keep up with, or zero to draw at full scale
+	 * @param minScale  the lowest scale to go down to
+	 */
+	public void endFrame(int targetFps, float minScale)
+	{
+		glQueryCounter(queries[frame][1], GL_TIMESTAMP);
+		framesPending[frame] = true;
+		frame = (frame + 1) % QUERY_LATENCY;
+
+		// The oldest frame in flight is the one whose queries are about to be reused
+		if (!framesPending[frame])
+			return;
+		framesPending[frame] = false;
+
+		// By now the results should long be available, so this won't normally have to wait
+		long start = glGetQueryObjecti64(queries[frame][0], GL_QUERY_RESULT);
+		long end = glGetQueryObjecti64(queries[frame][1], GL_QUERY_RESULT);
+		update(end - start, targetFps <= 0 ? 0 : 1_000_000_000L / targetFps, minScale);
+	}
+
+	/**
+	 * Go back to full scale, and delete the GL queries, which must be done on the GL thread before the context is
+	 * destroyed.
+	 */
+	public void destroy()
+	{
+		if (queriesCreated)
+		{
+			for (int[] frameQueries : queries)
+				glDeleteQueries(frameQueries);
+			queriesCreated = false;
+		}
+		frame = 0;
+		Arrays.fill(framesPending, false);
+		scale = MAX_SCALE;
+		sampledNanos = 0;
+		sampledFrames = 0;
+		settlingFrames = 0;
+	}
+
+	/**
+	 * Add the GPU time of a frame, and adjust the scale once enough frames have been sampled.
+	 *
+	 * @param frameNanos  the time the GPU took to draw the frame
+	 * @param budgetNanos the time each frame may take, or zero to draw at full scale
+	 * @param minScale    the lowest scale to go down to
+	 */
+	void update(long frameNanos, long budgetNanos, float minScale)
+	{
+		if (budgetNanos <= 0)
+		{
+			setScale(MAX_SCALE);
+			return;
+		}
+
+		if (settlingFrames > 0)
+		{
+			settlingFrames--;
+			return;
+		}
+
+		sampledNanos += frameNanos;
+		if (++sampledFrames < SAMPLED_FRAMES)
+			return;
+
+		double averageNanos = (double) sampledNanos / sampledFrames;
+		sampledNanos = 0;
+		sampledFrames = 0;
+
+		minScale = Math.min(Math.max(minScale, SCALE_STEP), MAX_SCALE);
+		float newScale = scale;
+		if (averageNanos > budgetNanos * DOWNSCALE_THRESHOLD)
+		{
+			// GPU time mostly scales with the number of pixels drawn, so with the square of the scale
+			float goal = (float) (scale * Math.sqrt(budgetNanos * DOWNSCALE_GOAL / averageNanos));
+			newScale = Math.min(roundDown(goal), scale - SCALE_STEP);
+		}
+		else if (scale < MAX_SCALE)
+		{
+			float nextScale = scale + SCALE_STEP;
+			double expectedNanos = averageNanos * (nextScale * nextScale) / (scale * scale);
+			if (expectedNanos < budgetNanos * UPSCALE_THRESHOLD)
+				newScale = nextScale;
+		}
+
+		setScale(Math.min(Math.max(newScale, minScale), MAX_SCALE));
+	}
+
+	private void setScale(float newScale)
+	{
+		// Stepping in floats would let the scale drift away from whole steps
+		newScale = Math.round(newScale / SCALE_STEP) * SCALE_STEP;
+		if (Math.abs(newScale - scale) < SCALE_STEP / 2)
+			return;
+
+		scale = newScale;
+		sampledNanos = 0;
+		sampledFrames = 0;
+		settlingFrames = QUERY_LATENCY;
+	}
+
+	private static float roundDown(float scale)
+	{
+		// Leave some leeway for floating point error, so an exact step isn't rounded down to the one below
+		return (float) Math.floor(scale / SCALE_STEP + 1e-3f) * SCALE_STEP;
+	}
+}
@@ -0,0 +1,206 @@
+package rs117.hd.utils;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL33C.*;
+
+/**
+ * Times the stages of each frame, on the CPU with {@link System#nanoTime()}, and on the GPU with
+ * {@code GL_TIME_ELAPSED} queries. GPU timings are read back a few frames late, so waiting for the results never
+ * stalls the pipeline, and a frame is only added to the {@link #getHistory() history} once all of its timings are in.
+ * <p>
+ * Timing is off by default, and can be toggled from any thread, but only takes effect between frames on the GL thread.
+ * Only one GPU timer can run at a time, since time elapsed queries can't be nested.
+ */
+@Slf4j
+@Singleton
+public class FrameTimer
+{
+	@Getter
+	@RequiredArgsConstructor
+	public enum Timer
+	{
+		DRAW_SCENE("Draw scene", false),
+		UPDATE_ENVIRONMENT("Update environment", false),
+		UPDATE_LIGHTS("Update lights", false),
+		SCENE_TRAVERSAL("Scene traversal", false),
+		CULLING("Culling", true),
+		COMPUTE("Compute", true),
+		SHADOW_PASS("Shadow pass", true),
+		SCENE_PASS("Scene pass", true),
+		UI_PASS("UI pass", true),
+		AA_RESOLVE("Anti-aliasing resolve", true),
+		SCENE_UPSCALE("Scene upscale", true),
+		HI_Z_BUFFER("Hi-Z buffer", true);
+
+		private final String displayName;
+		private final boolean gpuTimer;
+	}
+
+	public static final Timer[] TIMERS = Timer.values();
+
+	// The number of frames in flight before their GPU timings are read back
+	private static final int QUERY_LATENCY = 4;
+	private static final int HISTORY_SIZE = 1024;
+
+	@Getter
+	private final FrameTimingsBuffer history = new FrameTimingsBuffer(HISTORY_SIZE);
+
+	@Getter
+	private volatile boolean enabled;
+	// Whether timing is actually taking place, which only changes between frames
+	private boolean active;
+
+	private final long[][] pendingTimings = new long[QUERY_LATENCY][TIMERS.length];
+	private final int[][] queries = new int[QUERY_LATENCY][TIMERS.length];
+	private final boolean[][] queriesIssued = new boolean[QUERY_LATENCY][TIMERS.length];
+	private final boolean[] framesPending = new boolean[QUERY_LATENCY];
+	private final long[] cpuStartTimes = new long[TIMERS.length];
+	private int frame;
+
+	/**
+	 * Turn timing on or off, starting from the next frame.
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	public void begin(Timer timer)
+	{
+		if (!active)
+			return;
+
+		int i = timer.ordinal();
+		if (timer.gpuTimer)
+		{
+			glBeginQuery(GL_TIME_ELAPSED, queries[frame][i]);
+			queriesIssued[frame][i] = true;
+		}
+		else
+		{
+			cpuStartTimes[i] = System.nanoTime();
+		}
+	}
+
+	public void end(Timer timer)
+	{
+		if (!active)
+			return;
+
+		int i = timer.ordinal();
+		if (timer.gpuTimer)
+		{
+			glEndQuery(GL_TIME_ELAPSED);
+		}
+		else if (cpuStartTimes[i] != 0)
+		{
+			// CPU timers may run more than once per frame, in which case their times add up
+			pendingTimings[frame][i] += System.nanoTime() - cpuStartTimes[i];
+			cpuStartTimes[i] = 0;
+		}
+	}
+
+	/**
+	 * Move on to the next frame, which must be done on the GL thread once all GPU timers of the frame have ended.
+	 */
+	public void endFrame()
+	{
+		if (active)
+		{
+			framesPending[frame] = true;
+			frame = (frame + 1) % QUERY_LATENCY;
+			// The oldest frame in flight is the one whose queries are about to be reused
+			if (framesPending[frame])
+				collectFrame(frame);
+		}
+
+		if (enabled && !active)
+		{
+			for (int[] frameQueries : queries)
+				glGenQueries(frameQueries);
+			active = true;
+		}
+		else if (!enabled && active)
+		{
+			destroy();
+		}
+	}
+
+	/**
+	 * Stop timing and delete the GL queries, which must be done on the GL thread before the context is destroyed.
+	 * Timing starts back up on the next frame if it's still enabled.
+	 */
+	public void destroy()
+	{
+		if (active)
+		{
+			for (int[] frameQueries : queries)
+				glDeleteQueries(frameQueries);
+		}
+		active = false;
+		frame = 0;
+		for (int i = 0; i < QUERY_LATENCY; i++)
+		{
+			framesPending[i] = false;
+			Arrays.fill(pendingTimings[i], 0);
+			Arrays.fill(queriesIssued[i], false);
+		}
+		Arrays.fill(cpuStartTimes, 0);
+	}
+
+	/**
+	 * Write every frame in the history to a CSV file, with a column of nanoseconds for each timer.
+	 */
+	public void exportCsv(Path path) throws IOException
+	{
+		long[][] frames = history.snapshot(history.getCapacity());
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8)))
+		{
+			StringBuilder sb = new StringBuilder("frame");
+			for (Timer timer : TIMERS)
+				sb.append(',').append(timer.name().toLowerCase()).append(timer.gpuTimer ? "_gpu_ns" : "_cpu_ns");
+			writer.println(sb);
+
+			for (int i = 0; i < frames.length; i++)
+			{
+				sb.setLength(0);
+				sb.append(i);
+				for (long nanos : frames[i])
+					sb.append(',').append(nanos);
+				writer.println(sb);
+			}
+		}
+		log.info("Exported timings of {} frames to {}", frames.length, path);
+	}
+
+	private void collectFrame(int frame)
+	{
+		long[] timings = pendingTimings[frame];
+		for (Timer timer : TIMERS)
+		{
+			int i = timer.ordinal();
+			if (!queriesIssued[frame][i])
+				continue;
+
+			// By now the results should long be available, so this won't normally have to wait
+			timings[i] = glGetQueryObjecti64(queries[frame][i], GL_QUERY_RESULT);
+			queriesIssued[frame][i] = false;
+		}
+
+		history.add(timings);
+		Arrays.fill(timings, 0);
+		framesPending[frame] = false;
+	}
+}
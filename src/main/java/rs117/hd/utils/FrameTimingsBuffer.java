@@ -0,0 +1,61 @@
+package rs117.hd.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size history of per-frame timings, written to by a single thread and readable from any other without locking.
+ * Each frame is stored as a fresh array which is never modified afterwards, so readers can't observe a frame which is
+ * only partially written.
+ */
+public class FrameTimingsBuffer
+{
+	private final AtomicReferenceArray<long[]> frames;
+	private final AtomicLong frameCount = new AtomicLong();
+
+	public FrameTimingsBuffer(int capacity)
+	{
+		frames = new AtomicReferenceArray<>(capacity);
+	}
+
+	public int getCapacity()
+	{
+		return frames.length();
+	}
+
+	/**
+	 * @return the total number of frames added so far, including those which have since been overwritten
+	 */
+	public long getFrameCount()
+	{
+		return frameCount.get();
+	}
+
+	/**
+	 * Add a copy of the timings of a frame, overwriting the oldest frame if the buffer is full. Must only ever be
+	 * called from a single thread.
+	 */
+	public void add(long[] timings)
+	{
+		long count = frameCount.get();
+		frames.set((int) (count % frames.length()), timings.clone());
+		frameCount.set(count + 1);
+	}
+
+	/**
+	 * Copy out the most recent frames. If frames are added concurrently, some of the oldest frames returned may
+	 * already have been replaced by newer ones.
+	 *
+	 * @param maxFrames the maximum number of frames to return
+	 * @return the timings of each frame, ordered from oldest to newest
+	 */
+	public long[][] snapshot(int maxFrames)
+	{
+		long count = frameCount.get();
+		int n = (int) Math.min(Math.min(count, frames.length()), maxFrames);
+		long[][] result = new long[n][];
+		for (int i = 0; i < n; i++)
+			result[i] = frames.get((int) ((count - n + i) % frames.length()));
+		return result;
+	}
+}
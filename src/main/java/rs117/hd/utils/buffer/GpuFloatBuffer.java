@@ -28,16 +28,56 @@ import org.lwjgl.system.MemoryUtil;
 
 import java.nio.FloatBuffer;
 
+import static rs117.hd.utils.buffer.OffHeapMemory.Subsystem.STAGING_BUFFERS;
+
 public class GpuFloatBuffer
 {
-	private FloatBuffer buffer = MemoryUtil.memAllocFloat(65536);
+	private FloatBuffer buffer = OffHeapMemory.allocateFloats(STAGING_BUFFERS, 65536);
+	// While streaming, the buffer is a view of the current slice of a persistently mapped GL buffer
+	private StreamingBuffer streamingBuffer;
 
 	public void destroy() {
-		if (buffer != null)
-			MemoryUtil.memFree(buffer);
+		if (streamingBuffer != null)
+			streamingBuffer.destroy();
+		else if (buffer != null)
+			OffHeapMemory.free(STAGING_BUFFERS, buffer);
+		streamingBuffer = null;
 		buffer = null;
 	}
 
+	/**
+	 * Write straight into a persistently mapped GL buffer from now on, which must be done on the GL thread.
+	 * See {@link StreamingBuffer}.
+	 */
+	public void startStreaming()
+	{
+		int capacity = buffer.capacity();
+		destroy();
+		streamingBuffer = new StreamingBuffer();
+		streamingBuffer.resize((long) capacity * Float.BYTES, 0);
+		buffer = MemoryUtil.memFloatBuffer(streamingBuffer.getSliceAddress(), capacity);
+	}
+
+	/**
+	 * @return the streaming buffer written to, or null if not streaming
+	 */
+	public StreamingBuffer getStreamingBuffer()
+	{
+		return streamingBuffer;
+	}
+
+	/**
+	 * Start writing to the next slice of the streaming buffer from the beginning, if streaming.
+	 */
+	public void nextSlice()
+	{
+		if (streamingBuffer == null)
+			return;
+
+		streamingBuffer.nextSlice();
+		buffer = MemoryUtil.memFloatBuffer(streamingBuffer.getSliceAddress(), buffer.capacity());
+	}
+
 	public void put(float texture, float u, float v, float pad)
 	{
 		buffer.put(texture).put(u).put(v).put(pad);
@@ -78,10 +118,18 @@ public class GpuFloatBuffer
 			}
 			while ((capacity - position) < size);
 
-			FloatBuffer newB = MemoryUtil.memAllocFloat(capacity);
+			if (streamingBuffer != null)
+			{
+				streamingBuffer.resize((long) capacity * Float.BYTES, (long) position * Float.BYTES);
+				buffer = MemoryUtil.memFloatBuffer(streamingBuffer.getSliceAddress(), capacity);
+				buffer.position(position);
+				return;
+			}
+
+			FloatBuffer newB = OffHeapMemory.allocateFloats(STAGING_BUFFERS, capacity);
 			buffer.flip();
 			newB.put(buffer);
-			MemoryUtil.memFree(buffer);
+			OffHeapMemory.free(STAGING_BUFFERS, buffer);
 			buffer = newB;
 		}
 	}
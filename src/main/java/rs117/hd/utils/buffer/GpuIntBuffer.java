@@ -28,16 +28,56 @@ import org.lwjgl.system.MemoryUtil;
 
 import java.nio.IntBuffer;
 
+import static rs117.hd.utils.buffer.OffHeapMemory.Subsystem.STAGING_BUFFERS;
+
 public class GpuIntBuffer
 {
-	private IntBuffer buffer = MemoryUtil.memAllocInt(65536);
+	private IntBuffer buffer = OffHeapMemory.allocateInts(STAGING_BUFFERS, 65536);
+	// While streaming, the buffer is a view of the current slice of a persistently mapped GL buffer
+	private StreamingBuffer streamingBuffer;
 
 	public void destroy() {
-		if (buffer != null)
-			MemoryUtil.memFree(buffer);
+		if (streamingBuffer != null)
+			streamingBuffer.destroy();
+		else if (buffer != null)
+			OffHeapMemory.free(STAGING_BUFFERS, buffer);
+		streamingBuffer = null;
 		buffer = null;
 	}
 
+	/**
+	 * Write straight into a persistently mapped GL buffer from now on, which must be done on the GL thread.
+	 * See {@link StreamingBuffer}.
+	 */
+	public void startStreaming()
+	{
+		int capacity = buffer.capacity();
+		destroy();
+		streamingBuffer = new StreamingBuffer();
+		streamingBuffer.resize((long) capacity * Integer.BYTES, 0);
+		buffer = MemoryUtil.memIntBuffer(streamingBuffer.getSliceAddress(), capacity);
+	}
+
+	/**
+	 * @return the streaming buffer written to, or null if not streaming
+	 */
+	public StreamingBuffer getStreamingBuffer()
+	{
+		return streamingBuffer;
+	}
+
+	/**
+	 * Start writing to the next slice of the streaming buffer from the beginning, if streaming.
+	 */
+	public void nextSlice()
+	{
+		if (streamingBuffer == null)
+			return;
+
+		streamingBuffer.nextSlice();
+		buffer = MemoryUtil.memIntBuffer(streamingBuffer.getSliceAddress(), buffer.capacity());
+	}
+
 	public void put(int x, int y, int z)
 	{
 		buffer.put(x).put(y).put(z);
@@ -83,10 +123,18 @@ public class GpuIntBuffer
 			}
 			while ((capacity - position) < size);
 
-			IntBuffer newB = MemoryUtil.memAllocInt(capacity);
+			if (streamingBuffer != null)
+			{
+				streamingBuffer.resize((long) capacity * Integer.BYTES, (long) position * Integer.BYTES);
+				buffer = MemoryUtil.memIntBuffer(streamingBuffer.getSliceAddress(), capacity);
+				buffer.position(position);
+				return this;
+			}
+
+			IntBuffer newB = OffHeapMemory.allocateInts(STAGING_BUFFERS, capacity);
 			buffer.flip();
 			newB.put(buffer);
-			MemoryUtil.memFree(buffer);
+			OffHeapMemory.free(STAGING_BUFFERS, buffer);
 			buffer = newB;
 		}
 
@@ -0,0 +1,268 @@
+package rs117.hd.utils.buffer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accounts for every explicitly managed off-heap allocation made by the plugin, so running out of native memory can be
+ * attributed to whichever subsystem is actually using it.
+ * <p>
+ * Usage and high-water marks are tracked per {@link Subsystem}, and checked against a global budget. The budget is
+ * soft: allocations are never refused because of it, since most of them can't be done without. Instead, going over
+ * budget is logged along with a breakdown of usage, and {@link #relievePressure()} asks the registered
+ * {@link PressureListener}s, like the model cache, to give memory back at the next safe point.
+ */
+@Slf4j
+public class OffHeapMemory
+{
+	public static final long MiB = 1024 * 1024;
+
+	@Getter
+	@RequiredArgsConstructor
+	public enum Subsystem
+	{
+		MODEL_CACHE("Model cache"),
+		STAGING_BUFFERS("Staging buffers"),
+		TEXTURES("Textures"),
+		UNIFORMS("Uniforms"),
+		DISK_CACHE("Disk cache writes"),
+		MISC("Other");
+
+		private final String displayName;
+	}
+
+	public interface PressureListener
+	{
+		/**
+		 * Called on the client thread between frames, while usage exceeds the budget.
+		 *
+		 * @param bytes how many bytes would have to be freed to get back within budget
+		 * @return how many bytes were actually freed
+		 */
+		long releaseMemory(long bytes);
+	}
+
+	private static final Subsystem[] SUBSYSTEMS = Subsystem.values();
+	private static final AtomicLongArray usage = new AtomicLongArray(SUBSYSTEMS.length);
+	private static final AtomicLongArray highWaterMarks = new AtomicLongArray(SUBSYSTEMS.length);
+	private static final AtomicLong totalUsage = new AtomicLong();
+	private static final AtomicLong totalHighWaterMark = new AtomicLong();
+	private static final CopyOnWriteArrayList<PressureListener> pressureListeners = new CopyOnWriteArrayList<>();
+
+	// Zero means there's no budget
+	private static volatile long budget;
+	// Only warn once each time usage goes over budget
+	private static volatile boolean overBudget;
+
+	/**
+	 * @param bytes the global budget in bytes, or zero for no budget at all
+	 */
+	public static void setBudget(long bytes)
+	{
+		budget = Math.max(bytes, 0);
+		overBudget = false;
+	}
+
+	public static long getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * How many bytes can still be allocated without going over budget.
+	 */
+	public static long getAvailable()
+	{
+		long limit = budget;
+		return limit == 0 ? Long.MAX_VALUE : Math.max(limit - totalUsage.get(), 0);
+	}
+
+	public static long getUsage(Subsystem subsystem)
+	{
+		return usage.get(subsystem.ordinal());
+	}
+
+	public static long getHighWaterMark(Subsystem subsystem)
+	{
+		return highWaterMarks.get(subsystem.ordinal());
+	}
+
+	public static long getTotalUsage()
+	{
+		return totalUsage.get();
+	}
+
+	public static long getTotalHighWaterMark()
+	{
+		return totalHighWaterMark.get();
+	}
+
+	public static void addPressureListener(PressureListener listener)
+	{
+		pressureListeners.add(listener);
+	}
+
+	public static void removePressureListener(PressureListener listener)
+	{
+		pressureListeners.remove(listener);
+	}
+
+	/**
+	 * Ask the pressure listeners to free memory for as long as usage exceeds the budget. This must only be called
+	 * when none of the memory which the listeners may free is in use, which in practice means between frames.
+	 */
+	public static void relievePressure()
+	{
+		long limit = budget;
+		if (limit == 0)
+			return;
+
+		for (PressureListener listener : pressureListeners)
+		{
+			long excess = totalUsage.get() - limit;
+			if (excess <= 0)
+				break;
+
+			long released = listener.releaseMemory(excess);
+			if (released > 0)
+				log.debug("Released {} KiB of off-heap memory to get back within budget", released / 1024);
+		}
+
+		if (totalUsage.get() <= limit)
+			overBudget = false;
+	}
+
+	/**
+	 * Allocate memory which must be freed with {@link #free(Subsystem, long, long)}.
+	 */
+	public static long allocate(Subsystem subsystem, long bytes) throws OutOfMemoryError
+	{
+		long address;
+		try
+		{
+			address = MemoryUtil.nmemAllocChecked(bytes);
+		}
+		catch (OutOfMemoryError err)
+		{
+			logAllocationFailure(subsystem, bytes);
+			throw err;
+		}
+		track(subsystem, bytes);
+		return address;
+	}
+
+	public static void free(Subsystem subsystem, long address, long bytes)
+	{
+		MemoryUtil.nmemFree(address);
+		track(subsystem, -bytes);
+	}
+
+	public static ByteBuffer allocateBytes(Subsystem subsystem, int capacity) throws OutOfMemoryError
+	{
+		return MemoryUtil.memByteBuffer(allocate(subsystem, capacity), capacity);
+	}
+
+	public static IntBuffer allocateInts(Subsystem subsystem, int capacity) throws OutOfMemoryError
+	{
+		return MemoryUtil.memIntBuffer(allocate(subsystem, (long) capacity * Integer.BYTES), capacity);
+	}
+
+	public static FloatBuffer allocateFloats(Subsystem subsystem, int capacity) throws OutOfMemoryError
+	{
+		return MemoryUtil.memFloatBuffer(allocate(subsystem, (long) capacity * Float.BYTES), capacity);
+	}
+
+	public static void free(Subsystem subsystem, ByteBuffer buffer)
+	{
+		free(subsystem, MemoryUtil.memAddress0(buffer), buffer.capacity());
+	}
+
+	public static void free(Subsystem subsystem, IntBuffer buffer)
+	{
+		free(subsystem, MemoryUtil.memAddress0(buffer), (long) buffer.capacity() * Integer.BYTES);
+	}
+
+	public static void free(Subsystem subsystem, FloatBuffer buffer)
+	{
+		free(subsystem, MemoryUtil.memAddress0(buffer), (long) buffer.capacity() * Float.BYTES);
+	}
+
+	/**
+	 * Account for memory allocated or freed without going through this class.
+	 *
+	 * @param bytes the number of bytes allocated, or negative for bytes freed
+	 */
+	public static void track(Subsystem subsystem, long bytes)
+	{
+		int i = subsystem.ordinal();
+		long used = usage.addAndGet(i, bytes);
+		long total = totalUsage.addAndGet(bytes);
+		if (bytes <= 0)
+			return;
+
+		updateMax(highWaterMarks, i, used);
+		long highWaterMark;
+		while (total > (highWaterMark = totalHighWaterMark.get()) && !totalHighWaterMark.compareAndSet(highWaterMark, total))
+			;
+
+		long limit = budget;
+		if (limit != 0 && total > limit && !overBudget)
+		{
+			overBudget = true;
+			log.warn("Off-heap memory usage is over budget after allocating {} KiB for {}:\n{}",
+				bytes / 1024, subsystem.getDisplayName(), describe());
+		}
+	}
+
+	/**
+	 * Forget the high-water marks, so they start over from the current usage.
+	 */
+	public static void resetHighWaterMarks()
+	{
+		for (int i = 0; i < SUBSYSTEMS.length; i++)
+			highWaterMarks.set(i, usage.get(i));
+		totalHighWaterMark.set(totalUsage.get());
+	}
+
+	public static String describe()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Subsystem subsystem : SUBSYSTEMS)
+		{
+			sb.append(String.format("%20s: %8.1f MiB in use, %8.1f MiB at most\n", subsystem.getDisplayName(),
+				(double) getUsage(subsystem) / MiB, (double) getHighWaterMark(subsystem) / MiB));
+		}
+		long limit = budget;
+		sb.append(String.format("%20s: %8.1f MiB in use, %8.1f MiB at most, budget %s", "Total",
+			(double) getTotalUsage() / MiB, (double) getTotalHighWaterMark() / MiB,
+			limit == 0 ? "unlimited" : limit / MiB + " MiB"));
+		return sb.toString();
+	}
+
+	public static void logStats()
+	{
+		log.debug("Off-heap memory usage:\n{}", describe());
+	}
+
+	private static void updateMax(AtomicLongArray array, int i, long value)
+	{
+		long max;
+		while (value > (max = array.get(i)) && !array.compareAndSet(i, max, value))
+			;
+	}
+
+	private static void logAllocationFailure(Subsystem subsystem, long bytes)
+	{
+		log.error("Failed to allocate {} KiB of off-heap memory for {}:\n{}",
+			bytes / 1024, subsystem.getDisplayName(), describe());
+	}
+}
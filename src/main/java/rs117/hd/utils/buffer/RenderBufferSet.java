@@ -0,0 +1,60 @@
+package rs117.hd.utils.buffer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.lwjgl.opengl.GL33C.*;
+
+/**
+ * The buffers the compute shaders write the geometry of a frame into, for it to be drawn from. Frames take turns
+ * between several sets, so the compute work of a frame doesn't have to wait for the GPU to finish drawing the frames
+ * before it, which are still reading from other sets.
+ */
+@Slf4j
+public class RenderBufferSet
+{
+	public static final int SET_COUNT = 3;
+	private static final long FENCE_WAIT_NANOS = 1_000_000_000L;
+
+	public final GLBuffer vertices = new GLBuffer();
+	public final GLBuffer uvs = new GLBuffer();
+	public final GLBuffer normals = new GLBuffer();
+	// Draw command for the models left after culling
+	public final GLBuffer drawIndirect = new GLBuffer();
+	// Draw commands for each temporary model, for the dynamic shadow pass
+	public final GLBuffer dynamicDrawIndirect = new GLBuffer();
+	// Draw commands for each model, for the scene pass when occluded models are only culled from it
+	public final GLBuffer sceneDrawIndirect = new GLBuffer();
+
+	private long fence;
+
+	/**
+	 * Mark the buffers as in use by every GPU command issued so far.
+	 */
+	public void fence()
+	{
+		deleteFence();
+		fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+	}
+
+	/**
+	 * Wait for the GPU to finish every command issued up until the last {@link #fence()}. The GL already orders its own
+	 * commands, so this is only needed before the buffers are written to from outside of it, like by OpenCL.
+	 */
+	public void waitForFence()
+	{
+		if (fence == 0)
+			return;
+
+		int result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_WAIT_NANOS);
+		if (result == GL_TIMEOUT_EXPIRED || result == GL_WAIT_FAILED)
+			log.warn("Gave up waiting for the GPU to finish drawing from a set of render buffers: {}", result);
+		deleteFence();
+	}
+
+	public void deleteFence()
+	{
+		if (fence != 0)
+			glDeleteSync(fence);
+		fence = 0;
+	}
+}
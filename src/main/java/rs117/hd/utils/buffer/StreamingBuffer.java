@@ -0,0 +1,129 @@
+package rs117.hd.utils.buffer;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+import rs117.hd.utils.HDUtils;
+
+import static org.lwjgl.opengl.GL44C.*;
+
+/**
+ * A GL buffer which stays persistently mapped, split into slices which are written to on alternating frames.
+ * Data is written straight into the mapped memory, so uploading it costs nothing beyond writing it in the first place,
+ * and fences keep the CPU from overwriting a slice before the GPU is done reading from it.
+ * <p>
+ * Requires OpenGL 4.4 or ARB_buffer_storage.
+ */
+@Slf4j
+public class StreamingBuffer
+{
+	public static final int SLICE_COUNT = 3;
+	private static final int MAP_FLAGS = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+	private static final long FENCE_WAIT_NANOS = 1_000_000_000L;
+
+	@Getter
+	private int glBufferId;
+	@Getter
+	private long sliceSize;
+	private long address;
+	private int slice;
+	private final long[] fences = new long[SLICE_COUNT];
+
+	public static boolean isSupported(GLCapabilities caps)
+	{
+		return caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+	}
+
+	public long getSliceOffset()
+	{
+		return slice * sliceSize;
+	}
+
+	public long getSliceAddress()
+	{
+		return address + getSliceOffset();
+	}
+
+	/**
+	 * Move on to the next slice, waiting for the GPU to finish reading from it if necessary.
+	 */
+	public void nextSlice()
+	{
+		slice = (slice + 1) % SLICE_COUNT;
+		long fence = fences[slice];
+		if (fence == 0)
+			return;
+
+		int result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_WAIT_NANOS);
+		if (result == GL_TIMEOUT_EXPIRED || result == GL_WAIT_FAILED)
+			log.warn("Gave up waiting for the GPU to finish reading from a streaming buffer: {}", result);
+		glDeleteSync(fence);
+		fences[slice] = 0;
+	}
+
+	/**
+	 * Mark the current slice as in use by every GPU command issued so far.
+	 */
+	public void fence()
+	{
+		if (fences[slice] != 0)
+			glDeleteSync(fences[slice]);
+		fences[slice] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+	}
+
+	/**
+	 * Replace the buffer with one whose slices fit at least the given number of bytes, starting over from the
+	 * first slice. The GL buffer ID changes, so it must be looked up again afterwards.
+	 *
+	 * @param minSliceSize   the minimum size of each slice in bytes
+	 * @param preservedBytes how many bytes at the start of the current slice to copy over to the new one
+	 */
+	public void resize(long minSliceSize, long preservedBytes)
+	{
+		long newSliceSize = HDUtils.ceilPow2(minSliceSize);
+		log.debug("Streaming buffer resize: {} -> {} per slice", sliceSize, newSliceSize);
+
+		int newBufferId = glGenBuffers();
+		glBindBuffer(GL_COPY_WRITE_BUFFER, newBufferId);
+		glBufferStorage(GL_COPY_WRITE_BUFFER, newSliceSize * SLICE_COUNT, MAP_FLAGS);
+		long newAddress = nglMapBufferRange(GL_COPY_WRITE_BUFFER, 0, newSliceSize * SLICE_COUNT, MAP_FLAGS);
+		glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+		if (newAddress == 0)
+		{
+			glDeleteBuffers(newBufferId);
+			throw new RuntimeException("Unable to map streaming buffer of " + newSliceSize * SLICE_COUNT + " bytes");
+		}
+
+		if (preservedBytes > 0)
+			MemoryUtil.memCopy(getSliceAddress(), newAddress, preservedBytes);
+
+		// The driver keeps the old buffer alive for as long as the GPU is still reading from it
+		destroy();
+		glBufferId = newBufferId;
+		address = newAddress;
+		sliceSize = newSliceSize;
+		slice = 0;
+	}
+
+	public void destroy()
+	{
+		for (int i = 0; i < SLICE_COUNT; i++)
+		{
+			if (fences[i] != 0)
+				glDeleteSync(fences[i]);
+			fences[i] = 0;
+		}
+
+		if (glBufferId != 0)
+		{
+			glBindBuffer(GL_COPY_WRITE_BUFFER, glBufferId);
+			glUnmapBuffer(GL_COPY_WRITE_BUFFER);
+			glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+			glDeleteBuffers(glBufferId);
+		}
+		glBufferId = 0;
+		address = 0;
+		sliceSize = 0;
+	}
+}
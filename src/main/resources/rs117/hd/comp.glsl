@@ -45,6 +45,10 @@ void main() {
     uint groupId = gl_WorkGroupID.x;
     uint localId = gl_LocalInvocationID.x * 6;
     ModelInfo minfo = ol[groupId];
+    minfo.idx = modelOffsets[modelOffsetsBase + int(groupId)];
+    if (minfo.idx < 0) {
+        return; // The whole workgroup returns, so this doesn't upset the barriers below
+    }
     ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
 
     if (localId == 0) {
@@ -26,12 +26,18 @@
 #define PI 3.1415926535897932384626433832795f
 #define UNIT PI / 1024.0f
 
+#include utils/constants.glsl
+
+#define MODEL_FLAG_DYNAMIC 11
+#define MODEL_FLAG_DISTANT_DETAIL 12
+#define MODEL_FLAG_RADIUS_SHIFT 13
+
 struct ModelInfo {
     int offset;   // offset into buffer
     int uvOffset; // offset into uv buffer
     int size;     // length in faces
     int idx;      // write idx in target buffer
-    int flags;    // radius, orientation
+    int flags;    // radius, level of detail and temporary model flags, orientation
     int x;        // scene position x
     int y;        // scene position y
     int z;        // scene position z
@@ -53,6 +59,20 @@ layout(std430, binding = 3) readonly buffer StagingBufferNormals {
     vec4 normal[];
 };
 
+#include PACKED_VERTICES
+
+#if PACKED_VERTICES
+// Vertices interleaved in a single buffer, 32 bytes each, laid out as:
+//    0: position as three shorts, followed by two bytes of padding
+//    8: alpha, priority, flags and color
+//   12: uvw as three half floats, followed by two bytes of padding
+//   20: material data, as a float like in the staging buffer
+//   24: normal as a signed normalized 10:10:10:2 vector
+//   28: terrain data, as a float like in the staging buffer
+layout(std430, binding = 4) writeonly buffer RenderBufferPacked {
+    uvec4 vout[];
+};
+#else
 layout(std430, binding = 4) writeonly buffer RenderBufferVertices {
     ivec4 vout[];
 };
@@ -64,3 +84,33 @@ layout(std430, binding = 5) writeonly buffer RenderBufferUvs {
 layout(std430, binding = 6) writeonly buffer RenderBufferNormals {
     vec4 normalout[];
 };
+#endif
+
+// Where each model's faces go in the render buffer, or -1 if it was culled, as decided by comp_cull.glsl
+layout(std430, binding = 7) readonly buffer ModelOffsetBuffer {
+    int modelOffsets[];
+};
+
+uniform int modelOffsetsBase; // where this program's models start in the model offsets
+
+void writeVertex(int index, ivec4 position, vec4 uvw, vec4 normal) {
+    #if PACKED_VERTICES
+    // Normals are only used for their direction, except for those too short to have one, which must stay that way
+    vec3 n = length(normal.xyz) < .01 ? vec3(0) : normalize(normal.xyz);
+    ivec3 sn = ivec3(round(n * 511));
+    vout[index * 2] = uvec4(
+        uint(position.x & 0xFFFF) | uint(position.y) << 16,
+        uint(position.z & 0xFFFF),
+        uint(position.w),
+        packHalf2x16(uvw.xy));
+    vout[index * 2 + 1] = uvec4(
+        packHalf2x16(vec2(uvw.z, 0)),
+        floatBitsToUint(uvw.w),
+        uint(sn.x & 0x3FF) | uint(sn.y & 0x3FF) << 10 | uint(sn.z & 0x3FF) << 20,
+        floatBitsToUint(normal.w));
+    #else
+    vout[index] = position;
+    uvout[index] = uvw;
+    normalout[index] = normal;
+    #endif
+}
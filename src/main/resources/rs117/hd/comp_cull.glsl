@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2022, 117 <https://twitter.com/117scape>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+// Culls models against the view frustum, and packs the faces of the models left over tightly in the render buffer,
+// in the same order as they were drawn, so alpha blending still works out back to front. Optionally, models hidden
+// behind what was drawn in the previous frame are culled as well, by testing them against a hierarchical depth buffer.
+// Since occluded models may still cast shadows into view, they can instead be left in the render buffer, and only
+// culled from the scene pass through a draw command for each model.
+
+#include version_header
+
+#include uniforms/camera.glsl
+
+#define WORKGROUP_SIZE 1024
+
+struct CullInfo {
+    int model;       // model buffer in the top two bits, index into it in the rest
+    int size;        // length in faces
+    int x;           // position relative to the camera
+    int y;
+    int z;
+    int xyzMag;      // bounding cylinder, or -1 if the model should always be drawn
+    int bottomY;
+    int modelHeight;
+    int dynamicIndex; // index of the model's draw command for the dynamic shadow pass, or -1 if it's static
+};
+
+layout(std430, binding = 0) readonly buffer CullInfoBuffer {
+    CullInfo cullInfo[];
+};
+
+layout(std430, binding = 1) writeonly buffer DrawCommandBuffer {
+    uint vertexCount;
+    uint instanceCount;
+    uint firstVertex;
+    uint baseInstance;
+};
+
+// A draw command for each temporary model, so they can be drawn into the dynamic shadow map on their own
+layout(std430, binding = 2) writeonly buffer DynamicDrawCommandBuffer {
+    uvec4 dynamicDrawCommands[]; // vertexCount, instanceCount, firstVertex, baseInstance
+};
+
+// A draw command for each model, so the scene pass can skip occluded models left in the render buffer for shadows
+layout(std430, binding = 3) writeonly buffer SceneDrawCommandBuffer {
+    uvec4 sceneDrawCommands[]; // vertexCount, instanceCount, firstVertex, baseInstance
+};
+
+// Where each model's faces go in the render buffer, or -1 if it was culled
+layout(std430, binding = 7) writeonly buffer ModelOffsetBuffer {
+    int modelOffsets[];
+};
+
+uniform int modelCount;
+uniform ivec3 modelBufferBases; // where the offsets of each model buffer start
+uniform int cullZoom;
+uniform ivec4 clipBounds; // clipMidX2, clipNegativeMidX, clipNegativeMidY, clipMidY2
+uniform ivec3 cameraPosition;
+
+// Farthest depth within each texel of each mip level, as seen through the projection of the previous frame
+uniform sampler2D hiZBuffer;
+uniform mat4 hiZProjectionMatrix;
+uniform int hiZLevels; // zero when occlusion culling is disabled
+uniform bool occludeSceneOnly; // whether occluded models are left in the render buffer, and only culled from the scene
+
+layout(local_size_x = WORKGROUP_SIZE) in;
+
+shared int vertexCounts[WORKGROUP_SIZE];
+shared int chunkOffset;
+
+// Mirrors the client's visibility check
+bool isVisible(CullInfo info, int pitchSin, int pitchCos, int yawSin, int yawCos) {
+    int var11 = yawCos * info.z - yawSin * info.x >> 16;
+    int var12 = pitchSin * info.y + pitchCos * var11 >> 16;
+    int var13 = pitchCos * info.xyzMag >> 16;
+    int depth = var12 + var13;
+    if (depth <= 50)
+        return false;
+
+    int rx = info.z * yawSin + yawCos * info.x >> 16;
+    if ((rx - info.xyzMag) * cullZoom / depth >= clipBounds.x)
+        return false;
+    if ((rx + info.xyzMag) * cullZoom / depth <= clipBounds.y)
+        return false;
+
+    int ry = pitchCos * info.y - var11 * pitchSin >> 16;
+    int yheight = pitchSin * info.xyzMag >> 16;
+    int ybottom = (pitchCos * info.bottomY >> 16) + yheight;
+    if ((ry + ybottom) * cullZoom / depth <= clipBounds.z)
+        return false;
+
+    int ytop = (pitchCos * info.modelHeight >> 16) + yheight;
+    return (ry - ytop) * cullZoom / depth < clipBounds.w;
+}
+
+// Whether the model's bounding box lies entirely behind the depth of the previous frame
+bool isOccluded(CullInfo info) {
+    vec3 center = vec3(cameraPosition + ivec3(info.x, info.y, info.z));
+    vec3 boxMin = center - vec3(info.xyzMag, info.modelHeight, info.xyzMag);
+    vec3 boxMax = center + vec3(info.xyzMag, info.bottomY, info.xyzMag);
+
+    vec2 rectMin = vec2(1);
+    vec2 rectMax = vec2(0);
+    float nearestDepth = 1;
+    for (int i = 0; i < 8; i++) {
+        vec3 corner = mix(boxMin, boxMax, vec3(i & 1, i >> 1 & 1, i >> 2 & 1));
+        vec4 clip = hiZProjectionMatrix * vec4(corner, 1);
+        // Boxes reaching past the near plane can't be projected reliably
+        if (clip.z <= -clip.w)
+            return false;
+        vec3 ndc = clip.xyz / clip.w;
+        rectMin = min(rectMin, ndc.xy * .5 + .5);
+        rectMax = max(rectMax, ndc.xy * .5 + .5);
+        nearestDepth = min(nearestDepth, ndc.z * .5 + .5);
+    }
+
+    // Pick the level at which the box covers at most two by two texels
+    ivec2 size = textureSize(hiZBuffer, 0);
+    ivec2 texelMin = clamp(ivec2(floor(clamp(rectMin, 0., 1.) * vec2(size))), ivec2(0), size - 1);
+    ivec2 texelMax = clamp(ivec2(floor(clamp(rectMax, 0., 1.) * vec2(size))), ivec2(0), size - 1);
+    int span = max(texelMax.x - texelMin.x, texelMax.y - texelMin.y);
+    int level = min(span <= 1 ? 0 : findMSB(span - 1) + 1, hiZLevels - 1);
+
+    ivec2 levelMax = textureSize(hiZBuffer, level) - 1;
+    texelMin = min(texelMin >> level, levelMax);
+    texelMax = min(texelMax >> level, levelMax);
+    float farthestDepth = 0;
+    for (int y = texelMin.y; y <= texelMax.y; y++)
+        for (int x = texelMin.x; x <= texelMax.x; x++)
+            farthestDepth = max(farthestDepth, texelFetch(hiZBuffer, ivec2(x, y), level).r);
+
+    return nearestDepth > farthestDepth;
+}
+
+void main() {
+    int localId = int(gl_LocalInvocationID.x);
+    ivec2 pitchSinCos = sinCosTable[cameraPitch];
+    ivec2 yawSinCos = sinCosTable[cameraYaw];
+
+    if (localId == 0)
+        chunkOffset = 0;
+
+    for (int chunk = 0; chunk < modelCount; chunk += WORKGROUP_SIZE) {
+        int i = chunk + localId;
+        CullInfo info;
+        int count = 0;
+        bool occluded = false;
+        if (i < modelCount) {
+            info = cullInfo[i];
+            if (info.xyzMag < 0) {
+                count = info.size * 3;
+            } else if (isVisible(info, pitchSinCos.x, pitchSinCos.y, yawSinCos.x, yawSinCos.y)) {
+                occluded = hiZLevels != 0 && isOccluded(info);
+                if (!occluded || occludeSceneOnly)
+                    count = info.size * 3;
+            }
+        }
+
+        // Inclusive prefix sum of the vertex counts within the chunk
+        vertexCounts[localId] = count;
+        memoryBarrierShared();
+        barrier();
+        for (int stride = 1; stride < WORKGROUP_SIZE; stride <<= 1) {
+            int addend = localId >= stride ? vertexCounts[localId - stride] : 0;
+            memoryBarrierShared();
+            barrier();
+            vertexCounts[localId] += addend;
+            memoryBarrierShared();
+            barrier();
+        }
+
+        if (i < modelCount) {
+            uint modelBuffer = uint(info.model) >> 30;
+            int index = info.model & 0x3FFFFFFF;
+            int offset = chunkOffset + vertexCounts[localId] - count;
+            modelOffsets[modelBufferBases[modelBuffer] + index] = count == 0 ? -1 : offset;
+            if (info.dynamicIndex >= 0)
+                dynamicDrawCommands[info.dynamicIndex] = uvec4(count, 1, offset, 0);
+            if (occludeSceneOnly)
+                sceneDrawCommands[i] = uvec4(occluded ? 0 : count, 1, offset, 0);
+        }
+
+        memoryBarrierShared();
+        barrier();
+        if (localId == WORKGROUP_SIZE - 1)
+            chunkOffset += vertexCounts[localId];
+        memoryBarrierShared();
+        barrier();
+    }
+
+    if (localId == 0) {
+        vertexCount = uint(chunkOffset);
+        instanceCount = 1u;
+        firstVertex = 0u;
+        baseInstance = 0u;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2022, 117 <https://twitter.com/117scape>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+// Builds one level of the hierarchical depth buffer used for occlusion culling. The first level is a copy of the
+// occlusion depth pass, and each level after it holds the farthest depth of the texels it covers in the level before.
+
+#include version_header
+
+layout(local_size_x = 8, local_size_y = 8) in;
+
+uniform sampler2D depthTexture;
+uniform sampler2D hiZBuffer;
+uniform int level;
+
+layout(r32f, binding = 0) uniform writeonly image2D hiZLevel;
+
+void main() {
+    ivec2 pos = ivec2(gl_GlobalInvocationID.xy);
+    ivec2 size = textureSize(hiZBuffer, level);
+    if (any(greaterThanEqual(pos, size)))
+        return;
+
+    float depth = 0;
+    if (level == 0) {
+        depth = texelFetch(depthTexture, pos, 0).r;
+    } else {
+        // When the previous level has an odd size, the last texels also cover its left over row or column,
+        // so no depth is ever lost between levels
+        ivec2 prevSize = textureSize(hiZBuffer, level - 1);
+        ivec2 start = pos * 2;
+        ivec2 end = min(start + 1 + ivec2(equal(pos, size - 1)) * (prevSize & 1), prevSize - 1);
+        for (int y = start.y; y <= end.y; y++)
+            for (int x = start.x; x <= end.x; x++)
+                depth = max(depth, texelFetch(hiZBuffer, ivec2(x, y), level - 1).r);
+    }
+
+    imageStore(hiZLevel, pos, vec4(depth));
+}
@@ -33,6 +33,10 @@ void main() {
     uint groupId = gl_WorkGroupID.x;
     uint localId = gl_LocalInvocationID.x;
     ModelInfo minfo = ol[groupId];
+    minfo.idx = modelOffsets[modelOffsetsBase + int(groupId)];
+    if (minfo.idx < 0) {
+        return;
+    }
 
     int offset = minfo.offset;
     int size = minfo.size;
@@ -40,7 +44,8 @@ void main() {
     int uvOffset = minfo.uvOffset;
     int flags = minfo.flags;
 
-    ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
+    ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, (flags >> MODEL_FLAG_DYNAMIC & 1) << VERTEX_FLAG_DYNAMIC |
+        (flags >> MODEL_FLAG_DISTANT_DETAIL & 1) << VERTEX_FLAG_DISTANT_DETAIL);
 
     if (localId >= size) {
         return;
@@ -56,19 +61,11 @@ void main() {
 
     uint myOffset = localId;
 
-    // position vertices in scene and write to out buffer
-    vout[outOffset + myOffset * 3]     = pos + thisA;
-    vout[outOffset + myOffset * 3 + 1] = pos + thisB;
-    vout[outOffset + myOffset * 3 + 2] = pos + thisC;
-
-    if (uvOffset < 0) {
-        uvout[outOffset + myOffset * 3]     = vec4(0, 0, 0, 0);
-        uvout[outOffset + myOffset * 3 + 1] = vec4(0, 0, 0, 0);
-        uvout[outOffset + myOffset * 3 + 2] = vec4(0, 0, 0, 0);
-    } else {
-        uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
-        uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
-        uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
+    vec4 uvA = vec4(0), uvB = vec4(0), uvC = vec4(0);
+    if (uvOffset >= 0) {
+        uvA = uv[uvOffset + localId * 3];
+        uvB = uv[uvOffset + localId * 3 + 1];
+        uvC = uv[uvOffset + localId * 3 + 2];
     }
 
     vec4 normA, normB, normC;
@@ -78,7 +75,8 @@ void main() {
     normB = normal[offset + ssboOffset * 3 + 1];
     normC = normal[offset + ssboOffset * 3 + 2];
 
-    normalout[outOffset + myOffset * 3]     = normA;
-    normalout[outOffset + myOffset * 3 + 1] = normB;
-    normalout[outOffset + myOffset * 3 + 2] = normC;
+    // position vertices in scene and write to out buffer
+    writeVertex(outOffset + int(myOffset) * 3,     pos + thisA, uvA, normA);
+    writeVertex(outOffset + int(myOffset) * 3 + 1, pos + thisB, uvB, normB);
+    writeVertex(outOffset + int(myOffset) * 3 + 2, pos + thisC, uvC, normC);
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2022, 117 <https://twitter.com/117scape>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+#version 330
+
+layout (location = 0) in ivec3 vPosition;
+layout (location = 1) in vec3 vUvw;
+layout (location = 3) in int vAhsl;
+layout (location = 4) in float vMaterialData;
+layout (location = 5) in float vTerrainData;
+
+uniform mat4 projectionMatrix;
+
+out vec3 position;
+out vec3 uvw;
+flat out int materialData;
+
+#include utils/constants.glsl
+
+int when_gt(int x, int y) {
+    return max(sign(x - y), 0);
+}
+
+// Renders the depth of opaque geometry from the camera, for the occlusion culling pass of the next frame
+void main()
+{
+    position = vPosition;
+    uvw = vUvw;
+    materialData = int(vMaterialData);
+    int terrainData = int(vTerrainData);
+
+    // Anything which can be seen through must not hide what's behind it
+    int isTransparent = when_gt(vAhsl >> 24 & 0xff, 0);
+    int isWaterSurfaceOrUnderwaterTile = when_gt(terrainData >> 3 & 0x1F, 0);
+    // Neither should temporary models, so what's culled only changes with the view, and static shadows can be reused
+    int isDynamic = vAhsl >> VERTEX_FLAG_DYNAMIC & 1;
+    position *= 1 - max(0, sign(isTransparent + isWaterSurfaceOrUnderwaterTile + isDynamic));
+
+    gl_Position = projectionMatrix * vec4(position, 1.f);
+}
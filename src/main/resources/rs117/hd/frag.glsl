@@ -34,6 +34,7 @@
 
 uniform sampler2DArray textureArray;
 uniform sampler2D shadowMap;
+uniform sampler2D dynamicShadowMap;
 
 uniform mat4 lightProjectionMatrix;
 
@@ -113,7 +114,9 @@ float sampleShadowMap(vec3 fragPos, int waterTypeIndex, vec2 distortion, float l
         {
             for(int y = -1; y <= 1; ++y)
             {
-                float pcfDepth = texture(shadowMap, projCoords.xy + vec2(x, y) * texelSize).r;
+                // Static and dynamic shadow casters are drawn into separate maps, so take whichever is closest
+                vec2 pcfCoords = projCoords.xy + vec2(x, y) * texelSize;
+                float pcfDepth = min(texture(shadowMap, pcfCoords).r, texture(dynamicShadowMap, pcfCoords).r);
                 shadow += currentDepth - shadowBias > pcfDepth ? 1.0 : 0.0;
             }
         }
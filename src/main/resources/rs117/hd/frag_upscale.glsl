@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2022, 117 <https://twitter.com/117scape>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+// Upscales the scene from the resolution it was drawn at to the size of the viewport, when dynamic resolution is on.
+// The scene's scale is hardly ever a whole number, which Catmull-Rom copes with better than xBR or the other filters.
+
+#version 330
+
+#define SAMPLING_MITCHELL 1
+#define SAMPLING_CATROM 2
+#define UI_SCALING_MODE SAMPLING_CATROM
+
+uniform sampler2D sceneTexture;
+
+#include scaling/bicubic.glsl
+
+in vec2 TexCoord;
+
+out vec4 FragColor;
+
+void main() {
+    // The quad is set up for the interface, whose rows are stored top to bottom
+    FragColor = textureCubic(sceneTexture, vec2(TexCoord.x, 1.0 - TexCoord.y));
+}
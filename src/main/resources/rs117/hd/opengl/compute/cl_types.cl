@@ -43,12 +43,20 @@ struct shared_data {
   int dfs[0]; // packed face id and distance, size 512 for small, 6144 for large
 };
 
+#define MODEL_FLAG_DYNAMIC 11
+#define MODEL_FLAG_DISTANT_DETAIL 12
+#define MODEL_FLAG_RADIUS_SHIFT 13
+// Set in the alpha, priority and color of faces from temporary models, which cast dynamic shadows
+#define VERTEX_FLAG_DYNAMIC 23
+// Set in the alpha, priority and color of faces from objects too far away to cast shadows, by level of detail
+#define VERTEX_FLAG_DISTANT_DETAIL 22
+
 struct ModelInfo {
   int offset;   // offset into buffer
   int uvOffset; // offset into uv buffer
   int size;     // length in faces
   int idx;      // write idx in target buffer
-  int flags;    // radius, orientation
+  int flags;    // radius, level of detail and temporary model flags, orientation
   int x;        // scene position x
   int y;        // scene position y
   int z;        // scene position z
@@ -27,6 +27,7 @@
 
 #include cl_types.cl
 #include common.cl
+#include render_buffer.cl
 #include priority_render.cl
 
 __kernel
@@ -37,9 +38,7 @@ void computeLarge(
   __global const int4 *vb,
   __global const float4 *uv,
   __global const float4 *normal,
-  __global int4 *vout,
-  __global float4 *uvout,
-  __global float4 *normalout,
+  RENDER_BUFFER_PARAMS,
   __constant struct uniform *uni
 ) {
   size_t groupId = get_group_id(0);
@@ -91,6 +90,6 @@ void computeLarge(
   barrier(CLK_LOCAL_MEM_FENCE);
 
   for (int i = 0; i < FACE_COUNT; i++) {
-    sort_and_insert(shared, uv, normal, vout, uvout, normalout, uni, localId + i, minfo, prioAdj[i], dis[i], v1[i], v2[i], v3[i]);
+    sort_and_insert(shared, uv, normal, RENDER_BUFFER_ARGS, uni, localId + i, minfo, prioAdj[i], dis[i], v1[i], v2[i], v3[i]);
   }
 }
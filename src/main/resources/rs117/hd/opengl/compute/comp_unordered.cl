@@ -25,6 +25,7 @@
  */
 
 #include cl_types.cl
+#include render_buffer.cl
 
 __kernel
 __attribute__((reqd_work_group_size(6, 1, 1)))
@@ -33,9 +34,7 @@ void computeUnordered(
   __global const int4 *vb,
   __global const float4 *uv,
   __global const float4 *normal,
-  __global int4 *vout,
-  __global float4 *uvout,
-  __global float4 *normalout
+  RENDER_BUFFER_PARAMS
 ) {
   size_t groupId = get_group_id(0);
   size_t localId = get_local_id(0);
@@ -47,7 +46,8 @@ void computeUnordered(
   int uvOffset = minfo.uvOffset;
   int flags = minfo.flags;
   
-  int4 pos = (int4)(minfo.x, minfo.y, minfo.z, 0);
+  int4 pos = (int4)(minfo.x, minfo.y, minfo.z, (flags >> MODEL_FLAG_DYNAMIC & 1) << VERTEX_FLAG_DYNAMIC |
+    (flags >> MODEL_FLAG_DISTANT_DETAIL & 1) << VERTEX_FLAG_DISTANT_DETAIL);
 
   if (localId >= size) {
     return;
@@ -62,19 +62,13 @@ void computeUnordered(
 
   uint myOffset = localId;
 
-  // position vertices in scene and write to out buffer
-  vout[outOffset + myOffset * 3]     = pos + thisA;
-  vout[outOffset + myOffset * 3 + 1] = pos + thisB;
-  vout[outOffset + myOffset * 3 + 2] = pos + thisC;
-
-  if (uvOffset < 0) {
-    uvout[outOffset + myOffset * 3]     = (float4)(0.0f, 0.0f, 0.0f, 0.0f);
-    uvout[outOffset + myOffset * 3 + 1] = (float4)(0.0f, 0.0f, 0.0f, 0.0f);
-    uvout[outOffset + myOffset * 3 + 2] = (float4)(0.0f, 0.0f, 0.0f, 0.0f);
-  } else {
-    uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
-    uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
-    uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
+  float4 uvA = (float4)(0.0f, 0.0f, 0.0f, 0.0f);
+  float4 uvB = (float4)(0.0f, 0.0f, 0.0f, 0.0f);
+  float4 uvC = (float4)(0.0f, 0.0f, 0.0f, 0.0f);
+  if (uvOffset >= 0) {
+    uvA = uv[uvOffset + localId * 3];
+    uvB = uv[uvOffset + localId * 3 + 1];
+    uvC = uv[uvOffset + localId * 3 + 2];
   }
   
   float4 normA, normB, normC;
@@ -83,7 +77,8 @@ void computeUnordered(
   normB = normal[offset + ssboOffset * 3 + 1];
   normC = normal[offset + ssboOffset * 3 + 2];
   
-  normalout[outOffset + myOffset * 3]     = normA;
-  normalout[outOffset + myOffset * 3 + 1] = normB;
-  normalout[outOffset + myOffset * 3 + 2] = normC;
+  // position vertices in scene and write to out buffer
+  write_vertex(RENDER_BUFFER_ARGS, outOffset + myOffset * 3,     pos + thisA, uvA, normA);
+  write_vertex(RENDER_BUFFER_ARGS, outOffset + myOffset * 3 + 1, pos + thisB, uvB, normB);
+  write_vertex(RENDER_BUFFER_ARGS, outOffset + myOffset * 3 + 2, pos + thisC, uvC, normC);
 }
@@ -101,7 +101,7 @@ void get_face(
   int4 thisC = vb[offset + ssboOffset * 3 + 2];
 
   if (localId < size) {
-    int radius = (flags & 0x7fffffff) >> 12;
+    int radius = (flags & 0x7fffffff) >> MODEL_FLAG_RADIUS_SHIFT;
     int orientation = flags & 0x7ff;
 
     // rotate for model orientation
@@ -199,9 +199,7 @@ void sort_and_insert(
   __local struct shared_data *shared,
   __global const float4 *uv,
   __global const float4 *normal,
-  __global int4 *vout,
-  __global float4 *uvout,
-  __global float4 *normalout,
+  RENDER_BUFFER_PARAMS,
   __constant struct uniform *uni,
   uint localId, struct ModelInfo minfo, int thisPriority, int thisDistance, int4 thisrvA, int4 thisrvB, int4 thisrvC) {
   /* compute face distance */
@@ -212,7 +210,8 @@ void sort_and_insert(
     int outOffset = minfo.idx;
     int uvOffset = minfo.uvOffset;
     int flags = minfo.flags;
-    int4 pos = (int4)(minfo.x, minfo.y, minfo.z, 0);
+    int4 pos = (int4)(minfo.x, minfo.y, minfo.z, (flags >> MODEL_FLAG_DYNAMIC & 1) << VERTEX_FLAG_DYNAMIC |
+      (flags >> MODEL_FLAG_DISTANT_DETAIL & 1) << VERTEX_FLAG_DISTANT_DETAIL);
     int orientation = flags & 0x7ff;
 
     const int priorityOffset = count_prio_offset(shared, thisPriority);
@@ -239,19 +238,13 @@ void sort_and_insert(
       }
     }
 
-    // position vertices in scene and write to out buffer
-    vout[outOffset + myOffset * 3]     = pos + thisrvA;
-    vout[outOffset + myOffset * 3 + 1] = pos + thisrvB;
-    vout[outOffset + myOffset * 3 + 2] = pos + thisrvC;
-
-    if (uvOffset < 0) {
-      uvout[outOffset + myOffset * 3]     = (float4)(0, 0, 0, 0);
-      uvout[outOffset + myOffset * 3 + 1] = (float4)(0, 0, 0, 0);
-      uvout[outOffset + myOffset * 3 + 2] = (float4)(0, 0, 0, 0);
-    } else {
-      uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
-      uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
-      uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
+    float4 uvA = (float4)(0, 0, 0, 0);
+    float4 uvB = (float4)(0, 0, 0, 0);
+    float4 uvC = (float4)(0, 0, 0, 0);
+    if (uvOffset >= 0) {
+      uvA = uv[uvOffset + localId * 3];
+      uvB = uv[uvOffset + localId * 3 + 1];
+      uvC = uv[uvOffset + localId * 3 + 2];
     }
     
     float4 normA, normB, normC;
@@ -270,8 +263,9 @@ void sort_and_insert(
     normrvB = rotate2(uni, normB, orientation);
     normrvC = rotate2(uni, normC, orientation);
     
-    normalout[outOffset + myOffset * 3    ] = normrvA;
-    normalout[outOffset + myOffset * 3 + 1] = normrvB;
-    normalout[outOffset + myOffset * 3 + 2] = normrvC;
+    // position vertices in scene and write to out buffer
+    write_vertex(RENDER_BUFFER_ARGS, outOffset + myOffset * 3,     pos + thisrvA, uvA, normrvA);
+    write_vertex(RENDER_BUFFER_ARGS, outOffset + myOffset * 3 + 1, pos + thisrvB, uvB, normrvB);
+    write_vertex(RENDER_BUFFER_ARGS, outOffset + myOffset * 3 + 2, pos + thisrvC, uvC, normrvC);
   }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2022, 117 <https://twitter.com/117scape>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+// Writes vertices to the render buffers, either as separate streams or packed and interleaved in a single buffer.
+// See comp_common.glsl for the packed layout.
+
+#include PACKED_VERTICES
+
+#if PACKED_VERTICES
+#define RENDER_BUFFER_PARAMS __global uint4 *vout
+#define RENDER_BUFFER_ARGS vout
+
+uint pack_half2(float a, float b) {
+  ushort halves[2];
+  vstore_half(a, 0, (half *) halves);
+  vstore_half(b, 1, (half *) halves);
+  return halves[0] | (uint) halves[1] << 16;
+}
+#else
+#define RENDER_BUFFER_PARAMS __global int4 *vout, __global float4 *uvout, __global float4 *normalout
+#define RENDER_BUFFER_ARGS vout, uvout, normalout
+#endif
+
+void write_vertex(RENDER_BUFFER_PARAMS, int index, int4 position, float4 uvw, float4 normal) {
+#if PACKED_VERTICES
+  // Normals are only used for their direction, except for those too short to have one, which must stay that way
+  float3 n = length(normal.xyz) < .01f ? (float3)(0) : normalize(normal.xyz);
+  int3 sn = convert_int3_rte(n * 511);
+  vout[index * 2] = (uint4)(
+    (uint) (position.x & 0xFFFF) | (uint) position.y << 16,
+    (uint) (position.z & 0xFFFF),
+    (uint) position.w,
+    pack_half2(uvw.x, uvw.y));
+  vout[index * 2 + 1] = (uint4)(
+    pack_half2(uvw.z, 0),
+    as_uint(uvw.w),
+    (uint) (sn.x & 0x3FF) | (uint) (sn.y & 0x3FF) << 10 | (uint) (sn.z & 0x3FF) << 20,
+    as_uint(normal.w));
+#else
+  vout[index] = position;
+  uvout[index] = uvw;
+  normalout[index] = normal;
+#endif
+}
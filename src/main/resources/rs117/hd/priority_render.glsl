@@ -102,7 +102,7 @@ out int prio, out int dis, out ivec4 o1, out ivec4 o2, out ivec4 o3) {
     thisC = vb[offset + ssboOffset * 3 + 2];
 
     if (localId < size) {
-        int radius = (flags & 0x7fffffff) >> 12;
+        int radius = (flags & 0x7fffffff) >> MODEL_FLAG_RADIUS_SHIFT;
         int orientation = flags & 0x7ff;
 
         // rotate for model orientation
@@ -202,7 +202,8 @@ void sort_and_insert(uint localId, ModelInfo minfo, int thisPriority, int thisDi
         int outOffset = minfo.idx;
         int uvOffset = minfo.uvOffset;
         int flags = minfo.flags;
-        ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
+        ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, (flags >> MODEL_FLAG_DYNAMIC & 1) << VERTEX_FLAG_DYNAMIC |
+            (flags >> MODEL_FLAG_DISTANT_DETAIL & 1) << VERTEX_FLAG_DISTANT_DETAIL);
         int orientation = flags & 0x7ff;
 
         const int priorityOffset = count_prio_offset(thisPriority);
@@ -229,19 +230,11 @@ void sort_and_insert(uint localId, ModelInfo minfo, int thisPriority, int thisDi
             }
         }
 
-        // position vertices in scene and write to out buffer
-        vout[outOffset + myOffset * 3]     = pos + thisrvA;
-        vout[outOffset + myOffset * 3 + 1] = pos + thisrvB;
-        vout[outOffset + myOffset * 3 + 2] = pos + thisrvC;
-
-        if (uvOffset < 0) {
-            uvout[outOffset + myOffset * 3]     = vec4(0, 0, 0, 0);
-            uvout[outOffset + myOffset * 3 + 1] = vec4(0, 0, 0, 0);
-            uvout[outOffset + myOffset * 3 + 2] = vec4(0, 0, 0, 0);
-        } else {
-            uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
-            uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
-            uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
+        vec4 uvA = vec4(0), uvB = vec4(0), uvC = vec4(0);
+        if (uvOffset >= 0) {
+            uvA = uv[uvOffset + localId * 3];
+            uvB = uv[uvOffset + localId * 3 + 1];
+            uvC = uv[uvOffset + localId * 3 + 2];
         }
 
         vec4 normA, normB, normC;
@@ -263,8 +256,9 @@ void sort_and_insert(uint localId, ModelInfo minfo, int thisPriority, int thisDi
         normrvB = rotate2(normB, orientation);
         normrvC = rotate2(normC, orientation);
 
-        normalout[outOffset + myOffset * 3]     = normrvA;
-        normalout[outOffset + myOffset * 3 + 1] = normrvB;
-        normalout[outOffset + myOffset * 3 + 2] = normrvC;
+        // position vertices in scene and write to out buffer
+        writeVertex(outOffset + myOffset * 3,     pos + thisrvA, uvA, normrvA);
+        writeVertex(outOffset + myOffset * 3 + 1, pos + thisrvB, uvB, normrvB);
+        writeVertex(outOffset + myOffset * 3 + 2, pos + thisrvC, uvC, normrvC);
     }
 }
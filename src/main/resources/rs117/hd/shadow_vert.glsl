@@ -24,11 +24,14 @@
  */
 #version 330
 
-layout (location = 0) in ivec4 vPosition;
-layout (location = 1) in vec4 vUv;
-layout (location = 2) in vec4 vNormal;
+layout (location = 0) in ivec3 vPosition;
+layout (location = 1) in vec3 vUvw;
+layout (location = 3) in int vAhsl;
+layout (location = 4) in float vMaterialData;
+layout (location = 5) in float vTerrainData;
 
 uniform mat4 lightProjectionMatrix;
+uniform int shadowCasters; // which casters to draw, with bit 0 for static casters and bit 1 for temporary models
 
 out vec3 position;
 out vec3 uvw;
@@ -50,19 +53,22 @@ int when_gt(int x, int y) {
 
 void main()
 {
-    position = vPosition.xyz;
-    uvw = vUv.xyz;
-    materialData = int(vUv.w);
-    int terrainData = int(vNormal.w);
+    position = vPosition;
+    uvw = vUvw;
+    materialData = int(vMaterialData);
+    int terrainData = int(vTerrainData);
 
-    float alpha = 1 - float(vPosition.w >> 24 & 0xff) / 255.;
+    float alpha = 1 - float(vAhsl >> 24 & 0xff) / 255.;
     int waterTypeIndex = terrainData >> 3 & 0x1F;
 
     int isShadowDisabled = materialData >> MATERIAL_FLAG_DISABLE_SHADOWS & 1;
     int isGroundPlane = when_eq(terrainData & 0xF, 1); // isTerrain && plane == 0
     int isTransparent = when_lt(alpha, SHADOW_OPACITY_THRESHOLD);
     int isWaterSurfaceOrUnderwaterTile = when_gt(waterTypeIndex, 0);
-    position *= 1 - max(0, sign(isShadowDisabled + isGroundPlane + isTransparent + isWaterSurfaceOrUnderwaterTile));
+    int isOtherCasterType = 1 - (shadowCasters >> (vAhsl >> VERTEX_FLAG_DYNAMIC & 1) & 1);
+    int isDistantDetail = vAhsl >> VERTEX_FLAG_DISTANT_DETAIL & 1;
+    position *= 1 - max(0, sign(isShadowDisabled + isGroundPlane + isTransparent + isWaterSurfaceOrUnderwaterTile +
+        isOtherCasterType + isDistantDetail));
 
     gl_Position = lightProjectionMatrix * vec4(position, 1.f);
 }
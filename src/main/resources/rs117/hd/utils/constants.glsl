@@ -1,5 +1,10 @@
 #define SHADOW_OPACITY_THRESHOLD 0.81
 
+// Set in the alpha, priority and color of faces from temporary models, which cast dynamic shadows
+#define VERTEX_FLAG_DYNAMIC 23
+// Set in the alpha, priority and color of faces from objects too far away to cast shadows, by level of detail
+#define VERTEX_FLAG_DISTANT_DETAIL 22
+
 #define MATERIAL_FLAG_BITS 4
 #define MATERIAL_FLAG_IS_OVERLAY 3
 #define MATERIAL_FLAG_FLAT_NORMALS 2
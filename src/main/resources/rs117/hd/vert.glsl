@@ -33,9 +33,12 @@
 #define FOG_CORNER_ROUNDING 1.5
 #define FOG_CORNER_ROUNDING_SQUARED FOG_CORNER_ROUNDING * FOG_CORNER_ROUNDING
 
-layout (location = 0) in ivec4 VertexPosition;
-layout (location = 1) in vec4 uv;
-layout (location = 2) in vec4 normal;
+layout (location = 0) in ivec3 VertexPosition;
+layout (location = 1) in vec3 VertexUvw;
+layout (location = 2) in vec3 VertexNormal;
+layout (location = 3) in int VertexAhsl;
+layout (location = 4) in float VertexMaterialData;
+layout (location = 5) in float VertexTerrainData;
 
 #include uniforms/camera.glsl
 
@@ -58,15 +61,15 @@ float fogFactorLinear(const float dist, const float start, const float end) {
 }
 
 void main() {
-    ivec3 vertex = VertexPosition.xyz;
-    int ahsl = VertexPosition.w;
+    ivec3 vertex = VertexPosition;
+    int ahsl = VertexAhsl;
     vec3 rgb = jagexHslToRgb(ahsl & 0xffff);
     float alpha = 1 - float(ahsl >> 24 & 0xff) / 255.f;
 
     OUT.pos = vertex;
-    OUT.normal = normal;
+    OUT.normal = vec4(VertexNormal, VertexTerrainData);
     OUT.color = vec4(srgbToLinear(rgb), alpha);
-    OUT.uv = uv;
+    OUT.uv = vec4(VertexUvw, VertexMaterialData);
     OUT.fogAmount = 0;
 
     if (fogDepth > 0) {
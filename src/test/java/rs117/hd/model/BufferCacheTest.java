@@ -0,0 +1,110 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+public class BufferCacheTest extends TestCase {
+    private static class TestCache extends BufferCache<IntBuffer> {
+        private final ArrayList<IntBuffer> recycled = new ArrayList<>();
+
+        TestCache() {
+            super(16);
+        }
+
+        @Override
+        protected void recycle(IntBuffer buffer) {
+            recycled.add(buffer);
+        }
+
+        @Override
+        protected long sizeOf(IntBuffer buffer) {
+            return buffer.capacity();
+        }
+    }
+
+    public void testPutAndGet() {
+        TestCache cache = new TestCache();
+        IntBuffer[] buffers = new IntBuffer[1000];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = IntBuffer.allocate(1);
+            // Polynomial-looking keys with poorly distributed low bits, including zero and negative keys
+            cache.put(i * 31 * 31 - 500 * 31 * 31, buffers[i]);
+        }
+
+        assertEquals(buffers.length, cache.size());
+        for (int i = 0; i < buffers.length; i++) {
+            assertSame(buffers[i], cache.get(i * 31 * 31 - 500 * 31 * 31));
+        }
+        assertNull(cache.get(1));
+        assertTrue(cache.recycled.isEmpty());
+    }
+
+    public void testReplacingRecyclesPreviousBuffer() {
+        TestCache cache = new TestCache();
+        IntBuffer first = IntBuffer.allocate(1);
+        IntBuffer second = IntBuffer.allocate(1);
+        cache.put(42, first);
+        cache.put(42, second);
+
+        assertEquals(1, cache.size());
+        assertSame(second, cache.get(42));
+        assertEquals(1, cache.recycled.size());
+        assertSame(first, cache.recycled.get(0));
+    }
+
+    public void testClockEvictsUnreferencedEntriesFirst() {
+        TestCache cache = new TestCache();
+        for (int i = 0; i < 8; i++) {
+            cache.put(i, IntBuffer.allocate(1));
+        }
+
+        // Reference the even entries, which should give them a second chance
+        for (int i = 0; i < 8; i += 2) {
+            cache.get(i);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.makeRoom());
+        }
+
+        for (int i = 0; i < 8; i++) {
+            if (i % 2 == 0) {
+                assertNotNull(cache.get(i));
+            } else {
+                assertNull(cache.get(i));
+            }
+        }
+    }
+
+    public void testRandomChurnMatchesReferenceSet() {
+        TestCache cache = new TestCache();
+        HashSet<Integer> expected = new HashSet<>();
+        Random random = new Random(1337);
+
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(4) == 0 && cache.makeRoom()) {
+                // Rebuild the expected set from what the cache still contains
+                expected.removeIf(k -> cache.get(k) == null);
+            } else if (cache.get(key) == null) {
+                cache.put(key, IntBuffer.allocate(1));
+                expected.add(key);
+            }
+            assertEquals(expected.size(), cache.size());
+        }
+
+        for (int key : expected) {
+            assertNotNull(cache.get(key));
+        }
+
+        int size = cache.size();
+        int recycledBeforeClear = cache.recycled.size();
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(size, cache.recycled.size() - recycledBeforeClear);
+    }
+}
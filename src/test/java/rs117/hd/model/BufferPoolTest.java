@@ -0,0 +1,178 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+import org.lwjgl.system.MemoryUtil;
+import rs117.hd.HdPlugin;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class BufferPoolTest extends TestCase {
+    private static final long POOL_SIZE = 8 * ModelCache.MiB;
+    private static final int MAX_BUFFER_INTS = HdPlugin.MAX_TRIANGLE * ModelPusher.DATUM_PER_FACE;
+
+    public void testBuffersAreRoundedToSizeClasses() {
+        BufferPool pool = new BufferPool(POOL_SIZE);
+        try {
+            // A 40-face model should only take a 2 KiB block, rather than space for the largest possible model
+            IntBuffer small = pool.takeIntBuffer(40 * ModelPusher.DATUM_PER_FACE);
+            assertNotNull(small);
+            assertEquals(1, pool.getAllocatedBlockCount(1));
+            assertEquals(2 * ModelCache.KiB, pool.getBytesAllocated());
+            assertEquals(40L * ModelPusher.DATUM_PER_FACE * Integer.BYTES, pool.getBytesRequested());
+
+            pool.putIntBuffer(small);
+            assertEquals(0, pool.getBytesAllocated());
+            assertEquals(POOL_SIZE, pool.getBytesFree());
+        } finally {
+            pool.freeAllocations();
+        }
+    }
+
+    public void testBuffersCanBeReturnedAfterBeingWritten() {
+        BufferPool pool = new BufferPool(POOL_SIZE);
+        try {
+            // Buffers are usually returned with their position left wherever writing stopped
+            IntBuffer buffer = pool.takeIntBuffer(256);
+            long address = MemoryUtil.memAddress0(buffer);
+            buffer.put(new int[100]);
+            pool.putIntBuffer(buffer);
+
+            // The same block should be handed out again, rather than one starting where writing stopped
+            assertEquals(0, pool.getBytesAllocated());
+            assertEquals(address, MemoryUtil.memAddress0(pool.takeIntBuffer(256)));
+        } finally {
+            pool.freeAllocations();
+        }
+    }
+
+    public void testFreedBlocksCoalesce() {
+        BufferPool pool = new BufferPool(POOL_SIZE);
+        try {
+            int largestClass = BufferPool.SIZE_CLASS_COUNT - 1;
+            int largestBlockCount = pool.getFreeBlockCount(largestClass);
+            assertEquals(POOL_SIZE / BufferPool.blockSize(largestClass), largestBlockCount);
+
+            ArrayList<IntBuffer> buffers = new ArrayList<>();
+            IntBuffer buffer;
+            while ((buffer = pool.takeIntBuffer(256)) != null) {
+                buffers.add(buffer);
+            }
+            assertEquals(POOL_SIZE / ModelCache.KiB, buffers.size());
+            assertEquals(0, pool.getBytesFree());
+
+            for (IntBuffer b : buffers) {
+                pool.putIntBuffer(b);
+            }
+
+            // Once everything is freed, every block should have merged back into the largest size class
+            assertEquals(largestBlockCount, pool.getFreeBlockCount(largestClass));
+            assertNotNull(pool.takeIntBuffer(MAX_BUFFER_INTS));
+        } finally {
+            pool.freeAllocations();
+        }
+    }
+
+    public void testPoolGrowsOnDemandUpToItsCapacity() {
+        long chunkSize = 2 * ModelCache.MiB;
+        BufferPool pool = new BufferPool(POOL_SIZE, chunkSize);
+        try {
+            assertEquals(1, pool.getChunkCount());
+            assertEquals(chunkSize, pool.getByteCapacity());
+
+            ArrayList<IntBuffer> buffers = new ArrayList<>();
+            IntBuffer buffer;
+            while ((buffer = pool.takeIntBuffer(MAX_BUFFER_INTS)) != null) {
+                buffers.add(buffer);
+            }
+            assertEquals(POOL_SIZE / chunkSize, pool.getChunkCount());
+            assertEquals(POOL_SIZE, pool.getByteCapacity());
+            assertFalse(pool.hasFreeBlock(1));
+
+            // Everything fits in the first chunk again, which is where buffers are taken from first
+            for (IntBuffer b : buffers) {
+                pool.putIntBuffer(b);
+            }
+            IntBuffer small = pool.takeIntBuffer(256);
+            assertTrue(pool.isInChunk(small, 0));
+            assertEquals(ModelCache.KiB, pool.getChunkBytesAllocated(0));
+            pool.putIntBuffer(small);
+        } finally {
+            pool.freeAllocations();
+        }
+    }
+
+    public void testIdleChunksAreReleased() {
+        long chunkSize = 2 * ModelCache.MiB;
+        BufferPool pool = new BufferPool(POOL_SIZE, chunkSize);
+        try {
+            ArrayList<IntBuffer> buffers = new ArrayList<>();
+            IntBuffer buffer;
+            while ((buffer = pool.takeIntBuffer(MAX_BUFFER_INTS)) != null) {
+                buffers.add(buffer);
+            }
+
+            // Keep a single buffer in the last chunk
+            IntBuffer kept = buffers.remove(buffers.size() - 1);
+            assertTrue(pool.isInChunk(kept, 3));
+            for (IntBuffer b : buffers) {
+                pool.putIntBuffer(b);
+            }
+
+            // Chunks which only just became empty are kept around for a while
+            assertEquals(0, pool.releaseIdleChunks(System.nanoTime() - 60_000_000_000L));
+            assertEquals(4, pool.getChunkCount());
+
+            // The first chunk is always kept, as is the chunk which is still in use
+            assertEquals(2 * chunkSize, pool.releaseIdleChunks(System.nanoTime()));
+            assertEquals(2, pool.getChunkCount());
+            assertTrue(pool.isInChunk(kept, 1));
+            assertEquals(kept.capacity() * (long) Integer.BYTES, pool.getBytesRequested());
+
+            pool.putIntBuffer(kept);
+            assertEquals(chunkSize, pool.releaseIdleChunks(System.nanoTime()));
+            assertEquals(1, pool.getChunkCount());
+            assertEquals(chunkSize, pool.getBytesFree());
+        } finally {
+            pool.freeAllocations();
+        }
+    }
+
+    public void testRandomBuffersNeverOverlap() {
+        BufferPool pool = new BufferPool(POOL_SIZE);
+        Random random = new Random(1337);
+        try {
+            ArrayList<IntBuffer> buffers = new ArrayList<>();
+            for (int i = 0; i < 20000; i++) {
+                if (!buffers.isEmpty() && random.nextBoolean()) {
+                    IntBuffer b = buffers.remove(random.nextInt(buffers.size()));
+                    for (int j = 0; j < b.capacity(); j++) {
+                        assertEquals(System.identityHashCode(b), b.get(j));
+                    }
+                    pool.putIntBuffer(b);
+                    continue;
+                }
+
+                IntBuffer b = pool.takeIntBuffer(1 + random.nextInt(MAX_BUFFER_INTS));
+                if (b == null) {
+                    continue;
+                }
+
+                // Fill the buffer with a marker, which would be overwritten if any other buffer overlapped it
+                for (int j = 0; j < b.capacity(); j++) {
+                    b.put(j, System.identityHashCode(b));
+                }
+                buffers.add(b);
+            }
+
+            for (IntBuffer b : buffers) {
+                pool.putIntBuffer(b);
+            }
+            assertEquals(0, pool.getBytesRequested());
+            assertEquals(POOL_SIZE, pool.getBytesFree());
+        } finally {
+            pool.freeAllocations();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+
+public class DiskModelCacheTest extends TestCase {
+    private static final int CAPACITY = 64 * 1024;
+    private static final IntFunction<IntBuffer> ALLOCATOR = MemoryUtil::memAllocInt;
+
+    private Path path;
+
+    @Override
+    protected void setUp() throws IOException {
+        path = Files.createTempDirectory("disk-model-cache").resolve("model-cache.bin");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.getParent());
+    }
+
+    public void testDataPersistsAcrossSessions() throws InterruptedException {
+        DiskModelCache cache = open(1);
+        write(cache, DiskModelCache.KIND_VERTEX, 42, 100, 7);
+        cache.close();
+
+        cache = open(1);
+        try {
+            assertData(cache.readIntBuffer(DiskModelCache.KIND_VERTEX, 42, ALLOCATOR), 100, 7);
+            assertNull(cache.readIntBuffer(DiskModelCache.KIND_COLOR, 42, ALLOCATOR));
+            // Keys only differing in their upper half must not be confused
+            assertNull(cache.readIntBuffer(DiskModelCache.KIND_VERTEX, 42 | 1L << 40, ALLOCATOR));
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testDifferentVersionStampDiscardsData() throws InterruptedException {
+        DiskModelCache cache = open(1);
+        write(cache, DiskModelCache.KIND_VERTEX, 42, 100, 7);
+        cache.close();
+
+        cache = open(2);
+        try {
+            assertNull(cache.readIntBuffer(DiskModelCache.KIND_VERTEX, 42, ALLOCATOR));
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testCorruptRecordsAreIgnored() throws IOException, InterruptedException, ExecutionException {
+        DiskModelCache cache = open(1);
+        write(cache, DiskModelCache.KIND_VERTEX, 1, 100, 1);
+        write(cache, DiskModelCache.KIND_VERTEX, 2, 100, 2);
+        // Closing happens in the background, so wait for it before touching the file
+        cache.close().get();
+
+        // Flip a byte in the data of the second record
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long offset = 64 + 24 + 400 + 24 + 10;
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0xFF);
+        }
+
+        cache = open(1);
+        try {
+            assertData(cache.readIntBuffer(DiskModelCache.KIND_VERTEX, 1, ALLOCATOR), 100, 1);
+            assertNull(cache.readIntBuffer(DiskModelCache.KIND_VERTEX, 2, ALLOCATOR));
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testOldestRecordsAreOverwrittenWhenFull() throws InterruptedException {
+        // Each record takes up a little over 4 KiB, so only the last dozen or so fit
+        DiskModelCache cache = open(1);
+        for (int key = 0; key < 100; key++) {
+            write(cache, DiskModelCache.KIND_NORMAL, key, 1024, key);
+        }
+        cache.close();
+
+        cache = open(1);
+        try {
+            assertNull(cache.readIntBuffer(DiskModelCache.KIND_NORMAL, 0, ALLOCATOR));
+            for (int key = 90; key < 100; key++) {
+                assertData(cache.readIntBuffer(DiskModelCache.KIND_NORMAL, key, ALLOCATOR), 1024, key);
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    private DiskModelCache open(long versionStamp) throws InterruptedException {
+        DiskModelCache cache = new DiskModelCache(path, CAPACITY, versionStamp);
+        for (int i = 0; i < 500 && !cache.isReady(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(cache.isReady());
+        return cache;
+    }
+
+    private static void write(DiskModelCache cache, int kind, int key, int length, int seed) {
+        IntBuffer buffer = MemoryUtil.memAllocInt(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(i * 31 + seed);
+        }
+        buffer.flip();
+        cache.write(kind, key, buffer);
+        MemoryUtil.memFree(buffer);
+    }
+
+    private static void assertData(IntBuffer buffer, int length, int seed) {
+        assertNotNull(buffer);
+        assertEquals(length, buffer.remaining());
+        for (int i = 0; i < length; i++) {
+            assertEquals(i * 31 + seed, buffer.get(i));
+        }
+        MemoryUtil.memFree(buffer);
+    }
+}
@@ -0,0 +1,58 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+
+public class FrequencySketchTest extends TestCase {
+    public void testCountsAreEstimatedAndCapped() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(-7);
+        }
+
+        // Count-min sketches may overestimate on collisions, but never underestimate
+        assertTrue(sketch.frequency(42) >= 5);
+        assertEquals(15, sketch.frequency(-7));
+        assertEquals(0, sketch.frequency(1337));
+    }
+
+    public void testFrequentKeysStandOutFromOneOffKeys() {
+        FrequencySketch sketch = new FrequencySketch(4096);
+        for (int round = 0; round < 8; round++) {
+            for (int key = 0; key < 100; key++) {
+                sketch.increment(key);
+            }
+            // Each round also sees a batch of keys which never come back
+            for (int key = 0; key < 1000; key++) {
+                sketch.increment(1000000 + round * 1000 + key);
+            }
+        }
+
+        int oneOffKeysOverestimated = 0;
+        for (int key = 0; key < 100; key++) {
+            assertTrue(sketch.frequency(key) >= 8);
+        }
+        for (int key = 0; key < 1000; key++) {
+            if (sketch.frequency(1000000 + key) >= 8) {
+                oneOffKeysOverestimated++;
+            }
+        }
+        assertTrue(oneOffKeysOverestimated < 10);
+    }
+
+    public void testCountersAgeOverTime() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(1);
+        }
+        assertEquals(15, sketch.frequency(1));
+
+        // Enough increments to trigger aging, spread over many other keys
+        for (int key = 2; key < 2 + 10 * 64; key++) {
+            sketch.increment(key);
+        }
+        assertTrue(sketch.frequency(1) < 15);
+    }
+}
@@ -0,0 +1,112 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class GpuModelCacheTest extends TestCase {
+    private static final int SCENE_VERTICES = 1000;
+    private static final int SCENE_UVS = 300;
+
+    public void testHitsPointIntoTheReservedRegion() {
+        GpuModelCache cache = new GpuModelCache();
+        cache.reset(SCENE_VERTICES, SCENE_UVS, 4 * GpuModelCache.MAX_BLOCK_VERTICES);
+
+        assertTrue(cache.cacheModel(1, 5000, 6000, 100, 300));
+        assertTrue(cache.cacheModel(2, 5300, -1, 50, 0));
+        assertEquals(2, cache.getPendingCopyCount());
+
+        TempModelInfo first = cache.get(1);
+        assertEquals(100, first.getFaceCount());
+        assertTrue(first.getTempOffset() >= SCENE_VERTICES);
+        assertEquals(first.getTempOffset() - SCENE_VERTICES, first.getTempUvOffset() - SCENE_UVS);
+        assertEquals(-1, cache.get(2).getTempUvOffset());
+
+        int[] copies = cache.getPendingCopies();
+        assertEquals(5000, copies[0]);
+        assertEquals(6000, copies[1]);
+        assertEquals(first.getTempOffset(), copies[2]);
+        assertEquals(first.getTempUvOffset(), copies[3]);
+        assertEquals(300, copies[4]);
+        assertEquals(300, copies[5]);
+        assertEquals(0, copies[GpuModelCache.COPY_STRIDE + 5]);
+
+        cache.finishFrame();
+        assertEquals(0, cache.getPendingCopyCount());
+        assertSame(first, cache.get(1));
+    }
+
+    public void testNothingIsCachedWithoutARegion() {
+        GpuModelCache cache = new GpuModelCache();
+        cache.reset(SCENE_VERTICES, SCENE_UVS, 0);
+        assertFalse(cache.cacheModel(1, 0, 0, 10, 30));
+        assertNull(cache.get(1));
+    }
+
+    public void testEvictedBlocksAreOnlyReusedNextFrame() {
+        GpuModelCache cache = new GpuModelCache();
+        cache.reset(0, 0, GpuModelCache.MAX_BLOCK_VERTICES);
+
+        int faces = GpuModelCache.MAX_BLOCK_VERTICES / 3;
+        assertTrue(cache.cacheModel(1, 0, -1, faces, 0));
+
+        // The region is full, so the first model is evicted, but its block may still be read during this frame
+        assertFalse(cache.cacheModel(2, 0, -1, faces, 0));
+        assertNull(cache.get(1));
+        assertFalse(cache.cacheModel(2, 0, -1, faces, 0));
+
+        cache.finishFrame();
+        assertTrue(cache.cacheModel(2, 0, -1, faces, 0));
+        assertEquals(0, cache.get(2).getTempOffset());
+    }
+
+    public void testModelsExpireWhenNoLongerDrawn() {
+        GpuModelCache cache = new GpuModelCache();
+        cache.reset(0, 0, GpuModelCache.MAX_BLOCK_VERTICES);
+        assertTrue(cache.cacheModel(1, 0, -1, 10, 0));
+        assertTrue(cache.cacheModel(2, 0, -1, 10, 0));
+
+        // Only the first model keeps being drawn
+        for (int frame = 0; frame < GpuModelCache.MAX_AGE_FRAMES; frame++) {
+            cache.finishFrame();
+            assertNotNull(cache.get(1));
+        }
+        cache.finishFrame();
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.size());
+    }
+
+    public void testRandomBlocksNeverOverlap() {
+        int capacity = 8 * GpuModelCache.MAX_BLOCK_VERTICES;
+        GpuModelCache cache = new GpuModelCache();
+        cache.reset(0, 0, capacity);
+        Random random = new Random(1337);
+
+        for (int frame = 0; frame < 500; frame++) {
+            for (int i = 0; i < 50; i++) {
+                int key = random.nextInt(400);
+                TempModelInfo info = cache.get(key);
+                if (info == null) {
+                    cache.cacheModel(key, 0, -1, 1 + random.nextInt(2000), 0);
+                }
+            }
+
+            // Every resident model must occupy its own range of vertices
+            int[] owners = new int[capacity];
+            for (int key = 0; key < 400; key++) {
+                TempModelInfo info = cache.get(key);
+                if (info == null) {
+                    continue;
+                }
+                for (int v = info.getTempOffset(); v < info.getTempOffset() + info.getFaceCount() * 3; v++) {
+                    assertEquals(0, owners[v]);
+                    owners[v] = key + 1;
+                }
+            }
+
+            cache.finishFrame();
+        }
+    }
+}
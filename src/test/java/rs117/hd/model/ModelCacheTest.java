@@ -0,0 +1,119 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+import rs117.hd.HdPlugin;
+import rs117.hd.utils.buffer.OffHeapMemory;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+public class ModelCacheTest extends TestCase {
+    public void testMakeRoomFollowsDemand() {
+        ModelCache cache = new ModelCache(256);
+        try {
+            cache.setDemandSmoothing(0);
+            for (int i = 0; i < 10; i++) {
+                IntBuffer vertexData = cache.takeIntBuffer(1200);
+                cache.putVertexData(i, vertexData);
+                FloatBuffer uvData = cache.takeFloatBuffer(1200);
+                cache.putUvData(i, uvData);
+            }
+
+            // Only the vertex data gets used during the frame
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(cache.getVertexData(i));
+            }
+            cache.endFrame();
+            assertEquals(10, cache.getVertexDataStats().getLastFrameHits());
+            assertEquals(0, cache.getUvDataStats().getLastFrameGets());
+
+            for (int i = 0; i < 10; i++) {
+                assertTrue(cache.makeRoom());
+            }
+            cache.endFrame();
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(cache.getVertexData(i));
+                assertNull(cache.getUvData(i));
+            }
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    public void testStatsCountHitsAndMisses() {
+        ModelCache cache = new ModelCache(256);
+        try {
+            cache.putNormalData(1, cache.takeFloatBuffer(12));
+            cache.getNormalData(1);
+            cache.getNormalData(2);
+            cache.getNormalData(3);
+
+            // Nothing is visible until the frame is over
+            assertEquals(0, cache.getNormalDataStats().getLastFrameGets());
+
+            cache.setDemandSmoothing(.5f);
+            cache.endFrame();
+            CacheStats stats = cache.getNormalDataStats();
+            assertEquals(3, stats.getLastFrameGets());
+            assertEquals(1, stats.getLastFrameHits());
+            assertEquals(2, stats.getLastFrameMisses());
+            assertEquals(1.5f, stats.getSmoothedGets());
+
+            cache.endFrame();
+            assertEquals(0, stats.getLastFrameGets());
+            assertEquals(.75f, stats.getSmoothedGets());
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    public void testReleasingMemoryShrinksTheCache() {
+        ModelCache cache = new ModelCache(256);
+        try {
+            cache.putVertexData(1, cache.takeIntBuffer(1200));
+            assertEquals(BufferPool.DEFAULT_CHUNK_SIZE, cache.getBufferPool().getByteCapacity());
+            long usageBefore = OffHeapMemory.getUsage(OffHeapMemory.Subsystem.MODEL_CACHE);
+
+            // The chunk holding the data has to be emptied before it can be released
+            assertEquals(BufferPool.DEFAULT_CHUNK_SIZE, cache.releaseMemory(1));
+            assertEquals(0, cache.getBufferPool().getByteCapacity());
+            assertEquals(usageBefore - BufferPool.DEFAULT_CHUNK_SIZE, OffHeapMemory.getUsage(OffHeapMemory.Subsystem.MODEL_CACHE));
+            assertNull(cache.getVertexData(1));
+            assertEquals(0, cache.releaseMemory(1));
+
+            // The pool grows back as soon as there's something to cache
+            assertNotNull(cache.takeIntBuffer(1200));
+            assertEquals(BufferPool.DEFAULT_CHUNK_SIZE, cache.getBufferPool().getByteCapacity());
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    public void testOneOffDataIsNotAdmittedOverFrequentlyUsedData() {
+        ModelCache cache = new ModelCache(256);
+        try {
+            int maxInts = HdPlugin.MAX_TRIANGLE * ModelPusher.DATUM_PER_FACE;
+            assertTrue(cache.shouldAdmit(-1, (long) maxInts * Integer.BYTES));
+
+            int key = 0;
+            while (cache.getBufferPool().hasFreeBlock((long) maxInts * Integer.BYTES)) {
+                cache.putVertexData(key, cache.takeIntBuffer(maxInts));
+                for (int i = 0; i < 3; i++) {
+                    assertNotNull(cache.getVertexData(key));
+                }
+                key++;
+            }
+
+            // A model seen for the first time shouldn't replace one which has been drawn repeatedly
+            assertNull(cache.getVertexData(-1));
+            assertFalse(cache.shouldAdmit(-1, (long) maxInts * Integer.BYTES));
+
+            for (int i = 0; i < 5; i++) {
+                assertNull(cache.getVertexData(-2));
+            }
+            assertTrue(cache.shouldAdmit(-2, (long) maxInts * Integer.BYTES));
+        } finally {
+            cache.destroy();
+        }
+    }
+}
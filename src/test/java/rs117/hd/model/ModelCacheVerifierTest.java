@@ -0,0 +1,52 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+public class ModelCacheVerifierTest extends TestCase {
+    public void testOnlySampledPushesAreVerified() {
+        ModelCacheVerifier verifier = new ModelCacheVerifier(4);
+        int sampled = 0;
+        for (int i = 0; i < 16; i++) {
+            if (verifier.sample()) {
+                sampled++;
+            }
+        }
+        assertEquals(4, sampled);
+    }
+
+    public void testMismatchesAreCounted() {
+        ModelCacheVerifier verifier = new ModelCacheVerifier(1);
+        IntBuffer pushed = IntBuffer.wrap(new int[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+        assertTrue(verifier.sample());
+        verifier.capture(DiskModelCache.KIND_VERTEX, IntBuffer.wrap(new int[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+        // Colors are every fourth int of the vertex data
+        verifier.capture(DiskModelCache.KIND_COLOR, IntBuffer.wrap(new int[] { 4, 9 }));
+        verifier.verify(DiskModelCache.KIND_VERTEX, pushed, 0, 8, 1, 0);
+        verifier.verify(DiskModelCache.KIND_COLOR, pushed, 0, 2, 4, 3);
+
+        assertEquals(1, verifier.getChecks(DiskModelCache.KIND_VERTEX));
+        assertEquals(0, verifier.getMismatches(DiskModelCache.KIND_VERTEX));
+        assertEquals(1, verifier.getChecks(DiskModelCache.KIND_COLOR));
+        assertEquals(1, verifier.getMismatches(DiskModelCache.KIND_COLOR));
+    }
+
+    public void testNothingIsCheckedWithoutACacheHit() {
+        ModelCacheVerifier verifier = new ModelCacheVerifier(1);
+        FloatBuffer pushed = FloatBuffer.wrap(new float[] { 1, 2, 3, 4 });
+
+        assertTrue(verifier.sample());
+        verifier.capture(DiskModelCache.KIND_NORMAL, (FloatBuffer) null);
+        verifier.verify(DiskModelCache.KIND_NORMAL, pushed, 0, 4);
+        assertEquals(0, verifier.getChecks(DiskModelCache.KIND_NORMAL));
+
+        // A cached buffer of the wrong length doesn't match
+        assertTrue(verifier.sample());
+        verifier.capture(DiskModelCache.KIND_UV, FloatBuffer.wrap(new float[] { 1, 2 }));
+        verifier.verify(DiskModelCache.KIND_UV, pushed, 0, 4);
+        assertEquals(1, verifier.getMismatches(DiskModelCache.KIND_UV));
+    }
+}
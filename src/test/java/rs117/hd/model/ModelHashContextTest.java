@@ -0,0 +1,130 @@
+package rs117.hd.model;
+
+import net.runelite.api.Model;
+import org.junit.Test;
+import rs117.hd.scene.model_overrides.ModelOverride;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ModelHashContextTest {
+    // Enough for the vertex arrays to be long enough to be memoized
+    private static final int FACE_COUNT = 200;
+
+    @Test
+    public void testArrayHashAvalanches() {
+        Random random = new Random(1337);
+        long flippedBits = 0;
+        int samples = 1000;
+        for (int i = 0; i < samples; i++) {
+            int[] values = ModelStubs.randomInts(random, 1 + random.nextInt(64), 0, 1000);
+            long before = ModelHasher.fastIntHash64(values, -1);
+            values[random.nextInt(values.length)] ^= 1 << random.nextInt(32);
+            flippedBits += Long.bitCount(before ^ ModelHasher.fastIntHash64(values, -1));
+        }
+
+        // Flipping a single input bit should flip about half of the output bits
+        double averageFlipped = (double) flippedBits / samples;
+        assertTrue(averageFlipped > 30 && averageFlipped < 34);
+    }
+
+    @Test
+    public void testCombiningDependsOnOrder() {
+        long forwards = ModelHashContext.combine(ModelHashContext.combine(ModelHashContext.SEED, 1), 2);
+        long backwards = ModelHashContext.combine(ModelHashContext.combine(ModelHashContext.SEED, 2), 1);
+        assertTrue(forwards != backwards);
+    }
+
+    @Test
+    public void testHashesFollowTheCurrentModel() {
+        Model first = ModelStubs.createModel(FACE_COUNT, 1);
+        Model second = ModelStubs.createModel(FACE_COUNT, 2);
+        ModelHashContext context = new ModelHashContext();
+
+        context.setModel(first);
+        long firstVertexHash = context.calculateVertexCacheHash();
+        long firstNormalHash = context.calculateNormalCacheHash();
+
+        context.setModel(second);
+        assertTrue(firstVertexHash != context.calculateVertexCacheHash());
+
+        // Switching back must give the same result as hashing the model from scratch
+        context.setModel(first);
+        assertEquals(firstNormalHash, context.calculateNormalCacheHash());
+        assertEquals(firstVertexHash, context.calculateVertexCacheHash());
+    }
+
+    @Test
+    public void testOnlyImmutableModelsAreMemoized() {
+        Model model = ModelStubs.createModel(FACE_COUNT, 1);
+        ModelHashContext context = new ModelHashContext();
+        context.setMemo(new ModelHashMemo(64, 30));
+
+        context.setModel(model, true);
+        long before = context.calculateVertexCacheHash();
+        model.getVerticesX()[0]++;
+
+        // The vertices of models which may change are always hashed in full
+        context.setModel(model);
+        long after = context.calculateVertexCacheHash();
+        assertTrue(before != after);
+        context.setMemo(null);
+        context.setModel(model);
+        assertEquals(after, context.calculateVertexCacheHash());
+    }
+
+    @Test
+    public void testRefilledFacesOfMutableModelsAreNoticed() {
+        Model model = ModelStubs.createModel(FACE_COUNT, 1);
+        ModelHashContext context = new ModelHashContext();
+        context.setMemo(new ModelHashMemo(64, 30));
+
+        context.setModel(model);
+        long before = context.calculateVertexCacheHash();
+        int[] colors = model.getFaceColors1();
+        for (int i = 0; i < colors.length; i++) {
+            colors[i]++;
+        }
+
+        // Face colors of models which may change are remembered, but checked against their fingerprints
+        context.setModel(model);
+        long after = context.calculateVertexCacheHash();
+        assertTrue(before != after);
+        context.setMemo(null);
+        context.setModel(model);
+        assertEquals(after, context.calculateVertexCacheHash());
+    }
+
+    @Test
+    public void testHashingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        Model[] models = { ModelStubs.createModel(FACE_COUNT, 1), ModelStubs.createModel(FACE_COUNT, 2) };
+        ModelOverride modelOverride = ModelOverride.NONE;
+        ModelHashContext context = new ModelHashContext();
+
+        long accumulated = 0;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytes = 0;
+        for (int round = 0; round < 2; round++) {
+            // Only count the second round, after everything has been loaded and initialized
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 10000; i++) {
+                context.setModel(models[i & 1]);
+                accumulated += context.calculateBatchHash();
+                accumulated += context.calculateGpuCacheHash(0, modelOverride);
+                accumulated += context.calculateColorCacheHash(modelOverride, (i & 2) != 0);
+            }
+            allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+        }
+
+        assertTrue(accumulated != 0);
+        assertEquals(0, allocatedBytes);
+    }
+}
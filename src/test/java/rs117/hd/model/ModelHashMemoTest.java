@@ -0,0 +1,63 @@
+package rs117.hd.model;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class ModelHashMemoTest extends TestCase {
+    private static final int MAX_AGE = 4;
+
+    public void testHashesMatchUnmemoizedHashes() {
+        ModelHashMemo memo = new ModelHashMemo(64, MAX_AGE);
+        int[] ints = randomInts(new Random(1), 500);
+        byte[] bytes = new byte[100];
+        short[] shorts = new short[100];
+        float[] floats = new float[300];
+        bytes[3] = 7;
+        shorts[5] = 11;
+        floats[17] = 1.5f;
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(ModelHasher.fastIntHash64(ints, -1), memo.intHash(ints, -1, false));
+            assertEquals(ModelHasher.fastIntHash64(ints, 200), memo.intHash(ints, 200, false));
+            assertEquals(ModelHasher.fastByteHash64(bytes), memo.byteHash(bytes, false));
+            assertEquals(ModelHasher.fastShortHash64(shorts), memo.shortHash(shorts, false));
+            assertEquals(ModelHasher.fastFloatHash64(floats), memo.floatHash(floats, false));
+        }
+    }
+
+    public void testChangesGoUnnoticedUntilExpired() {
+        ModelHashMemo memo = new ModelHashMemo(64, MAX_AGE);
+        int[] ints = randomInts(new Random(3), 512);
+        long before = memo.intHash(ints, -1, false);
+
+        // Arrays are assumed to be immutable, so changing one in place goes unnoticed until the entry expires
+        ints[0]++;
+        long after = ModelHasher.fastIntHash64(ints, -1);
+        for (int frame = 0; frame < MAX_AGE; frame++) {
+            memo.nextFrame();
+            assertEquals(before, memo.intHash(ints, -1, false));
+        }
+        memo.nextFrame();
+        assertEquals(after, memo.intHash(ints, -1, false));
+    }
+
+    public void testVerifiedArraysAreRehashedWhenRefilled() {
+        ModelHashMemo memo = new ModelHashMemo(64, MAX_AGE);
+        int[] ints = randomInts(new Random(5), 512);
+        long before = memo.intHash(ints, -1, true);
+        assertEquals(before, memo.intHash(ints, -1, true));
+
+        // Refilling the array changes its fingerprint, so the remembered hash is no longer trusted
+        System.arraycopy(randomInts(new Random(6), ints.length), 0, ints, 0, ints.length);
+        assertEquals(ModelHasher.fastIntHash64(ints, -1), memo.intHash(ints, -1, true));
+    }
+
+    private static int[] randomInts(Random random, int length) {
+        int[] ints = new int[length];
+        for (int i = 0; i < length; i++) {
+            ints[i] = random.nextInt();
+        }
+        return ints;
+    }
+}
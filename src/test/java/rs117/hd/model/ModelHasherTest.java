@@ -44,7 +44,7 @@ public class ModelHasherTest extends TestCase {
         long start = System.nanoTime();
         for (int i = 0; i < this.testIterations; i++) {
             accumulatedHash *= 31;
-            accumulatedHash += ModelHasher.fastIntHash(intArrays.get(this.random.nextInt(this.testDataCount)), -1);
+            accumulatedHash += ModelHasher.fastIntHash64(intArrays.get(this.random.nextInt(this.testDataCount)), -1);
         }
         return System.nanoTime() - start;
     }
@@ -0,0 +1,82 @@
+package rs117.hd.model;
+
+import net.runelite.api.Model;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic models for the tests and benchmarks, which can't get real ones without a running client. Everything is
+ * generated from fixed seeds, so the same seed always gives the same model.
+ */
+final class ModelStubs {
+    private ModelStubs() {
+    }
+
+    /**
+     * Create a model shaped roughly like those drawn by the client, with about half as many vertices as faces,
+     * a few flat-shaded faces, and no textures.
+     */
+    static Model createModel(int faceCount, long seed) {
+        Random random = new Random(seed);
+        int vertexCount = faceCount / 2 + 3;
+
+        int[] faceColors1 = new int[faceCount];
+        int[] faceColors2 = new int[faceCount];
+        int[] faceColors3 = new int[faceCount];
+        for (int face = 0; face < faceCount; face++) {
+            faceColors1[face] = random.nextInt(0x10000);
+            faceColors2[face] = random.nextInt(0x10000);
+            // Flat-shaded faces are marked by a third color of -1
+            faceColors3[face] = random.nextInt(10) == 0 ? -1 : random.nextInt(0x10000);
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("getFaceCount", faceCount);
+        values.put("getVerticesCount", vertexCount);
+        values.put("getVerticesX", randomInts(random, vertexCount, -256, 256));
+        values.put("getVerticesY", randomInts(random, vertexCount, -512, 0));
+        values.put("getVerticesZ", randomInts(random, vertexCount, -256, 256));
+        values.put("getVertexNormalsX", randomInts(random, vertexCount, -256, 256));
+        values.put("getVertexNormalsY", randomInts(random, vertexCount, -256, 256));
+        values.put("getVertexNormalsZ", randomInts(random, vertexCount, -256, 256));
+        values.put("getFaceIndices1", randomInts(random, faceCount, 0, vertexCount));
+        values.put("getFaceIndices2", randomInts(random, faceCount, 0, vertexCount));
+        values.put("getFaceIndices3", randomInts(random, faceCount, 0, vertexCount));
+        values.put("getFaceColors1", faceColors1);
+        values.put("getFaceColors2", faceColors2);
+        values.put("getFaceColors3", faceColors3);
+        values.put("getOverrideAmount", (byte) 0);
+        values.put("getOverrideHue", (byte) 0);
+        values.put("getOverrideSaturation", (byte) 0);
+        values.put("getOverrideLuminance", (byte) 0);
+        return stub(Model.class, values);
+    }
+
+    static int[] randomInts(Random random, int length, int min, int max) {
+        int[] ints = new int[length];
+        for (int i = 0; i < length; i++) {
+            ints[i] = min + random.nextInt(max - min);
+        }
+        return ints;
+    }
+
+    /**
+     * Implement an interface by returning the given values by method name, and zero, false or null otherwise.
+     * Calls never allocate, as long as every method returning a primitive which gets called is given a value.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Map<String, Object> values) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            Object value = values.get(method.getName());
+            if (value != null || !method.getReturnType().isPrimitive() || method.getReturnType() == void.class) {
+                return value;
+            }
+            // The only element of a new primitive array is the type's default value
+            return Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+        });
+    }
+}
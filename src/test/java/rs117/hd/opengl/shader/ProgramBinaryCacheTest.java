@@ -0,0 +1,94 @@
+package rs117.hd.opengl.shader;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+public class ProgramBinaryCacheTest extends TestCase {
+    private static final int[] TYPES = { 1, 2 };
+    private static final String[] SOURCES = { "void main() {}", "void main() { discard; }" };
+
+    private Path directory;
+    private ProgramBinaryCache cache;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("program-cache");
+        cache = new ProgramBinaryCache(directory, "vendor\nrenderer\nversion");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator)
+                Files.delete(path);
+        }
+        Files.delete(directory);
+    }
+
+    public void testBinariesPersistAcrossSessions() {
+        String key = cache.getKey(TYPES, SOURCES);
+        cache.save(key, 7, binary(100, 3));
+
+        ProgramBinaryCache.Binary binary = new ProgramBinaryCache(directory, "vendor\nrenderer\nversion").load(key);
+        assertNotNull(binary);
+        assertEquals(7, binary.format);
+        assertTrue(binary.data.isDirect());
+        assertEquals(binary(100, 3), binary.data);
+    }
+
+    public void testKeysDependOnTheDriverAndEveryShader() {
+        String key = cache.getKey(TYPES, SOURCES);
+        assertEquals(key, cache.getKey(TYPES, SOURCES.clone()));
+        assertFalse(key.equals(new ProgramBinaryCache(directory, "vendor\nrenderer\nnewer version").getKey(TYPES, SOURCES)));
+        assertFalse(key.equals(cache.getKey(new int[] { 1, 3 }, SOURCES)));
+        assertFalse(key.equals(cache.getKey(TYPES, new String[] { SOURCES[0], SOURCES[1] + "\n" })));
+        // Moving text from one shader to the next must not produce the same key
+        assertFalse(key.equals(cache.getKey(TYPES, new String[] { SOURCES[0] + "v", SOURCES[1].substring(1) })));
+    }
+
+    public void testCorruptBinariesAreDiscarded() throws IOException {
+        String key = cache.getKey(TYPES, SOURCES);
+        cache.save(key, 7, binary(100, 3));
+
+        Path path = directory.resolve(key + ".bin");
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1]++;
+        Files.write(path, bytes);
+
+        assertNull(cache.load(key));
+        assertFalse(Files.exists(path));
+    }
+
+    public void testLeastRecentlyUsedBinariesArePruned() throws IOException {
+        String[] keys = new String[ProgramBinaryCache.MAX_PROGRAMS + 1];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = cache.getKey(TYPES, new String[] { SOURCES[0], Integer.toString(i) });
+        for (int i = 0; i < ProgramBinaryCache.MAX_PROGRAMS; i++) {
+            cache.save(keys[i], 7, binary(10, i));
+            Files.setLastModifiedTime(directory.resolve(keys[i] + ".bin"), FileTime.fromMillis(i * 1000L));
+        }
+
+        // Loading the oldest binary marks it as recently used, so the second oldest is pruned instead
+        assertNotNull(cache.load(keys[0]));
+        cache.save(keys[keys.length - 1], 7, binary(10, 0));
+
+        assertNotNull(cache.load(keys[0]));
+        assertNull(cache.load(keys[1]));
+        assertNotNull(cache.load(keys[2]));
+        assertNotNull(cache.load(keys[keys.length - 1]));
+    }
+
+    private static ByteBuffer binary(int length, int seed) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++)
+            buffer.put((byte) (i * 31 + seed));
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,32 @@
+package rs117.hd.scene.model_overrides;
+
+import junit.framework.TestCase;
+
+public class LevelOfDetailTest extends TestCase {
+    public void testClassifiesBySize() {
+        assertEquals(LevelOfDetail.SMALL, LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.GROUND_OBJECT, false, LevelOfDetail.SMALL_RADIUS));
+        assertEquals(LevelOfDetail.MEDIUM, LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.GAME_OBJECT, false, LevelOfDetail.SMALL_RADIUS + 1));
+        assertEquals(LevelOfDetail.MEDIUM, LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.GAME_OBJECT, false, LevelOfDetail.MEDIUM_RADIUS));
+        assertEquals(LevelOfDetail.ALWAYS, LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.GAME_OBJECT, false, LevelOfDetail.MEDIUM_RADIUS + 1));
+    }
+
+    public void testWallsAndOverridesTakePrecedenceOverSize() {
+        assertEquals(LevelOfDetail.ALWAYS, LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.WALL_OBJECT, false, 1));
+        assertEquals(LevelOfDetail.SMALL, LevelOfDetail.classify(LevelOfDetail.SMALL, ObjectType.WALL_OBJECT, false, 1000));
+        assertEquals(LevelOfDetail.ALWAYS, LevelOfDetail.classify(LevelOfDetail.ALWAYS, ObjectType.GROUND_OBJECT, false, 1));
+    }
+
+    public void testInteractableObjectsAreNeverHidden() {
+        assertEquals(LevelOfDetail.ALWAYS, LevelOfDetail.classify(LevelOfDetail.AUTO, ObjectType.GROUND_OBJECT, true, 1));
+        assertEquals(LevelOfDetail.ALWAYS, LevelOfDetail.classify(LevelOfDetail.SMALL, ObjectType.GAME_OBJECT, true, 1));
+    }
+
+    public void testBitsStayClearOfTheSkipMarker() {
+        for (LevelOfDetail lod : LevelOfDetail.values()) {
+            if (lod != LevelOfDetail.AUTO) {
+                assertEquals(lod.bits, lod.bits & LevelOfDetail.MASK);
+                assertTrue(lod.bits != LevelOfDetail.SKIP);
+            }
+        }
+    }
+}
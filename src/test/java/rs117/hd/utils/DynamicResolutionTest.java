@@ -0,0 +1,46 @@
+package rs117.hd.utils;
+
+import junit.framework.TestCase;
+
+public class DynamicResolutionTest extends TestCase {
+    private static final long BUDGET = 10_000_000;
+
+    private static void sample(DynamicResolution resolution, long frameNanos, int frames) {
+        for (int i = 0; i < frames; i++) {
+            resolution.update(frameNanos, BUDGET, .5f);
+        }
+    }
+
+    public void testStepsDownWhenOverBudgetAndStaysWithinTheHysteresisBand() {
+        DynamicResolution resolution = new DynamicResolution();
+        sample(resolution, BUDGET * 2, DynamicResolution.SAMPLED_FRAMES);
+        float scale = resolution.getScale();
+        assertTrue(scale < DynamicResolution.MAX_SCALE);
+
+        // Frames drawn before the change are ignored, and frames in between the thresholds change nothing
+        sample(resolution, BUDGET * 3 / 4, DynamicResolution.SAMPLED_FRAMES * 10);
+        assertEquals(scale, resolution.getScale());
+    }
+
+    public void testNeverGoesBelowTheMinimumScale() {
+        DynamicResolution resolution = new DynamicResolution();
+        sample(resolution, BUDGET * 100, DynamicResolution.SAMPLED_FRAMES * 100);
+        assertEquals(.5f, resolution.getScale(), 1e-6f);
+    }
+
+    public void testStepsBackUpWithHeadroom() {
+        DynamicResolution resolution = new DynamicResolution();
+        sample(resolution, BUDGET * 2, DynamicResolution.SAMPLED_FRAMES);
+        assertTrue(resolution.getScale() < DynamicResolution.MAX_SCALE);
+
+        sample(resolution, BUDGET / 10, DynamicResolution.SAMPLED_FRAMES * 100);
+        assertEquals(DynamicResolution.MAX_SCALE, resolution.getScale());
+    }
+
+    public void testNoTargetMeansFullScale() {
+        DynamicResolution resolution = new DynamicResolution();
+        sample(resolution, BUDGET * 2, DynamicResolution.SAMPLED_FRAMES);
+        resolution.update(BUDGET * 2, 0, .5f);
+        assertEquals(DynamicResolution.MAX_SCALE, resolution.getScale());
+    }
+}
@@ -0,0 +1,36 @@
+package rs117.hd.utils;
+
+import junit.framework.TestCase;
+
+public class FrameTimingsBufferTest extends TestCase {
+    public void testSnapshotReturnsTheMostRecentFramesInOrder() {
+        FrameTimingsBuffer buffer = new FrameTimingsBuffer(4);
+        assertEquals(0, buffer.snapshot(10).length);
+
+        for (long i = 0; i < 6; i++) {
+            buffer.add(new long[] { i, i * 10 });
+        }
+        assertEquals(6, buffer.getFrameCount());
+
+        // Only the last four frames fit
+        long[][] frames = buffer.snapshot(10);
+        assertEquals(4, frames.length);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 2, frames[i][0]);
+            assertEquals((i + 2) * 10, frames[i][1]);
+        }
+
+        frames = buffer.snapshot(2);
+        assertEquals(2, frames.length);
+        assertEquals(4, frames[0][0]);
+        assertEquals(5, frames[1][0]);
+    }
+
+    public void testAddedTimingsAreCopied() {
+        FrameTimingsBuffer buffer = new FrameTimingsBuffer(4);
+        long[] timings = { 1, 2 };
+        buffer.add(timings);
+        timings[0] = 3;
+        assertEquals(1, buffer.snapshot(1)[0][0]);
+    }
+}
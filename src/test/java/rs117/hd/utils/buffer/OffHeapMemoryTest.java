@@ -0,0 +1,59 @@
+package rs117.hd.utils.buffer;
+
+import junit.framework.TestCase;
+
+import java.nio.IntBuffer;
+
+public class OffHeapMemoryTest extends TestCase {
+    private static final OffHeapMemory.Subsystem SUBSYSTEM = OffHeapMemory.Subsystem.MISC;
+
+    public void testUsageAndHighWaterMarksFollowAllocations() {
+        long usageBefore = OffHeapMemory.getUsage(SUBSYSTEM);
+        long totalBefore = OffHeapMemory.getTotalUsage();
+
+        IntBuffer buffer = OffHeapMemory.allocateInts(SUBSYSTEM, 1000);
+        assertEquals(usageBefore + 4000, OffHeapMemory.getUsage(SUBSYSTEM));
+        assertEquals(totalBefore + 4000, OffHeapMemory.getTotalUsage());
+
+        OffHeapMemory.free(SUBSYSTEM, buffer);
+        assertEquals(usageBefore, OffHeapMemory.getUsage(SUBSYSTEM));
+        assertEquals(totalBefore, OffHeapMemory.getTotalUsage());
+
+        // The peak is remembered until the high-water marks are reset
+        assertTrue(OffHeapMemory.getHighWaterMark(SUBSYSTEM) >= usageBefore + 4000);
+        assertTrue(OffHeapMemory.getTotalHighWaterMark() >= totalBefore + 4000);
+        OffHeapMemory.resetHighWaterMarks();
+        assertEquals(usageBefore, OffHeapMemory.getHighWaterMark(SUBSYSTEM));
+    }
+
+    public void testPressureIsRelievedUntilWithinBudget() {
+        long[] address = { OffHeapMemory.allocate(SUBSYSTEM, 1000) };
+        long[] requested = new long[2];
+        OffHeapMemory.PressureListener first = bytes -> {
+            requested[0] = bytes;
+            OffHeapMemory.free(SUBSYSTEM, address[0], 1000);
+            return 1000;
+        };
+        OffHeapMemory.PressureListener second = bytes -> {
+            requested[1] = bytes;
+            return 0;
+        };
+
+        OffHeapMemory.addPressureListener(first);
+        OffHeapMemory.addPressureListener(second);
+        try {
+            OffHeapMemory.setBudget(OffHeapMemory.getTotalUsage() - 600);
+            assertEquals(0, OffHeapMemory.getAvailable());
+
+            OffHeapMemory.relievePressure();
+            assertEquals(600, requested[0]);
+            // The first listener freed enough, so the second one is left alone
+            assertEquals(0, requested[1]);
+            assertEquals(400, OffHeapMemory.getAvailable());
+        } finally {
+            OffHeapMemory.removePressureListener(first);
+            OffHeapMemory.removePressureListener(second);
+            OffHeapMemory.setBudget(0);
+        }
+    }
+}